@@ -831,6 +831,11 @@ public class PersoniumCoreException extends RuntimeException {
          * barファイルの構造が正しくないとき.
          */
         public static final PersoniumCoreException BAR_FILE_INVALID_STRUCTURES = create("PR400-BI-0009");
+        /**
+         * barファイルの事前検証でエラーが検出されたとき.
+         * {0}：検出されたエラーの一覧
+         */
+        public static final PersoniumCoreException BAR_FILE_VALIDATION_FAILED = create("PR400-BI-0010");
         /**
          * インストール対象のBoxが登録済みのとき.
          */
@@ -76,6 +76,9 @@ public class PersoniumUnitConfig {
         /** $batch処理のスリープ間隔. */
         public static final String BATCH_SLEEP_INTERVAL_IN_MILLIS = KEY_ROOT + "odata.batch.sleepIntervalInMillis";
 
+        /** $batchのリクエストボディをメモリ上に保持する最大文字数. 超えた場合は一時ファイルに退避する. */
+        public static final String BATCH_SPOOL_THRESHOLD = KEY_ROOT + "odata.batch.spoolThresholdInChars";
+
         /** N:Nの$linksが作成可能な最大件数. */
         public static final String NN_LINKS_MAX_NUM = KEY_ROOT + "odata.links.NtoN.maxnum";
 
@@ -88,6 +91,9 @@ public class PersoniumUnitConfig {
         /** $expandの最大展開数（一件取得時）. */
         public static final String EXPAND_RETRIEVE_MAXNUM = KEY_ROOT + "odata.expand.retrieve.maxnum";
 
+        /** 入れ子の$expandの最大展開数（2階層目以降）. */
+        public static final String EXPAND_NESTED_MAXNUM = KEY_ROOT + "odata.expand.nested.maxnum";
+
         /** $topの最大値数. */
         public static final String TOP_MAX_NUM = KEY_ROOT + "odata.query.top.maxnum";
 
@@ -97,12 +103,18 @@ public class PersoniumUnitConfig {
         /** 一覧取得時のデフォルト返却件数. */
         public static final String TOP_DEFAULT_NUM = KEY_ROOT + "odata.query.top.defaultnum";
 
+        /** 一覧取得時に$skiptokenによる次ページのリンクを返却するか否か. */
+        public static final String SKIPTOKEN_ENABLED = KEY_ROOT + "odata.query.skiptoken.enabled";
+
         /** $expandのプロパティの最大値数（一覧取得時）. */
         public static final String EXPAND_PROPERTY_MAX_NUM_LIST = KEY_ROOT + "odata.query.expand.property.maxnum.list";
 
         /** $expandのプロパティの最大値数（一件取得時）. */
         public static final String EXPAND_PROPERTY_MAX_NUM_RETRIEVE = KEY_ROOT
                 + "odata.query.expand.property.maxnum.retrieve";
+
+        /** $expandに指定可能な階層の最大数. */
+        public static final String EXPAND_DEPTH_MAX_NUM = KEY_ROOT + "odata.query.expand.depth.maxnum";
     }
 
     /**
@@ -122,6 +134,9 @@ public class PersoniumUnitConfig {
 
         /** コレクションの階層の深さの最大数. */
         public static final String COLLECTION_DEPTH_MAX_NUM = KEY_ROOT + "dav.depth.maxnum";
+
+        /** 各ノードでキャッシュするDavメタデータの最大数. */
+        public static final String METADATA_CACHE_MAX_ENTRIES = KEY_ROOT + "dav.metadata.cache.maxEntries";
     }
 
     /**
@@ -136,6 +151,15 @@ public class PersoniumUnitConfig {
 
         /** Encrypt the DAV file (true: enabled false: disabled (default)). */
         public static final String DAV_ENCRYPT_ENABLED = KEY_ROOT + "security.dav.encrypt.enabled";
+
+        /** Encrypt new DAV files in the seekable format (true: enabled (default) false: disabled). */
+        public static final String DAV_ENCRYPT_SEEKABLE = KEY_ROOT + "security.dav.encrypt.seekable";
+
+        /** Maximum number of verified access tokens cached on each node. */
+        public static final String TOKEN_CACHE_MAX_ENTRIES = KEY_ROOT + "security.tokenCache.maxEntries";
+
+        /** Lifetime of a verified access token in the cache (s). 0 disables the cache. */
+        public static final String TOKEN_CACHE_EXPIRES_IN = KEY_ROOT + "security.tokenCache.expiresin";
     }
 
     /**
@@ -160,6 +184,13 @@ public class PersoniumUnitConfig {
         /** セルロック取得リトライ時の間隔. */
         public static final String CELL_RETRY_INTERVAL = KEY_ROOT + "lock.cell.retry.interval";
 
+        /** Interval of publishing cell access counts of this node to the lock store (ms). 0: publish synchronously */
+        public static final String CELL_PUBLISH_INTERVAL = KEY_ROOT + "lock.cell.publish.interval";
+
+        /** Maximum staleness of the ReadDeleteOnly mode cached on each node (ms). 0: read on every request */
+        public static final String READ_DELETE_ONLY_MODE_MAX_STALENESS =
+                KEY_ROOT + "lock.readDeleteOnlyMode.maxStaleness";
+
         /** ロックをmemcachedに保持する際のmemcachedホスト名. */
         public static final String MEMCACHED_HOST = KEY_ROOT + "lock.memcached.host";
 
@@ -168,6 +199,9 @@ public class PersoniumUnitConfig {
 
         /** ロック用memcached operationタイムアウト値(ms). */
         public static final String MEMCACHED_OPTIMEOUT = KEY_ROOT + "lock.memcached.opTimeout";
+
+        /** Lease of a lock held in memcached (s). A lock whose holder died is released after this time. 0: no lease */
+        public static final String MEMCACHED_LEASE = KEY_ROOT + "lock.memcached.lease";
     }
 
     /**
@@ -245,6 +279,26 @@ public class PersoniumUnitConfig {
         public static final String EVENT_LOG_CURRENT_DIR = KEY_ROOT + "event.log.current.dir";
     }
 
+    /**
+     * メッセージ送信の設定.
+     */
+    public static final class Message {
+        /** Maximum number of destinations one message is delivered to concurrently. */
+        public static final String SEND_PARALLELISM = KEY_ROOT + "message.send.parallelism";
+
+        /** Maximum number of threads delivering messages on each node. */
+        public static final String SEND_MAX_THREADS = KEY_ROOT + "message.send.maxThreads";
+
+        /** Maximum number of pooled connections to destination cells. */
+        public static final String SEND_MAX_CONNECTIONS = KEY_ROOT + "message.send.maxConnections";
+
+        /** Maximum number of pooled connections per destination unit. */
+        public static final String SEND_MAX_CONNECTIONS_PER_ROUTE = KEY_ROOT + "message.send.maxConnectionsPerRoute";
+
+        /** Timeout of connecting to and waiting for data from a destination unit (ms). */
+        public static final String SEND_TIMEOUT = KEY_ROOT + "message.send.timeout";
+    }
+
     /**
      * Cache廻りの設定.
      */
@@ -272,6 +326,18 @@ public class PersoniumUnitConfig {
 
         /** キャッシュ有効期限. */
         public static final String MEMCACHED_EXPIRES_IN = KEY_ROOT + "cache.memcached.expiresin";
+
+        /** Whether to enable the node local cache in front of memcached. true/false */
+        public static final String LOCAL_CACHE_ENABLED = KEY_ROOT + "cache.local.enabled";
+
+        /** Maximum number of entries held by each node local cache. */
+        public static final String LOCAL_CACHE_MAX_ENTRIES = KEY_ROOT + "cache.local.maxEntries";
+
+        /** Lifetime of a node local cache entry (s). */
+        public static final String LOCAL_CACHE_EXPIRES_IN = KEY_ROOT + "cache.local.expiresin";
+
+        /** Interval to check the shared version of the node local cache (ms). */
+        public static final String LOCAL_CACHE_VERSION_CHECK_INTERVAL = KEY_ROOT + "cache.local.versionCheckInterval";
     }
 
     /**
@@ -286,6 +352,28 @@ public class PersoniumUnitConfig {
 
         /** EngineのPathキー. */
         public static final String PATH = KEY_ROOT + "engine.path";
+
+        /** Maximum number of pooled connections to Engine. */
+        public static final String RELAY_MAX_CONNECTIONS = KEY_ROOT + "engine.relay.maxConnections";
+
+        /** Maximum number of pooled connections to Engine per route. */
+        public static final String RELAY_MAX_CONNECTIONS_PER_ROUTE = KEY_ROOT + "engine.relay.maxConnectionsPerRoute";
+
+        /** Timeout of connecting to Engine (ms). */
+        public static final String RELAY_CONNECT_TIMEOUT = KEY_ROOT + "engine.relay.connectTimeout";
+
+        /** Timeout of waiting for data from Engine (ms, 0: no timeout). */
+        public static final String RELAY_SOCKET_TIMEOUT = KEY_ROOT + "engine.relay.socketTimeout";
+
+        /** Timeout of leasing a connection from the pool (ms). */
+        public static final String RELAY_CONNECTION_REQUEST_TIMEOUT =
+                KEY_ROOT + "engine.relay.connectionRequestTimeout";
+
+        /** Maximum time to keep an idle connection alive (ms). */
+        public static final String RELAY_KEEP_ALIVE = KEY_ROOT + "engine.relay.keepAlive";
+
+        /** Pooled connections idle for this time are closed (ms). */
+        public static final String RELAY_IDLE_TIMEOUT = KEY_ROOT + "engine.relay.idleTimeout";
     }
 
     /**
@@ -324,6 +412,18 @@ public class PersoniumUnitConfig {
 
         /** memcachedに格納するbarインストール処理状況の有効期限（秒). */
         public static final String BAR_PROGRESS_EXPIRE_IN_SEC = KEY_ROOT + "bar.progress.expireInSec";
+
+        /** 同時に実行するbarインストールの最大数のプロパティキー. */
+        public static final String BAR_INSTALL_MAX_THREADS = KEY_ROOT + "bar.install.maxThreads";
+
+        /** barインストール中のコンテンツ登録に使用する最大スレッド数のプロパティキー. */
+        public static final String BAR_INSTALL_WORKER_MAX_THREADS = KEY_ROOT + "bar.install.worker.maxThreads";
+
+        /** 1つのbarインストールで同時に実行するWebDAVコンテンツ登録の最大数のプロパティキー. */
+        public static final String BAR_INSTALL_PARALLELISM = KEY_ROOT + "bar.install.parallelism";
+
+        /** barインストールの受付時に全エントリを事前検証するかどうかのプロパティキー. */
+        public static final String BAR_INSTALL_PRE_VALIDATION_ENABLED = KEY_ROOT + "bar.install.preValidation.enabled";
     }
 
     /**
@@ -332,6 +432,15 @@ public class PersoniumUnitConfig {
     public static final class CellSnapshot {
         /** Root directory path to store the cell export file. */
         public static final String ROOT = KEY_ROOT + "cellSnapshot.root";
+
+        /** Number of concurrent bulk requests of cell import. 0: number of processors. */
+        public static final String IMPORT_WORKERS = KEY_ROOT + "cellSnapshot.import.workers";
+
+        /** Maximum payload bytes of a bulk request of cell import. */
+        public static final String IMPORT_BULK_MAX_BYTES = KEY_ROOT + "cellSnapshot.import.bulkMaxBytes";
+
+        /** Maximum number of retries of a bulk request of cell import. */
+        public static final String IMPORT_RETRY_TIMES = KEY_ROOT + "cellSnapshot.import.retryTimes";
     }
 
     static {
@@ -625,6 +734,13 @@ public class PersoniumUnitConfig {
         return DEFAULT_BATCH_SLEEP_INTERVAL;
     }
 
+    /**
+     * @return $batchのリクエストボディをメモリ上に保持する最大文字数
+     */
+    public static int getOdataBatchSpoolThreshold() {
+        return Integer.parseInt(get(OData.BATCH_SPOOL_THRESHOLD));
+    }
+
     /**
      * コレクションの子要素の最大制限数を取得.
      * @return コレクションの子要素の最大数
@@ -641,6 +757,14 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(Dav.COLLECTION_DEPTH_MAX_NUM));
     }
 
+    /**
+     * 各ノードでキャッシュするDavメタデータの最大数を取得.
+     * @return キャッシュするDavメタデータの最大数. 0以下の場合はキャッシュしない
+     */
+    public static int getDavMetadataCacheMaxEntries() {
+        return Integer.parseInt(get(Dav.METADATA_CACHE_MAX_ENTRIES));
+    }
+
     /**
      * ファイル書き込み時にfsyncが有効であるか否かを返す.
      * @return 有効である場合はtrue
@@ -677,6 +801,13 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(OData.EXPAND_RETRIEVE_MAXNUM));
     }
 
+    /**
+     * @return 入れ子の$expandの最大展開数（2階層目以降）.
+     */
+    public static int getMaxExpandSizeForNested() {
+        return Integer.parseInt(get(OData.EXPAND_NESTED_MAXNUM));
+    }
+
     /**
      * @return $topに指定可能な最大値.
      */
@@ -698,6 +829,13 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(OData.TOP_DEFAULT_NUM));
     }
 
+    /**
+     * @return 一覧取得時に$skiptokenによる次ページのリンクを返却する場合はtrue.
+     */
+    public static boolean getSkipTokenEnabled() {
+        return Boolean.parseBoolean(get(OData.SKIPTOKEN_ENABLED));
+    }
+
     /**
      * @return $expandのプロパティの最大値数（一覧取得時）.
      */
@@ -712,6 +850,13 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(OData.EXPAND_PROPERTY_MAX_NUM_RETRIEVE));
     }
 
+    /**
+     * @return $expandに指定可能な階層の最大数.
+     */
+    public static int getExpandDepthMaxSize() {
+        return Integer.parseInt(get(OData.EXPAND_DEPTH_MAX_NUM));
+    }
+
     /**
      * @return Lockのタイプ.
      */
@@ -754,6 +899,20 @@ public class PersoniumUnitConfig {
         return Long.parseLong(get(Lock.CELL_RETRY_INTERVAL));
     }
 
+    /**
+     * @return interval of publishing cell access counts to the lock store (ms)
+     */
+    public static long getCellLockPublishInterval() {
+        return Long.parseLong(get(Lock.CELL_PUBLISH_INTERVAL));
+    }
+
+    /**
+     * @return maximum staleness of the cached ReadDeleteOnly mode (ms)
+     */
+    public static long getReadDeleteOnlyModeMaxStaleness() {
+        return Long.parseLong(get(Lock.READ_DELETE_ONLY_MODE_MAX_STALENESS));
+    }
+
     /**
      * @return ロックをmemcachedに保持する際のmemcachedホスト名.
      */
@@ -775,6 +934,13 @@ public class PersoniumUnitConfig {
         return Long.parseLong(get(Lock.MEMCACHED_OPTIMEOUT));
     }
 
+    /**
+     * @return lease of a lock held in memcached (s)
+     */
+    public static int getLockMemcachedLease() {
+        return Integer.parseInt(get(Lock.MEMCACHED_LEASE));
+    }
+
     /**
      * @return 最新のイベントログファイルの格納ディレクトリ.
      */
@@ -828,6 +994,31 @@ public class PersoniumUnitConfig {
         return get(CellSnapshot.ROOT);
     }
 
+    /**
+     * @return number of concurrent bulk requests of cell import
+     */
+    public static int getCellSnapshotImportWorkers() {
+        int workers = Integer.parseInt(get(CellSnapshot.IMPORT_WORKERS));
+        if (workers <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return workers;
+    }
+
+    /**
+     * @return maximum payload bytes of a bulk request of cell import
+     */
+    public static long getCellSnapshotImportBulkMaxBytes() {
+        return Long.parseLong(get(CellSnapshot.IMPORT_BULK_MAX_BYTES));
+    }
+
+    /**
+     * @return maximum number of retries of a bulk request of cell import
+     */
+    public static int getCellSnapshotImportRetryTimes() {
+        return Integer.parseInt(get(CellSnapshot.IMPORT_RETRY_TIMES));
+    }
+
     /**
      * バイナリデータ(Dav/Eventlog)削除時に物理削除するかどうかの設定.
      * @return true: 物理削除, false: 論理削除
@@ -873,6 +1064,34 @@ public class PersoniumUnitConfig {
         return get(BAR.BAR_PROGRESS_EXPIRE_IN_SEC);
     }
 
+    /**
+     * @return 同時に実行するbarインストールの最大数.
+     */
+    public static int getBarInstallMaxThreads() {
+        return Integer.parseInt(get(BAR.BAR_INSTALL_MAX_THREADS));
+    }
+
+    /**
+     * @return barインストール中のコンテンツ登録に使用する最大スレッド数.
+     */
+    public static int getBarInstallWorkerMaxThreads() {
+        return Integer.parseInt(get(BAR.BAR_INSTALL_WORKER_MAX_THREADS));
+    }
+
+    /**
+     * @return 1つのbarインストールで同時に実行するWebDAVコンテンツ登録の最大数.
+     */
+    public static int getBarInstallParallelism() {
+        return Integer.parseInt(get(BAR.BAR_INSTALL_PARALLELISM));
+    }
+
+    /**
+     * @return barインストールの受付時に全エントリを事前検証する場合はtrue.
+     */
+    public static boolean getBarInstallPreValidationEnabled() {
+        return Boolean.parseBoolean(get(BAR.BAR_INSTALL_PRE_VALIDATION_ENABLED));
+    }
+
     /**
      * @return Cacheのタイプ.
      */
@@ -932,6 +1151,35 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(Cache.MEMCACHED_EXPIRES_IN));
     }
 
+    /**
+     * Returns whether the node local cache is enabled.
+     * @return true if enabled
+     */
+    public static boolean isLocalCacheEnabled() {
+        return Boolean.parseBoolean(get(Cache.LOCAL_CACHE_ENABLED));
+    }
+
+    /**
+     * @return maximum number of entries held by each node local cache
+     */
+    public static int getLocalCacheMaxEntries() {
+        return Integer.parseInt(get(Cache.LOCAL_CACHE_MAX_ENTRIES));
+    }
+
+    /**
+     * @return lifetime of a node local cache entry (s)
+     */
+    public static int getLocalCacheExpiresIn() {
+        return Integer.parseInt(get(Cache.LOCAL_CACHE_EXPIRES_IN));
+    }
+
+    /**
+     * @return interval to check the shared version of the node local cache (ms)
+     */
+    public static long getLocalCacheVersionCheckInterval() {
+        return Long.parseLong(get(Cache.LOCAL_CACHE_VERSION_CHECK_INTERVAL));
+    }
+
     /**
      * Enineのホスト名設定値を取得します.
      * @return 設定値
@@ -956,6 +1204,90 @@ public class PersoniumUnitConfig {
         return get(Engine.PATH);
     }
 
+    /**
+     * @return maximum number of pooled connections to Engine
+     */
+    public static int getEngineRelayMaxConnections() {
+        return Integer.parseInt(get(Engine.RELAY_MAX_CONNECTIONS));
+    }
+
+    /**
+     * @return maximum number of pooled connections to Engine per route
+     */
+    public static int getEngineRelayMaxConnectionsPerRoute() {
+        return Integer.parseInt(get(Engine.RELAY_MAX_CONNECTIONS_PER_ROUTE));
+    }
+
+    /**
+     * @return timeout of connecting to Engine (ms)
+     */
+    public static int getEngineRelayConnectTimeout() {
+        return Integer.parseInt(get(Engine.RELAY_CONNECT_TIMEOUT));
+    }
+
+    /**
+     * @return timeout of waiting for data from Engine (ms, 0: no timeout)
+     */
+    public static int getEngineRelaySocketTimeout() {
+        return Integer.parseInt(get(Engine.RELAY_SOCKET_TIMEOUT));
+    }
+
+    /**
+     * @return timeout of leasing a connection to Engine from the pool (ms)
+     */
+    public static int getEngineRelayConnectionRequestTimeout() {
+        return Integer.parseInt(get(Engine.RELAY_CONNECTION_REQUEST_TIMEOUT));
+    }
+
+    /**
+     * @return maximum time to keep an idle connection to Engine alive (ms)
+     */
+    public static long getEngineRelayKeepAlive() {
+        return Long.parseLong(get(Engine.RELAY_KEEP_ALIVE));
+    }
+
+    /**
+     * @return idle time after which pooled connections to Engine are closed (ms)
+     */
+    public static long getEngineRelayIdleTimeout() {
+        return Long.parseLong(get(Engine.RELAY_IDLE_TIMEOUT));
+    }
+
+    /**
+     * @return maximum number of destinations one message is delivered to concurrently
+     */
+    public static int getMessageSendParallelism() {
+        return Integer.parseInt(get(Message.SEND_PARALLELISM));
+    }
+
+    /**
+     * @return maximum number of threads delivering messages on each node
+     */
+    public static int getMessageSendMaxThreads() {
+        return Integer.parseInt(get(Message.SEND_MAX_THREADS));
+    }
+
+    /**
+     * @return maximum number of pooled connections to destination cells
+     */
+    public static int getMessageSendMaxConnections() {
+        return Integer.parseInt(get(Message.SEND_MAX_CONNECTIONS));
+    }
+
+    /**
+     * @return maximum number of pooled connections per destination unit
+     */
+    public static int getMessageSendMaxConnectionsPerRoute() {
+        return Integer.parseInt(get(Message.SEND_MAX_CONNECTIONS_PER_ROUTE));
+    }
+
+    /**
+     * @return timeout of connecting to and waiting for data from a destination unit (ms)
+     */
+    public static int getMessageSendTimeout() {
+        return Integer.parseInt(get(Message.SEND_TIMEOUT));
+    }
+
     /**
      * 本UNITのX509秘密鍵ファイルのパスの設定値を取得します.
      * @return 設定値
@@ -1009,6 +1341,28 @@ public class PersoniumUnitConfig {
         return Boolean.parseBoolean(get(Security.DAV_ENCRYPT_ENABLED));
     }
 
+    /**
+     * Encrypt new DAV files in the seekable format.
+     * @return true: enabled false: disabled
+     */
+    public static boolean isDavEncryptSeekable() {
+        return Boolean.parseBoolean(get(Security.DAV_ENCRYPT_SEEKABLE));
+    }
+
+    /**
+     * @return maximum number of verified access tokens cached on each node
+     */
+    public static int getTokenCacheMaxEntries() {
+        return Integer.parseInt(get(Security.TOKEN_CACHE_MAX_ENTRIES));
+    }
+
+    /**
+     * @return lifetime of a verified access token in the cache (s)
+     */
+    public static int getTokenCacheExpiresIn() {
+        return Integer.parseInt(get(Security.TOKEN_CACHE_EXPIRES_IN));
+    }
+
     /**
      * 設定情報をリロードします.
      */
@@ -17,12 +17,14 @@
 package io.personium.core.auth;
 
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,7 +48,6 @@ import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.OAuth2Helper.AcceptableAuthScheme;
 import io.personium.core.model.Box;
 import io.personium.core.model.Cell;
-import io.personium.core.model.jaxb.Ace;
 import io.personium.core.model.jaxb.Acl;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.rs.cell.AuthResourceUtils;
@@ -66,6 +67,10 @@ public final class AccessContext {
     private String schema;
     private String confidentialLevel;
     private List<Role> roles = new ArrayList<Role>();
+    /** requirePrivilegeで使用するロールURLの集合. */
+    private Set<String> roleUrls;
+    /** roleUrlsを生成したセルURL. */
+    private String roleUrlsCellUrl;
     private String baseUri;
     private InvalidReason invalidReason;
 
@@ -217,6 +222,7 @@ public final class AccessContext {
 
     void addRole(final Role role) {
         this.roles.add(role);
+        this.roleUrls = null;
     }
 
     /**
@@ -380,12 +386,13 @@ public final class AccessContext {
         }
         // 以降、Cellレベル。
         AbstractOAuth2Token tk = null;
+        String issuer = null;
+        if (cell != null) {
+            issuer = cell.getUrl();
+        }
         try {
-            String issuer = null;
-            if (cell != null) {
-                issuer = cell.getUrl();
-            }
-            tk = AbstractOAuth2Token.parse(accessToken, issuer, host);
+            // 同じトークンでの連続したアクセスでは、検証済みのトークンを使い回す
+            tk = VerifiedTokenCache.parse(accessToken, issuer, host);
         } catch (TokenParseException e) {
             // パースに失敗したので
             PersoniumCoreLog.Auth.TOKEN_PARSE_ERROR.params(e.getMessage()).writeLog();
@@ -410,6 +417,7 @@ public final class AccessContext {
         if (tk.isExpired()) {
             return new AccessContext(TYPE_INVALID, cell, baseUri, InvalidReason.expired);
         }
+        VerifiedTokenCache.put(accessToken, issuer, host, tk);
 
         AccessContext ret = new AccessContext(null, cell, baseUri);
         if (tk instanceof AccountAccessToken) {
@@ -505,89 +513,28 @@ public final class AccessContext {
         }
 
         // ACLからROLE情報を取得し、権限を取得
-        if (acl.getAceList() == null) {
-            return false;
-        }
-        for (Ace ace : acl.getAceList()) {
-            // 空のaceが設定されている場合はチェックの必要がないためがcontinueする
-            if (ace.getGrantedPrivilegeList().size() == 0 && ace.getPrincipalHref() == null) {
-                continue;
-            }
-            // Principalがallの場合、アクセス可
-            if (ace.getPrincipalAll() != null) {
-                if (requireAcePrivilege(ace.getGrantedPrivilegeList(), resourcePrivilege)) {
-                    return true;
-                }
-                continue;
-            }
-            // Accountに紐付いたRoleが存在しない場合は、アクセス不可
-            if (this.roles == null) {
-                return false;
-            }
-
-            for (Role role : this.roles) {
-                // 相対パスロールURL対応
-                String principalHref = getPrincipalHrefUrl(acl.getBase(), ace.getPrincipalHref());
-                if (principalHref == null) {
-                    return false;
-                }
-
-                // ロールに対応している設定を検出
-                if (role.localCreateUrl(cellUrl).equals(principalHref)) {
-                    // Rootが設定されているかどうかの確認
-                    if (ace.getGrantedPrivilegeList().contains(CellPrivilege.ROOT.getName())) {
-                        return true;
-                    }
-                    // ロールに対応している設定を検出
-                    if (requireAcePrivilege(ace.getGrantedPrivilegeList(), resourcePrivilege)) {
-                       return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return acl.getCompiled().allows(getRoleUrls(cellUrl), resourcePrivilege);
     }
 
     /**
-     * 必要な権限がACLのPrivilegeに設定されているかチェックする.
-     * @param acePrivileges ACEに設定されたPrivilege設定のリスト
-     * @param Privilege 必要な権限
-     * @return チェック可否
+     * ACLとの突合に使用するロールURLの集合を返す.
+     * 同じセルURLに対しては、生成済みの集合を使い回す。
+     * @param cellUrl セルURL
+     * @return ロールURLの集合. Accountに紐付いたRoleが存在しない場合はnull
      */
-    private boolean requireAcePrivilege(List<String> acePrivileges, Privilege resourcePrivilege) {
-        for (String aclPrivilege : acePrivileges) {
-            Privilege priv = Privilege.get(resourcePrivilege.getClass(), aclPrivilege);
-            if (priv != null
-                    && priv.includes(resourcePrivilege)) {
-                // メモ
-                // Privilege.get(${ACLの設定}).includes(${リソースにアクセスするために必要な値})) {
-                return true;
-            }
+    private Set<String> getRoleUrls(String cellUrl) {
+        if (this.roles == null) {
+            return null;
         }
-        return false;
-    }
-
-    /**
-     * 設定ロールURLの相対パス解決.
-     * @param base ACLのxml:base属性の値
-     * @param principalHref ACLのprincipal-Href
-     * @return
-     */
-    private String getPrincipalHrefUrl(String base, String principalHref) {
-        String result = null;
-        if (base != null && !"".equals(base)) {
-            // 相対パスの解決
-            try {
-                URI url = new URI(base);
-                result = url.resolve(principalHref).toString();
-            } catch (URISyntaxException e) {
-                return null;
+        if (this.roleUrls == null || !StringUtils.equals(this.roleUrlsCellUrl, cellUrl)) {
+            Set<String> urls = new HashSet<String>();
+            for (Role role : this.roles) {
+                urls.add(role.localCreateUrl(cellUrl));
             }
-        } else {
-            // xml:baseが未設定の場合、hrefにフルパス設定されていると扱う
-            result = principalHref;
+            this.roleUrls = urls;
+            this.roleUrlsCellUrl = cellUrl;
         }
-        return result;
+        return this.roleUrls;
     }
 
     /**
@@ -743,6 +690,7 @@ public final class AccessContext {
         this.invalidReason = InvalidReason.basicNotAllowed;
         this.subject = null;
         this.roles = new ArrayList<Role>();
+        this.roleUrls = null;
     }
 
     /**
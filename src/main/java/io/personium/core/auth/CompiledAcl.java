@@ -0,0 +1,196 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.auth;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.personium.core.model.jaxb.Ace;
+import io.personium.core.model.jaxb.Acl;
+
+/**
+ * 権限判定用に事前解決したACL.
+ * <p>
+ * The principal href of each ACE is resolved against xml:base once, and the granted privileges are expanded
+ * to a bitmask of every privilege they include. Checking a privilege is then a lookup of the caller's role URLs
+ * and a bit test per ACE, with no string building nor privilege name lookup.
+ * </p>
+ */
+public final class CompiledAcl {
+
+    /** Bit of each privilege. */
+    private static final Map<Privilege, Long> BITS = new IdentityHashMap<Privilege, Long>();
+
+    static {
+        List<Privilege> privileges = new ArrayList<Privilege>();
+        privileges.addAll(CellPrivilege.getPrivilegeMap().values());
+        privileges.addAll(BoxPrivilege.getPrivilegeMap().values());
+        if (privileges.size() > Long.SIZE) {
+            throw new IllegalStateException("Too many privileges to compile ACL: " + privileges.size());
+        }
+        for (int i = 0; i < privileges.size(); i++) {
+            BITS.put(privileges.get(i), 1L << i);
+        }
+    }
+
+    private final List<CompiledAce> aces;
+
+    private CompiledAcl(List<CompiledAce> aces) {
+        this.aces = aces;
+    }
+
+    /**
+     * ACLを権限判定用に変換する.
+     * @param acl ACL
+     * @return 変換したACL
+     */
+    public static CompiledAcl compile(Acl acl) {
+        List<CompiledAce> compiled = new ArrayList<CompiledAce>();
+        if (acl.getAceList() != null) {
+            for (Ace ace : acl.getAceList()) {
+                List<String> granted = ace.getGrantedPrivilegeList();
+                // 空のaceが設定されている場合はチェックの必要がない
+                if (granted.size() == 0 && ace.getPrincipalHref() == null) {
+                    continue;
+                }
+                boolean all = ace.getPrincipalAll() != null;
+                String principalUrl = null;
+                if (!all) {
+                    principalUrl = resolvePrincipalHref(acl.getBase(), ace.getPrincipalHref());
+                }
+                compiled.add(new CompiledAce(all, principalUrl,
+                        granted.contains(CellPrivilege.ROOT.getName()),
+                        closure(granted, CellPrivilege.getPrivilegeMap()),
+                        closure(granted, BoxPrivilege.getPrivilegeMap())));
+            }
+        }
+        return new CompiledAcl(compiled);
+    }
+
+    /**
+     * アクセス主体のロールに必要な権限が与えられているかどうかを返す.
+     * @param roleUrls アクセス主体のロールURLの集合. ロールが存在しない場合はnull
+     * @param resourcePrivilege リソースにアクセスするために必要なPrivilege
+     * @return 与えられている場合は真
+     */
+    public boolean allows(Set<String> roleUrls, Privilege resourcePrivilege) {
+        Long bit = BITS.get(resourcePrivilege);
+        long required;
+        if (bit == null) {
+            required = 0L;
+        } else {
+            required = bit;
+        }
+        boolean isCellPrivilege = resourcePrivilege instanceof CellPrivilege;
+        for (CompiledAce ace : this.aces) {
+            long granted;
+            if (isCellPrivilege) {
+                granted = ace.cellMask;
+            } else {
+                granted = ace.boxMask;
+            }
+            // Principalがallの場合、アクセス可
+            if (ace.all) {
+                if ((granted & required) != 0) {
+                    return true;
+                }
+                continue;
+            }
+            // Accountに紐付いたRoleが存在しない場合は、アクセス不可
+            if (roleUrls == null) {
+                return false;
+            }
+            if (roleUrls.isEmpty()) {
+                continue;
+            }
+            // 相対パスロールURLが解決できない場合は、アクセス不可
+            if (ace.principalUrl == null) {
+                return false;
+            }
+            if (roleUrls.contains(ace.principalUrl) && (ace.root || (granted & required) != 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 与えられたPrivilegeが含むPrivilegeのビットマスクを返す.
+     */
+    private static long closure(List<String> grantedNames, Map<String, ? extends Privilege> privilegeMap) {
+        long mask = 0L;
+        for (String name : grantedNames) {
+            Privilege granted = privilegeMap.get(name);
+            if (granted == null) {
+                continue;
+            }
+            for (Map.Entry<Privilege, Long> entry : BITS.entrySet()) {
+                if (granted.includes(entry.getKey())) {
+                    mask |= entry.getValue();
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 設定ロールURLの相対パス解決.
+     * @param base ACLのxml:base属性の値
+     * @param principalHref ACLのprincipal-Href
+     * @return ロールURL. 解決できない場合はnull
+     */
+    private static String resolvePrincipalHref(String base, String principalHref) {
+        if (base == null || "".equals(base)) {
+            // xml:baseが未設定の場合、hrefにフルパス設定されていると扱う
+            return principalHref;
+        }
+        if (principalHref == null) {
+            return null;
+        }
+        try {
+            return new URI(base).resolve(principalHref).toString();
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 権限判定用に事前解決したACE.
+     */
+    private static final class CompiledAce {
+        private final boolean all;
+        private final String principalUrl;
+        private final boolean root;
+        private final long cellMask;
+        private final long boxMask;
+
+        CompiledAce(boolean all, String principalUrl, boolean root, long cellMask, long boxMask) {
+            this.all = all;
+            this.principalUrl = principalUrl;
+            this.root = root;
+            this.cellMask = cellMask;
+            this.boxMask = boxMask;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.CharEncoding;
+
+import io.personium.common.auth.token.AbstractOAuth2Token;
+import io.personium.common.auth.token.AbstractOAuth2Token.TokenDsigException;
+import io.personium.common.auth.token.AbstractOAuth2Token.TokenParseException;
+import io.personium.common.auth.token.AbstractOAuth2Token.TokenRootCrtException;
+import io.personium.common.utils.PersoniumCoreUtils;
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * 検証済みのアクセストークンを保持するノードローカルのキャッシュ.
+ * <p>
+ * Parsing a token decrypts it and, for trans-cell tokens, verifies the XML signature and the certificate chain.
+ * Tokens that passed the verification are kept by the digest of the token, the issuer and the host, so that
+ * a burst of requests with the same token pays the verification once. An entry lives until the configured
+ * lifetime or the expiry of the token itself, whichever comes first. The lifetime counts from the verification and
+ * is not extended by later hits. Only tokens the caller accepted are stored.
+ * </p>
+ */
+public final class VerifiedTokenCache {
+
+    private static final String MD_ALGORITHM = "SHA-256";
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) { //NOPMD
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > PersoniumUnitConfig.getTokenCacheMaxEntries();
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong VERIFIED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+    private static final AtomicLong TOTAL_MILLIS = new AtomicLong();
+    private static final AtomicLong MAX_MILLIS = new AtomicLong();
+
+    private VerifiedTokenCache() {
+    }
+
+    /**
+     * 検証済みのトークンをキャッシュから取得し、存在しない場合はトークンをパースして検証する.
+     * パースしたトークンはキャッシュしないので、受け入れる場合は{@link #put}を呼び出すこと。
+     * @param accessToken トークン文字列
+     * @param issuer 発行者
+     * @param host リクエストヘッダのHostの値
+     * @return トークン
+     * @throws TokenParseException パースエラー
+     * @throws TokenDsigException 署名検証エラー
+     * @throws TokenRootCrtException ルートCA証明書の設定エラー
+     */
+    static AbstractOAuth2Token parse(String accessToken, String issuer, String host)
+            throws TokenParseException, TokenDsigException, TokenRootCrtException {
+        AbstractOAuth2Token cached = get(digest(accessToken, issuer, host));
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
+        MISSES.incrementAndGet();
+
+        long startedAt = System.currentTimeMillis();
+        boolean verified = false;
+        try {
+            AbstractOAuth2Token token = AbstractOAuth2Token.parse(accessToken, issuer, host);
+            verified = true;
+            return token;
+        } finally {
+            recordVerification(verified, System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    /**
+     * 受け入れたトークンをキャッシュする.
+     * キャッシュ済みで有効期限内のエントリは置き換えないので、キャッシュから取得したトークンを渡しても有効期限は延長されない。
+     * @param accessToken トークン文字列
+     * @param issuer 発行者
+     * @param host リクエストヘッダのHostの値
+     * @param token パース済みのトークン
+     */
+    static void put(String accessToken, String issuer, String host, AbstractOAuth2Token token) {
+        long expiresIn = PersoniumUnitConfig.getTokenCacheExpiresIn() * 1000L;
+        if (expiresIn <= 0 || token.isExpired()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String key = digest(accessToken, issuer, host);
+        synchronized (ENTRIES) {
+            Entry current = ENTRIES.get(key);
+            if (current != null && current.expiresAt > now) {
+                // Keep the window of the first verification
+                return;
+            }
+            ENTRIES.put(key, new Entry(token, now + expiresIn));
+        }
+    }
+
+    /**
+     * キャッシュを破棄する.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * Returns the cache hit ratio and the verification cost.
+     * @return statistics
+     */
+    public static Map<String, Long> getStatus() {
+        Map<String, Long> status = new HashMap<String, Long>();
+        synchronized (ENTRIES) {
+            status.put("size", (long) ENTRIES.size());
+        }
+        status.put("hits", HITS.get());
+        status.put("misses", MISSES.get());
+        status.put("verified", VERIFIED.get());
+        status.put("failed", FAILED.get());
+        status.put("totalMillis", TOTAL_MILLIS.get());
+        status.put("maxMillis", MAX_MILLIS.get());
+        return status;
+    }
+
+    private static AbstractOAuth2Token get(String key) {
+        if (PersoniumUnitConfig.getTokenCacheExpiresIn() <= 0) {
+            return null;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis() || entry.token.isExpired()) {
+                ENTRIES.remove(key);
+                return null;
+            }
+            return entry.token;
+        }
+    }
+
+    private static void recordVerification(boolean verified, long millis) {
+        if (verified) {
+            VERIFIED.incrementAndGet();
+        } else {
+            FAILED.incrementAndGet();
+        }
+        TOTAL_MILLIS.addAndGet(millis);
+        long current = MAX_MILLIS.get();
+        while (millis > current && !MAX_MILLIS.compareAndSet(current, millis)) {
+            current = MAX_MILLIS.get();
+        }
+    }
+
+    /**
+     * The same token string may be parsed differently for another issuer or host, so both are part of the key.
+     */
+    private static String digest(String accessToken, String issuer, String host) {
+        String str2hash = accessToken + "\n" + issuer + "\n" + host;
+        try {
+            MessageDigest md = MessageDigest.getInstance(MD_ALGORITHM);
+            return PersoniumCoreUtils.byteArray2HexString(md.digest(str2hash.getBytes(CharEncoding.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Cached token and its expiry in this cache.
+     */
+    private static final class Entry {
+        private final AbstractOAuth2Token token;
+        private final long expiresAt;
+
+        Entry(AbstractOAuth2Token token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
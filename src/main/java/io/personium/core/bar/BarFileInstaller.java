@@ -18,6 +18,7 @@ package io.personium.core.bar;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -27,10 +28,12 @@ import java.io.SyncFailedException;
 import java.io.UnsupportedEncodingException;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipException;
 
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
@@ -122,6 +125,12 @@ public class BarFileInstaller {
             // barファイルのバリデート
             long entryCount = checkBarFileContents(barFile);
 
+            // barファイル内の全エントリの事前検証（Box作成前に全てのエラーを検出する）
+            // 無効の場合、エントリのエラーはインストール処理状況として非同期に通知される
+            if (PersoniumUnitConfig.getBarInstallPreValidationEnabled()) {
+                validateBarFileEntries(barFile);
+            }
+
             // BoxおよびスキーマURLの重複チェック
             checkDuplicateBoxAndSchema();
 
@@ -152,10 +161,8 @@ public class BarFileInstaller {
             IOUtils.closeQuietly(inStream);
         }
 
-        // 非同期実行
-        // TODO 多重実行時を考慮してスレッドプール化するなどの対策が必要
-        Thread thread = new Thread(runner);
-        thread.start();
+        // 非同期実行（同時実行数を制限するため、スレッドプール上で実行する）
+        BarInstallExecutor.submitInstall(runner);
 
         // レスポンスの返却
         ResponseBuilder res = Response.status(HttpStatus.SC_ACCEPTED);
@@ -163,6 +170,57 @@ public class BarFileInstaller {
         return res.build();
     }
 
+    /**
+     * barファイルの事前検証を行うメソッド.
+     * barファイルは一時領域に格納せず、リクエストボディを読み込みながら検証する.
+     * @param headers
+     *            Httpヘッダーを格納したMAP
+     * @param inStream
+     *            Httpリクエストボディ用InputStream
+     * @return レスポンス
+     */
+    public Response barFileValidate(Map<String, String> headers, InputStream inStream) {
+
+        // 事前チェック
+        checkPreConditions(headers);
+
+        BarFileValidator validator = new BarFileValidator(getMaxBarFileSize(), getMaxBarEntryFileSize());
+        List<BarFileValidator.ValidationError> errors = validator.validate(inStream);
+
+        // レスポンスの返却
+        JSONObject response = BarFileValidator.toJson(errors);
+        return Response.ok().type(MediaType.APPLICATION_JSON_TYPE).entity(response.toJSONString()).build();
+    }
+
+    /**
+     * barファイル内の全エントリを検証し、エラーがあれば全てのエラーを含む例外を送出する.
+     * @param barFile 一時領域に保存したbarファイルのFileオブジェクト
+     */
+    private void validateBarFileEntries(File barFile) {
+        BarFileValidator validator = new BarFileValidator(getMaxBarFileSize(), getMaxBarEntryFileSize());
+        List<BarFileValidator.ValidationError> errors = null;
+        InputStream inStream = null;
+        try {
+            inStream = new FileInputStream(barFile);
+            errors = validator.validate(inStream);
+        } catch (FileNotFoundException e) {
+            throw PersoniumCoreException.BarInstall.BAR_FILE_CANNOT_OPEN.params("barFile");
+        } finally {
+            IOUtils.closeQuietly(inStream);
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder detail = new StringBuilder();
+            for (BarFileValidator.ValidationError error : errors) {
+                if (detail.length() > 0) {
+                    detail.append(", ");
+                }
+                detail.append(error.getPath()).append(": ").append(error.getMessage());
+            }
+            log.info("Bar file validation failed: " + detail);
+            throw PersoniumCoreException.BarInstall.BAR_FILE_VALIDATION_FAILED.params(detail.toString());
+        }
+    }
+
     private void removeBarFile(File barFile) {
         if (barFile.exists() && !barFile.delete()) {
             log.warn("Failed to remove bar file. [" + barFile.getAbsolutePath() + "].");
@@ -34,6 +34,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +47,7 @@ import javax.ws.rs.ext.RuntimeDelegate;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.wink.webdav.WebDAVMethod;
@@ -59,7 +64,6 @@ import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.exc.UnrecognizedPropertyException;
 import org.json.simple.JSONObject;
 import org.odata4j.core.OEntity;
 import org.odata4j.core.OEntityId;
@@ -87,12 +91,9 @@ import io.personium.common.utils.PersoniumCoreUtils;
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.PersoniumCoreMessageUtils;
 import io.personium.core.PersoniumUnitConfig;
-import io.personium.core.bar.jackson.JSONExtRoles;
 import io.personium.core.bar.jackson.JSONLinks;
 import io.personium.core.bar.jackson.JSONManifest;
 import io.personium.core.bar.jackson.JSONMappedObject;
-import io.personium.core.bar.jackson.JSONRelations;
-import io.personium.core.bar.jackson.JSONRoles;
 import io.personium.core.bar.jackson.JSONUserDataLinks;
 import io.personium.core.eventbus.JSONEvent;
 import io.personium.core.eventbus.PersoniumEventBus;
@@ -155,6 +156,7 @@ public class BarFileReadRunner implements Runnable {
     private Map<String, Boolean> barFileOrder;
     private File barFile;
     private ZipArchiveInputStream zipArchiveInputStream;
+    private ZipFile zipFile;
     private final String boxName;
     private final ODataEntityResource odataEntityResource;
     private final PersoniumODataProducer odataProducer;
@@ -193,6 +195,14 @@ public class BarFileReadRunner implements Runnable {
     private PersoniumEventBus eventBus;
     private BarInstallProgressInfo progressInfo;
 
+    // 90_contentsの登録は、エントリを読み込むスレッドとは別のスレッドで実行する
+    // WebDAVファイルの登録は同時実行数の上限まで並列に、ユーザデータの一括登録は次のエントリの読み込みと並行して実行する
+    private Semaphore davFileWriteSlots = new Semaphore(PersoniumUnitConfig.getBarInstallParallelism());
+    private List<Future<Boolean>> davFileWrites = new ArrayList<Future<Boolean>>();
+    private volatile boolean isDavFileWriteFailed = false;
+    private Map<String, Integer> davChildrenCount = new HashMap<String, Integer>();
+    private Future<Boolean> pendingBulkRequest = null;
+
     /**
      * コンストラクタ.
      * @param barFile bar file object
@@ -241,6 +251,8 @@ public class BarFileReadRunner implements Runnable {
 
             try {
                 this.zipArchiveInputStream = new ZipArchiveInputStream(new FileInputStream(barFile));
+                // WebDAVファイルを別スレッドで登録するため、エントリを個別に読み込めるよう開いておく
+                this.zipFile = new ZipFile(barFile, "UTF-8");
             } catch (IOException e) {
                 throw PersoniumCoreException.Server.FILE_SYSTEM_ERROR.params(e.getMessage());
             }
@@ -332,6 +344,7 @@ public class BarFileReadRunner implements Runnable {
             this.progressInfo.setEndTime();
             writeToProgressCache(true);
             IOUtils.closeQuietly(this.zipArchiveInputStream);
+            ZipFile.closeQuietly(this.zipFile);
             if (this.barFile.exists() && !this.barFile.delete()) {
                 log.warn("Failed to remove bar file. [" + this.barFile.getAbsolutePath() + "].");
             }
@@ -486,6 +499,18 @@ public class BarFileReadRunner implements Runnable {
      * @return boolean 処理成功可否
      */
     protected boolean createContents() {
+        boolean isSuccess = false;
+        try {
+            isSuccess = readContents();
+        } finally {
+            // 別スレッドで実行中の登録処理が全て完了するまで待つ
+            boolean isWritten = awaitContentWrites();
+            isSuccess = isSuccess && isWritten;
+        }
+        return isSuccess;
+    }
+
+    private boolean readContents() {
         boolean isSuccess = true;
         // CollectionタイプごとのMapを作成しておく
         Map<String, DavCmp> odataCols = getCollections(DavCmp.TYPE_COL_ODATA);
@@ -513,6 +538,11 @@ public class BarFileReadRunner implements Runnable {
                 }
                 writeOutputStream(false, CODE_BAR_INSTALL_STARTED, entryName);
 
+                // 別スレッドで実行中のWebDAVファイル登録が失敗していた場合は処理を中断する
+                if (this.isDavFileWriteFailed) {
+                    return false;
+                }
+
                 // ODataCollectionからDav/ServiceCollection/別ODataCollectionのリソースに対する処理に変わった際に
                 // ユーザデータの登録やリンクの登録をする必要があれば、処理を実行する
                 if (currentPath != null && !entryName.startsWith(currentPath)) {
@@ -570,8 +600,7 @@ public class BarFileReadRunner implements Runnable {
                             doneKeys.add(entryName);
 
                             if ((userDataCount % bulkSize) == 0
-                                    && !execBulkRequest(davCmp.getCell().getId(),
-                                            bulkRequests, fileNameMap, producer)) {
+                                    && !submitBulkRequest(davCmp, bulkRequests, fileNameMap, producer)) {
                                 return false;
                             }
                             continue;
@@ -588,17 +617,20 @@ public class BarFileReadRunner implements Runnable {
                 case TYPE_DAV_FILE:
                     // WebDAVコレクションの登録
                     // bar/90_contents/{davcol_name}配下のエントリを1つずつ登録する
-                    if (!registWebDavFile(entryName, this.zipArchiveInputStream, webdavCols)) {
+                    // 登録完了のログは登録を実行したスレッドで出力する
+                    if (!submitWebDavFile(entryName, entryName, webdavCols)) {
                         return false;
                     }
-                    break;
+                    doneKeys.add(entryName);
+                    continue;
 
                 case TYPE_SVC_FILE:
                     // Serviceコレクションの登録
                     if (!installSvcCollection(webdavCols, entryName)) {
                         return false;
                     }
-                    break;
+                    doneKeys.add(entryName);
+                    continue;
 
                 case TYPE_MISMATCH:
                     // ODataコレクション配下ではなく、かつ、rootpropsに定義されていないエントリ
@@ -658,10 +690,7 @@ public class BarFileReadRunner implements Runnable {
         serviceSrcName.append("/__src");
         serviceSrcName.append(entryName.substring(lastSlashIndex));
 
-        if (!registWebDavFile(serviceSrcName.toString(), this.zipArchiveInputStream, webdavCols)) {
-            return false;
-        }
-        return true;
+        return submitWebDavFile(serviceSrcName.toString(), entryName, webdavCols);
     }
 
     private boolean setBulkRequests(String entryName,
@@ -677,8 +706,8 @@ public class BarFileReadRunner implements Runnable {
                 throw PersoniumCoreException.OData.NO_SUCH_ENTITY_SET;
             }
 
-            // ZipArchiveImputStreamからユーザデータのJSONをStringReader形式で取得する
-            StringReader stringReader = getStringReaderFromZais();
+            // ZipArchiveImputStreamからユーザデータのJSONを読み込むReaderを取得する（エントリの内容は保持しない）
+            Reader stringReader = getReaderFromZais();
 
             // リクエストボディを生成する
             ODataResource odataResource = odataEntityResource.getOdataResource();
@@ -718,16 +747,9 @@ public class BarFileReadRunner implements Runnable {
         return true;
     }
 
-    private StringReader getStringReaderFromZais() throws IOException {
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(this.zipArchiveInputStream, "UTF-8"));
-        StringBuffer buf = new StringBuffer();
-        String str = null;
-        while ((str = bufferedReader.readLine()) != null) {
-            buf.append(str);
-        }
-        StringReader stringReader = new StringReader(buf.toString());
-        return stringReader;
+    private Reader getReaderFromZais() throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new CloseShieldInputStream(this.zipArchiveInputStream), "UTF-8"));
     }
 
     private String getEntityTypeName(String entryName) {
@@ -740,8 +762,65 @@ public class BarFileReadRunner implements Runnable {
     private boolean execBulkRequest(String cellId, LinkedHashMap<String, BulkRequest> bulkRequests,
             Map<String, String> fileNameMap,
             PersoniumODataProducer producer) {
+        // 先行して実行中の一括登録の完了を待ってから登録する
+        if (!awaitBulkRequest()) {
+            return false;
+        }
+        if (!bulkCreate(cellId, bulkRequests, fileNameMap, producer, producer.getMetadata())) {
+            return false;
+        }
+        bulkRequests.clear();
+        fileNameMap.clear();
+        return true;
+    }
+
+    /**
+     * ユーザデータの一括登録を別スレッドで開始する.
+     * 登録の完了は、次の一括登録またはリンクの登録を行う前に待ち合わせる.
+     * @param davCmp 登録先のODataコレクション
+     * @param bulkRequests 登録するユーザデータ（呼び出し後にクリアする）
+     * @param fileNameMap 登録するユーザデータのエントリ名（呼び出し後にクリアする）
+     * @param producer エントリの読み込みに使用しているODataProducer
+     * @return 先行する一括登録が成功していた場合はtrue
+     */
+    private boolean submitBulkRequest(DavCmp davCmp, LinkedHashMap<String, BulkRequest> bulkRequests,
+            Map<String, String> fileNameMap,
+            PersoniumODataProducer producer) {
+        if (!awaitBulkRequest()) {
+            return false;
+        }
+        final String cellId = davCmp.getCell().getId();
+        final LinkedHashMap<String, BulkRequest> requests = new LinkedHashMap<String, BulkRequest>(bulkRequests);
+        final Map<String, String> fileNames = new HashMap<String, String>(fileNameMap);
+        final EdmDataServices metadata = producer.getMetadata();
+        // ODataProducerはスレッドセーフではないため、登録用に別のインスタンスを使用する
+        final PersoniumODataProducer bulkProducer = davCmp.getODataProducer();
+        bulkRequests.clear();
+        fileNameMap.clear();
+        this.pendingBulkRequest = BarInstallExecutor.submitWorker(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return bulkCreate(cellId, requests, fileNames, bulkProducer, metadata);
+            }
+        });
+        return true;
+    }
+
+    private boolean awaitBulkRequest() {
+        Future<Boolean> pending = this.pendingBulkRequest;
+        if (pending == null) {
+            return true;
+        }
+        this.pendingBulkRequest = null;
+        return getResult(pending);
+    }
+
+    private boolean bulkCreate(String cellId, LinkedHashMap<String, BulkRequest> bulkRequests,
+            Map<String, String> fileNameMap,
+            PersoniumODataProducer producer,
+            EdmDataServices metadata) {
         // バルクで一括登録を実行
-        producer.bulkCreateEntity(producer.getMetadata(), bulkRequests, cellId);
+        producer.bulkCreateEntity(metadata, bulkRequests, cellId);
 
         // レスポンスのチェック
         for (Entry<String, BulkRequest> request : bulkRequests.entrySet()) {
@@ -763,12 +842,57 @@ public class BarFileReadRunner implements Runnable {
             }
             writeOutputStream(false, "PL-BI-1003", fileNameMap.get(request.getKey()));
         }
-
-        bulkRequests.clear();
-        fileNameMap.clear();
         return true;
     }
 
+    /**
+     * 別スレッドで実行中のWebDAVファイル登録とユーザデータ一括登録が全て完了するまで待つ.
+     * @return 全ての登録が成功した場合はtrue
+     */
+    private boolean awaitContentWrites() {
+        boolean isSuccess = true;
+        RuntimeException failure = null;
+        List<Future<Boolean>> writes = new ArrayList<Future<Boolean>>(this.davFileWrites);
+        if (this.pendingBulkRequest != null) {
+            writes.add(this.pendingBulkRequest);
+        }
+        this.davFileWrites.clear();
+        this.pendingBulkRequest = null;
+        // 実行中の処理がbarファイルを読み終えてから返却するため、例外が発生しても全ての処理を待つ
+        for (Future<Boolean> write : writes) {
+            try {
+                if (!getResult(write)) {
+                    isSuccess = false;
+                }
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return isSuccess;
+    }
+
+    private boolean getResult(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(cause);
+        }
+    }
+
     /**
      * barファイルの90_contents配下のエントリのタイプを取得する.
      * @param entryName barファイルのエントリ名
@@ -820,6 +944,81 @@ public class BarFileReadRunner implements Runnable {
      */
     protected boolean registWebDavFile(String entryName, InputStream inputStream,
             Map<String, DavCmp> webdavCols) {
+        DavCmp fileCmp = getWebDavFile(entryName, webdavCols);
+        if (fileCmp == null) {
+            return false;
+        }
+        return putWebDavFile(entryName, fileCmp, inputStream);
+    }
+
+    /**
+     * WebDAVファイルの登録を別スレッドで開始する.
+     * 登録先のチェックは呼び出し元のスレッドで行い、ファイルの内容はbarファイルから個別に読み込む.
+     * @param entryName 登録先のエントリ名
+     * @param zipEntryName barファイルのエントリ名
+     * @param webdavCols WebDAVコレクション一覧
+     * @return true: 登録開始、false:登録失敗
+     */
+    private boolean submitWebDavFile(final String entryName, final String zipEntryName,
+            Map<String, DavCmp> webdavCols) {
+        // 先行する登録が失敗していた場合は以降のエントリを処理しない
+        if (this.isDavFileWriteFailed) {
+            return false;
+        }
+        final ZipArchiveEntry zipEntry = this.zipFile == null ? null : this.zipFile.getEntry(zipEntryName);
+        if (zipEntry == null) {
+            // 個別に読み込めないエントリはストリームから登録する
+            if (!registWebDavFile(entryName, this.zipArchiveInputStream, webdavCols)) {
+                return false;
+            }
+            writeOutputStream(false, "PL-BI-1003", zipEntryName);
+            return true;
+        }
+        final DavCmp fileCmp = getWebDavFile(entryName, webdavCols);
+        if (fileCmp == null) {
+            return false;
+        }
+        try {
+            this.davFileWriteSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        }
+        this.davFileWrites.add(BarInstallExecutor.submitWorker(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                boolean isSuccess = false;
+                InputStream inputStream = null;
+                try {
+                    inputStream = zipFile.getInputStream(zipEntry);
+                    isSuccess = putWebDavFile(entryName, fileCmp, inputStream);
+                } catch (IOException e) {
+                    String message = PersoniumCoreMessageUtils.getMessage("PL-BI-2004");
+                    log.info(message + ": " + e.getMessage(), e.fillInStackTrace());
+                    writeOutputStream(true, "PL-BI-1004", entryName, message);
+                } finally {
+                    IOUtils.closeQuietly(inputStream);
+                    if (!isSuccess) {
+                        isDavFileWriteFailed = true;
+                    }
+                    davFileWriteSlots.release();
+                }
+                if (isSuccess) {
+                    writeOutputStream(false, "PL-BI-1003", zipEntryName);
+                }
+                return isSuccess;
+            }
+        }));
+        return true;
+    }
+
+    /**
+     * 登録先のWebDAVファイルを取得する.
+     * @param entryName barファイルのエントリ名
+     * @param webdavCols WebDAVコレクション一覧
+     * @return 登録先のWebDAVファイル. 登録できない場合はnull
+     */
+    private DavCmp getWebDavFile(String entryName, Map<String, DavCmp> webdavCols) {
 
         // 登録先のファイルパス・コレクション名を取得
         String filePath = entryName.replaceAll(CONTENTS_DIR, "");
@@ -829,13 +1028,18 @@ public class BarFileReadRunner implements Runnable {
         DavCmp parentCmp = webdavCols.get(colPath);
 
         // 親コレクション内のコレクション・ファイル数のチェック
+        // 登録中のファイルも数えるため、件数はインストール中に保持する
+        Integer childrenCount = this.davChildrenCount.get(colPath);
+        if (childrenCount == null) {
+            childrenCount = parentCmp.getChildrenCount();
+        }
         int maxChildResource = PersoniumUnitConfig.getMaxChildResourceCount();
-        if (parentCmp.getChildrenCount() >= maxChildResource) {
+        if (childrenCount >= maxChildResource) {
             // コレクション内に作成可能なコレクション・ファイル数の制限を超えたため、エラーとする
             String message = PersoniumCoreMessageUtils.getMessage("PR400-DV-0007");
             log.info(message);
             writeOutputStream(true, "PL-BI-1004", entryName, message);
-            return false;
+            return null;
         }
 
         // 新しいノードを作成
@@ -848,16 +1052,28 @@ public class BarFileReadRunner implements Runnable {
         DavCmp fileCmp = parentCmp.getChild(fileName);
 
         // Content-Typeのチェック
-        String contentType = null;
         try {
-            contentType = this.davFileMap.get(entryName);
+            String contentType = this.davFileMap.get(entryName);
             RuntimeDelegate.getInstance().createHeaderDelegate(MediaType.class).fromString(contentType);
         } catch (Exception e) {
             String message = PersoniumCoreMessageUtils.getMessage("PL-BI-2005");
             log.info(message + ": " + e.getMessage(), e.fillInStackTrace());
             writeOutputStream(true, "PL-BI-1004", entryName, message);
-            return false;
+            return null;
         }
+        this.davChildrenCount.put(colPath, childrenCount + 1);
+        return fileCmp;
+    }
+
+    /**
+     * WebDAVファイルの内容を登録する.
+     * @param entryName barファイルのエントリ名
+     * @param fileCmp 登録先のWebDAVファイル
+     * @param inputStream データ
+     * @return true: 登録成功、false:登録失敗
+     */
+    private boolean putWebDavFile(String entryName, DavCmp fileCmp, InputStream inputStream) {
+        String contentType = this.davFileMap.get(entryName);
 
         // ファイル登録
         try {
@@ -1231,7 +1447,7 @@ public class BarFileReadRunner implements Runnable {
                 token = jp.nextToken();
 
                 // $linksのチェック
-                checkMatchFieldName(jp, USERDATA_LINKS_JSON);
+                BarFileValidator.checkMatchFieldName(jp, USERDATA_LINKS_JSON);
 
                 token = jp.nextToken();
                 // 配列でなければエラー
@@ -1438,7 +1654,7 @@ public class BarFileReadRunner implements Runnable {
         token = jp.nextToken();
 
         // Relations,Roles,ExtRoles,$linksのチェック
-        checkMatchFieldName(jp, jsonName);
+        BarFileValidator.checkMatchFieldName(jp, jsonName);
 
         token = jp.nextToken();
         // 配列でなければエラー
@@ -1480,116 +1696,7 @@ public class BarFileReadRunner implements Runnable {
      */
     protected JSONMappedObject barFileJsonValidate(
             JsonParser jp, ObjectMapper mapper, String jsonName) throws IOException {
-        if (jsonName.equals(EXTROLE_JSON)) {
-            JSONExtRoles extRoles = mapper.readValue(jp, JSONExtRoles.class);
-            if (extRoles.getExtRole() == null) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-            if (extRoles.getRelationName() == null) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-            return extRoles;
-        } else if (jsonName.equals(ROLE_JSON)) {
-            JSONRoles roles = mapper.readValue(jp, JSONRoles.class);
-            if (roles.getName() == null) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-            return roles;
-        } else if (jsonName.equals(RELATION_JSON)) {
-            JSONRelations relations = mapper.readValue(jp, JSONRelations.class);
-            if (relations.getName() == null) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-            return relations;
-        } else if (jsonName.equals(LINKS_JSON)) {
-            JSONLinks links = mapper.readValue(jp, JSONLinks.class);
-            linksJsonValidate(jsonName, links);
-            return links;
-        } else if (jsonName.equals(USERDATA_LINKS_JSON)) {
-            JSONUserDataLinks links = mapper.readValue(jp, JSONUserDataLinks.class);
-            userDataLinksJsonValidate(jsonName, links);
-            return links;
-        }
-        return null;
-    }
-
-    /**
-     * 70_$links.jsonのバリデート.
-     * @param jsonName JSONファイル名
-     * @param links 読み込んだJSONオブジェクト
-     */
-    private void linksJsonValidate(String jsonName, JSONLinks links) {
-        if (links.getFromType() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            if (!links.getFromType().equals(Relation.EDM_TYPE_NAME) && !links.getFromType().equals(Role.EDM_TYPE_NAME)
-                    && !links.getFromType().equals(ExtRole.EDM_TYPE_NAME)) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-        }
-        if (links.getFromName() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            Map<String, String> fromNameMap = links.getFromName();
-            for (Map.Entry<String, String> entry : fromNameMap.entrySet()) {
-                if (entry.getValue() == null) {
-                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-                }
-            }
-        }
-        if (links.getToType() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            if (!links.getToType().equals(Relation.EDM_TYPE_NAME)
-                    && !links.getToType().equals(Role.EDM_TYPE_NAME)
-                    && !links.getToType().equals(ExtRole.EDM_TYPE_NAME)) {
-                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-            }
-        }
-        if (links.getToName() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            Map<String, String> toNameMap = links.getToName();
-            for (Map.Entry<String, String> entry : toNameMap.entrySet()) {
-                if (entry.getValue() == null) {
-                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-                }
-            }
-        }
-    }
-
-    /**
-     * 10_odatarelations.jsonのバリデート.
-     * @param jsonName JSONファイル名
-     * @param links 読み込んだJSONオブジェクト
-     */
-    private void userDataLinksJsonValidate(String jsonName, JSONUserDataLinks links) {
-        if (links.getFromType() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        }
-        if (links.getFromId() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            Map<String, String> fromIdMap = links.getFromId();
-            for (Map.Entry<String, String> entry : fromIdMap.entrySet()) {
-                if (entry.getValue() == null) {
-                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-                }
-            }
-        }
-        if (links.getToType() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        }
-        if (links.getToId() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        } else {
-            Map<String, String> toIdMap = links.getToId();
-            for (Map.Entry<String, String> entry : toIdMap.entrySet()) {
-                if (entry.getValue() == null) {
-                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-                }
-            }
-        }
+        return BarFileValidator.validateJsonEntity(jp, mapper, jsonName);
     }
 
     /**
@@ -1600,42 +1707,7 @@ public class BarFileReadRunner implements Runnable {
      * @throws IOException データの読み込みに失敗した場合
      */
     protected JSONManifest manifestJsonValidate(JsonParser jp, ObjectMapper mapper) throws IOException {
-        // TODO BARファイルのバージョンチェック
-        JSONManifest manifest = null;
-        try {
-            manifest = mapper.readValue(jp, JSONManifest.class);
-        } catch (UnrecognizedPropertyException ex) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(
-                    "manifest.json unrecognized property");
-        }
-        if (manifest.getBarVersion() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#barVersion");
-        }
-        if (manifest.getBoxVersion() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#boxVersion");
-        }
-        if (manifest.getDefaultPath() == null) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#DefaultPath");
-        }
-        return manifest;
-    }
-
-    /**
-     * フィールド名がファイルの形式に一致しているかの確認.
-     * @param jp
-     * @param jsonName
-     * @throws IOException
-     * @throws JsonParseException
-     */
-    private void checkMatchFieldName(JsonParser jp, String jsonName) throws IOException {
-        String fieldName = jp.getCurrentName();
-        if (!(fieldName.equals("Relations") && jsonName.equals(RELATION_JSON))
-                && !(fieldName.equals("Roles") && jsonName.equals(ROLE_JSON))
-                && !(fieldName.equals("ExtRoles") && jsonName.equals(EXTROLE_JSON))
-                && !(fieldName.equals("Links") && jsonName.equals(LINKS_JSON))
-                && !(fieldName.equals("Links") && jsonName.equals(USERDATA_LINKS_JSON))) {
-            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
-        }
+        return BarFileValidator.validateManifest(jp, mapper);
     }
 
     /**
@@ -1660,7 +1732,7 @@ public class BarFileReadRunner implements Runnable {
      * @param detail
      *        処理失敗時の詳細情報(PL-BI-2xxx)
      */
-    private void writeOutputStream(boolean isError, String code, String path, String detail) {
+    private synchronized void writeOutputStream(boolean isError, String code, String path, String detail) {
         String message = PersoniumCoreMessageUtils.getMessage(code);
         if (detail == null) {
             message = message.replace("{0}", "");
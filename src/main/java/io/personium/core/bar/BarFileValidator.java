@@ -0,0 +1,696 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.JsonMappingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.exc.UnrecognizedPropertyException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumCoreMessageUtils;
+import io.personium.core.bar.jackson.JSONExtRoles;
+import io.personium.core.bar.jackson.JSONLinks;
+import io.personium.core.bar.jackson.JSONManifest;
+import io.personium.core.bar.jackson.JSONMappedObject;
+import io.personium.core.bar.jackson.JSONRelations;
+import io.personium.core.bar.jackson.JSONRoles;
+import io.personium.core.bar.jackson.JSONUserDataLinks;
+import io.personium.core.model.ctl.ExtRole;
+import io.personium.core.model.ctl.Relation;
+import io.personium.core.model.ctl.Role;
+
+/**
+ * barファイルの内容をインストール前に検証するクラス.
+ * <p>
+ * The bar file is read once as a stream. JSON entries are checked token by token with a JsonParser, mapping at most
+ * one array element at a time, and XML entries are read with a StAX reader, so the heap used does not grow with the
+ * size of an entry. Validation continues after an invalid entry so that all errors are reported at once.
+ * </p>
+ */
+public class BarFileValidator {
+
+    /**
+     * ログ用オブジェクト.
+     */
+    static Logger log = LoggerFactory.getLogger(BarFileValidator.class);
+
+    /** 収集するエラーの最大件数. */
+    static final int MAX_ERRORS = 100;
+
+    private static final String DAV_NAMESPACE = "DAV:";
+    private static final String DCBOX = "dcbox:/";
+
+    private static final Set<String> META_FILES = new HashSet<String>(Arrays.asList(
+            BarFileReadRunner.META_DIR + BarFileReadRunner.MANIFEST_JSON,
+            BarFileReadRunner.META_DIR + BarFileReadRunner.RELATION_JSON,
+            BarFileReadRunner.META_DIR + BarFileReadRunner.ROLE_JSON,
+            BarFileReadRunner.META_DIR + BarFileReadRunner.EXTROLE_JSON,
+            BarFileReadRunner.META_DIR + BarFileReadRunner.LINKS_JSON,
+            BarFileReadRunner.META_DIR + BarFileReadRunner.ROOTPROPS_XML));
+
+    private static final Pattern ENTRY_INDEX_PATTERN = Pattern.compile(".*/+([0-9][0-9])_.*");
+    private static final Pattern USERDATA_FILE_PATTERN = Pattern.compile("^[^/]+/[0-9]+\\.json$");
+
+    private final long maxBarFileSize;
+    private final long maxBarEntryFileSize;
+
+    private final List<ValidationError> errors = new ArrayList<ValidationError>();
+    private int errorCount = 0;
+
+    // 90_rootprops.xmlに定義されたリソース
+    private final Set<String> definedPaths = new HashSet<String>();
+    private final Set<String> odataCols = new LinkedHashSet<String>();
+    private final Set<String> serviceCols = new LinkedHashSet<String>();
+
+    // ODataコレクションごとの処理状況
+    private final Set<String> metadataDone = new HashSet<String>();
+    private final Set<String> userDataStarted = new HashSet<String>();
+
+    /**
+     * barファイルの検証エラー.
+     */
+    public static class ValidationError {
+        private final String path;
+        private final String code;
+        private final String message;
+
+        ValidationError(String path, String code, String message) {
+            this.path = path;
+            this.code = code;
+            this.message = message;
+        }
+
+        /**
+         * @return barファイル内のエントリ名
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return メッセージコード
+         */
+        public String getCode() {
+            return code;
+        }
+
+        /**
+         * @return メッセージ
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return JSON形式のエラー情報
+         */
+        @SuppressWarnings("unchecked")
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("path", path);
+            json.put("code", code);
+            json.put("message", message);
+            return json;
+        }
+    }
+
+    /**
+     * コンストラクタ.
+     * @param maxBarFileSize barファイルの最大ファイルサイズ(MB)
+     * @param maxBarEntryFileSize barファイル内エントリの最大ファイルサイズ(MB)
+     */
+    public BarFileValidator(long maxBarFileSize, long maxBarEntryFileSize) {
+        this.maxBarFileSize = maxBarFileSize * BarFileReadRunner.MB;
+        this.maxBarEntryFileSize = maxBarEntryFileSize * BarFileReadRunner.MB;
+    }
+
+    /**
+     * barファイルを先頭から読み込み、全てのエントリを検証する.
+     * 入力ストリームのクローズは呼び出し元で行うこと.
+     * @param inputStream barファイルの入力ストリーム
+     * @return 検証エラーの一覧. エラーがない場合は空のリスト
+     */
+    public List<ValidationError> validate(InputStream inputStream) {
+        Set<String> requiredEntries = new LinkedHashSet<String>(Arrays.asList(
+                BarFileReadRunner.ROOT_DIR,
+                BarFileReadRunner.META_DIR,
+                BarFileReadRunner.META_DIR + BarFileReadRunner.MANIFEST_JSON,
+                BarFileReadRunner.META_DIR + BarFileReadRunner.ROOTPROPS_XML));
+        CountingInputStream barStream = new CountingInputStream(inputStream);
+        ZipArchiveInputStream zais = new ZipArchiveInputStream(new CloseShieldInputStream(barStream));
+        String lastMetaEntry = null;
+        boolean isContentsStarted = false;
+        int entryIndex = 0;
+        String entryName = "";
+        try {
+            ZipArchiveEntry zae = null;
+            while ((zae = zais.getNextZipEntry()) != null) {
+                entryName = zae.getName();
+                requiredEntries.remove(entryName);
+
+                // エントリの順序チェック（bar/, bar/00_meta/, bar/00_meta配下, bar/90_contents配下の順）
+                if (entryIndex == 0 && !BarFileReadRunner.ROOT_DIR.equals(entryName)
+                        || entryIndex == 1 && !BarFileReadRunner.META_DIR.equals(entryName)) {
+                    addError(entryName, "PL-BI-2001");
+                } else if (entryName.startsWith(BarFileReadRunner.CONTENTS_DIR)) {
+                    isContentsStarted = true;
+                } else if (entryName.startsWith(BarFileReadRunner.META_DIR) && !zae.isDirectory()) {
+                    if (isContentsStarted || !isValidMetaOrder(entryName, lastMetaEntry)) {
+                        addError(entryName, "PL-BI-2001");
+                    }
+                    lastMetaEntry = entryName;
+                } else if (!BarFileReadRunner.ROOT_DIR.equals(entryName)
+                        && !BarFileReadRunner.META_DIR.equals(entryName)) {
+                    addError(entryName, "PL-BI-2001");
+                }
+                entryIndex++;
+
+                // エントリのファイルサイズチェック（サイズが分かる場合は読み込む前にチェックする）
+                if (zae.getSize() > this.maxBarEntryFileSize) {
+                    addEntrySizeError(entryName, zae.getSize());
+                    continue;
+                }
+                if (!zae.isDirectory() || entryName.startsWith(BarFileReadRunner.CONTENTS_DIR)) {
+                    CountingInputStream entryStream = new CountingInputStream(new CloseShieldInputStream(zais));
+                    validateEntry(entryName, zae.isDirectory(), entryStream);
+                    IOUtils.skip(entryStream, Long.MAX_VALUE);
+                    if (entryStream.getByteCount() > this.maxBarEntryFileSize) {
+                        addEntrySizeError(entryName, entryStream.getByteCount());
+                    }
+                }
+
+                // barファイルのファイルサイズチェック
+                if (barStream.getByteCount() > this.maxBarFileSize) {
+                    PersoniumCoreException e = PersoniumCoreException.BarInstall.BAR_FILE_SIZE_TOO_LARGE
+                            .params(String.valueOf(barStream.getByteCount()));
+                    addError(new ValidationError(entryName, e.getCode(), e.getMessage()));
+                    return this.errors;
+                }
+            }
+        } catch (IOException e) {
+            log.info("IOException: " + e.getMessage(), e.fillInStackTrace());
+            PersoniumCoreException ex = PersoniumCoreException.BarInstall.BAR_FILE_CANNOT_READ.params(entryName);
+            addError(new ValidationError(entryName, ex.getCode(), ex.getMessage()));
+            return this.errors;
+        }
+
+        // 必須エントリの存在チェック
+        for (String required : requiredEntries) {
+            addError(required, "PL-BI-2001");
+        }
+        // 必須データ（bar/90_contents/{odatacol_name}/00_$metadata.xml)の確認
+        for (String odataCol : this.odataCols) {
+            if (!this.metadataDone.contains(odataCol)) {
+                addError(odataCol + BarFileReadRunner.METADATA_XML, "PL-BI-2001");
+            }
+        }
+        if (this.errorCount > MAX_ERRORS) {
+            log.info("Bar file validation errors: " + this.errorCount + " (first " + MAX_ERRORS + " are reported)");
+        }
+        return this.errors;
+    }
+
+    /**
+     * 検証エラーの一覧をJSON形式で返却する.
+     * @param errors 検証エラーの一覧
+     * @return JSON形式の検証結果
+     */
+    @SuppressWarnings("unchecked")
+    public static JSONObject toJson(List<ValidationError> errors) {
+        JSONArray errorArray = new JSONArray();
+        for (ValidationError error : errors) {
+            errorArray.add(error.toJson());
+        }
+        JSONObject json = new JSONObject();
+        json.put("valid", errors.isEmpty());
+        json.put("errors", errorArray);
+        return json;
+    }
+
+    private boolean isValidMetaOrder(String entryName, String lastMetaEntry) {
+        if (!META_FILES.contains(entryName)) {
+            return false;
+        }
+        String entryIndex = ENTRY_INDEX_PATTERN.matcher(entryName).replaceAll("$1");
+        if (lastMetaEntry == null) {
+            // 最初のエントリの場合は"00"であることが必須
+            return entryIndex.equals("00");
+        }
+        String lastEntryIndex = ENTRY_INDEX_PATTERN.matcher(lastMetaEntry).replaceAll("$1");
+        return entryIndex.compareTo(lastEntryIndex) >= 0;
+    }
+
+    private void validateEntry(String entryName, boolean isDirectory, InputStream inputStream) throws IOException {
+        try {
+            if (entryName.startsWith(BarFileReadRunner.META_DIR)) {
+                if (!META_FILES.contains(entryName)) {
+                    return;
+                }
+                String jsonName = entryName.substring(BarFileReadRunner.META_DIR.length());
+                if (BarFileReadRunner.ROOTPROPS_XML.equals(jsonName)) {
+                    readRootProps(inputStream);
+                } else if (BarFileReadRunner.MANIFEST_JSON.equals(jsonName)) {
+                    JsonParser jp = new JsonFactory().createJsonParser(inputStream);
+                    if (jp.nextToken() != JsonToken.START_OBJECT) {
+                        throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+                    }
+                    validateManifest(jp, new ObjectMapper());
+                } else {
+                    validateJsonEntities(inputStream, jsonName);
+                }
+            } else if (entryName.startsWith(BarFileReadRunner.CONTENTS_DIR)
+                    && !BarFileReadRunner.CONTENTS_DIR.equals(entryName)) {
+                validateContentsEntry(entryName, isDirectory, inputStream);
+            }
+        } catch (PersoniumCoreException e) {
+            addError(new ValidationError(entryName, e.getCode(), e.getMessage()));
+        } catch (JsonParseException e) {
+            // JSONファイルの解析エラー
+            addError(entryName, "PL-BI-2002");
+        } catch (JsonMappingException e) {
+            // JSONファイルのデータ定義エラー
+            addError(entryName, "PL-BI-2003");
+        } catch (XMLStreamException e) {
+            // XMLファイルの解析エラー
+            addError(entryName, "PL-BI-2002");
+        }
+    }
+
+    private void validateContentsEntry(String entryName, boolean isDirectory, InputStream inputStream)
+            throws IOException, XMLStreamException {
+        String odataCol = null;
+        for (String col : this.odataCols) {
+            if (entryName.startsWith(col)) {
+                odataCol = col;
+                break;
+            }
+        }
+        if (odataCol == null) {
+            // 90_rootprops.xmlに定義されていないエントリ
+            String path = isDirectory ? entryName : entryName + "/";
+            if (!this.definedPaths.contains(path) && !this.definedPaths.contains(entryName)
+                    && !isServiceEntry(entryName)) {
+                addError(entryName, "PL-BI-2006");
+            }
+            return;
+        }
+        if (odataCol.equals(entryName)) {
+            return;
+        }
+
+        String odataPath = entryName.substring(odataCol.length());
+        String userDataDir = BarFileReadRunner.USERDATA_DIR_NAME + "/";
+        if (BarFileReadRunner.METADATA_XML.equals(odataPath)) {
+            this.metadataDone.add(odataCol);
+            checkWellFormedXml(inputStream);
+        } else if (BarFileReadRunner.USERDATA_LINKS_JSON.equals(odataPath)) {
+            // 00_$metadata.xmlの後、90_data/の前であること
+            if (!this.metadataDone.contains(odataCol) || this.userDataStarted.contains(odataCol)) {
+                addError(entryName, "PL-BI-2001");
+                return;
+            }
+            validateJsonEntities(inputStream, BarFileReadRunner.USERDATA_LINKS_JSON);
+        } else if (odataPath.startsWith(userDataDir)) {
+            // 00_$metadata.xmlの後であること
+            if (!this.metadataDone.contains(odataCol)) {
+                addError(entryName, "PL-BI-2001");
+                return;
+            }
+            this.userDataStarted.add(odataCol);
+            String userDataPath = odataPath.substring(userDataDir.length());
+            if (isDirectory) {
+                if (userDataPath.length() > 0 && userDataPath.indexOf("/") != userDataPath.length() - 1) {
+                    addError(entryName, "PL-BI-2001");
+                }
+            } else if (!USERDATA_FILE_PATTERN.matcher(userDataPath).matches()) {
+                addError(entryName, "PL-BI-2001");
+            } else {
+                validateUserData(inputStream, userDataPath);
+            }
+        } else {
+            // ODataコレクション直下には00_$metadata.xml、10_odatarelations.json、90_data/のみ配置できる
+            addError(entryName, "PL-BI-2001");
+        }
+    }
+
+    private boolean isServiceEntry(String entryName) {
+        for (String col : this.serviceCols) {
+            if (entryName.startsWith(col)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 90_rootprops.xmlを読み込み、定義されているリソースを取得する.
+     * コレクションの種別は、response/propstat/prop/resourcetype配下の要素から判定する.
+     * @param inputStream 入力ストリーム
+     * @throws XMLStreamException XMLの解析に失敗した場合
+     */
+    private void readRootProps(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = createXMLStreamReader(inputStream);
+        try {
+            List<String> elementPath = new ArrayList<String>();
+            String href = null;
+            Set<String> resourceTypes = new HashSet<String>();
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String localName = reader.getLocalName();
+                    String parent = elementPath.isEmpty() ? null : elementPath.get(elementPath.size() - 1);
+                    if ("href".equals(localName) && "response".equals(parent)
+                            && DAV_NAMESPACE.equals(reader.getNamespaceURI())) {
+                        href = reader.getElementText().trim();
+                        continue;
+                    }
+                    if ("resourcetype".equals(parent)) {
+                        resourceTypes.add(localName);
+                    }
+                    elementPath.add(localName);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    elementPath.remove(elementPath.size() - 1);
+                    if ("response".equals(reader.getLocalName())) {
+                        addDefinedPath(href, resourceTypes);
+                        href = null;
+                        resourceTypes = new HashSet<String>();
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void addDefinedPath(String href, Set<String> resourceTypes) {
+        if (href == null || !href.startsWith(DCBOX) || href.equals(DCBOX)) {
+            // hrefの内容はインストール時に検証する
+            return;
+        }
+        String path = BarFileReadRunner.CONTENTS_DIR + href.substring(DCBOX.length());
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (!resourceTypes.contains("collection")) {
+            this.definedPaths.add(path);
+            return;
+        }
+        path = path + "/";
+        this.definedPaths.add(path);
+        if (resourceTypes.contains("odata")) {
+            this.odataCols.add(path);
+        } else if (resourceTypes.contains("service")) {
+            this.serviceCols.add(path);
+        }
+    }
+
+    private void checkWellFormedXml(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = createXMLStreamReader(inputStream);
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private XMLStreamReader createXMLStreamReader(InputStream inputStream) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(inputStream);
+    }
+
+    /**
+     * 10_relations.json, 20_roles.json, 30_extroles.json, 70_$links.json, 10_odatarelations.jsonを1件ずつ検証する.
+     * @param inputStream 入力ストリーム
+     * @param jsonName ファイル名
+     * @throws IOException JSONの読み込みに失敗した場合
+     */
+    private void validateJsonEntities(InputStream inputStream, String jsonName) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonParser jp = new JsonFactory().createJsonParser(inputStream);
+        if (jp.nextToken() != JsonToken.START_OBJECT) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+        jp.nextToken();
+        checkMatchFieldName(jp, jsonName);
+        if (jp.nextToken() != JsonToken.START_ARRAY) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+        JsonToken token = jp.nextToken();
+        while (token != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+            validateJsonEntity(jp, mapper, jsonName);
+            token = jp.nextToken();
+        }
+    }
+
+    /**
+     * ユーザデータのJSONを、内容を保持せずに検証する.
+     * @param inputStream 入力ストリーム
+     * @param jsonName ファイル名
+     * @throws IOException JSONの読み込みに失敗した場合
+     */
+    private void validateUserData(InputStream inputStream, String jsonName) throws IOException {
+        JsonParser jp = new JsonFactory().createJsonParser(inputStream);
+        if (jp.nextToken() != JsonToken.START_OBJECT) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+        jp.skipChildren();
+        if (jp.nextToken() != null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+    }
+
+    private void addEntrySizeError(String entryName, long size) {
+        PersoniumCoreException e = PersoniumCoreException.BarInstall.BAR_FILE_ENTRY_SIZE_TOO_LARGE
+                .params(entryName, String.valueOf(size));
+        addError(new ValidationError(entryName, e.getCode(), e.getMessage()));
+    }
+
+    private void addError(String entryName, String code) {
+        addError(new ValidationError(entryName, code, PersoniumCoreMessageUtils.getMessage(code)));
+    }
+
+    private void addError(ValidationError error) {
+        this.errorCount++;
+        if (this.errors.size() < MAX_ERRORS) {
+            this.errors.add(error);
+        }
+    }
+
+    /**
+     * 必須項目のバリデートチェック.
+     * @param jp Jsonパーサー（配列要素の"{"を指していること）
+     * @param mapper ObjectMapper
+     * @param jsonName ファイル名
+     * @throws IOException IOException
+     * @return JSONMappedObject JSONMappedオブジェクト
+     */
+    static JSONMappedObject validateJsonEntity(
+            JsonParser jp, ObjectMapper mapper, String jsonName) throws IOException {
+        if (jsonName.equals(BarFileReadRunner.EXTROLE_JSON)) {
+            JSONExtRoles extRoles = mapper.readValue(jp, JSONExtRoles.class);
+            if (extRoles.getExtRole() == null) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+            if (extRoles.getRelationName() == null) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+            return extRoles;
+        } else if (jsonName.equals(BarFileReadRunner.ROLE_JSON)) {
+            JSONRoles roles = mapper.readValue(jp, JSONRoles.class);
+            if (roles.getName() == null) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+            return roles;
+        } else if (jsonName.equals(BarFileReadRunner.RELATION_JSON)) {
+            JSONRelations relations = mapper.readValue(jp, JSONRelations.class);
+            if (relations.getName() == null) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+            return relations;
+        } else if (jsonName.equals(BarFileReadRunner.LINKS_JSON)) {
+            JSONLinks links = mapper.readValue(jp, JSONLinks.class);
+            linksJsonValidate(jsonName, links);
+            return links;
+        } else if (jsonName.equals(BarFileReadRunner.USERDATA_LINKS_JSON)) {
+            JSONUserDataLinks links = mapper.readValue(jp, JSONUserDataLinks.class);
+            userDataLinksJsonValidate(jsonName, links);
+            return links;
+        }
+        return null;
+    }
+
+    /**
+     * 70_$links.jsonのバリデート.
+     * @param jsonName JSONファイル名
+     * @param links 読み込んだJSONオブジェクト
+     */
+    private static void linksJsonValidate(String jsonName, JSONLinks links) {
+        if (links.getFromType() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            if (!links.getFromType().equals(Relation.EDM_TYPE_NAME) && !links.getFromType().equals(Role.EDM_TYPE_NAME)
+                    && !links.getFromType().equals(ExtRole.EDM_TYPE_NAME)) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+        }
+        if (links.getFromName() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            Map<String, String> fromNameMap = links.getFromName();
+            for (Map.Entry<String, String> entry : fromNameMap.entrySet()) {
+                if (entry.getValue() == null) {
+                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+                }
+            }
+        }
+        if (links.getToType() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            if (!links.getToType().equals(Relation.EDM_TYPE_NAME)
+                    && !links.getToType().equals(Role.EDM_TYPE_NAME)
+                    && !links.getToType().equals(ExtRole.EDM_TYPE_NAME)) {
+                throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+            }
+        }
+        if (links.getToName() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            Map<String, String> toNameMap = links.getToName();
+            for (Map.Entry<String, String> entry : toNameMap.entrySet()) {
+                if (entry.getValue() == null) {
+                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+                }
+            }
+        }
+    }
+
+    /**
+     * 10_odatarelations.jsonのバリデート.
+     * @param jsonName JSONファイル名
+     * @param links 読み込んだJSONオブジェクト
+     */
+    private static void userDataLinksJsonValidate(String jsonName, JSONUserDataLinks links) {
+        if (links.getFromType() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+        if (links.getFromId() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            Map<String, String> fromIdMap = links.getFromId();
+            for (Map.Entry<String, String> entry : fromIdMap.entrySet()) {
+                if (entry.getValue() == null) {
+                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+                }
+            }
+        }
+        if (links.getToType() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+        if (links.getToId() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        } else {
+            Map<String, String> toIdMap = links.getToId();
+            for (Map.Entry<String, String> entry : toIdMap.entrySet()) {
+                if (entry.getValue() == null) {
+                    throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+                }
+            }
+        }
+    }
+
+    /**
+     * manifest.jsonのバリデート.
+     * @param jp Jsonパーサー
+     * @param mapper ObjectMapper
+     * @return JSONManifestオブジェクト
+     * @throws IOException データの読み込みに失敗した場合
+     */
+    static JSONManifest validateManifest(JsonParser jp, ObjectMapper mapper) throws IOException {
+        // TODO BARファイルのバージョンチェック
+        JSONManifest manifest = null;
+        try {
+            manifest = mapper.readValue(jp, JSONManifest.class);
+        } catch (UnrecognizedPropertyException ex) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(
+                    "manifest.json unrecognized property");
+        }
+        if (manifest.getBarVersion() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#barVersion");
+        }
+        if (manifest.getBoxVersion() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#boxVersion");
+        }
+        if (manifest.getDefaultPath() == null) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params("manifest.json#DefaultPath");
+        }
+        return manifest;
+    }
+
+    /**
+     * フィールド名がファイルの形式に一致しているかの確認.
+     * @param jp Jsonパーサー
+     * @param jsonName ファイル名
+     * @throws IOException データの読み込みに失敗した場合
+     */
+    static void checkMatchFieldName(JsonParser jp, String jsonName) throws IOException {
+        String fieldName = jp.getCurrentName();
+        if (fieldName == null
+                || !(fieldName.equals("Relations") && jsonName.equals(BarFileReadRunner.RELATION_JSON))
+                && !(fieldName.equals("Roles") && jsonName.equals(BarFileReadRunner.ROLE_JSON))
+                && !(fieldName.equals("ExtRoles") && jsonName.equals(BarFileReadRunner.EXTROLE_JSON))
+                && !(fieldName.equals("Links") && jsonName.equals(BarFileReadRunner.LINKS_JSON))
+                && !(fieldName.equals("Links") && jsonName.equals(BarFileReadRunner.USERDATA_LINKS_JSON))) {
+            throw PersoniumCoreException.BarInstall.JSON_FILE_FORMAT_ERROR.params(jsonName);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * barインストールを実行するスレッドプール.
+ * <p>
+ * Installations run on one bounded pool and the content writes they dispatch on another,
+ * so that the installations waiting for their writes can never occupy the threads the writes need.
+ * Installations beyond the pool size wait in the queue.
+ * </p>
+ */
+final class BarInstallExecutor {
+
+    private static volatile ExecutorService installExecutor;
+    private static volatile ExecutorService workerExecutor;
+
+    private BarInstallExecutor() {
+    }
+
+    /**
+     * barインストールを非同期に実行する.
+     * @param runner barインストール処理
+     * @return barインストールの完了を待つためのFuture
+     */
+    static Future<?> submitInstall(Runnable runner) {
+        ExecutorService executor = installExecutor;
+        if (executor == null) {
+            synchronized (BarInstallExecutor.class) {
+                if (installExecutor == null) {
+                    installExecutor = create(PersoniumUnitConfig.getBarInstallMaxThreads(), "BarInstall-");
+                }
+                executor = installExecutor;
+            }
+        }
+        return executor.submit(runner);
+    }
+
+    /**
+     * barインストール中のコンテンツ登録処理を非同期に実行する.
+     * @param task コンテンツ登録処理
+     * @param <T> 処理結果の型
+     * @return 処理結果を待つためのFuture
+     */
+    static <T> Future<T> submitWorker(Callable<T> task) {
+        ExecutorService executor = workerExecutor;
+        if (executor == null) {
+            synchronized (BarInstallExecutor.class) {
+                if (workerExecutor == null) {
+                    workerExecutor = create(PersoniumUnitConfig.getBarInstallWorkerMaxThreads(), "BarInstallWorker-");
+                }
+                executor = workerExecutor;
+            }
+        }
+        return executor.submit(task);
+    }
+
+    private static ExecutorService create(int threads, final String namePrefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
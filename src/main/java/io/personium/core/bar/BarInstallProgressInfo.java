@@ -66,7 +66,7 @@ public class BarInstallProgressInfo implements ProgressInfo {
      * 進捗率を更新する.
      * @param delta 処理済みのファイル数（増分）
      */
-    public void addDelta(long delta) {
+    public synchronized void addDelta(long delta) {
         this.progressCount += delta;
         this.progressInPercent = (int) (((double) progressCount  * PERCENTAGE) / entryCount);
     }
@@ -79,7 +79,7 @@ public class BarInstallProgressInfo implements ProgressInfo {
      * </ul>.
      * @return 出力可能な場合はtrueを、それ以外はfalseを返す。
      */
-    public boolean isOutputEventBus() {
+    public synchronized boolean isOutputEventBus() {
        // TODO 10%単位での更新だと長時間更新されない場合があるため、一定時間経過でも更新するように修正
        if (this.progressInPercent - this.lastPercent > THRESHHOLD) {
            this.lastPercent = (this.progressInPercent / THRESHHOLD) * THRESHHOLD;
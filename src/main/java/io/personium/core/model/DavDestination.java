@@ -56,6 +56,14 @@ public class DavDestination {
         return destinationUri;
     }
 
+    /**
+     * 移動先のBox配下のリソースのパスを取得する.
+     * @return 移動先のBox配下のリソースのパス
+     */
+    public List<String> getDestinationResourcePath() {
+        return destinationPath.getResourcePath();
+    }
+
     /**
      * 移動先のDavRsCmpを取得する.
      * @return 移動先のDavRsCmp
@@ -0,0 +1,189 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.CharEncoding;
+
+import io.personium.core.PersoniumCoreException;
+
+/**
+ * Davファイルを任意の位置から復号できる形式で暗号化するクラス.
+ * <p>
+ * The content is encrypted with AES in counter mode, and a random initial counter block is stored
+ * in front of the cipher text. The counter of any block is derived from its index, so a range can be
+ * decrypted from the block that contains its first byte. Files encrypted with {@link DataCryptor} keep
+ * their own encryption type and are still read from the beginning.
+ * </p>
+ */
+public class SeekableDataCryptor {
+
+    /** Encryption type of the seekable format. */
+    public static final String ENCRYPTION_TYPE_AES_CTR = "AES/CTR/NoPadding";
+
+    /** Length of the header (the initial counter block) in front of the cipher text. */
+    public static final int HEADER_LENGTH = 16;
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int KEY_LENGTH = 16;
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String MD_ALGORITHM = "SHA-256";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static volatile SecretKeySpec secretKey = null;
+
+    private SeekableDataCryptor() {
+    }
+
+    /**
+     * 暗号化キーを設定する.
+     * @param keyString キー文字列
+     */
+    public static void setKeyString(String keyString) {
+        try {
+            MessageDigest md = MessageDigest.getInstance(MD_ALGORITHM);
+            byte[] digest = md.digest(keyString.getBytes(CharEncoding.UTF_8));
+            secretKey = new SecretKeySpec(Arrays.copyOf(digest, KEY_LENGTH), KEY_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 任意の位置から復号できる暗号化タイプかどうかを返す.
+     * @param encryptionType 暗号化タイプ
+     * @return 任意の位置から復号できる場合は真
+     */
+    public static boolean isSeekable(String encryptionType) {
+        return ENCRYPTION_TYPE_AES_CTR.equals(encryptionType);
+    }
+
+    /**
+     * 暗号化する.
+     * @param input 平文の入力ストリーム
+     * @return ヘッダと暗号文を読み込む入力ストリーム
+     */
+    public static InputStream encode(InputStream input) {
+        byte[] iv = new byte[HEADER_LENGTH];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = createCipher(Cipher.ENCRYPT_MODE, iv);
+        return new SequenceInputStream(new ByteArrayInputStream(iv),
+                new javax.crypto.CipherInputStream(input, cipher));
+    }
+
+    /**
+     * 先頭から復号する.
+     * @param input ヘッダと暗号文の入力ストリーム
+     * @return 平文を読み込む入力ストリーム
+     * @throws IOException ヘッダが読み込めない場合
+     */
+    public static InputStream decode(InputStream input) throws IOException {
+        byte[] iv = new byte[HEADER_LENGTH];
+        int read = 0;
+        while (read < iv.length) {
+            int n = input.read(iv, read, iv.length - read);
+            if (n == -1) {
+                throw new IOException("Encrypted file is too short to contain its header.");
+            }
+            read += n;
+        }
+        return new javax.crypto.CipherInputStream(input, createCipher(Cipher.DECRYPT_MODE, iv));
+    }
+
+    /**
+     * 指定位置から復号する. チャネルの位置は指定位置を含むブロックの先頭に移動する.
+     * @param channel ヘッダと暗号文のファイルチャネル
+     * @param position 平文の開始位置
+     * @return 指定位置からの平文を読み込む入力ストリーム
+     * @throws IOException ヘッダが読み込めない場合
+     */
+    public static InputStream decode(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) == -1) {
+                throw new IOException("Encrypted file is too short to contain its header.");
+            }
+        }
+        long block = position / BLOCK_SIZE;
+        Cipher cipher = createCipher(Cipher.DECRYPT_MODE, counterOf(header.array(), block));
+        channel.position(HEADER_LENGTH + block * BLOCK_SIZE);
+        InputStream input = new javax.crypto.CipherInputStream(Channels.newInputStream(channel), cipher);
+
+        // ブロック内の開始位置まで読み飛ばす
+        byte[] skipped = new byte[BLOCK_SIZE];
+        int toSkip = (int) (position - block * BLOCK_SIZE);
+        while (toSkip > 0) {
+            int n = input.read(skipped, 0, toSkip);
+            if (n == -1) {
+                break;
+            }
+            toSkip -= n;
+        }
+        return input;
+    }
+
+    /**
+     * 初期カウンタブロックにブロック番号を加算したカウンタブロックを返す.
+     * @param iv 初期カウンタブロック
+     * @param block ブロック番号
+     * @return カウンタブロック
+     */
+    static byte[] counterOf(byte[] iv, long block) {
+        // The counter is incremented as a 128 bit big endian integer, in the same way as the cipher does.
+        byte[] counter = iv.clone();
+        long carry = block;
+        for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+            long sum = (counter[i] & 0xff) + (carry & 0xff);
+            counter[i] = (byte) sum;
+            carry = (carry >>> 8) + (sum >>> 8);
+        }
+        return counter;
+    }
+
+    private static Cipher createCipher(int mode, byte[] counter) {
+        if (secretKey == null) {
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(
+                    new IllegalStateException("Key of SeekableDataCryptor is not set."));
+        }
+        try {
+            Cipher cipher = Cipher.getInstance(ENCRYPTION_TYPE_AES_CTR);
+            cipher.init(mode, secretKey, new IvParameterSpec(counter));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        }
+    }
+}
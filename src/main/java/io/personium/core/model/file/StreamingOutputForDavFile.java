@@ -16,14 +16,19 @@
  */
 package io.personium.core.model.file;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
@@ -35,31 +40,50 @@ import org.slf4j.LoggerFactory;
 import io.personium.core.PersoniumUnitConfig;
 
 /**
- * Davファイルの内容を Responseに返却する際に利用する StreamingOutputクラス. 内部的には、読み込み専用にハードリンクを作成し、出力完了後に削除する。
+ * Davファイルの内容を Responseに返却する際に利用する StreamingOutputクラス.
+ * <p>
+ * The file is opened once when the response is built. An update deletes the content file and then moves
+ * a new file into its place, so the open channel keeps reading the deleted version that was current when it
+ * was opened, without creating a hard link per request. An open that falls between the delete and the move
+ * finds no file, so it is retried. Unencrypted content is sent with {@link FileChannel#transferTo},
+ * and encrypted content is decrypted through a pooled buffer.
+ * </p>
  */
 public class StreamingOutputForDavFile implements StreamingOutput {
 
     private static Logger logger = LoggerFactory.getLogger(StreamingOutputForDavFile.class);
 
     /**
-     * Davファイルの読み書き時、ハードリンク作成/ファイル名改変時の最大リトライ回数.
+     * Davファイルの読み書き時、ファイルオープン時の最大リトライ回数.
      */
     private static int maxRetryCount = PersoniumUnitConfig.getDavFileOperationRetryCount();
 
     /**
-     * Davファイルの読み書き時、ハードリンク作成/ファイル名改変時のリトライ間隔(msec).
+     * Davファイルの読み書き時、ファイルオープン時のリトライ間隔(msec).
      */
     private static long retryInterval = PersoniumUnitConfig.getDavFileOperationRetryInterval();
 
+    /** Size of a buffer to copy decrypted content. */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** Maximum number of buffers kept in the pool. */
+    private static final int MAX_POOLED_BUFFERS = 64;
+    /** Pool of the buffers to copy decrypted content. */
+    private static final Queue<byte[]> BUFFER_POOL = new ConcurrentLinkedQueue<byte[]>();
+    /** Number of buffers in the pool. */
+    private static final AtomicInteger POOLED_BUFFERS = new AtomicInteger();
+
     /**
-     * 読み込み用のハードリンクのパス.
+     * 読み込み用のファイルチャネル.
      */
-    Path hardLinkPath = null;
+    FileChannel channel = null;
 
     /**
-     * 読み込み用のハードリンクからの入力ストリーム.
+     * 読み込むファイルのパス.
      */
-    InputStream hardLinkInput = null;
+    Path filePath = null;
+
+    private String cellId;
+    private String encryptionType;
 
     /**
      * Constructor.
@@ -70,30 +94,22 @@ public class StreamingOutputForDavFile implements StreamingOutput {
      */
     public StreamingOutputForDavFile(String fileFullPath, String cellId, String encryptionType)
             throws BinaryDataNotFoundException {
-        if (!Files.exists(Paths.get(fileFullPath))) {
+        this.filePath = Paths.get(fileFullPath);
+        if (!Files.exists(this.filePath)) {
             throw new BinaryDataNotFoundException(fileFullPath);
         }
-
-        // 読み込み専用のハードリンクを作成するため、ユニーク名を生成。
-        String hardLinkName = UniqueNameComposer.compose(fileFullPath);
+        this.cellId = cellId;
+        this.encryptionType = encryptionType;
 
         for (int i = 0; i < maxRetryCount; i++) {
             try {
-                synchronized (fileFullPath) {
-                    // ハードリンクを作成.
-                    hardLinkPath = Files.createLink(Paths.get(hardLinkName), Paths.get(fileFullPath));
-                }
-                // ハードリンクからの入力ストリームを取得
-                InputStream inputStream;
-                // Perform decryption.
-                DataCryptor cryptor = new DataCryptor(cellId);
-                inputStream = cryptor.decode(new FileInputStream(hardLinkPath.toFile()), encryptionType);
-                hardLinkInput = new BufferedInputStream(inputStream);
+                // 更新中はファイルが一時的に存在しないことがあるため、開けるまでリトライする。
+                channel = FileChannel.open(this.filePath, StandardOpenOption.READ);
                 // 成功したら終了
                 return;
             } catch (IOException e) {
                 // 指定回数まではリトライする。
-                logger.debug(String.format("Creating hard link %s failed. Will try again.", hardLinkName));
+                logger.debug(String.format("Opening DAV file %s failed. Will try again.", fileFullPath));
                 try {
                     Thread.sleep(retryInterval);
                 } catch (InterruptedException e1) {
@@ -102,7 +118,7 @@ public class StreamingOutputForDavFile implements StreamingOutput {
             }
         }
 
-        throw new BinaryDataNotFoundException("Unable to create hard link for DAV file: " + hardLinkName);
+        throw new BinaryDataNotFoundException("Unable to open DAV file: " + fileFullPath);
     }
 
     /**
@@ -110,16 +126,103 @@ public class StreamingOutputForDavFile implements StreamingOutput {
      */
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
-        if (null == hardLinkInput) {
-            throw new WebApplicationException(new BinaryDataNotFoundException(hardLinkPath.toString()));
+        if (null == channel) {
+            throw new WebApplicationException(new BinaryDataNotFoundException(filePath.toString()));
         }
         try {
-            IOUtils.copy(hardLinkInput, output);
+            if (isEncrypted()) {
+                copy(openInputStream(), output, Long.MAX_VALUE);
+            } else {
+                transfer(0, channel.size(), output);
+            }
         } finally {
-            IOUtils.closeQuietly(hardLinkInput);
-            // 後始末。自分用の読み込みハードリンクを削除する。
-            Files.delete(hardLinkPath);
+            IOUtils.closeQuietly(channel);
+        }
+    }
+
+    /**
+     * @return 暗号化されている場合は真
+     */
+    boolean isEncrypted() {
+        return encryptionType != null
+                && !encryptionType.isEmpty()
+                && !DataCryptor.ENCRYPTION_TYPE_NONE.equals(encryptionType);
+    }
+
+    /**
+     * @return 任意の位置から復号できる形式で暗号化されている場合は真
+     */
+    boolean isSeekable() {
+        return SeekableDataCryptor.isSeekable(encryptionType);
+    }
+
+    /**
+     * ファイルの先頭から復号した内容を読み込む入力ストリームを返す.
+     * @return 入力ストリーム
+     * @throws IOException 復号の準備に失敗した場合
+     */
+    InputStream openInputStream() throws IOException {
+        if (isSeekable()) {
+            return SeekableDataCryptor.decode(channel, 0);
         }
+        channel.position(0);
+        DataCryptor cryptor = new DataCryptor(cellId);
+        return cryptor.decode(Channels.newInputStream(channel), encryptionType);
     }
 
+    /**
+     * ファイルの指定範囲をそのまま出力する.
+     * @param position 開始位置
+     * @param count バイト数
+     * @param output 出力先
+     * @return 出力したバイト数. ファイルが途中で終わっていた場合は count より小さい
+     * @throws IOException 入出力エラー
+     */
+    long transfer(long position, long count, OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long transferred = 0;
+        while (transferred < count) {
+            long n = channel.transferTo(position + transferred, count - transferred, target);
+            if (n <= 0) {
+                break;
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     * 入力ストリームから指定バイト数を出力する.
+     * @param input 入力ストリーム
+     * @param output 出力先
+     * @param count バイト数
+     * @return 出力したバイト数. 入力が途中で終わっていた場合は count より小さい
+     * @throws IOException 入出力エラー
+     */
+    static long copy(InputStream input, OutputStream output, long count) throws IOException {
+        byte[] buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        } else {
+            POOLED_BUFFERS.decrementAndGet();
+        }
+        try {
+            long copied = 0;
+            while (copied < count) {
+                int n = input.read(buffer, 0, (int) Math.min(buffer.length, count - copied));
+                if (n == -1) {
+                    break;
+                }
+                output.write(buffer, 0, n);
+                copied += n;
+            }
+            return copied;
+        } finally {
+            if (POOLED_BUFFERS.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+                BUFFER_POOL.offer(buffer);
+            } else {
+                POOLED_BUFFERS.decrementAndGet();
+            }
+        }
+    }
 }
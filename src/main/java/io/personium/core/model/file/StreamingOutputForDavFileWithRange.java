@@ -17,9 +17,11 @@
 package io.personium.core.model.file;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.UUID;
 
 import javax.ws.rs.WebApplicationException;
 
@@ -31,18 +33,31 @@ import io.personium.core.http.header.ByteRangeSpec;
 import io.personium.core.http.header.RangeHeaderHandler;
 
 /**
- * Davファイルの内容を Responseに返却する際に利用する StreamingOutputクラス. 内部的には、読み込み専用にハードリンクを作成し、出力完了後に削除する。
+ * Davファイルの内容のうち、Rangeヘッダで指定された範囲を Responseに返却する際に利用する StreamingOutputクラス.
+ * <p>
+ * Plain content is read at the position of each range. Content in the seekable encrypted format is
+ * decrypted from the block that contains the first byte of each range, and only content in the older
+ * encrypted format is decrypted from the beginning. Several ranges are returned as multipart/byteranges.
+ * </p>
  */
 public class StreamingOutputForDavFileWithRange extends StreamingOutputForDavFile {
 
+    /** Media type of the response with several ranges. */
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
+    private static final String CRLF = "\r\n";
+
     private RangeHeaderHandler range = null;
     private long fileSize = 0;
+    private String contentType = null;
+    private String boundary = null;
 
     /**
      * コンストラクタ.
      * @param fileFullPath 読み込むファイルのフルパス
      * @param fileSize 読み込むファイルのサイズ
      * @param range RangeHeader
+     * @param contentType 読み込むファイルのContent-Type
      * @param cellId Cell ID
      * @param encryptionType encryption type
      * @throws BinaryDataNotFoundException ファイルが存在しない場合.
@@ -50,44 +65,108 @@ public class StreamingOutputForDavFileWithRange extends StreamingOutputForDavFil
     public StreamingOutputForDavFileWithRange(final String fileFullPath,
             final long fileSize,
             final RangeHeaderHandler range,
+            final String contentType,
             String cellId,
             String encryptionType) throws BinaryDataNotFoundException {
         super(fileFullPath, cellId, encryptionType);
         this.range = range;
         this.fileSize = fileSize;
+        this.contentType = contentType;
+        this.boundary = UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * @return 複数のRangeを返却する場合は真
+     */
+    public boolean isMultiPart() {
+        return range.getByteRangeSpecCount() > 1;
+    }
+
+    /**
+     * レスポンスのContent-Typeを返す.
+     * @return Content-Type
+     */
+    public String getContentType() {
+        if (!isMultiPart()) {
+            return contentType;
+        }
+        return MULTIPART_BYTERANGES + "; boundary=" + boundary;
+    }
+
+    /**
+     * レスポンスのContent-Lengthを返す.
+     * @return Content-Length
+     */
+    public long getContentLength() {
+        List<ByteRangeSpec> brss = range.getByteRangeSpecList();
+        if (!isMultiPart()) {
+            return brss.get(0).getContentLength();
+        }
+        long length = 0;
+        for (ByteRangeSpec brs : brss) {
+            length += partHeader(brs).length + brs.getContentLength();
+        }
+        return length + closeDelimiter().length;
     }
 
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
+        if (null == channel) {
+            throw new WebApplicationException(new BinaryDataNotFoundException(filePath.toString()));
+        }
         try {
-            // MultiPartには対応しないため1個目のbyte-renge-setだけ処理する。
-            int rangeIndex = 0;
             List<ByteRangeSpec> brss = range.getByteRangeSpecList();
-            final ByteRangeSpec brs = brss.get(rangeIndex);
+            if (!isMultiPart()) {
+                writeRange(brss.get(0), output);
+                return;
+            }
+            for (ByteRangeSpec brs : brss) {
+                output.write(partHeader(brs));
+                writeRange(brs, output);
+            }
+            output.write(closeDelimiter());
+        } finally {
+            IOUtils.closeQuietly(channel);
+        }
+    }
 
-            int chr;
-            long first = brs.getFirstBytePos();
-            long last = brs.getLastBytePos();
-            // Rangeの先頭まで読み飛ばし
-            if (hardLinkInput.skip(first) != first) {
+    private void writeRange(ByteRangeSpec brs, OutputStream output) throws IOException {
+        long first = brs.getFirstBytePos();
+        long count = brs.getContentLength();
+        long written;
+        if (!isEncrypted()) {
+            // 平文は位置を指定してそのまま返却
+            written = transfer(first, count, output);
+        } else if (isSeekable()) {
+            // Rangeの先頭を含むブロックから復号
+            written = copy(SeekableDataCryptor.decode(channel, first), output, count);
+        } else {
+            // Rangeの先頭まで復号しながら読み飛ばし
+            InputStream input = openInputStream();
+            if (IOUtils.skip(input, first) != first) {
                 PersoniumCoreLog.Dav.FILE_TOO_SHORT
                         .params("skip failed", fileSize, range.getRangeHeaderField()).writeLog();
                 throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND;
             }
-            // Rangeの終端まで返却
-            for (long pos = first; pos < last + 1; pos++) {
-                chr = hardLinkInput.read();
-                if (chr == -1) {
-                    PersoniumCoreLog.Dav.FILE_TOO_SHORT
-                            .params("too short.size", fileSize, range.getRangeHeaderField()).writeLog();
-                    throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND;
-                }
-                output.write((char) chr);
-            }
-        } finally {
-            IOUtils.closeQuietly(hardLinkInput);
-            Files.delete(hardLinkPath);
+            written = copy(input, output, count);
         }
+        if (written < count) {
+            PersoniumCoreLog.Dav.FILE_TOO_SHORT
+                    .params("too short.size", fileSize, range.getRangeHeaderField()).writeLog();
+            throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND;
+        }
+    }
+
+    private byte[] partHeader(ByteRangeSpec brs) {
+        String header = CRLF + "--" + boundary + CRLF
+                + "Content-Type: " + contentType + CRLF
+                + "Content-Range: " + brs.makeContentRangeHeaderField() + CRLF
+                + CRLF;
+        return header.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] closeDelimiter() {
+        return (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.UTF_8);
     }
 
 }
@@ -20,9 +20,14 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -76,10 +81,10 @@ import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.es.accessor.ODataLinkAccessor;
 import io.personium.core.model.impl.es.cache.BoxCache;
 import io.personium.core.model.impl.es.cache.CellCache;
+import io.personium.core.model.impl.es.cache.RoleCache;
 import io.personium.core.model.impl.es.doc.CellDocHandler;
 import io.personium.core.model.impl.es.doc.OEntityDocHandler;
 import io.personium.core.model.impl.es.odata.CellCtlODataProducer;
-import io.personium.core.model.impl.fs.DavCmpFsImpl;
 import io.personium.core.model.lock.CellLockManager;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.utils.UriUtils;
@@ -381,6 +386,11 @@ public final class CellEsImpl implements Cell {
     @SuppressWarnings("unchecked")
     @Override
     public List<Role> getRoleListForAccount(final String username) {
+        List<Role> cached = RoleCache.getForAccount(this, username);
+        if (cached != null) {
+            return cached;
+        }
+
         // Accountを取得
         EntitySetAccessor accountType = EsModel.cellCtl(this, Account.EDM_TYPE_NAME);
 
@@ -404,44 +414,23 @@ public final class CellEsImpl implements Cell {
 
         PersoniumSearchHit hit = hits.getHits()[0];
 
-        List<Role> ret = new ArrayList<Role>();
-        ODataLinkAccessor links = EsModel.cellCtlLink(this);
-
         // アカウントに結びつくロールの検索
-        List<Map<String, Object>> searchRoleQueries = new ArrayList<Map<String, Object>>();
-        searchRoleQueries.add(QueryMapFactory.termQuery("t1", "Account"));
-        searchRoleQueries.add(QueryMapFactory.termQuery("t2", "Role"));
-
-        List<Map<String, Object>> searchRoleFilters = new ArrayList<Map<String, Object>>();
-        searchRoleFilters.add(QueryMapFactory.termQuery("k1", hit.getId()));
-        Map<String, Object> and = new HashMap<String, Object>();
-        and.put("filters", searchRoleFilters);
-        Map<String, Object> searchRoleFilter = new HashMap<String, Object>();
-        searchRoleFilter.put("and", and);
-
-        Map<String, Object> searchRoleSource = new HashMap<String, Object>();
-        searchRoleSource.put("filter", searchRoleFilter);
-        searchRoleSource.put("query",
-                QueryMapFactory.filteredQuery(null, QueryMapFactory.mustQuery(searchRoleQueries)));
+        List<String> roleIds = new ArrayList<String>();
+        PersoniumSearchResponse res = serchRoleLinks(Account.EDM_TYPE_NAME, Arrays.asList(hit.getId()));
+        if (res != null) {
+            this.addRoleIds(res.getHits().getHits(), roleIds);
+        }
 
-        // 検索結果件数設定
-        searchRoleSource.put("size", TOP_NUM);
+        // ロールとBoxはそれぞれ1回の検索でまとめて取得する
+        Map<String, Map<String, Object>> roleSources = searchByIds(EsModel.cellCtl(this, Role.EDM_TYPE_NAME), roleIds);
+        Map<String, Map<String, Object>> boxSources = searchBoxesOfRoles(roleSources.values());
 
-        PersoniumSearchResponse res = links.search(searchRoleSource);
-        if (res == null) {
-            return ret;
-        }
-        PersoniumSearchHit[] hits2 = res.getHits().getHits();
-        for (PersoniumSearchHit hit2 : hits2) {
-            Map<String, Object> row = hit2.getSource();
-            String role = (String) row.get("k2");
-            log.debug(this.id);
-            EntitySetAccessor roleDao = EsModel.cellCtl(this, Role.EDM_TYPE_NAME);
-            PersoniumGetResponse gRes = roleDao.get(role);
-            if (gRes == null) {
+        List<Role> ret = new ArrayList<Role>();
+        for (String roleId : roleIds) {
+            Map<String, Object> src = roleSources.get(roleId);
+            if (src == null) {
                 continue;
             }
-            Map<String, Object> src = gRes.getSource();
             Map<String, Object> s = (Map<String, Object>) src.get("s");
             Map<String, Object> l = (Map<String, Object>) src.get("l");
             String roleName = (String) s.get(KEY_NAME);
@@ -449,13 +438,10 @@ public final class CellEsImpl implements Cell {
             String boxName = null;
             String schema = null;
             if (boxId != null) {
-                // Boxの検索
-                EntitySetAccessor box = EsModel.box(this);
-                PersoniumGetResponse getRes = box.get(boxId);
-                if (getRes == null || !getRes.isExists()) {
+                Map<String, Object> boxsrc = boxSources.get(boxId);
+                if (boxsrc == null) {
                     continue;
                 }
-                Map<String, Object> boxsrc = getRes.getSource();
                 Map<String, Object> boxs = (Map<String, Object>) boxsrc.get("s");
                 boxName = (String) boxs.get(KEY_NAME);
                 schema = (String) boxs.get(KEY_SCHEMA);
@@ -464,21 +450,29 @@ public final class CellEsImpl implements Cell {
 
             ret.add(roleObj);
         }
+        RoleCache.cacheForAccount(this, username, ret);
         return ret;
     }
 
     @Override
     public List<Role> getRoleListHere(final IExtRoleContainingToken token) {
-        List<Role> ret = new ArrayList<Role>();
+        List<Role> cached = RoleCache.getForExtCell(this, token);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<String> roleIds = new ArrayList<String>();
 
         // ExtCellとRoleの結びつけ設定から払い出すRoleをリストアップ
-        this.addRoleListExtCelltoRole(token, ret);
+        this.addRoleListExtCelltoRole(token, roleIds);
 
         // ExtCellとRelationとRoleの結びつけから払い出すRoleをリストアップ
         // と
         // ExtCellとRelationとExtRoleとRoleの結びつけから払い出すRoleをリストアップ
-        this.addRoleListExtCelltoRelationAndExtRole(token, ret);
+        this.addRoleListExtCelltoRelationAndExtRole(token, roleIds);
 
+        List<Role> ret = this.getRolesHere(roleIds);
+        RoleCache.cacheForExtCell(this, token, ret);
         return ret;
     }
 
@@ -486,10 +480,10 @@ public final class CellEsImpl implements Cell {
      * ExtCellとRoleの突き合わせを行い払い出すRoleを決める.
      * @param token
      *            トランスセルアクセストークン
-     * @param roles
-     *            払い出すロールのリスト。ここに追加する（破壊的メソッド）
+     * @param roleIds
+     *            払い出すロールのUUIDのリスト。ここに追加する（破壊的メソッド）
      */
-    private void addRoleListExtCelltoRole(final IExtRoleContainingToken token, List<Role> roles) {
+    private void addRoleListExtCelltoRole(final IExtRoleContainingToken token, List<String> roleIds) {
         // ExtCell-Role結びつけに対応するRoleの取得
         String extCell = token.getExtCellUrl();
         String principal = token.getSubject();
@@ -532,7 +526,7 @@ public final class CellEsImpl implements Cell {
             List<OEntity> entList = response.getEntities();
             for (OEntity ent : entList) {
                 OEntityWrapper entRole = (OEntityWrapper) ent;
-                this.addRole(entRole.getUuid(), roles);
+                roleIds.add(entRole.getUuid());
             }
         }
     }
@@ -542,11 +536,11 @@ public final class CellEsImpl implements Cell {
      * ExtCellとRelationとExtRoleとRoleの結びつけから払い出すRoleをリストアップ.
      * @param token
      *            トランスセルアクセストークン
-     * @param roles
-     *            払い出すロールのリスト。ここに追加する（破壊的メソッド）
+     * @param roleIds
+     *            払い出すロールのUUIDのリスト。ここに追加する（破壊的メソッド）
      */
     @SuppressWarnings("unchecked")
-    private void addRoleListExtCelltoRelationAndExtRole(final IExtRoleContainingToken token, List<Role> roles) {
+    private void addRoleListExtCelltoRelationAndExtRole(final IExtRoleContainingToken token, List<String> roleIds) {
         String extCell = token.getExtCellUrl();
 
         // ExtCell-Role結びつけに対応するRoleの取得
@@ -575,78 +569,85 @@ public final class CellEsImpl implements Cell {
             return;
         }
 
-        List<OEntity> entList = response.getEntities();
-        for (OEntity ent : entList) {
-            OEntityWrapper entRelation = (OEntityWrapper) ent;
+        List<String> relationIds = new ArrayList<String>();
+        for (OEntity ent : response.getEntities()) {
+            relationIds.add(((OEntityWrapper) ent).getUuid());
+        }
+        if (relationIds.isEmpty()) {
+            return;
+        }
 
-            // ExtCell-Relationのリンク情報をすべて見て今回アクセスしてきたセル向けのロールを洗い出す。
-            PersoniumSearchResponse res = serchRoleLinks(Relation.EDM_TYPE_NAME, entRelation.getUuid());
-            if (res == null) {
-                continue;
-            }
-            this.addRoles(res.getHits().getHits(), roles);
-            // ↑ ここまででExtCellとRelationとRoleの結びつけから払い出すRoleをリストアップ.は完了
-            // ↓ こっからはExtCellとRelationとExtRoleとRoleの結びつけから払い出すRoleをリストアップの処理.
+        // ExtCell-Relationのリンク情報をすべて見て今回アクセスしてきたセル向けのロールを洗い出す。
+        PersoniumSearchResponse res = serchRoleLinks(Relation.EDM_TYPE_NAME, relationIds);
+        if (res != null) {
+            this.addRoleIds(res.getHits().getHits(), roleIds);
+        }
+        // ↑ ここまででExtCellとRelationとRoleの結びつけから払い出すRoleをリストアップ.は完了
+        // ↓ こっからはExtCellとRelationとExtRoleとRoleの結びつけから払い出すRoleをリストアップの処理.
 
-            // RelationからExtRoleの情報取得。
-            EntitySetAccessor extRoleType = EsModel.cellCtl(this, ExtRole.EDM_TYPE_NAME);
+        // RelationからExtRoleの情報取得。
+        EntitySetAccessor extRoleType = EsModel.cellCtl(this, ExtRole.EDM_TYPE_NAME);
 
-            // Relationに結びつくExtRoleの検索
-            // 現在の登録件数を取得してから一覧取得する
-            Map<String, Object> source = new HashMap<String, Object>();
+        // Relationに結びつくExtRoleの検索
+        // 現在の登録件数を取得してから一覧取得する
+        Map<String, Object> source = new HashMap<String, Object>();
 
-            // 暗黙フィルタを指定して、検索対象を検索条件の先頭に設定する（絞りこみ）
-            List<Map<String, Object>> implicitFilters = QueryMapFactory.getImplicitFilters(this.id, null, null, null,
-                    extRoleType.getType());
-            String linksKey = OEntityDocHandler.KEY_LINK + "." + Relation.EDM_TYPE_NAME;
-            implicitFilters.add(0, QueryMapFactory.termQuery(linksKey, entRelation.getUuid()));
-            Map<String, Object> query = QueryMapFactory.mustQuery(implicitFilters);
-            Map<String, Object> filteredQuery = QueryMapFactory.filteredQuery(null, query);
-            source.put("query", filteredQuery);
-            long hitNum = extRoleType.count(source);
-            // ExtCellの設定が存在しないときは飛ばす
-            if (hitNum == 0) {
-                continue;
-            }
-            source.put("size", hitNum);
+        // 暗黙フィルタを指定して、検索対象を検索条件の先頭に設定する（絞りこみ）
+        List<Map<String, Object>> implicitFilters = QueryMapFactory.getImplicitFilters(this.id, null, null, null,
+                extRoleType.getType());
+        String linksKey = OEntityDocHandler.KEY_LINK + "." + Relation.EDM_TYPE_NAME;
+        implicitFilters.add(0, QueryMapFactory.termsFilter(linksKey, relationIds));
+        Map<String, Object> query = QueryMapFactory.mustQuery(implicitFilters);
+        Map<String, Object> filteredQuery = QueryMapFactory.filteredQuery(null, query);
+        source.put("query", filteredQuery);
+        long hitNum = extRoleType.count(source);
+        // ExtRoleの設定が存在しないときは終了
+        if (hitNum == 0) {
+            return;
+        }
+        source.put("size", hitNum);
 
-            PersoniumSearchHits extRoleHits = extRoleType.search(source).getHits();
-            // ExtCellの設定が存在しないときは飛ばす
-            // 件数取得後に削除される場合があるため、検索結果を再度確認しておく
-            if (extRoleHits.getCount() == 0) {
-                continue;
-            }
-            for (PersoniumSearchHit extRoleHit : extRoleHits.getHits()) {
-                Map<String, Object> extRoleSource = extRoleHit.getSource();
-                Map<String, Object> extRoleS = (Map<String, Object>) extRoleSource.get("s");
-                String esExtRole = (String) extRoleS.get(ExtRole.EDM_TYPE_NAME);
-
-                // トークンに入ってるロールと突き合わせ
-                for (Role tokenRole : token.getRoleList()) {
-                    if (!tokenRole.createUrl().equals(esExtRole)) {
-                        continue;
-                    }
-                    // ExtCell-Roleのリンク情報をすべて見て今回アクセスしてきたセル向けのロールを洗い出す。
-                    PersoniumSearchResponse resExtRoleToRole = serchRoleLinks(
-                            ExtRole.EDM_TYPE_NAME, extRoleHit.getId());
-                    if (resExtRoleToRole == null) {
-                        continue;
-                    }
-                    this.addRoles(resExtRoleToRole.getHits().getHits(), roles);
-                }
+        PersoniumSearchHits extRoleHits = extRoleType.search(source).getHits();
+        // ExtRoleの設定が存在しないときは終了
+        // 件数取得後に削除される場合があるため、検索結果を再度確認しておく
+        if (extRoleHits.getCount() == 0) {
+            return;
+        }
+
+        // トークンに入ってるロールと突き合わせ
+        Set<String> tokenRoleUrls = new HashSet<String>();
+        for (Role tokenRole : token.getRoleList()) {
+            tokenRoleUrls.add(tokenRole.createUrl());
+        }
+        List<String> extRoleIds = new ArrayList<String>();
+        for (PersoniumSearchHit extRoleHit : extRoleHits.getHits()) {
+            Map<String, Object> extRoleSource = extRoleHit.getSource();
+            Map<String, Object> extRoleS = (Map<String, Object>) extRoleSource.get("s");
+            String esExtRole = (String) extRoleS.get(ExtRole.EDM_TYPE_NAME);
+            if (tokenRoleUrls.contains(esExtRole)) {
+                extRoleIds.add(extRoleHit.getId());
             }
         }
+        if (extRoleIds.isEmpty()) {
+            return;
+        }
+
+        // ExtRole-Roleのリンク情報をすべて見て今回アクセスしてきたセル向けのロールを洗い出す。
+        PersoniumSearchResponse resExtRoleToRole = serchRoleLinks(ExtRole.EDM_TYPE_NAME, extRoleIds);
+        if (resExtRoleToRole != null) {
+            this.addRoleIds(resExtRoleToRole.getHits().getHits(), roleIds);
+        }
     }
 
     /**
      * Roleと他のエンティテセットのリンクテーブルから対応するデータを取得する.
      * @param searchKey
      *            検索条件のエンティティセット名
-     * @param searchValue
-     *            検索するuuid
+     * @param searchValues
+     *            検索するuuidの一覧
      * @return 検索結果
      */
-    private PersoniumSearchResponse serchRoleLinks(final String searchKey, final String searchValue) {
+    private PersoniumSearchResponse serchRoleLinks(final String searchKey, final List<String> searchValues) {
 
         ODataLinkAccessor links = EsModel.cellCtlLink(this);
         // Relationに結びつくロールの検索
@@ -661,63 +662,115 @@ public final class CellEsImpl implements Cell {
 
         Map<String, Object> query = QueryMapFactory.filteredQuery(null, QueryMapFactory.mustQuery(queries));
 
-        filters.add(QueryMapFactory.termQuery("k1", searchValue));
+        filters.add(QueryMapFactory.termsFilter("k1", searchValues));
         and.put("filters", filters);
         filter.put("and", and);
         source.put("filter", filter);
         source.put("query", query);
-        // 検索結果件数設定
-        source.put("size", TOP_NUM);
+        // 検索結果件数設定（検索するuuidごとにTOP_NUM件まで）
+        source.put("size", TOP_NUM * searchValues.size());
 
         return links.search(source);
     }
 
     /**
-     * Roleが含まれたSearchHitの配列からロールの値を取得する.
+     * Roleが含まれたSearchHitの配列からロールのUUIDを取得する.
      * @param hits
      *            Roleを検索し結果
-     * @param roles
-     *            払い出すロールのリスト。ここに追加する（破壊的メソッド）
+     * @param roleIds
+     *            払い出すロールのUUIDのリスト。ここに追加する（破壊的メソッド）
      */
-    private void addRoles(PersoniumSearchHit[] hits, List<Role> roles) {
+    private void addRoleIds(PersoniumSearchHit[] hits, List<String> roleIds) {
         for (PersoniumSearchHit hit : hits) {
             Map<String, Object> src = hit.getSource();
-            String roleUuid = (String) src.get("k2");
+            roleIds.add((String) src.get("k2"));
+        }
+    }
+
+    /**
+     * トランスセルトークンに払い出すロールの値を取得する.
+     * @param roleIds
+     *            RoleのUUIDのリスト
+     * @return 払い出すロールのリスト
+     */
+    @SuppressWarnings("unchecked")
+    private List<Role> getRolesHere(List<String> roleIds) {
+        // ロールとBoxはそれぞれ1回の検索でまとめて取得する
+        Map<String, Map<String, Object>> roleSources = searchByIds(EsModel.cellCtl(this, Role.EDM_TYPE_NAME), roleIds);
+        Map<String, Map<String, Object>> boxSources = searchBoxesOfRoles(roleSources.values());
+
+        List<Role> roles = new ArrayList<Role>();
+        for (String roleId : roleIds) {
+            Map<String, Object> src = roleSources.get(roleId);
+            if (src == null) {
+                continue;
+            }
+            Map<String, Object> s = (Map<String, Object>) src.get("s");
+            Map<String, Object> l = (Map<String, Object>) src.get("l");
+            String roleName = (String) s.get(KEY_NAME);
+            String schema = (String) s.get(KEY_SCHEMA);
+            String boxId = (String) l.get(Box.EDM_TYPE_NAME);
+            String boxName = null;
+            if (boxId != null) {
+                Map<String, Object> boxsrc = boxSources.get(boxId);
+                if (boxsrc == null) {
+                    PersoniumCoreLog.Dav.ROLE_NOT_FOUND.params("Box Id Not Hit").writeLog();
+                    throw PersoniumCoreException.Dav.ROLE_NOT_FOUND;
+                }
+                Map<String, Object> boxs = (Map<String, Object>) boxsrc.get("s");
+                boxName = (String) boxs.get(KEY_NAME);
+            }
 
-            // Relation-Roleのリンク情報をすべて見て今回アクセスしてきたセル向けのロールを洗い出す。
-            this.addRole(roleUuid, roles);
+            roles.add(new Role(roleName, boxName, schema, this.url));
         }
+        return roles;
     }
 
     /**
-     * ロールの値を取得する.
-     * @param uuid
-     *            RoleのUUID
-     * @param roles
-     *            払い出すロールのリスト。ここに追加する（破壊的メソッド）
+     * ロールが属するBoxをまとめて取得する.
+     * @param roleSources
+     *            Roleのドキュメントの一覧
+     * @return BoxのIDとドキュメントのMap
      */
     @SuppressWarnings("unchecked")
-    private void addRole(String uuid, List<Role> roles) {
-        EntitySetAccessor roleDao = EsModel.cellCtl(this, Role.EDM_TYPE_NAME);
-        PersoniumGetResponse gRes = roleDao.get(uuid);
-        if (gRes == null) {
-            return;
+    private Map<String, Map<String, Object>> searchBoxesOfRoles(Collection<Map<String, Object>> roleSources) {
+        List<String> boxIds = new ArrayList<String>();
+        for (Map<String, Object> src : roleSources) {
+            Map<String, Object> l = (Map<String, Object>) src.get("l");
+            String boxId = (String) l.get(Box.EDM_TYPE_NAME);
+            if (boxId != null) {
+                boxIds.add(boxId);
+            }
         }
-        Map<String, Object> src = gRes.getSource();
-        Map<String, Object> s = (Map<String, Object>) src.get("s");
-        Map<String, Object> l = (Map<String, Object>) src.get("l");
-        String roleName = (String) s.get(KEY_NAME);
-        String schema = (String) s.get(KEY_SCHEMA);
-        String boxId = (String) l.get(Box.EDM_TYPE_NAME);
-        String boxName = null;
-        if (boxId != null) {
-            // Boxの検索
-            Map<String, Object> boxsrc = DavCmpFsImpl.searchBox(this, boxId);
-            Map<String, Object> boxs = (Map<String, Object>) boxsrc.get("s");
-            boxName = (String) boxs.get(KEY_NAME);
+        return searchByIds(EsModel.box(this), boxIds);
+    }
+
+    /**
+     * IDを指定して、ドキュメントを1回の検索でまとめて取得する.
+     * @param accessor
+     *            検索対象のアクセサ
+     * @param ids
+     *            ドキュメントIDの一覧
+     * @return ドキュメントIDとドキュメントのMap。存在しないドキュメントは含まない
+     */
+    private static Map<String, Map<String, Object>> searchByIds(EntitySetAccessor accessor, Collection<String> ids) {
+        Map<String, Map<String, Object>> sources = new HashMap<String, Map<String, Object>>();
+        List<String> distinctIds = new ArrayList<String>(new LinkedHashSet<String>(ids));
+        if (distinctIds.isEmpty()) {
+            return sources;
         }
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("query", QueryMapFactory.filteredQuery(null, QueryMapFactory.idsFilter(distinctIds)));
+        source.put("size", distinctIds.size());
 
-        roles.add(new Role(roleName, boxName, schema, this.url));
+        PersoniumSearchResponse res = accessor.search(source);
+        if (res == null) {
+            return sources;
+        }
+        for (PersoniumSearchHit hit : res.getHits().getHits()) {
+            sources.put(hit.getId(), hit.getSource());
+        }
+        return sources;
     }
 
     @Override
@@ -921,12 +974,16 @@ public final class CellEsImpl implements Cell {
 
     @Override
     public void delete(boolean recursive, String unitUserName) {
-        // Cellに対するアクセス数を確認して、アクセスをロックする
+        // Cellへの新たなアクセスをロックしてから、処理中のアクセスが無くなるのを待つ
         int maxLoopCount = PersoniumUnitConfig.getCellLockRetryTimes();
         long interval = PersoniumUnitConfig.getCellLockRetryInterval();
-        waitCellAccessible(this.id, maxLoopCount, interval);
-
         CellLockManager.setCellStatus(this.id, CellLockManager.STATUS.BULK_DELETION);
+        try {
+            waitCellAccessible(this.id, maxLoopCount, interval);
+        } catch (PersoniumCoreException e) {
+            CellLockManager.setCellStatus(this.id, CellLockManager.STATUS.NORMAL);
+            throw e;
+        }
 
         // Cellエンティティを削除する
         CellAccessor cellAccessor = (CellAccessor) EsModel.cell();
@@ -951,6 +1008,12 @@ public final class CellEsImpl implements Cell {
     }
 
     private void waitCellAccessible(String cellId, int maxLoopCount, long interval) {
+        try {
+            // 他ノードがセルの状態を認識し、受付済みのアクセスを参照カウントに反映するのを待つ
+            CellLockManager.awaitPropagation();
+        } catch (InterruptedException e) {
+            throw PersoniumCoreException.Misc.CONFLICT_CELLACCESS;
+        }
         for (int loopCount = 0; loopCount < maxLoopCount; loopCount++) {
             long count = CellLockManager.getReferenceCount(cellId);
             // 自分のリクエスト分も含まれるので他のリクエストが存在する場合は１より大きくなる
@@ -90,6 +90,20 @@ public final class QueryMapFactory {
         return bool;
     }
 
+    /**
+     * bool.mustフィルタの情報を格納したMapインスタンスを生成して返却する.
+     * andフィルタと異なり、各フィルタの結果をキャッシュして組み合わせることができる.
+     * @param filters mustフィルタにて指定するフィルタ一覧
+     * @return 入力値を格納したMap
+     */
+    public static Map<String, Object> boolFilter(List<Map<String, Object>> filters) {
+        Map<String, Object> bool = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        must.put("must", filters);
+        bool.put("bool", must);
+        return bool;
+    }
+
     /**
      * bool.shouldクエリの情報を格納したMapインスタンスを生成して返却する.
      * @param queries shouldクエリにて指定するクエリ一覧
@@ -133,6 +147,53 @@ public final class QueryMapFactory {
         return query;
     }
 
+    /**
+     * termsフィルターの情報を格納したMapのインスタンスを生成して返却する.
+     * @param key 検索キー
+     * @param values 検索キーワードの一覧
+     * @return 入力値を格納したMap
+     */
+    public static Map<String, Object> termsFilter(String key, List<?> values) {
+        Map<String, Object> filter = new HashMap<String, Object>();
+        Map<String, Object> terms = new HashMap<String, Object>();
+
+        terms.put(key, values);
+        filter.put("terms", terms);
+        return filter;
+    }
+
+    /**
+     * idsフィルターの情報を格納したMapのインスタンスを生成して返却する.
+     * @param ids ドキュメントIDの一覧
+     * @return 入力値を格納したMap
+     */
+    public static Map<String, Object> idsFilter(List<String> ids) {
+        Map<String, Object> filter = new HashMap<String, Object>();
+        Map<String, Object> values = new HashMap<String, Object>();
+
+        values.put("values", ids);
+        filter.put("ids", values);
+        return filter;
+    }
+
+    /**
+     * rangeフィルターの情報を格納したMapのインスタンスを生成して返却する.
+     * @param key 検索キー
+     * @param operator 比較演算子(gt / gte / lt / lte)
+     * @param value 比較する値
+     * @return 入力値を格納したMap
+     */
+    public static Map<String, Object> rangeFilter(String key, String operator, Object value) {
+        Map<String, Object> filter = new HashMap<String, Object>();
+        Map<String, Object> range = new HashMap<String, Object>();
+        Map<String, Object> condition = new HashMap<String, Object>();
+
+        condition.put(operator, value);
+        range.put(key, condition);
+        filter.put("range", range);
+        return filter;
+    }
+
     /**
      * filteredクエリの情報を格納したMapのインスタンスを生成して返却する.
      * @param query filtered-query 省略した場合match_allを詰める
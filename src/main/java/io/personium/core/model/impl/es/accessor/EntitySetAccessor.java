@@ -16,11 +16,13 @@
  */
 package io.personium.core.model.impl.es.accessor;
 
+import java.util.List;
 import java.util.Map;
 
 import io.personium.common.es.response.PersoniumDeleteResponse;
 import io.personium.common.es.response.PersoniumGetResponse;
 import io.personium.common.es.response.PersoniumIndexResponse;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
 import io.personium.common.es.response.PersoniumSearchResponse;
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
 
@@ -89,6 +91,14 @@ public interface EntitySetAccessor {
      */
     PersoniumSearchResponse search(Map<String, Object> query);
 
+    /**
+     * ドキュメントをマルチ検索.
+     * 本メソッド時使用時には取得件数(size)をクエリに指定して呼び出すこと
+     * @param queryList クエリ情報の一覧
+     * @return ES応答
+     */
+    PersoniumMultiSearchResponse multiSearch(List<Map<String, Object>> queryList);
+
     /**
      * データ削除を行う.
      * @param docHandler 削除データ
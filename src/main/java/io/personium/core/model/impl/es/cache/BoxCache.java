@@ -36,10 +36,26 @@ public class BoxCache {
     static Logger log = LoggerFactory.getLogger(BoxCache.class);
     private static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
 
+    /** Node local cache in front of memcached. */
+    static NearCache<Map<String, Object>> nearCache = new NearCache<Map<String, Object>>("box",
+            new NearCache.ClientProvider() {
+                @Override
+                public CacheClient get() {
+                    return getMcdClient();
+                }
+            });
+
     static CacheClient getMcdClient() {
         return mcdClient;
     }
 
+    /**
+     * @return node local cache
+     */
+    public static NearCache<Map<String, Object>> getNearCache() {
+        return nearCache;
+    }
+
     private BoxCache() {
     }
 
@@ -54,13 +70,17 @@ public class BoxCache {
             return null;
         }
 
-        @SuppressWarnings("rawtypes")
-        HashMap obj = null;
-        try {
-            obj = getMcdClient().get(cacheKey(boxName, cell), HashMap.class);
-        } catch (MemcachedClientException e) {
-            // キャッシュのアクセスに失敗した場合は、DBからデータを取得させるためnullを返却
-            log.info("Failed to get BoxCache.");
+        Map<String, Object> obj = NearCache.copy(nearCache.get(cacheKey(boxName, cell)));
+        if (obj == null) {
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> cache = getMcdClient().get(cacheKey(boxName, cell), HashMap.class);
+                obj = cache;
+                nearCache.put(cacheKey(boxName, cell), NearCache.copy(obj));
+            } catch (MemcachedClientException e) {
+                // キャッシュのアクセスに失敗した場合は、DBからデータを取得させるためnullを返却
+                log.info("Failed to get BoxCache.");
+            }
         }
         if (obj == null) {
             return null;
@@ -90,6 +110,7 @@ public class BoxCache {
 
         getMcdClient().put(cacheKey(box.getName(), box.getCell()),
                 PersoniumUnitConfig.getCacheMemcachedExpiresIn(), obj);
+        nearCache.put(cacheKey(box.getName(), box.getCell()), NearCache.copy(obj));
     }
 
     /**
@@ -102,6 +123,7 @@ public class BoxCache {
             return;
         }
         getMcdClient().delete(cacheKey(boxName, cell));
+        nearCache.invalidate(cacheKey(boxName, cell));
     }
 
     static String cacheKey(String boxName, Cell cell) {
@@ -34,6 +34,15 @@ public class CellCache {
 
     static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
 
+    /** Node local cache in front of memcached. */
+    static NearCache<Map<String, Object>> nearCache = new NearCache<Map<String, Object>>("cell",
+            new NearCache.ClientProvider() {
+                @Override
+                public CacheClient get() {
+                    return getMcdClient();
+                }
+            });
+
     private CellCache() {
     }
 
@@ -41,6 +50,13 @@ public class CellCache {
         return mcdClient;
     }
 
+    /**
+     * @return node local cache
+     */
+    public static NearCache<Map<String, Object>> getNearCache() {
+        return nearCache;
+    }
+
     /**
      * Cell情報をキャッシュから取得し、Cell情報を格納したMapを返す.
      * @param cellName Cell名
@@ -50,9 +66,14 @@ public class CellCache {
         if (!PersoniumUnitConfig.isCellCacheEnabled()) {
             return null;
         }
+        Map<String, Object> local = nearCache.get(cacheKey(cellName));
+        if (local != null) {
+            return NearCache.copy(local);
+        }
         try {
             @SuppressWarnings("unchecked")
             Map<String, Object> cache = getMcdClient().get(cacheKey(cellName), Map.class);
+            nearCache.put(cacheKey(cellName), NearCache.copy(cache));
             return cache;
         } catch (MemcachedClientException e) {
             // キャッシュのアクセスに失敗した場合は、DBからデータを取得させるためnullを返却
@@ -71,6 +92,7 @@ public class CellCache {
             return;
         }
         getMcdClient().put(cacheKey(cellName), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), cell);
+        nearCache.put(cacheKey(cellName), NearCache.copy(cell));
     }
 
     /**
@@ -82,6 +104,7 @@ public class CellCache {
             return;
         }
         getMcdClient().delete(cacheKey(cellName));
+        nearCache.invalidate(cacheKey(cellName));
     }
 
     static String cacheKey(String cellName) {
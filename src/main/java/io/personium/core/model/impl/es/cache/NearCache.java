@@ -0,0 +1,479 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.utils.CacheClient;
+import io.personium.core.utils.MemcachedClient.MemcachedClientException;
+
+/**
+ * Node local cache placed in front of memcached.
+ * <p>
+ * Entries are kept in a bounded LRU map with a TTL. Every entry is stamped with the
+ * namespace version that was current when it was stored. Each node re-reads the shared
+ * state in memcached at most once per check interval.
+ * </p>
+ * <p>
+ * Invalidating a key appends the key to an invalidation log in memcached, numbered by a shared
+ * counter, and the other nodes drop only the keys logged since their last check. A key prefix can be
+ * logged in the same way to drop every key that starts with it. A node drops all
+ * its local entries when it cannot tell which keys were invalidated: the log has a gap or is longer
+ * than {@link #INVALIDATION_LOG_MAX}, or the counter has been reset. Invalidating the namespace
+ * publishes a new version, which drops every entry on every node.
+ * </p>
+ * @param <V> cached value type
+ */
+public class NearCache<V> {
+    static Logger log = LoggerFactory.getLogger(NearCache.class);
+
+    /** Version value used while the shared version cannot be read. */
+    static final long VERSION_UNKNOWN = Long.MIN_VALUE;
+
+    /** Invalidation sequence value used before the shared counter has been read. */
+    static final long SEQUENCE_UNKNOWN = Long.MIN_VALUE;
+
+    /** Maximum number of logged invalidations applied at one check. All entries are dropped beyond this. */
+    static final int INVALIDATION_LOG_MAX = 1000;
+
+    private static final List<NearCache<?>> INSTANCES = Collections.synchronizedList(new ArrayList<NearCache<?>>());
+
+    private final String namespace;
+    private final ClientProvider clientProvider;
+    private final Map<String, Entry<V>> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private volatile long version = VERSION_UNKNOWN;
+    private volatile long versionCheckedAt = 0L;
+    private volatile long invalidationSequence = SEQUENCE_UNKNOWN;
+
+    /**
+     * Supplies the memcached client used to share the namespace version.
+     * Resolved on each call so that the owner class can swap its client.
+     */
+    interface ClientProvider {
+        /**
+         * @return cache client
+         */
+        CacheClient get();
+    }
+
+    /**
+     * Constructor.
+     * @param namespace namespace name, also used as the prefix of the version key
+     * @param clientProvider provider of the shared cache client
+     */
+    NearCache(String namespace, ClientProvider clientProvider) {
+        this.namespace = namespace;
+        this.clientProvider = clientProvider;
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) { //NOPMD - anonymous LRU map
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > PersoniumUnitConfig.getLocalCacheMaxEntries()) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        INSTANCES.add(this);
+    }
+
+    /**
+     * Returns the locally cached value.
+     * @param key cache key
+     * @return cached value. null when absent, expired or invalidated
+     */
+    V get(String key) {
+        if (!PersoniumUnitConfig.isLocalCacheEnabled()) {
+            return null;
+        }
+        long current = currentVersion();
+        synchronized (this.entries) {
+            Entry<V> entry = this.entries.get(key);
+            if (entry == null) {
+                this.missCount.incrementAndGet();
+                return null;
+            }
+            if (entry.version != current || entry.expiresAt <= System.currentTimeMillis()) {
+                this.entries.remove(key);
+                this.evictionCount.incrementAndGet();
+                this.missCount.incrementAndGet();
+                return null;
+            }
+            this.hitCount.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Stores the value locally.
+     * @param key cache key
+     * @param value value
+     */
+    void put(String key, V value) {
+        if (!PersoniumUnitConfig.isLocalCacheEnabled() || value == null) {
+            return;
+        }
+        long current = currentVersion();
+        if (current == VERSION_UNKNOWN) {
+            // Without a shared version we cannot notice remote invalidation.
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + PersoniumUnitConfig.getLocalCacheExpiresIn() * 1000L;
+        synchronized (this.entries) {
+            this.entries.put(key, new Entry<V>(value, current, expiresAt));
+        }
+    }
+
+    /**
+     * Removes the entry locally and logs the key so that other nodes drop theirs.
+     * @param key cache key
+     */
+    void invalidate(String key) {
+        synchronized (this.entries) {
+            this.entries.remove(key);
+        }
+        publishInvalidation(key);
+    }
+
+    /**
+     * Removes the entries whose keys start with the prefix locally and logs the prefix
+     * so that other nodes drop theirs.
+     * @param prefix key prefix
+     */
+    void invalidatePrefix(String prefix) {
+        synchronized (this.entries) {
+            removeByPrefix(prefix);
+        }
+        publishInvalidation(new KeyPrefix(prefix));
+    }
+
+    /**
+     * Appends an invalidated key or key prefix to the invalidation log.
+     * @param invalidated key, or KeyPrefix
+     */
+    private void publishInvalidation(Object invalidated) {
+        this.invalidationCount.incrementAndGet();
+        if (!PersoniumUnitConfig.isLocalCacheEnabled()) {
+            return;
+        }
+        try {
+            CacheClient client = this.clientProvider.get();
+            long sequence = client.incrementLongValue(invalidationSequenceKey());
+            client.put(invalidationKey(sequence), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), invalidated);
+        } catch (MemcachedClientException e) {
+            log.info("Failed to publish " + this.namespace + " local cache invalidation.");
+            this.version = VERSION_UNKNOWN;
+        }
+    }
+
+    /**
+     * Drops every entry of this cache on every node by publishing a new version.
+     */
+    void invalidateNamespace() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+        this.invalidationCount.incrementAndGet();
+        if (!PersoniumUnitConfig.isLocalCacheEnabled()) {
+            return;
+        }
+        long next = newVersion();
+        try {
+            this.clientProvider.get().put(versionKey(), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), next);
+            this.version = next;
+            this.versionCheckedAt = System.currentTimeMillis();
+        } catch (MemcachedClientException e) {
+            log.info("Failed to publish " + this.namespace + " local cache version.");
+            this.version = VERSION_UNKNOWN;
+        }
+    }
+
+    /**
+     * Drops every local entry of this cache.
+     */
+    void invalidateAll() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+        this.version = VERSION_UNKNOWN;
+        this.versionCheckedAt = 0L;
+        this.invalidationSequence = SEQUENCE_UNKNOWN;
+    }
+
+    /**
+     * Returns the shared version, re-reading it from memcached once the check interval has passed.
+     * @return current version
+     */
+    long currentVersion() {
+        long now = System.currentTimeMillis();
+        if (this.version != VERSION_UNKNOWN
+                && now - this.versionCheckedAt < PersoniumUnitConfig.getLocalCacheVersionCheckInterval()) {
+            return this.version;
+        }
+        long latest;
+        try {
+            CacheClient client = this.clientProvider.get();
+            Object stored = client.get(versionKey(), Object.class);
+            if (stored instanceof Long) {
+                latest = (Long) stored;
+            } else {
+                // First use in this unit, or the version has expired or been lost with memcached.
+                // Publish a new version, as keys invalidated with the lost state cannot be known.
+                latest = newVersion();
+                client.put(versionKey(), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), latest);
+            }
+            if (latest != this.version) {
+                synchronized (this.entries) {
+                    this.entries.clear();
+                }
+            }
+            applyInvalidations(client);
+        } catch (MemcachedClientException e) {
+            log.info("Failed to get " + this.namespace + " local cache version.");
+            latest = VERSION_UNKNOWN;
+            this.invalidationSequence = SEQUENCE_UNKNOWN;
+        }
+        this.version = latest;
+        this.versionCheckedAt = now;
+        return latest;
+    }
+
+    /**
+     * Drops the entries of the keys invalidated on any node since the last check.
+     * @param client cache client
+     */
+    private void applyInvalidations(CacheClient client) {
+        // -1 while no key has been invalidated in this unit
+        long latest = client.getLongValue(invalidationSequenceKey());
+        long last = this.invalidationSequence;
+        this.invalidationSequence = latest;
+        if (latest == last) {
+            return;
+        }
+        if (last == SEQUENCE_UNKNOWN || latest < last || latest - last > INVALIDATION_LOG_MAX) {
+            dropAll();
+            return;
+        }
+        for (long sequence = Math.max(last, 0L) + 1; sequence <= latest; sequence++) {
+            Object invalidated = client.get(invalidationKey(sequence), Object.class);
+            if (invalidated instanceof KeyPrefix) {
+                synchronized (this.entries) {
+                    this.evictionCount.addAndGet(removeByPrefix(((KeyPrefix) invalidated).prefix));
+                }
+            } else if (invalidated instanceof String) {
+                synchronized (this.entries) {
+                    if (this.entries.remove(invalidated) != null) {
+                        this.evictionCount.incrementAndGet();
+                    }
+                }
+            } else {
+                // Not written yet by the invalidating node, or already evicted.
+                dropAll();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries whose keys start with the prefix. Callers hold the lock of the entries.
+     * @param prefix key prefix
+     * @return number of removed entries
+     */
+    private int removeByPrefix(String prefix) {
+        int removed = 0;
+        Iterator<String> keys = this.entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void dropAll() {
+        synchronized (this.entries) {
+            this.evictionCount.addAndGet(this.entries.size());
+            this.entries.clear();
+        }
+    }
+
+    private static long newVersion() {
+        long next = ThreadLocalRandom.current().nextLong();
+        if (next == VERSION_UNKNOWN) {
+            next = 0L;
+        }
+        return next;
+    }
+
+    String versionKey() {
+        return this.namespace + ":localcache:version";
+    }
+
+    String invalidationSequenceKey() {
+        return this.namespace + ":localcache:invalidation";
+    }
+
+    String invalidationKey(long sequence) {
+        return this.namespace + ":localcache:invalidation:" + sequence;
+    }
+
+    /**
+     * @return namespace name
+     */
+    public String getNamespace() {
+        return this.namespace;
+    }
+
+    /**
+     * @return number of entries currently held
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * @return hit count
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * @return miss count
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * @return number of entries evicted by size limit, TTL or version change
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * @return number of explicit invalidations
+     */
+    public long getInvalidationCount() {
+        return this.invalidationCount.get();
+    }
+
+    /**
+     * Returns all near caches created in this JVM.
+     * @return near caches
+     */
+    public static List<NearCache<?>> getInstances() {
+        synchronized (INSTANCES) {
+            return new ArrayList<NearCache<?>>(INSTANCES);
+        }
+    }
+
+    /**
+     * Drops every local entry of every near cache in this JVM.
+     */
+    public static void invalidateAllInstances() {
+        for (NearCache<?> cache : getInstances()) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns a copy of a cached map, copying the maps and lists in it as well.
+     * Callers modify the values they got, so a value is copied when it is stored and when it is returned.
+     * @param map map to copy
+     * @return copy. null if map is null
+     */
+    static Map<String, Object> copy(Map<String, Object> map) {
+        if (map == null) {
+            return null;
+        }
+        Map<String, Object> ret = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            ret.put(e.getKey(), copyValue(e.getValue()));
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof Map) {
+            return copy((Map<String, Object>) value);
+        } else if (value instanceof List) {
+            List<Object> ret = new ArrayList<Object>();
+            for (Object o : (List<Object>) value) {
+                ret.add(copyValue(o));
+            }
+            return ret;
+        }
+        // String, Number, Boolean and null are immutable
+        return value;
+    }
+
+    /**
+     * Key prefix logged in the invalidation log.
+     */
+    static final class KeyPrefix implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String prefix;
+
+        KeyPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Cache entry.
+     * @param <V> value type
+     */
+    static final class Entry<V> {
+        final V value;
+        final long version;
+        final long expiresAt;
+
+        Entry(V value, long version, long expiresAt) {
+            this.value = value;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.personium.common.auth.token.IExtRoleContainingToken;
+import io.personium.common.auth.token.Role;
+import io.personium.core.model.Cell;
+import io.personium.core.utils.CacheClient;
+import io.personium.core.utils.MemcachedClient;
+
+/**
+ * Account / ExtCellに払い出すロールのキャッシュを扱うクラス.
+ * <p>
+ * Resolved role sets are kept only in the node local cache. Any change of the entities or links
+ * a role set is resolved from drops the role sets of the whole cell on every node, as one change may affect
+ * the role sets of many accounts and external cells. The role sets of the other cells are kept.
+ * </p>
+ */
+public class RoleCache {
+
+    /** Node local cache of resolved role sets. */
+    static NearCache<List<Role>> nearCache = new NearCache<List<Role>>("role", new NearCache.ClientProvider() {
+        @Override
+        public CacheClient get() {
+            return MemcachedClient.getCacheClient();
+        }
+    });
+
+    private RoleCache() {
+    }
+
+    /**
+     * @return node local cache
+     */
+    public static NearCache<List<Role>> getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * Accountに払い出すロールをキャッシュから取得する.
+     * @param cell Cellオブジェクト
+     * @param username Account名
+     * @return ロールのリスト。キャッシュに存在しない場合はnull
+     */
+    public static List<Role> getForAccount(Cell cell, String username) {
+        return copy(nearCache.get(accountKey(cell, username)));
+    }
+
+    /**
+     * Accountに払い出すロールをキャッシュする.
+     * @param cell Cellオブジェクト
+     * @param username Account名
+     * @param roles ロールのリスト
+     */
+    public static void cacheForAccount(Cell cell, String username, List<Role> roles) {
+        nearCache.put(accountKey(cell, username), copy(roles));
+    }
+
+    /**
+     * トランスセルトークンに対して払い出すロールをキャッシュから取得する.
+     * @param cell Cellオブジェクト
+     * @param token トランスセルトークン
+     * @return ロールのリスト。キャッシュに存在しない場合はnull
+     */
+    public static List<Role> getForExtCell(Cell cell, IExtRoleContainingToken token) {
+        return copy(nearCache.get(extCellKey(cell, token)));
+    }
+
+    /**
+     * トランスセルトークンに対して払い出すロールをキャッシュする.
+     * @param cell Cellオブジェクト
+     * @param token トランスセルトークン
+     * @param roles ロールのリスト
+     */
+    public static void cacheForExtCell(Cell cell, IExtRoleContainingToken token, List<Role> roles) {
+        nearCache.put(extCellKey(cell, token), copy(roles));
+    }
+
+    /**
+     * ロールの払い出しに関わるデータが変更されたときに、変更されたCellのキャッシュを破棄する.
+     * @param cell 変更されたCell
+     */
+    public static void clear(Cell cell) {
+        nearCache.invalidatePrefix(cellPrefix(cell));
+    }
+
+    static String cellPrefix(Cell cell) {
+        return "role:" + cell.getId() + ":";
+    }
+
+    static String accountKey(Cell cell, String username) {
+        return cellPrefix(cell) + "account:" + username;
+    }
+
+    static String extCellKey(Cell cell, IExtRoleContainingToken token) {
+        // The roles depend on the external cell, the subject and the roles in the token.
+        List<String> tokenRoles = new ArrayList<String>();
+        for (Role role : token.getRoleList()) {
+            tokenRoles.add(role.createUrl());
+        }
+        Collections.sort(tokenRoles);
+        StringBuilder key = new StringBuilder(cellPrefix(cell))
+                .append("extcell:").append(token.getExtCellUrl())
+                .append(' ').append(token.getSubject());
+        for (String tokenRole : tokenRoles) {
+            key.append(' ').append(tokenRole);
+        }
+        return key.toString();
+    }
+
+    private static List<Role> copy(List<Role> roles) {
+        if (roles == null) {
+            return null;
+        }
+        return new ArrayList<Role>(roles);
+    }
+}
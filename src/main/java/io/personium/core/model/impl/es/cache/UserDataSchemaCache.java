@@ -34,10 +34,26 @@ public class UserDataSchemaCache {
     static Logger log = LoggerFactory.getLogger(UserDataSchemaCache.class);
     static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
 
+    /** Node local cache in front of memcached. */
+    static NearCache<Map<String, Object>> nearCache = new NearCache<Map<String, Object>>("userodata",
+            new NearCache.ClientProvider() {
+                @Override
+                public CacheClient get() {
+                    return getMcdClient();
+                }
+            });
+
     static CacheClient getMcdClient() {
         return mcdClient;
     }
 
+    /**
+     * @return node local cache
+     */
+    public static NearCache<Map<String, Object>> getNearCache() {
+        return nearCache;
+    }
+
     private UserDataSchemaCache() {
     }
 
@@ -50,9 +66,14 @@ public class UserDataSchemaCache {
         if (!PersoniumUnitConfig.isSchemaCacheEnabled()) {
             return null;
         }
+        Map<String, Object> local = nearCache.get(cacheKey(nodeId));
+        if (local != null) {
+            return NearCache.copy(local);
+        }
         try {
             @SuppressWarnings("unchecked")
             Map<String, Object> cache = getMcdClient().get(cacheKey(nodeId), Map.class);
+            nearCache.put(cacheKey(nodeId), NearCache.copy(cache));
             return cache;
         } catch (MemcachedClientException e) {
             // キャッシュのアクセスに失敗した場合は、DBからデータを取得させるためnullを返却
@@ -71,6 +92,7 @@ public class UserDataSchemaCache {
             return;
         }
         getMcdClient().put(cacheKey(nodeId), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), schema);
+        nearCache.put(cacheKey(nodeId), NearCache.copy(schema));
     }
 
     /**
@@ -82,6 +104,7 @@ public class UserDataSchemaCache {
             return;
         }
         getMcdClient().delete(cacheKey(nodeId));
+        nearCache.invalidate(cacheKey(nodeId));
     }
 
     /**
@@ -96,6 +119,7 @@ public class UserDataSchemaCache {
         Map<String, Object> schema = new HashMap<String, Object>();
         schema.put("disabledTime", System.currentTimeMillis());
         getMcdClient().put(cacheKey(nodeId), PersoniumUnitConfig.getCacheMemcachedExpiresIn(), schema);
+        nearCache.invalidate(cacheKey(nodeId));
     }
 
     /**
@@ -16,7 +16,9 @@
  */
 package io.personium.core.model.impl.es.odata;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -43,8 +45,10 @@ import io.personium.core.model.BoxCmp;
 import io.personium.core.model.Cell;
 import io.personium.core.model.ModelFactory;
 import io.personium.core.model.ctl.Common;
+import io.personium.core.model.ctl.Account;
 import io.personium.core.model.ctl.CtlSchema;
 import io.personium.core.model.ctl.ExtCell;
+import io.personium.core.model.ctl.ExtRole;
 import io.personium.core.model.ctl.ReceivedMessage;
 import io.personium.core.model.ctl.Relation;
 import io.personium.core.model.ctl.Role;
@@ -54,6 +58,7 @@ import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.es.accessor.ODataLinkAccessor;
 import io.personium.core.model.impl.es.cache.BoxCache;
+import io.personium.core.model.impl.es.cache.RoleCache;
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
 import io.personium.core.model.impl.es.doc.OEntityDocHandler;
 import io.personium.core.model.impl.es.odata.EsNavigationTargetKeyProperty.NTKPNotFoundException;
@@ -88,6 +93,14 @@ public class CellCtlODataProducer extends EsODataProducer {
     // スキーマ情報
     private static EdmDataServices.Builder edmDataServices = CtlSchema.getEdmDataServicesForCellCtl();
 
+    /** 払い出すロールの解決に使用するエンティティセット. */
+    private static final Set<String> ROLE_RELATED_ENTITY_SETS = new HashSet<String>(Arrays.asList(
+            Account.EDM_TYPE_NAME, Role.EDM_TYPE_NAME, Box.EDM_TYPE_NAME,
+            ExtCell.EDM_TYPE_NAME, Relation.EDM_TYPE_NAME, ExtRole.EDM_TYPE_NAME));
+
+    /** 更新・削除対象が払い出すロールに影響するかどうか. */
+    private boolean roleChanged = false;
+
     @Override
     public DataSourceAccessor getAccessorForIndex(final String entitySetName) {
         return null; // 必要時に実装すること
@@ -150,6 +163,7 @@ public class CellCtlODataProducer extends EsODataProducer {
     public void beforeDelete(final String entitySetName,
             final OEntityKey oEntityKey,
             final EntitySetDocHandler docHandler) {
+        this.roleChanged = ROLE_RELATED_ENTITY_SETS.contains(entitySetName);
 
         if (!Box.EDM_TYPE_NAME.equals(entitySetName)) {
             return;
@@ -176,6 +190,8 @@ public class CellCtlODataProducer extends EsODataProducer {
     public void beforeUpdate(final String entitySetName,
             final OEntityKey oEntityKey,
             final EntitySetDocHandler docHandler) {
+        this.roleChanged = ROLE_RELATED_ENTITY_SETS.contains(entitySetName);
+
         if (!Box.EDM_TYPE_NAME.equals(entitySetName)) {
             return;
         }
@@ -183,6 +199,36 @@ public class CellCtlODataProducer extends EsODataProducer {
         BoxCache.clear(oEntityKey.asSingleValue().toString(), this.cell);
     }
 
+    @Override
+    public void afterCreate(final String entitySetName, final OEntity oEntity, final EntitySetDocHandler docHandler) {
+        if (ROLE_RELATED_ENTITY_SETS.contains(entitySetName)) {
+            // 払い出すロールのCacheクリア
+            RoleCache.clear(this.cell);
+        }
+    }
+
+    @Override
+    public void afterUpdate() {
+        if (this.roleChanged) {
+            // 払い出すロールのCacheクリア
+            RoleCache.clear(this.cell);
+        }
+    }
+
+    @Override
+    public void afterDelete() {
+        if (this.roleChanged) {
+            // 払い出すロールのCacheクリア
+            RoleCache.clear(this.cell);
+        }
+    }
+
+    @Override
+    public void afterChangeLinks() {
+        // 払い出すロールのCacheクリア
+        RoleCache.clear(this.cell);
+    }
+
     /**
      * 関係登録/削除、及びメッセージ受信のステータスを変更する.
      * @param entitySet entitySetName
@@ -307,6 +353,8 @@ public class CellCtlODataProducer extends EsODataProducer {
             } else if (ReceivedMessage.TYPE_REQ_ROLE_REVOKE.equals(type)) {
                 deleteRelation(Role.EDM_TYPE_NAME, entityKeyMap, extCellKeyMap);
             }
+            // 払い出すロールのCacheクリア
+            RoleCache.clear(this.cell);
 
         }
     }
@@ -19,10 +19,12 @@ package io.personium.core.model.impl.es.odata;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.core4j.Enumerable;
@@ -91,6 +93,7 @@ import io.personium.core.model.impl.es.doc.OEntityDocHandler;
 import io.personium.core.model.impl.es.odata.EsNavigationTargetKeyProperty.NTKPNotFoundException;
 import io.personium.core.model.lock.Lock;
 import io.personium.core.model.lock.LockManager;
+import io.personium.core.odata.LazyEntitiesResponse;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.rs.odata.AbstractODataResource;
@@ -305,6 +308,12 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
     public void afterDelete() {
     }
 
+    /**
+     * 実装サブクラスProducerが$links登録・削除後の処理を行いたいときは、ここをoverrideして実装する。
+     */
+    public void afterChangeLinks() {
+    }
+
     /**
      * 1-0:Nの削除処理時にN側を検索処理を行う.
      * @param np EdmNavigationProperty
@@ -360,8 +369,6 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
     public EntityResponse getEntity(final String entitySetName,
             final OEntityKey entityKey,
             final EntityQueryInfo queryInfo) {
-        final int expandMaxNum = PersoniumUnitConfig.getMaxExpandSizeForRetrive();
-
         // 注）EntitySetの存在保証は予め呼び出し側で行われているため、ここではチェックしない。
         EdmEntitySet eSet = this.getMetadata().findEdmEntitySet(entitySetName);
         EntitySetDocHandler oedh = this.retrieveWithKey(eSet, entityKey, queryInfo);
@@ -369,6 +376,18 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
         if (oedh == null) {
             throw PersoniumCoreException.OData.NO_SUCH_ENTITY;
         }
+        return createEntityResponse(eSet, oedh, queryInfo);
+    }
+
+    /**
+     * 一件取得の検索結果からEntityResponseを作成する.
+     * @param eSet EdmEntitySet
+     * @param oedh 検索結果
+     * @param queryInfo EntityQueryInfo
+     * @return EntityResponse
+     */
+    EntityResponse createEntityResponse(EdmEntitySet eSet, EntitySetDocHandler oedh, EntityQueryInfo queryInfo) {
+        final int expandMaxNum = PersoniumUnitConfig.getMaxExpandSizeForRetrive();
 
         ExpandEntitiesMapCreator creator = new ExpandEntitiesMapCreator(queryInfo, eSet.getType(), expandMaxNum);
         Map<String, List<OEntity>> expandEntitiesMap = creator.create(oedh, this);
@@ -493,6 +512,20 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
             // スキーマチェックは上位でやっているのでEntitySetがnullを指定された時も例外を上げずにnullで返却する。
             return null;
         }
+        try {
+            return this.retrieveWithKey(entitySet, getKeyProperties(entitySet, oEntityKey), queryInfo);
+        } catch (NTKPNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * OEntityKeyから検索に用いるキーのプロパティを作成する.
+     * @param entitySet EdmEntitySet
+     * @param oEntityKey OEntityKey
+     * @return キーのプロパティ
+     */
+    Set<OProperty<?>> getKeyProperties(EdmEntitySet entitySet, OEntityKey oEntityKey) {
         Set<OProperty<?>> keys = new HashSet<OProperty<?>>();
         if (KeyType.SINGLE.equals(oEntityKey.getKeyType())) {
             String name = entitySet.getType().getKeys().get(0);
@@ -523,12 +556,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                 keys.add(p);
             }
         }
-
-        try {
-            return this.retrieveWithKey(entitySet, keys, queryInfo);
-        } catch (NTKPNotFoundException e) {
-            return null;
-        }
+        return keys;
     }
 
     /**
@@ -544,6 +572,42 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
 
         // 1. ESのクエリ作成
         String entitySetName = entitySet.getName();
+        Map<String, Object> source = getRetrieveQuery(entitySet, keys, queryInfo);
+
+        // 2. ESへのリクエスト
+        EntitySetAccessor esType = this.getAccessorForEntitySet(entitySetName);
+        PersoniumSearchResponse res = esType.search(source);
+
+        // 3. ESからの応答の評価
+        // Indexつくりたてのときはresがnullになる。データがないのでnullを返せば良い.
+        if (res == null) {
+            return null;
+        }
+        PersoniumSearchHits hits = res.getHits();
+        // ヒット件数0はしなかったらNullを返す
+        if (hits.getCount() == 0) {
+            return null;
+        }
+        // データが２件以上返ったら異常事態
+        if (hits.getAllPages() > 1) {
+            PersoniumCoreLog.OData.FOUND_MULTIPLE_RECORDS.params(hits.getAllPages()).writeLog();
+            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(new RuntimeException(
+                    "multiple records (" + hits.getAllPages() + ") found for the key ."));
+        }
+        // ここで晴れてhit数は１であることが保証されるのでその１件を返す。
+        return getDocHandler(hits.getHits()[0], entitySetName);
+    }
+
+    /**
+     * Keyに従い一件取得を行うESのクエリを作成する.
+     * @param entitySet EdmEntitySet
+     * @param keys Map<String, OProperty>
+     * @param queryInfo queryInfo
+     * @return ESのクエリ
+     */
+    Map<String, Object> getRetrieveQuery(
+            EdmEntitySet entitySet, Set<OProperty<?>> keys, EntityQueryInfo queryInfo) {
+        String entitySetName = entitySet.getName();
 
         // ESクエリは共通して次の構造となる {"filter": SOME_FILTER }
         Map<String, Object> source = new HashMap<String, Object>();
@@ -594,29 +658,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                     getImplicitFilters(entitySetName));
             queryHandler.getSelectQuery(source, queryInfo.select);
         }
-
-        // 2. ESへのリクエスト
-        EntitySetAccessor esType = this.getAccessorForEntitySet(entitySetName);
-        PersoniumSearchResponse res = esType.search(source);
-
-        // 3. ESからの応答の評価
-        // Indexつくりたてのときはresがnullになる。データがないのでnullを返せば良い.
-        if (res == null) {
-            return null;
-        }
-        PersoniumSearchHits hits = res.getHits();
-        // ヒット件数0はしなかったらNullを返す
-        if (hits.getCount() == 0) {
-            return null;
-        }
-        // データが２件以上返ったら異常事態
-        if (hits.getAllPages() > 1) {
-            PersoniumCoreLog.OData.FOUND_MULTIPLE_RECORDS.params(hits.getAllPages()).writeLog();
-            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(new RuntimeException(
-                    "multiple records (" + hits.getAllPages() + ") found for the key ."));
-        }
-        // ここで晴れてhit数は１であることが保証されるのでその１件を返す。
-        return getDocHandler(hits.getHits()[0], entitySetName);
+        return source;
     }
     private EntitySetDocHandler retrieveWithInternalId(EdmEntitySet eSet, String internalId) {
         EntitySetAccessor esType = this.getAccessorForEntitySet(eSet.getName());
@@ -706,6 +748,23 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
         return execEntitiesRequest(queryInfo, eSet, esType, implicitFilters);
     }
 
+    /**
+     * Gets the entities for a given set matching the query information.
+     * The entities are created from the search hits one by one as they are read.
+     * @param entitySetName the entity-set name for entities to return
+     * @param queryInfo the additional constraints to apply to the entities
+     * @return a packaged collection of entities to pass back to the client
+     */
+    @Override
+    public LazyEntitiesResponse getEntitiesLazily(final String entitySetName, final QueryInfo queryInfo) {
+        EdmEntitySet eSet = this.getMetadata().findEdmEntitySet(entitySetName);
+        EntitySetAccessor esType = this.getAccessorForEntitySet(entitySetName);
+        List<Map<String, Object>> implicitFilters = getImplicitFilters(entitySetName);
+        PersoniumSearchResponse res = searchEntities(queryInfo, eSet, esType, implicitFilters);
+        return createLazyEntitiesResponse(queryInfo, eSet, getHits(res), getInlineCount(queryInfo, res),
+                getNextSkipToken(queryInfo, res));
+    }
+
     /**
      * Cell / Box / Node / EntityTypeに基づいた暗黙フィルタの作成.
      * @param entitySetName エンティティセット名
@@ -731,11 +790,25 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
             EdmEntitySet eSet,
             EntitySetAccessor esType,
             List<Map<String, Object>> implicitFilters) {
-        final int expandMaxNum = PersoniumUnitConfig.getMaxExpandSizeForList();
+        PersoniumSearchResponse res = searchEntities(queryInfo, eSet, esType, implicitFilters);
+        return createEntitiesResponse(queryInfo, eSet, getHits(res), getInlineCount(queryInfo, res),
+                getNextSkipToken(queryInfo, res));
+    }
 
+    /**
+     * 一覧取得の検索を実行する.
+     * @param queryInfo クエリ情報
+     * @param eSet エンティティセット
+     * @param esType アクセサオブジェクト
+     * @param implicitFilters 暗黙的な検索条件
+     * @return 検索結果. Indexが存在しない場合はnull
+     */
+    private PersoniumSearchResponse searchEntities(final QueryInfo queryInfo,
+            EdmEntitySet eSet,
+            EntitySetAccessor esType,
+            List<Map<String, Object>> implicitFilters) {
         // 条件検索等。
-        ODataQueryHandler visitor = getODataQueryHandler(queryInfo, eSet.getType(), implicitFilters);
-        Map<String, Object> source = visitor.getSource();
+        Map<String, Object> source = getEntitiesQuery(queryInfo, eSet, implicitFilters);
 
         PersoniumSearchResponse res = null;
         try {
@@ -745,6 +818,10 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                 throw PersoniumCoreException.Server.DATA_STORE_SEARCH_ERROR.reason(ex);
             }
         }
+        return res;
+    }
+
+    private Integer getInlineCount(final QueryInfo queryInfo, PersoniumSearchResponse res) {
         // inlinecountの指定がallpagesの場合のみヒット件数を返却する
         Integer count = null;
         if (queryInfo != null && queryInfo.inlineCount != null && queryInfo.inlineCount.equals(InlineCount.ALLPAGES)) {
@@ -754,9 +831,85 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                 count = (int) res.getHits().getAllPages();
             }
         }
-        List<OEntity> entList = new ArrayList<OEntity>();
+        return count;
+    }
+
+    private PersoniumSearchHit[] getHits(PersoniumSearchResponse res) {
+        PersoniumSearchHit[] hits = null;
         if (res != null) {
-            PersoniumSearchHit[] hits = res.getHits().getHits();
+            hits = res.getHits().getHits();
+        }
+        return hits;
+    }
+
+    /**
+     * 検索結果の続きがある場合に、次ページを取得するための$skiptokenを作成する.
+     * @param queryInfo クエリ情報
+     * @param res 検索結果. Indexが存在しない場合はnull
+     * @return $skiptoken. 次ページがない場合、$skiptokenによるページングを行わない場合はnull
+     */
+    private String getNextSkipToken(final QueryInfo queryInfo, PersoniumSearchResponse res) {
+        if (res == null || !SkipToken.isApplicable(queryInfo)) {
+            return null;
+        }
+        PersoniumSearchHit[] hits = res.getHits().getHits();
+        long skip = 0;
+        if (queryInfo.skip != null) {
+            skip = queryInfo.skip;
+        }
+        if (hits.length == 0 || res.getHits().getAllPages() <= skip + hits.length) {
+            return null;
+        }
+        return SkipToken.encode(hits[hits.length - 1]);
+    }
+
+    /**
+     * 一覧取得を行うESのクエリを作成する.
+     * @param queryInfo クエリ情報
+     * @param eSet エンティティセット
+     * @param implicitFilters 暗黙的な検索条件
+     * @return ESのクエリ
+     */
+    Map<String, Object> getEntitiesQuery(final QueryInfo queryInfo,
+            EdmEntitySet eSet,
+            List<Map<String, Object>> implicitFilters) {
+        ODataQueryHandler visitor = getODataQueryHandler(queryInfo, eSet.getType(), implicitFilters);
+        return visitor.getSource();
+    }
+
+    /**
+     * 一覧取得の検索結果からEntitiesResponseを作成する.
+     * @param queryInfo クエリ情報
+     * @param eSet エンティティセット
+     * @param hits 検索結果. Indexが存在しない場合はnull
+     * @param count $inlinecountで返却するヒット件数
+     * @return EntitiesResponse エンティティ一覧
+     */
+    EntitiesResponse createEntitiesResponse(final QueryInfo queryInfo,
+            EdmEntitySet eSet,
+            PersoniumSearchHit[] hits,
+            Integer count) {
+        return createEntitiesResponse(queryInfo, eSet, hits, count, null);
+    }
+
+    /**
+     * 一覧取得の検索結果からEntitiesResponseを作成する.
+     * @param queryInfo クエリ情報
+     * @param eSet エンティティセット
+     * @param hits 検索結果. Indexが存在しない場合はnull
+     * @param count $inlinecountで返却するヒット件数
+     * @param skipToken 次ページを取得するための$skiptoken
+     * @return EntitiesResponse エンティティ一覧
+     */
+    EntitiesResponse createEntitiesResponse(final QueryInfo queryInfo,
+            EdmEntitySet eSet,
+            PersoniumSearchHit[] hits,
+            Integer count,
+            String skipToken) {
+        final int expandMaxNum = PersoniumUnitConfig.getMaxExpandSizeForList();
+
+        List<OEntity> entList = new ArrayList<OEntity>();
+        if (hits != null) {
             Map<String, List<OEntity>> expandEntitiesMap = null;
 
             Map<String, String> ntkpProperties = new HashMap<String, String>();
@@ -797,28 +950,118 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                     kv.add(v);
                 }
                 expandEntitiesMap = creator.create(oedh, this);
+                entList.add(createListedOEntity(oedh, eSet, expandEntitiesMap, ntkpProperties, ntkpValueMap,
+                        selectQuery, expandMaxNum));
+            }
+        }
+        return Responses.entities(entList, eSet, count, skipToken);
+    }
 
-                // NTKPHashMapから値を設定する
-                Map<String, Object> staticFields = oedh.getStaticFields();
-                Map<String, Object> links = oedh.getManyToOnelinkId();
-                for (Map.Entry<String, String> ntkpProperty : ntkpProperties.entrySet()) {
-                    String linksKey = getLinkskey(ntkpProperty.getValue());
-                    if (links.containsKey(linksKey)) {
-                        String linkId = links.get(linksKey).toString();
-                        staticFields.put(ntkpProperty.getKey(), ntkpValueMap.get(ntkpProperty.getKey() + linkId));
-                    } else {
-                        staticFields.put(ntkpProperty.getKey(), null);
-                    }
+    /**
+     * 一覧取得の検索結果から、エンティティを読み出す際に1件ずつ作成するEntitiesResponseを作成する.
+     * <p>
+     * $expand needs the related entities of all hits to be searched together, so in that case the entities are
+     * created up front as in {@link #createEntitiesResponse}. Otherwise each hit is converted when it is read and
+     * released from the hits array, so only the entity being written is held besides the search result.
+     * </p>
+     * @param queryInfo クエリ情報
+     * @param eSet エンティティセット
+     * @param hits 検索結果. Indexが存在しない場合はnull
+     * @param count $inlinecountで返却するヒット件数
+     * @param skipToken 次ページを取得するための$skiptoken
+     * @return EntitiesResponse エンティティ一覧
+     */
+    LazyEntitiesResponse createLazyEntitiesResponse(final QueryInfo queryInfo,
+            final EdmEntitySet eSet,
+            final PersoniumSearchHit[] hits,
+            Integer count,
+            String skipToken) {
+        if (hits == null || hits.length == 0
+                || queryInfo != null && queryInfo.expand != null && !queryInfo.expand.isEmpty()) {
+            EntitiesResponse response = createEntitiesResponse(queryInfo, eSet, hits, count);
+            return new LazyEntitiesResponse(response.getEntities().iterator(), eSet, count, skipToken);
+        }
+        final int expandMaxNum = PersoniumUnitConfig.getMaxExpandSizeForList();
+
+        final Map<String, String> ntkpProperties = new HashMap<String, String>();
+        final Map<String, String> ntkpValueMap = new HashMap<String, String>();
+        getNtkpValueMap(eSet, ntkpProperties, ntkpValueMap);
+
+        final List<EntitySimpleProperty> selectQuery = queryInfo == null ? null : queryInfo.select;
+
+        // Propert/ComplexTypePropertyと、Aliasのマッピングデータを作成する
+        if (this.propertyAliasMap != null) {
+            setEntityPropertyMap(eSet, hits, ntkpValueMap);
+        }
+        final ExpandEntitiesMapCreator creator =
+                new ExpandEntitiesMapCreator(queryInfo, eSet.getType(), expandMaxNum);
+
+        Iterator<OEntity> source = new Iterator<OEntity>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < hits.length;
+            }
+
+            @Override
+            public OEntity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
                 }
-                oedh.setStaticFields(staticFields);
+                PersoniumSearchHit hit = hits[this.index];
+                // 変換済みの検索結果は参照を外し、GCの対象とする
+                hits[this.index++] = null;
+                EntitySetDocHandler oedh = getDocHandler(hit, eSet.getName());
+                Map<String, List<OEntity>> expandEntitiesMap = creator.create(oedh, EsODataProducer.this);
+                return createListedOEntity(oedh, eSet, expandEntitiesMap, ntkpProperties, ntkpValueMap,
+                        selectQuery, expandMaxNum);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return new LazyEntitiesResponse(source, eSet, count, skipToken);
+    }
 
-                ((OEntityDocHandler) oedh).setExpandMaxNum(expandMaxNum);
-                OEntityWrapper oEntity = oedh.createOEntity(eSet, this.getMetadata(), expandEntitiesMap, selectQuery);
-                entList.add(oEntity);
-                setEntityTypeIds(oEntity, staticFields);
+    /**
+     * 一覧取得の検索結果1件からOEntityを作成する.
+     * @param oedh 検索結果のドキュメントハンドラ
+     * @param eSet エンティティセット
+     * @param expandEntitiesMap $expandで展開するエンティティ
+     * @param ntkpProperties NTKPのプロパティ
+     * @param ntkpValueMap NTKPの値
+     * @param selectQuery $selectの指定
+     * @param expandMaxNum $expandで展開する最大件数
+     * @return OEntity
+     */
+    private OEntityWrapper createListedOEntity(EntitySetDocHandler oedh,
+            EdmEntitySet eSet,
+            Map<String, List<OEntity>> expandEntitiesMap,
+            Map<String, String> ntkpProperties,
+            Map<String, String> ntkpValueMap,
+            List<EntitySimpleProperty> selectQuery,
+            int expandMaxNum) {
+        // NTKPHashMapから値を設定する
+        Map<String, Object> staticFields = oedh.getStaticFields();
+        Map<String, Object> links = oedh.getManyToOnelinkId();
+        for (Map.Entry<String, String> ntkpProperty : ntkpProperties.entrySet()) {
+            String linksKey = getLinkskey(ntkpProperty.getValue());
+            if (links.containsKey(linksKey)) {
+                String linkId = links.get(linksKey).toString();
+                staticFields.put(ntkpProperty.getKey(), ntkpValueMap.get(ntkpProperty.getKey() + linkId));
+            } else {
+                staticFields.put(ntkpProperty.getKey(), null);
             }
         }
-        return Responses.entities(entList, eSet, count, null);
+        oedh.setStaticFields(staticFields);
+
+        ((OEntityDocHandler) oedh).setExpandMaxNum(expandMaxNum);
+        OEntityWrapper oEntity = oedh.createOEntity(eSet, this.getMetadata(), expandEntitiesMap, selectQuery);
+        setEntityTypeIds(oEntity, staticFields);
+        return oEntity;
     }
 
     /**
@@ -1269,6 +1512,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                 throw PersoniumCoreException.OData.REQUEST_FIELD_FORMAT_ERROR.params("uri");
             }
             createLinks(sourceEntity, srcNavProp, assoc, src, tgt);
+            afterChangeLinks();
         } finally {
             log.debug("unlock");
             lock.release();
@@ -1462,6 +1706,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
             // $linksの登録
             entity = createNavigationPropertyLink(sourceOEntity, entity, srcNavProp, sourceDocHandler, retrievedEntity);
             res = Responses.entity(entity);
+            afterChangeLinks();
 
         } finally {
             log.debug("unlock");
@@ -2023,6 +2268,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
                 // n:1の場合、1のデータのリンク情報から該当する項目を削除する
                 deleteLinks(sourceEntityId, targetEntityKey, tgtSet, oneAssoc);
             }
+            afterChangeLinks();
         } finally {
             log.debug("unlock");
             lock.release();
@@ -2971,6 +3217,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
 
             // リンク情報を登録する
             bulkCreateLinks(npBulkContexts, getCellId());
+            afterChangeLinks();
         } finally {
             lock.release();
             log.debug("bulkCreateEntityViaNavigationProperty release lock");
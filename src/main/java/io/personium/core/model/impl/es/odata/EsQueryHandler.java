@@ -153,7 +153,13 @@ public class EsQueryHandler implements ExpressionVisitor, ODataQueryHandler {
      * @param implicitConds 暗黙検索条件.
      */
     public void initialize(QueryInfo queryInfo, List<Map<String, Object>> implicitConds) {
+        // 暗黙条件はスコアに影響しないため、キャッシュ可能なフィルタとして先頭に設定する
         List<Map<String, Object>> filters = new ArrayList<Map<String, Object>>();
+        if (implicitConds != null) {
+            filters.addAll(implicitConds);
+        }
+        // スコアリングは全文検索($q)の場合のみ行う
+        List<Map<String, Object>> queries = new ArrayList<Map<String, Object>>();
         if (queryInfo != null) {
             if (queryInfo.filter != null) {
                 this.stack.push(this.source);
@@ -178,9 +184,7 @@ public class EsQueryHandler implements ExpressionVisitor, ODataQueryHandler {
                         all.put("_all", map);
                         Map<String, Object> match = new HashMap<String, Object>();
                         match.put("match", all);
-                        Map<String, Object> query = new HashMap<String, Object>();
-                        query.put("query", match);
-                        filters.add(query);
+                        queries.add(match);
                     }
                 }
             }
@@ -189,18 +193,23 @@ public class EsQueryHandler implements ExpressionVisitor, ODataQueryHandler {
             this.setSkip(queryInfo.skip);
             this.setOrderBy(queryInfo.orderBy);
             this.setSelect(queryInfo.select);
+
+            // $skiptokenによるページングでは、前ページの最後のエンティティより後から検索する
+            if (SkipToken.isApplicable(queryInfo)) {
+                if (queryInfo.skipToken != null) {
+                    filters.add(SkipToken.getFilter(queryInfo));
+                }
+                this.source.put("sort", SkipToken.getSort());
+            }
+        }
+        Map<String, Object> query = null;
+        if (!queries.isEmpty()) {
+            query = QueryMapFactory.mustQuery(queries);
         }
-        Map<String, Object> filter = new HashMap<String, Object>();
         if (!filters.isEmpty()) {
-            Map<String, Object> and = new HashMap<String, Object>();
-            and.put("filters", filters);
-            filter.put("and", and);
+            query = QueryMapFactory.filteredQuery(query, QueryMapFactory.boolFilter(filters));
         }
-        this.source.put("filter", filter);
-
-        // 暗黙条件の設定があるとき
-        if (implicitConds != null && implicitConds.size() != 0) {
-            Map<String, Object> query = QueryMapFactory.filteredQuery(null, QueryMapFactory.mustQuery(implicitConds));
+        if (query != null) {
             this.source.put("query", query);
         }
 
@@ -18,6 +18,7 @@ package io.personium.core.model.impl.es.odata;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,7 @@ import io.personium.common.es.response.PersoniumItem;
 import io.personium.common.es.response.PersoniumMultiSearchResponse;
 import io.personium.common.es.response.PersoniumSearchHit;
 import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.ctl.Property;
 import io.personium.core.model.impl.es.QueryMapFactory;
 import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
@@ -44,12 +46,26 @@ import io.personium.core.utils.ODataUtils;
 
 /**
  * ODataProducerUtils.
+ * <p>
+ * A nested $expand such as "_Order/_Line" is resolved level by level. The entities of a level are searched for
+ * all of the base entities together, and the next level is resolved by a creator for the entities found, so the
+ * number of searches depends on the $expand paths and not on the number of base entities.
+ * </p>
  */
 public final class ExpandEntitiesMapCreator {
 
+    // $expandのナビゲーションプロパティの区切り文字
+    private static final String PATH_SEPARATOR = "/";
+
     // Expandで指定されたナビゲーションプロパティ名の一覧
     private List<String> navigationPropertyList = new ArrayList<String>();
 
+    // ナビゲーションプロパティ毎の、展開先をさらに展開するためのExpandEntitiesMapCreator
+    private Map<String, ExpandEntitiesMapCreator> nestedCreatorMap = new HashMap<String, ExpandEntitiesMapCreator>();
+
+    // Expandの階層（1階層目が1）
+    private int depth;
+
     // Expand元のエンティティタイプ型
     private EdmEntityType edmBaseEntityType;
 
@@ -71,26 +87,68 @@ public final class ExpandEntitiesMapCreator {
     public ExpandEntitiesMapCreator(final QueryInfo queryInfo,
             final EdmEntityType baseEntityType,
             final int expandMaxNum) {
-        if (isExpandQueryExists(queryInfo)) {
-            setNavigationPropertyList(queryInfo, baseEntityType);
-        }
+        this(getExpandPaths(queryInfo), baseEntityType, expandMaxNum, 1);
+    }
+
+    /**
+     * コンストラクタ.
+     * @param expandPaths $expandの一覧
+     * @param baseEntityType Expand元のエンティティタイプ型
+     * @param expandMaxNum Expandエンティティの最大取得件数
+     * @param depth Expandの階層
+     */
+    private ExpandEntitiesMapCreator(final List<String> expandPaths,
+            final EdmEntityType baseEntityType,
+            final int expandMaxNum,
+            final int depth) {
         this.edmBaseEntityType = baseEntityType;
         this.expandMaxNum = expandMaxNum;
+        this.depth = depth;
+        setNavigationPropertyList(expandPaths, baseEntityType);
     }
 
-    private boolean isExpandQueryExists(final QueryInfo queryInfo) {
-        return queryInfo != null && queryInfo.expand != null && !queryInfo.expand.isEmpty();
+    private static List<String> getExpandPaths(final QueryInfo queryInfo) {
+        List<String> expandPaths = new ArrayList<String>();
+        if (queryInfo != null && queryInfo.expand != null) {
+            for (EntitySimpleProperty qinfo : queryInfo.expand) {
+                expandPaths.add(qinfo.getPropertyName());
+            }
+        }
+        return expandPaths;
     }
 
-    private void setNavigationPropertyList(final QueryInfo queryInfo, EdmEntityType edmType) {
-        for (EntitySimpleProperty qinfo : queryInfo.expand) {
-            String navigationPropertyName = qinfo.getPropertyName();
+    private void setNavigationPropertyList(final List<String> expandPaths, EdmEntityType edmType) {
+        Map<String, List<String>> nestedExpandMap = new HashMap<String, List<String>>();
+        for (String expandPath : expandPaths) {
+            // "_A/_B"の形式の場合は先頭のナビゲーションプロパティをこの階層で展開し、残りは展開先で展開する
+            String[] names = expandPath.split(PATH_SEPARATOR, 2);
+            String navigationPropertyName = names[0];
             EdmNavigationProperty edmNavProp = edmType.findNavigationProperty(navigationPropertyName);
             // スキーマに存在しないNavigationPropertyを指定した場合はエラーとする
             if (edmNavProp == null) {
                 throw PersoniumCoreException.OData.EXPAND_NTKP_NOT_FOUND_ERROR.params(navigationPropertyName);
             }
-            this.navigationPropertyList.add(navigationPropertyName);
+            if (!this.navigationPropertyList.contains(navigationPropertyName)) {
+                this.navigationPropertyList.add(navigationPropertyName);
+            }
+            if (names.length > 1) {
+                // 階層の上限を超える$expandはエラーとする
+                if (this.depth >= PersoniumUnitConfig.getExpandDepthMaxSize()) {
+                    throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params("$expand", expandPath);
+                }
+                if (!nestedExpandMap.containsKey(navigationPropertyName)) {
+                    nestedExpandMap.put(navigationPropertyName, new ArrayList<String>());
+                }
+                nestedExpandMap.get(navigationPropertyName).add(names[1]);
+            }
+        }
+
+        // 展開先の$expandは展開先のエンティティタイプで検証する
+        int nestedExpandMaxNum = Math.min(this.expandMaxNum, PersoniumUnitConfig.getMaxExpandSizeForNested());
+        for (Map.Entry<String, List<String>> entry : nestedExpandMap.entrySet()) {
+            EdmEntityType nestedEntityType = edmType.findNavigationProperty(entry.getKey()).getToRole().getType();
+            this.nestedCreatorMap.put(entry.getKey(), new ExpandEntitiesMapCreator(entry.getValue(),
+                    nestedEntityType, nestedExpandMaxNum, this.depth + 1));
         }
     }
 
@@ -167,7 +225,9 @@ public final class ExpandEntitiesMapCreator {
             return;
         }
 
-        // 検索結果をrelatedEntitieslistに追加する
+        // 検索結果をナビゲーションプロパティ毎に振り分ける
+        Map<String, String> entityTypeNameNavPropNameMap = getEntityTypeNameNavPropNameMap();
+        Map<String, List<RelatedEntity>> relatedEntitiesMap = new LinkedHashMap<String, List<RelatedEntity>>();
         for (PersoniumItem item : multiSearchResponse) {
             PersoniumSearchHit[] searchHits = item.getSearchHits();
             for (PersoniumSearchHit hit : searchHits) {
@@ -196,17 +256,42 @@ public final class ExpandEntitiesMapCreator {
                     }
                 }
 
-                // DocHander生成
-                EdmEntitySet edmEntitySet = producer.getMetadata().getEdmEntitySet(entityTypeName);
-                producer.setNavigationTargetKeyProperty(edmEntitySet, docHandler);
-                OEntity relatedEntity = docHandler.createOEntity(edmEntitySet);
-
                 // エンティティタイプ名からNavigationProperty名を取得
-                Map<String, String> entityTypeNameNavPropNameMap = getEntityTypeNameNavPropNameMap();
                 String navPropName = entityTypeNameNavPropNameMap.get(entityTypeName);
+                if (!relatedEntitiesMap.containsKey(navPropName)) {
+                    relatedEntitiesMap.put(navPropName, new ArrayList<RelatedEntity>());
+                }
+                relatedEntitiesMap.get(navPropName).add(
+                        new RelatedEntity(docHandler, entityTypeName, baseEntityIds));
+            }
+        }
+
+        // 検索結果をrelatedEntitieslistに追加する
+        for (Map.Entry<String, List<RelatedEntity>> entry : relatedEntitiesMap.entrySet()) {
+            String navPropName = entry.getKey();
+            List<RelatedEntity> relatedEntities = entry.getValue();
+
+            // 展開先でさらに展開する場合は、展開先のエンティティ全件分をまとめて取得する
+            ExpandEntitiesMapCreator nestedCreator = setNestedCache(navPropName, relatedEntities, producer);
+
+            for (RelatedEntity related : relatedEntities) {
+                EntitySetDocHandler docHandler = related.docHandler;
+
+                // DocHander生成
+                EdmEntitySet edmEntitySet = producer.getMetadata().getEdmEntitySet(related.entityTypeName);
+                producer.setNavigationTargetKeyProperty(edmEntitySet, docHandler);
+                Map<String, List<OEntity>> nestedEntitiesMap = null;
+                if (nestedCreator != null) {
+                    nestedEntitiesMap = nestedCreator.create(docHandler, producer);
+                    // 展開先の展開件数の上限は2階層目以降の上限に従う
+                    if (docHandler instanceof OEntityDocHandler) {
+                        ((OEntityDocHandler) docHandler).setExpandMaxNum(nestedCreator.expandMaxNum);
+                    }
+                }
+                OEntity relatedEntity = docHandler.createOEntity(edmEntitySet, null, nestedEntitiesMap, null);
 
                 // リンク元一覧に含まれないエンティティはキャッシュ対象外とする
-                for (String baseEntityId : baseEntityIds) {
+                for (String baseEntityId : related.baseEntityIds) {
                     if (this.relatedEntitiesListCache.containsKey(baseEntityId)) {
                         Map<String, List<OEntity>> relatedEntitiesList = this.relatedEntitiesListCache
                                 .get(baseEntityId);
@@ -223,6 +308,28 @@ public final class ExpandEntitiesMapCreator {
         }
     }
 
+    /**
+     * 展開先のエンティティをさらに展開するためのキャッシュを作成する.
+     * @param navPropName ナビゲーションプロパティ名
+     * @param relatedEntities 展開先のエンティティ一覧
+     * @param producer producer
+     * @return ExpandEntitiesMapCreator. 展開先で展開しない場合はnull
+     */
+    private ExpandEntitiesMapCreator setNestedCache(String navPropName,
+            List<RelatedEntity> relatedEntities,
+            EsODataProducer producer) {
+        ExpandEntitiesMapCreator nestedCreator = this.nestedCreatorMap.get(navPropName);
+        if (nestedCreator == null) {
+            return null;
+        }
+        List<EntitySetDocHandler> docHandlers = new ArrayList<EntitySetDocHandler>();
+        for (RelatedEntity related : relatedEntities) {
+            docHandlers.add(related.docHandler);
+        }
+        nestedCreator.setCache(docHandlers, producer);
+        return nestedCreator;
+    }
+
     /**
      * $expand指定されたEntityを取得する.
      * @param baseEntity Expand元のエンティティ
@@ -504,4 +611,18 @@ public final class ExpandEntitiesMapCreator {
         return map;
     }
 
+    /**
+     * Expand先のエンティティと、そのリンク元エンティティのID一覧.
+     */
+    private static final class RelatedEntity {
+        private final EntitySetDocHandler docHandler;
+        private final String entityTypeName;
+        private final List<String> baseEntityIds;
+
+        RelatedEntity(EntitySetDocHandler docHandler, String entityTypeName, List<String> baseEntityIds) {
+            this.docHandler = docHandler;
+            this.entityTypeName = entityTypeName;
+            this.baseEntityIds = baseEntityIds;
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.odata4j.producer.QueryInfo;
+
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * 一覧取得の$skiptokenを扱うクラス.
+ * <p>
+ * The token is an opaque cursor holding the sort values of the last entity of a page, a Base64url encoded JSON
+ * array. The next page is searched with a range filter starting after those values instead of "from", so a deep
+ * page costs the same as the first one. Only the default order, which sorts by _uid, is paged this way; a feed
+ * with $orderby is paged with $skip as before.
+ * </p>
+ */
+final class SkipToken {
+
+    /** カーソルのソートキー. */
+    static final String SORT_KEY = "_uid";
+
+    private SkipToken() {
+    }
+
+    /**
+     * $skiptokenによるページングを行う検索か否かを返却する.
+     * @param queryInfo クエリ情報
+     * @return $skiptokenが指定された場合、または$orderbyの指定がなく$skiptokenが有効な場合はtrue
+     */
+    static boolean isApplicable(QueryInfo queryInfo) {
+        if (queryInfo == null) {
+            return false;
+        }
+        if (queryInfo.skipToken != null) {
+            return true;
+        }
+        return queryInfo.orderBy == null && PersoniumUnitConfig.getSkipTokenEnabled();
+    }
+
+    /**
+     * 検索結果の最後のエンティティから次ページの$skiptokenを作成する.
+     * @param lastHit ページの最後のエンティティ
+     * @return $skiptoken
+     */
+    @SuppressWarnings("unchecked")
+    static String encode(PersoniumSearchHit lastHit) {
+        JSONArray sortValues = new JSONArray();
+        sortValues.add(lastHit.getType() + "#" + lastHit.getId());
+        byte[] json = sortValues.toJSONString().getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+    }
+
+    /**
+     * $skiptokenのソート順を返却する.
+     * @return ソート条件
+     */
+    static List<Map<String, Object>> getSort() {
+        Map<String, Object> sortOption = new HashMap<String, Object>();
+        sortOption.put("order", EsQueryHandler.SORT_ASC);
+        Map<String, Object> sort = new HashMap<String, Object>();
+        sort.put(SORT_KEY, sortOption);
+        List<Map<String, Object>> sortList = new ArrayList<Map<String, Object>>();
+        sortList.add(sort);
+        return sortList;
+    }
+
+    /**
+     * $skiptokenが指すエンティティより後のエンティティを検索する条件を返却する.
+     * @param queryInfo クエリ情報
+     * @return 検索条件
+     */
+    static Map<String, Object> getFilter(QueryInfo queryInfo) {
+        if (queryInfo.orderBy != null) {
+            // $skiptokenは$orderbyの指定がない一覧取得に対してのみ返却している
+            throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params("$skiptoken", queryInfo.skipToken);
+        }
+        String lastUid = decode(queryInfo.skipToken);
+        Map<String, Object> gt = new HashMap<String, Object>();
+        gt.put("gt", lastUid);
+        Map<String, Object> field = new HashMap<String, Object>();
+        field.put(SORT_KEY, gt);
+        Map<String, Object> range = new HashMap<String, Object>();
+        range.put("range", field);
+        return range;
+    }
+
+    private static String decode(String token) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            Object sortValues = new JSONParser().parse(json);
+            if (sortValues instanceof JSONArray && ((JSONArray) sortValues).size() == 1
+                    && ((JSONArray) sortValues).get(0) instanceof String) {
+                return (String) ((JSONArray) sortValues).get(0);
+            }
+        } catch (IllegalArgumentException e) {
+            // Base64の形式誤り
+            EsQueryHandler.log.debug("Invalid $skiptoken: " + token);
+        } catch (ParseException e) {
+            // JSONの形式誤り
+            EsQueryHandler.log.debug("Invalid $skiptoken: " + token);
+        }
+        throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params("$skiptoken", token);
+    }
+}
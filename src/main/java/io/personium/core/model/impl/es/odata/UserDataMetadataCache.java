@@ -0,0 +1,115 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.odata4j.edm.EdmDataServices;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * Node local cache of parsed user data schemas.
+ * <p>
+ * Holds the EdmDataServices parsed from the EDMX stored in UserDataSchemaCache,
+ * keyed by node id and schema version, so that the XML is parsed at most once per schema change per JVM.
+ * </p>
+ */
+class UserDataMetadataCache {
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) { //NOPMD
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > PersoniumUnitConfig.getLocalCacheMaxEntries();
+        }
+    };
+
+    private UserDataMetadataCache() {
+    }
+
+    /**
+     * Returns the parsed schema of the given version.
+     * @param nodeId node id of the OData service collection
+     * @param version schema version
+     * @return parsed schema. null if not cached or the version differs
+     */
+    static Entry get(String nodeId, String version) {
+        if (version == null || !PersoniumUnitConfig.isLocalCacheEnabled()) {
+            return null;
+        }
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(nodeId);
+            if (entry == null) {
+                return null;
+            }
+            if (!version.equals(entry.version)) {
+                ENTRIES.remove(nodeId);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Caches the parsed schema.
+     * @param nodeId node id of the OData service collection
+     * @param entry parsed schema
+     */
+    static void put(String nodeId, Entry entry) {
+        if (entry.version == null || !PersoniumUnitConfig.isLocalCacheEnabled()) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            ENTRIES.put(nodeId, entry);
+        }
+    }
+
+    /**
+     * Removes the parsed schema.
+     * Called when the schema is changed on this node. Other nodes notice the change by the version.
+     * @param nodeId node id of the OData service collection
+     */
+    static void remove(String nodeId) {
+        synchronized (ENTRIES) {
+            ENTRIES.remove(nodeId);
+        }
+    }
+
+    /**
+     * Parsed user data schema.
+     * EdmDataServices is immutable and shared. The maps must be copied before handing them to a producer.
+     */
+    static final class Entry {
+        final String version;
+        final EdmDataServices metadata;
+        final Map<String, String> entityTypeIds;
+        final Map<String, PropertyAlias> propertyAliasMap;
+        final Map<String, String> entityTypeMap;
+
+        Entry(String version, EdmDataServices metadata, Map<String, String> entityTypeIds,
+                Map<String, PropertyAlias> propertyAliasMap, Map<String, String> entityTypeMap) {
+            this.version = version;
+            this.metadata = metadata;
+            this.entityTypeIds = entityTypeIds;
+            this.propertyAliasMap = propertyAliasMap;
+            this.entityTypeMap = entityTypeMap;
+        }
+    }
+}
@@ -19,15 +19,18 @@ package io.personium.core.model.impl.es.odata;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.UUID;
 
 import net.spy.memcached.internal.CheckedOperationTimeoutException;
 
 import org.odata4j.core.OEntity;
+import org.odata4j.core.OEntityId;
 import org.odata4j.core.OEntityKey;
 import org.odata4j.edm.EdmDataServices;
 import org.odata4j.edm.EdmEntitySet;
@@ -36,6 +39,7 @@ import org.odata4j.edm.EdmSimpleType;
 import org.odata4j.expression.OrderByExpression;
 import org.odata4j.format.xml.EdmxFormatWriter;
 import org.odata4j.producer.EntitiesResponse;
+import org.odata4j.producer.EntityResponse;
 import org.odata4j.producer.InlineCount;
 import org.odata4j.producer.QueryInfo;
 import org.odata4j.producer.resources.OptionsQueryParser;
@@ -47,6 +51,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.personium.common.es.response.PersoniumGetResponse;
+import io.personium.common.es.response.PersoniumItem;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
 import io.personium.common.es.response.PersoniumSearchHit;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.PersoniumCoreException;
@@ -244,9 +250,21 @@ public class UserDataODataProducer extends EsODataProducer {
             }
 
         } else {
-            this.entityTypeIds = (Map<String, String>) cache.get("entityTypeIds");
-            setPropertyAliasMap((Map<String, PropertyAlias>) cache.get("propertyAliasMap"));
-            setEntityTypeMap((Map<String, String>) cache.get("entityTypeMap"));
+            // Reuse the schema already parsed in this JVM if its version has not changed.
+            String version = (String) cache.get("version");
+            UserDataMetadataCache.Entry parsed = UserDataMetadataCache.get(this.getNodeId(), version);
+            if (parsed != null) {
+                this.entityTypeIds = new HashMap<String, String>(parsed.entityTypeIds);
+                setPropertyAliasMap(new HashMap<String, PropertyAlias>(parsed.propertyAliasMap));
+                setEntityTypeMap(new HashMap<String, String>(parsed.entityTypeMap));
+                this.metadata = parsed.metadata;
+                return;
+            }
+            // The maps are kept by the near cache too, so this producer works on copies
+            this.entityTypeIds = new HashMap<String, String>((Map<String, String>) cache.get("entityTypeIds"));
+            setPropertyAliasMap(new HashMap<String, PropertyAlias>(
+                    (Map<String, PropertyAlias>) cache.get("propertyAliasMap")));
+            setEntityTypeMap(new HashMap<String, String>((Map<String, String>) cache.get("entityTypeMap")));
             // 取得した情報を設定する
             // XMLパーサ(StAX,SAX,DOM)にInputStreamをそのまま渡すとファイル一覧の取得処理が
             // 中断してしまうため暫定対処としてバッファに格納してからパースする
@@ -267,6 +285,10 @@ public class UserDataODataProducer extends EsODataProducer {
                 throw tw;
             }
             this.metadata = metacache;
+            UserDataMetadataCache.put(this.getNodeId(), new UserDataMetadataCache.Entry(version, metacache,
+                    new HashMap<String, String>(this.entityTypeIds),
+                    new HashMap<String, PropertyAlias>(getPropertyAliasMap()),
+                    new HashMap<String, String>(getEntityTypeMap())));
         }
     }
 
@@ -285,6 +307,7 @@ public class UserDataODataProducer extends EsODataProducer {
             return null;
         }
         cache.put("edmx", w.toString());
+        cache.put("version", UUID.randomUUID().toString());
         return cache;
     }
 
@@ -488,6 +511,7 @@ public class UserDataODataProducer extends EsODataProducer {
             long count = accessor.count(queryMap);
             if (0 != count) {
                 UserDataSchemaCache.clear(this.davCmp.getId());
+                UserDataMetadataCache.remove(this.davCmp.getId());
                 throw PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS;
             }
 
@@ -496,6 +520,7 @@ public class UserDataODataProducer extends EsODataProducer {
             }
 
             UserDataSchemaCache.clear(this.davCmp.getId());
+            UserDataMetadataCache.remove(this.davCmp.getId());
             reloadMetadata();
         }
     }
@@ -636,6 +661,150 @@ public class UserDataODataProducer extends EsODataProducer {
         return entityTypeIds;
     }
 
+    /**
+     * キー指定の一件取得をまとめて行う.
+     * <p>
+     * All entity sets of user data are stored in one type, so the searches are sent in one multi search and run
+     * concurrently in the data store. An entity that is not found, or could not be resolved from the multi search,
+     * is returned as null; the caller retrieves it individually so that errors are reported as before.
+     * </p>
+     * @param entityIds 取得するEntityのOEntityIdのリスト
+     * @return entityIdsの順の取得結果
+     */
+    public List<EntityResponse> getEntities(List<OEntityId> entityIds) {
+        List<EntityResponse> results = new ArrayList<EntityResponse>(
+                Collections.<EntityResponse>nCopies(entityIds.size(), null));
+        List<Map<String, Object>> queries = new ArrayList<Map<String, Object>>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < entityIds.size(); i++) {
+            OEntityId entityId = entityIds.get(i);
+            EdmEntitySet eSet = getMetadata().findEdmEntitySet(entityId.getEntitySetName());
+            if (eSet == null) {
+                continue;
+            }
+            try {
+                Map<String, Object> source = getRetrieveQuery(eSet,
+                        getKeyProperties(eSet, entityId.getEntityKey()), null);
+                // 複数件ヒットする異常を検出できるよう2件まで取得する
+                source.put("size", 2);
+                queries.add(source);
+                indexes.add(i);
+            } catch (RuntimeException e) {
+                // 個別に取得してエラーとする
+                continue;
+            }
+        }
+
+        List<PersoniumSearchHit[]> hitsList = multiSearch(queries);
+        for (int j = 0; j < hitsList.size(); j++) {
+            PersoniumSearchHit[] hits = hitsList.get(j);
+            if (hits == null || hits.length != 1) {
+                continue;
+            }
+            int index = indexes.get(j);
+            EdmEntitySet eSet = getMetadata().findEdmEntitySet(entityIds.get(index).getEntitySetName());
+            try {
+                EntitySetDocHandler oedh = getDocHandler(hits[0], eSet.getName());
+                results.set(index, createEntityResponse(eSet, oedh, null));
+            } catch (RuntimeException e) {
+                // 個別に取得してエラーとする
+                continue;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 一覧取得をまとめて行う.
+     * <p>
+     * Like {@link #getEntities(List)}, the searches are sent in one multi search. A list that needs the total count
+     * ($inlinecount=allpages) or could not be resolved from the multi search is returned as null, and the caller
+     * lists it individually.
+     * </p>
+     * @param entitySetNames 一覧取得するEntitySet名のリスト
+     * @param queryInfos 一覧取得のクエリ情報のリスト
+     * @return entitySetNamesの順の取得結果
+     */
+    public List<EntitiesResponse> getEntities(List<String> entitySetNames, List<QueryInfo> queryInfos) {
+        List<EntitiesResponse> results = new ArrayList<EntitiesResponse>(
+                Collections.<EntitiesResponse>nCopies(entitySetNames.size(), null));
+        List<Map<String, Object>> queries = new ArrayList<Map<String, Object>>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 0; i < entitySetNames.size(); i++) {
+            QueryInfo queryInfo = queryInfos.get(i);
+            EdmEntitySet eSet = getMetadata().findEdmEntitySet(entitySetNames.get(i));
+            if (eSet == null || (queryInfo != null && InlineCount.ALLPAGES.equals(queryInfo.inlineCount))) {
+                continue;
+            }
+            try {
+                Map<String, Object> source = getEntitiesQuery(queryInfo, eSet,
+                        getImplicitFilters(entitySetNames.get(i)));
+                if (!source.containsKey("size")) {
+                    continue;
+                }
+                queries.add(source);
+                indexes.add(i);
+            } catch (RuntimeException e) {
+                // 個別に取得してエラーとする
+                continue;
+            }
+        }
+
+        List<PersoniumSearchHit[]> hitsList = multiSearch(queries);
+        for (int j = 0; j < hitsList.size(); j++) {
+            PersoniumSearchHit[] hits = hitsList.get(j);
+            if (hits == null) {
+                continue;
+            }
+            int index = indexes.get(j);
+            EdmEntitySet eSet = getMetadata().findEdmEntitySet(entitySetNames.get(index));
+            try {
+                results.set(index, createEntitiesResponse(queryInfos.get(index), eSet, hits, null));
+            } catch (RuntimeException e) {
+                // 個別に取得してエラーとする
+                continue;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * ユーザデータをマルチ検索し、クエリ毎の検索結果を返却する.
+     * @param queries クエリの一覧
+     * @return クエリの順の検索結果. 検索に失敗したクエリはnull
+     */
+    private List<PersoniumSearchHit[]> multiSearch(List<Map<String, Object>> queries) {
+        List<PersoniumSearchHit[]> hitsList = new ArrayList<PersoniumSearchHit[]>(
+                Collections.<PersoniumSearchHit[]>nCopies(queries.size(), null));
+        if (queries.isEmpty()) {
+            return hitsList;
+        }
+        PersoniumMultiSearchResponse res = null;
+        try {
+            res = getAccessorForEntitySet(USER_ODATA_NAMESPACE).multiSearch(queries);
+        } catch (RuntimeException e) {
+            log.info("Failed to multi search user data. Search individually: " + e.getMessage());
+            return hitsList;
+        }
+        if (res == null) {
+            return hitsList;
+        }
+        int index = 0;
+        for (PersoniumItem item : res.getResponses()) {
+            if (index >= queries.size()) {
+                break;
+            }
+            try {
+                hitsList.set(index, item.getSearchHits());
+            } catch (RuntimeException e) {
+                // 失敗したクエリは個別に検索する
+                hitsList.set(index, null);
+            }
+            index++;
+        }
+        return hitsList;
+    }
+
     @Override
     protected boolean checkUniquenessEntityKey(final String entitySetName, final EntitySetDocHandler tgt,
             final String linksKey, final EntitySetAccessor esType) {
@@ -182,16 +182,19 @@ public class UserSchemaODataProducer extends EsODataProducer {
     @Override
     public void afterCreate(final String entitySetName, final OEntity oEntity, final EntitySetDocHandler docHandler) {
         UserDataSchemaCache.disable(this.davCmp.getId());
+        UserDataMetadataCache.remove(this.davCmp.getId());
     }
 
     @Override
     public void afterUpdate() {
         UserDataSchemaCache.disable(this.davCmp.getId());
+        UserDataMetadataCache.remove(this.davCmp.getId());
     }
 
     @Override
     public void afterDelete() {
         UserDataSchemaCache.disable(this.davCmp.getId());
+        UserDataMetadataCache.remove(this.davCmp.getId());
     }
 
     /**
@@ -646,6 +649,7 @@ public class UserSchemaODataProducer extends EsODataProducer {
     @Override
     public void onChange(String entitySetName) {
         UserDataSchemaCache.clear(this.davCmp.getId());
+        UserDataMetadataCache.remove(this.davCmp.getId());
     }
 
     /**
@@ -32,6 +32,7 @@ import org.apache.http.HttpStatus;
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.model.CellSnapshotDavCmp;
 import io.personium.core.model.DavCmp;
+import io.personium.core.model.DavDestination;
 import io.personium.core.model.file.DataCryptor;
 import io.personium.core.model.lock.Lock;
 import io.personium.core.model.lock.LockManager;
@@ -94,6 +95,25 @@ public class CellSnapshotDavCmpFsImpl extends DavCmpFsImpl implements CellSnapsh
         return LockManager.getLock(Lock.CATEGORY_CELL, cell.getId(), null, null);
     }
 
+    /**
+     * Lock cell.
+     * @return Lock object of own node
+     */
+    @Override
+    protected Lock lockForCreate() {
+        return lock();
+    }
+
+    /**
+     * Lock cell.
+     * @param davDestination destination
+     * @return Lock object of own node
+     */
+    @Override
+    protected Lock lockForMove(DavDestination davDestination) {
+        return lock();
+    }
+
     /**
      * {@inheritDoc}
      */
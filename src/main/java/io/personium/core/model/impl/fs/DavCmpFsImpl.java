@@ -29,8 +29,10 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -82,6 +84,7 @@ import io.personium.core.model.file.BinaryDataAccessor;
 import io.personium.core.model.file.BinaryDataNotFoundException;
 import io.personium.core.model.file.CipherInputStream;
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.file.SeekableDataCryptor;
 import io.personium.core.model.file.StreamingOutputForDavFile;
 import io.personium.core.model.file.StreamingOutputForDavFileWithRange;
 import io.personium.core.model.impl.es.EsModel;
@@ -92,7 +95,6 @@ import io.personium.core.model.jaxb.Ace;
 import io.personium.core.model.jaxb.Acl;
 import io.personium.core.model.jaxb.ObjectIo;
 import io.personium.core.model.lock.Lock;
-import io.personium.core.model.lock.LockKeyComposer;
 import io.personium.core.model.lock.LockManager;
 import io.personium.core.odata.PersoniumODataProducer;
 
@@ -258,12 +260,51 @@ public class DavCmpFsImpl implements DavCmp {
     }
 
     /**
-     * Boxをロックする.
+     * 自ノードをロックする.
+     * 祖先ノードには共有(インテンション)ロックを取るため、同じBox内の別パスのノードは並行して更新できる.
      * @return 自ノードのロック
      */
     public Lock lock() {
-        log.debug("lock:" + LockKeyComposer.fullKeyFromCategoryAndKey(Lock.CATEGORY_DAV, null, this.box.getId(), null));
-        return LockManager.getLock(Lock.CATEGORY_DAV, null, this.box.getId(), null);
+        List<String> path = this.getLockPath();
+        log.debug("lock:" + this.box.getId() + " " + path);
+        return LockManager.getHierarchicalLock(Lock.CATEGORY_DAV, this.box.getId(),
+                Collections.singletonList(path));
+    }
+
+    /**
+     * 自ノードを作成するために親ノードをロックする.
+     * 親コレクション内のリソース数のチェックと作成の間に兄弟ノードが作成されないよう、親ノードを排他ロックする.
+     * @return 親ノードのロック
+     */
+    protected Lock lockForCreate() {
+        List<String> path = this.parent.getLockPath();
+        log.debug("lock:" + this.box.getId() + " " + path);
+        return LockManager.getHierarchicalLock(Lock.CATEGORY_DAV, this.box.getId(),
+                Collections.singletonList(path));
+    }
+
+    /**
+     * MOVEの移動元(自ノード)と移動先をロックする.
+     * @param davDestination 移動先情報
+     * @return ロック
+     */
+    protected Lock lockForMove(DavDestination davDestination) {
+        List<List<String>> paths = new ArrayList<List<String>>();
+        paths.add(this.getLockPath());
+        paths.add(new ArrayList<String>(davDestination.getDestinationResourcePath()));
+        log.debug("lock:" + this.box.getId() + " " + paths);
+        return LockManager.getHierarchicalLock(Lock.CATEGORY_DAV, this.box.getId(), paths);
+    }
+
+    /**
+     * @return Boxから自ノードまでのパス(名前のリスト)
+     */
+    List<String> getLockPath() {
+        LinkedList<String> path = new LinkedList<String>();
+        for (DavCmpFsImpl current = this; current.parent != null; current = current.parent) {
+            path.addFirst(current.name);
+        }
+        return path;
     }
 
     /**
@@ -511,7 +552,7 @@ public class DavCmpFsImpl implements DavCmp {
     @Override
     public final ResponseBuilder putForCreate(final String contentType, final InputStream inputStream) {
         // Locking
-        Lock lock = this.lock();
+        Lock lock = this.lockForCreate();
         try {
             // 新規作成時には、作成対象のDavNodeは存在しないため、親DavNodeをリロードして存在確認する。
             // 親DavNodeが存在しない場合：他のリクエストによって削除されたたため、404を返却
@@ -545,19 +586,31 @@ public class DavCmpFsImpl implements DavCmp {
             // ・更新対象の親DavNodeが存在する場合：他のリクエストによって削除されたたため、作成処理を実行
             // 更新対象のDavNodeが存在する場合：更新処理を実行
             this.load();
-            if (this.metaFile == null) {
-                this.parent.load();
-                if (this.parent.metaFile == null) {
-                    throw getNotFoundException().params(this.parent.getUrl());
-                }
-                return this.doPutForCreate(contentType, inputStream);
+            if (this.metaFile != null) {
+                return this.doPutForUpdate(contentType, inputStream, etag);
             }
-            return this.doPutForUpdate(contentType, inputStream, etag);
         } finally {
             // ロックを開放する
             lock.release();
             log.debug("unlock2");
         }
+
+        // 作成処理は親コレクション内のリソース数をチェックするため、親ノードをロックし直して実行する
+        lock = this.lockForCreate();
+        try {
+            this.load();
+            if (this.metaFile != null) {
+                return this.doPutForUpdate(contentType, inputStream, etag);
+            }
+            this.parent.load();
+            if (this.parent.metaFile == null) {
+                throw getNotFoundException().params(this.parent.getUrl());
+            }
+            return this.doPutForCreate(contentType, inputStream);
+        } finally {
+            lock.release();
+            log.debug("unlock2");
+        }
     }
 
     /**
@@ -570,10 +623,7 @@ public class DavCmpFsImpl implements DavCmp {
         // check the resource count
         checkChildResourceCount();
 
-        InputStream input = inputStream;
-        // Perform encryption.
-        DataCryptor cryptor = new DataCryptor(getCellId());
-        input = cryptor.encode(inputStream, PersoniumUnitConfig.isDavEncryptEnabled());
+        InputStream input = encode(inputStream);
 
         BufferedInputStream bufferedInput = new BufferedInputStream(input);
         try {
@@ -582,12 +632,8 @@ public class DavCmpFsImpl implements DavCmp {
             // store the file content.
             File newFile = new File(getContentFilePath());
             Files.copy(bufferedInput, newFile.toPath());
-            long writtenBytes = newFile.length();
-            String encryptionType = DataCryptor.ENCRYPTION_TYPE_NONE;
-            if (PersoniumUnitConfig.isDavEncryptEnabled()) {
-                writtenBytes = ((CipherInputStream) input).getReadLengthBeforEncryption();
-                encryptionType = DataCryptor.ENCRYPTION_TYPE_AES;
-            }
+            long writtenBytes = getWrittenBytes(input, newFile);
+            String encryptionType = getWrittenEncryptionType();
             // create new metadata file.
             this.metaFile = DavMetadataFile.prepareNewFile(this, DavCmp.TYPE_DAV_FILE);
             this.metaFile.setContentType(contentType);
@@ -628,10 +674,7 @@ public class DavCmpFsImpl implements DavCmp {
 
         try {
             // Update Content
-            InputStream input = inputStream;
-            // Perform encryption.
-            DataCryptor cryptor = new DataCryptor(getCellId());
-            input = cryptor.encode(inputStream, PersoniumUnitConfig.isDavEncryptEnabled());
+            InputStream input = encode(inputStream);
             BufferedInputStream bufferedInput = new BufferedInputStream(input);
             File tmpFile = new File(getTempContentFilePath());
             File contentFile = new File(getContentFilePath());
@@ -639,12 +682,8 @@ public class DavCmpFsImpl implements DavCmp {
             Files.delete(contentFile.toPath());
             Files.move(tmpFile.toPath(), contentFile.toPath());
 
-            long writtenBytes = contentFile.length();
-            String encryptionType = DataCryptor.ENCRYPTION_TYPE_NONE;
-            if (PersoniumUnitConfig.isDavEncryptEnabled()) {
-                writtenBytes = ((CipherInputStream) input).getReadLengthBeforEncryption();
-                encryptionType = DataCryptor.ENCRYPTION_TYPE_AES;
-            }
+            long writtenBytes = getWrittenBytes(input, contentFile);
+            String encryptionType = getWrittenEncryptionType();
 
             // Update Metadata
             this.metaFile.setUpdated(now);
@@ -660,6 +699,49 @@ public class DavCmpFsImpl implements DavCmp {
         return javax.ws.rs.core.Response.ok().status(HttpStatus.SC_NO_CONTENT).header(HttpHeaders.ETAG, getEtag());
     }
 
+    /**
+     * Encrypts the content to write according to the configuration.
+     * @param inputStream content
+     * @return stream of the content to write
+     */
+    private InputStream encode(InputStream inputStream) {
+        if (PersoniumUnitConfig.isDavEncryptEnabled() && PersoniumUnitConfig.isDavEncryptSeekable()) {
+            return SeekableDataCryptor.encode(inputStream);
+        }
+        // Perform encryption.
+        DataCryptor cryptor = new DataCryptor(getCellId());
+        return cryptor.encode(inputStream, PersoniumUnitConfig.isDavEncryptEnabled());
+    }
+
+    /**
+     * Returns the length of the plain content written.
+     * @param input stream returned by {@link #encode(InputStream)}
+     * @param contentFile written file
+     * @return length of the plain content
+     */
+    private long getWrittenBytes(InputStream input, File contentFile) {
+        if (!PersoniumUnitConfig.isDavEncryptEnabled()) {
+            return contentFile.length();
+        }
+        if (PersoniumUnitConfig.isDavEncryptSeekable()) {
+            return contentFile.length() - SeekableDataCryptor.HEADER_LENGTH;
+        }
+        return ((CipherInputStream) input).getReadLengthBeforEncryption();
+    }
+
+    /**
+     * @return encryption type of the content written by {@link #encode(InputStream)}
+     */
+    private String getWrittenEncryptionType() {
+        if (!PersoniumUnitConfig.isDavEncryptEnabled()) {
+            return DataCryptor.ENCRYPTION_TYPE_NONE;
+        }
+        if (PersoniumUnitConfig.isDavEncryptSeekable()) {
+            return SeekableDataCryptor.ENCRYPTION_TYPE_AES_CTR;
+        }
+        return DataCryptor.ENCRYPTION_TYPE_AES;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -692,14 +774,9 @@ public class DavCmpFsImpl implements DavCmp {
                     throw PersoniumCoreException.Dav.REQUESTED_RANGE_NOT_SATISFIABLE;
                 }
 
-                if (range.getByteRangeSpecCount() > 1) {
-                    // MultiPartレスポンスには未対応
-                    throw PersoniumCoreException.Misc.NOT_IMPLEMENTED.params("Range-MultiPart");
-                } else {
-                    StreamingOutput sout = new StreamingOutputForDavFileWithRange(
-                            fileFullPath, fileSize, range, getCellId(), encryptionType);
-                    res = davFileResponseForRange(sout, contentType, range);
-                }
+                StreamingOutputForDavFileWithRange sout = new StreamingOutputForDavFileWithRange(
+                        fileFullPath, fileSize, range, contentType, getCellId(), encryptionType);
+                res = davFileResponseForRange(sout, range);
             }
             return res.header(HttpHeaders.ETAG, getEtag()).header(PersoniumCoreUtils.HttpHeaders.ACCEPT_RANGES,
                     RangeHeaderHandler.BYTES_UNIT);
@@ -732,24 +809,21 @@ public class DavCmpFsImpl implements DavCmp {
      * ファイルレスポンス処理.
      * @param sout
      *            StreamingOuputオブジェクト
-     * @param contentType
-     *            コンテントタイプ
      * @param range
      *            RangeHeaderHandler
      * @return レスポンス
      */
-    private ResponseBuilder davFileResponseForRange(final StreamingOutput sout, String contentType,
+    private ResponseBuilder davFileResponseForRange(final StreamingOutputForDavFileWithRange sout,
             final RangeHeaderHandler range) {
-        // MultiPartには対応しないため1個目のbyte-renge-setだけ処理する。
-        int rangeIndex = 0;
-        List<ByteRangeSpec> brss = range.getByteRangeSpecList();
-        final ByteRangeSpec brs = brss.get(rangeIndex);
-
         // iPadのsafariにおいてChunkedのRangeレスポンスを処理できなかったので明にContent-Lengthを返却している。
-        return javax.ws.rs.core.Response.status(HttpStatus.SC_PARTIAL_CONTENT).entity(sout)
-                .header(PersoniumCoreUtils.HttpHeaders.CONTENT_RANGE, brs.makeContentRangeHeaderField())
-                .header(HttpHeaders.CONTENT_LENGTH, brs.getContentLength())
-                .header(HttpHeaders.CONTENT_TYPE, contentType);
+        ResponseBuilder res = javax.ws.rs.core.Response.status(HttpStatus.SC_PARTIAL_CONTENT).entity(sout);
+        if (!sout.isMultiPart()) {
+            // MultiPartの場合は各パートにContent-Rangeを付与する。
+            List<ByteRangeSpec> brss = range.getByteRangeSpecList();
+            res.header(PersoniumCoreUtils.HttpHeaders.CONTENT_RANGE, brss.get(0).makeContentRangeHeaderField());
+        }
+        return res.header(HttpHeaders.CONTENT_LENGTH, sout.getContentLength())
+                .header(HttpHeaders.CONTENT_TYPE, sout.getContentType());
     }
 
     @Override
@@ -788,8 +862,8 @@ public class DavCmpFsImpl implements DavCmp {
             throw new RuntimeException("Bug do not call this .");
         }
 
-        // ロック
-        Lock lock = this.lock();
+        // 親ノードをロック
+        Lock lock = this.lockForCreate();
         try {
             // ここで改めて存在確認が必要。
             // TODO 何等かの手段で、再ロード
@@ -856,8 +930,8 @@ public class DavCmpFsImpl implements DavCmp {
     public ResponseBuilder move(String etag, String overwrite, DavDestination davDestination) {
         ResponseBuilder res = null;
 
-        // ロック
-        Lock lock = this.lock();
+        // 移動元と移動先をロック
+        Lock lock = this.lockForMove(davDestination);
         try {
             // 移動元リソースの存在チェック
             this.load();
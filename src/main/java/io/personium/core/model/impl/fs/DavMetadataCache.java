@@ -0,0 +1,186 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.fs;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * Node local cache of parsed Dav metadata files.
+ * <p>
+ * An entry is keyed by the path of the metadata file and is valid while the file keeps the file key, the last
+ * modified time and the size it had when it was read. Metadata files are replaced by a rename on every save,
+ * so a saved file always has another file key, and the version inside the file need not be read to notice it.
+ * The cached JSON is copied on the way in and out because callers modify the metadata they loaded.
+ * </p>
+ */
+public final class DavMetadataCache {
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) { //NOPMD
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > PersoniumUnitConfig.getDavMetadataCacheMaxEntries();
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private DavMetadataCache() {
+    }
+
+    /**
+     * Returns a copy of the cached metadata if the file has not changed since it was cached.
+     * @param path path of the metadata file
+     * @param attrs current attributes of the file
+     * @return metadata. null if not cached or the file has changed
+     */
+    static JSONObject get(Path path, BasicFileAttributes attrs) {
+        if (PersoniumUnitConfig.getDavMetadataCacheMaxEntries() <= 0) {
+            return null;
+        }
+        String key = path.toAbsolutePath().toString();
+        JSONObject json = null;
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null) {
+                if (entry.isValid(attrs)) {
+                    json = entry.json;
+                } else {
+                    ENTRIES.remove(key);
+                }
+            }
+        }
+        if (json == null) {
+            MISSES.incrementAndGet();
+            return null;
+        }
+        HITS.incrementAndGet();
+        return copy(json);
+    }
+
+    /**
+     * Caches a copy of the metadata.
+     * @param path path of the metadata file
+     * @param attrs attributes of the file the metadata was read from or written to
+     * @param json metadata
+     */
+    static void put(Path path, BasicFileAttributes attrs, JSONObject json) {
+        if (PersoniumUnitConfig.getDavMetadataCacheMaxEntries() <= 0) {
+            return;
+        }
+        Entry entry = new Entry(attrs, copy(json));
+        String key = path.toAbsolutePath().toString();
+        synchronized (ENTRIES) {
+            ENTRIES.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes the cached metadata.
+     * @param path path of the metadata file
+     */
+    static void remove(Path path) {
+        String key = path.toAbsolutePath().toString();
+        synchronized (ENTRIES) {
+            ENTRIES.remove(key);
+        }
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries and the numbers of hits and misses.
+     * @return statistics
+     */
+    public static Map<String, Long> getStatus() {
+        Map<String, Long> status = new HashMap<String, Long>();
+        synchronized (ENTRIES) {
+            status.put("size", (long) ENTRIES.size());
+        }
+        status.put("hits", HITS.get());
+        status.put("misses", MISSES.get());
+        return status;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject copy(JSONObject json) {
+        JSONObject ret = new JSONObject();
+        for (Object o : json.entrySet()) {
+            Map.Entry<Object, Object> e = (Map.Entry<Object, Object>) o;
+            ret.put(e.getKey(), copyValue(e.getValue()));
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value instanceof JSONObject) {
+            return copy((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray ret = new JSONArray();
+            for (Object o : (JSONArray) value) {
+                ret.add(copyValue(o));
+            }
+            return ret;
+        }
+        // String, Number, Boolean and null are immutable
+        return value;
+    }
+
+    /**
+     * Cached metadata and the attributes of the file it came from.
+     */
+    private static final class Entry {
+        private final Object fileKey;
+        private final long lastModified;
+        private final long size;
+        private final JSONObject json;
+
+        Entry(BasicFileAttributes attrs, JSONObject json) {
+            this.fileKey = attrs.fileKey();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.size = attrs.size();
+            this.json = json;
+        }
+
+        boolean isValid(BasicFileAttributes attrs) {
+            if (this.fileKey != null && !this.fileKey.equals(attrs.fileKey())) {
+                return false;
+            }
+            return this.lastModified == attrs.lastModifiedTime().toMillis() && this.size == attrs.size();
+        }
+    }
+}
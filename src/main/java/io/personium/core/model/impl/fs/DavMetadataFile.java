@@ -19,7 +19,14 @@ package io.personium.core.model.impl.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Date;
 
 import org.apache.commons.io.Charsets;
@@ -34,6 +41,11 @@ import io.personium.core.PersoniumCoreException;
 
 /**
  * a class for handling internal fs file storing Dav metadata.
+ * <p>
+ * The file is saved by writing a temporary file in the same directory and renaming it over the metadata file,
+ * so a reader always sees either the old or the new content, and loaded contents are cached by
+ * {@link DavMetadataCache}.
+ * </p>
  */
 public class DavMetadataFile {
     /** Logger. */
@@ -43,10 +55,10 @@ public class DavMetadataFile {
     // TODO ファイル名はUnix, Windowsで使えるけれどDAVでは使えない名前がいい。
     public static final String DAV_META_FILE_NAME = ".pmeta";
 
-    /** Milliseconds to wait of metafile reading retries. */
-    private static final long META_LOAD_RETRY_WAIT = 100L;
-    /** Maximum number of metafile reading retries. */
-    private static final int META_LOAD_RETRY_MAX = 5;
+    /** Prefix of the temporary file written on save. */
+    private static final String DAV_META_TEMP_FILE_PREFIX = DAV_META_FILE_NAME + ".";
+    /** Suffix of the temporary file written on save. */
+    private static final String DAV_META_TEMP_FILE_SUFFIX = ".tmp";
 
     File file;
 
@@ -158,42 +170,40 @@ public class DavMetadataFile {
         return this.file.exists();
     }
 
+    /**
+     * @param fileName file name
+     * @return true if the file is a temporary file written while saving metadata.
+     */
+    public static boolean isTemporaryFile(String fileName) {
+        return fileName.startsWith(DAV_META_TEMP_FILE_PREFIX) && fileName.endsWith(DAV_META_TEMP_FILE_SUFFIX);
+    }
+
     /**
      * load from the file.
      */
     public void load() {
-        // Coping with core issue #28.
-        // When an Exception occurs Retry several times.
-        int retryCount = 0;
-        while (true) {
-            try {
-                doLoad();
-                break;
-            } catch (PersoniumCoreException pe) {
-                if (retryCount < META_LOAD_RETRY_MAX) {
-                    try {
-                        Thread.sleep(META_LOAD_RETRY_WAIT);
-                    } catch (InterruptedException ie) {
-                        // If sleep fails, Error
-                        throw new RuntimeException(ie);
-                    }
-                    retryCount++;
-                    log.info("Meta file load retry. RetryCount:" + retryCount);
-                } else {
-                    // IO failure or JSON is broken
-                    throw pe;
-                }
-            }
-        }
+        // The file is replaced atomically on save, so it is never read while half written (core issue #28).
+        doLoad();
     }
 
     /**
      * load from the file.
      */
     private void doLoad() throws PersoniumCoreException {
-        try (Reader reader = Files.newBufferedReader(file.toPath(), Charsets.UTF_8)) {
-            JSONParser parser = new JSONParser();
-            this.json = (JSONObject) parser.parse(reader);
+        Path path = this.file.toPath();
+        try {
+            // Attributes are read before the content so that a file replaced meanwhile is never cached as current.
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            JSONObject cached = DavMetadataCache.get(path, attrs);
+            if (cached != null) {
+                this.json = cached;
+                return;
+            }
+            try (Reader reader = Files.newBufferedReader(path, Charsets.UTF_8)) {
+                JSONParser parser = new JSONParser();
+                this.json = (JSONObject) parser.parse(reader);
+            }
+            DavMetadataCache.put(path, attrs, this.json);
         } catch (IOException | ParseException e) {
             // IO failure or JSON is broken
             throw PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.reason(e);
@@ -206,10 +216,41 @@ public class DavMetadataFile {
     public void save() {
         this.incrementVersion();
         String jsonStr = JSONObject.toJSONString(this.getJSON());
+        Path path = this.file.toPath();
+        Path temp = null;
         try {
-            Files.write(this.file.toPath(), jsonStr.getBytes(Charsets.UTF_8));
+            temp = path.resolveSibling(
+                    DAV_META_TEMP_FILE_PREFIX + PersoniumUUID.randomUUID() + DAV_META_TEMP_FILE_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(jsonStr.getBytes(Charsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // The content must reach the disk before the rename does, or a crash could leave an empty file.
+                channel.force(true);
+            }
+            // A rename keeps the attributes, so the written file can be cached with those of the temporary file.
+            BasicFileAttributes attrs = Files.readAttributes(temp, BasicFileAttributes.class);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                log.info("Atomic move is not supported. Replacing meta file non-atomically: " + path);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            DavMetadataCache.put(path, attrs, this.json);
         } catch (IOException e) {
+            DavMetadataCache.remove(path);
             throw new RuntimeException(e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.info("Failed to delete temporary meta file: " + temp);
+                }
+            }
         }
     }
 
@@ -30,6 +30,7 @@ import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlElements;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -41,6 +42,7 @@ import io.personium.core.PersoniumCoreException;
 import io.personium.core.auth.AccessContext;
 import io.personium.core.auth.BoxPrivilege;
 import io.personium.core.auth.CellPrivilege;
+import io.personium.core.auth.CompiledAcl;
 import io.personium.core.auth.Privilege;
 
 /**
@@ -90,12 +92,19 @@ public final class Acl {
     @XmlElements({ @XmlElement(namespace = "DAV:", name = "ace", type = Ace.class) })
     List<Ace> aces;
 
+    /**
+     * 権限判定用に事前解決したACL.
+     */
+    @XmlTransient
+    private volatile CompiledAcl compiled;
+
     /**
      * xml:base setter.
      * @param base baseUrl
      */
     public void setBase(String base) {
         this.base = base;
+        this.compiled = null;
     }
 
     /**
@@ -112,6 +121,20 @@ public final class Acl {
     public List<Ace> getAceList() {
         return aces;
     }
+
+    /**
+     * 権限判定用に事前解決したACLを返す.
+     * 初回の呼び出し時に生成し、以降は使い回す。生成後にACEを変更した場合は反映されない。
+     * @return 権限判定用に事前解決したACL
+     */
+    public CompiledAcl getCompiled() {
+        CompiledAcl ret = this.compiled;
+        if (ret == null) {
+            ret = CompiledAcl.compile(this);
+            this.compiled = ret;
+        }
+        return ret;
+    }
     /**
      * JSON化する.
      * @return Mapオブジェクト
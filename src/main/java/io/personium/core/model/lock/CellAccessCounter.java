@@ -0,0 +1,249 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node local in-flight request counts and cached processing statuses of cells.
+ * <p>
+ * Requests only update the local counts. A background thread publishes the aggregated delta of each cell
+ * to the lock store and refreshes the statuses of the cells accessed on this node every publish interval.
+ * Cell statuses seen by this node and access counts seen by other nodes are therefore at most
+ * 2 publish intervals behind, which CellLockManager.awaitPropagation waits for.
+ * </p>
+ */
+class CellAccessCounter {
+
+    private static Logger log = LoggerFactory.getLogger(CellAccessCounter.class);
+
+    /** Entries of cells not accessed for this time are dropped (ms). */
+    private static final long IDLE_TIMEOUT = 60000L;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final long publishInterval;
+    private volatile ScheduledExecutorService publisher;
+
+    /**
+     * constructor.
+     * @param publishInterval interval of publishing (ms)
+     */
+    CellAccessCounter(long publishInterval) {
+        this.publishInterval = publishInterval;
+    }
+
+    /**
+     * @return interval of publishing (ms)
+     */
+    long getPublishInterval() {
+        return this.publishInterval;
+    }
+
+    /**
+     * Counts up the requests in flight on this node.
+     * @param cellId cell id
+     * @return local count after increment
+     */
+    long increment(String cellId) {
+        startPublisher();
+        while (true) {
+            Entry entry = entry(cellId);
+            long count = entry.inFlight.incrementAndGet();
+            if (!entry.retired) {
+                entry.lastAccessed = System.currentTimeMillis();
+                return count;
+            }
+            // The entry is being dropped. Retry with a new one.
+            entry.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Counts down the requests in flight on this node.
+     * @param cellId cell id
+     * @return local count after decrement. never negative
+     */
+    long decrement(String cellId) {
+        Entry entry = this.entries.get(cellId);
+        if (entry == null) {
+            return 0;
+        }
+        while (true) {
+            long count = entry.inFlight.get();
+            if (count <= 0) {
+                return 0;
+            }
+            if (entry.inFlight.compareAndSet(count, count - 1)) {
+                return count - 1;
+            }
+        }
+    }
+
+    /**
+     * Publishes the unpublished delta of the cell now.
+     * @param cellId cell id
+     */
+    void flush(String cellId) {
+        Entry entry = this.entries.get(cellId);
+        if (entry != null) {
+            publish(cellId, entry);
+        }
+    }
+
+    /**
+     * @param cellId cell id
+     * @return cached status. null if not cached or older than 2 publish intervals
+     */
+    Long getStatus(String cellId) {
+        Entry entry = this.entries.get(cellId);
+        if (entry == null || entry.statusFetchedAt == 0
+                || System.currentTimeMillis() - entry.statusFetchedAt > 2 * this.publishInterval) {
+            return null;
+        }
+        return entry.status;
+    }
+
+    /**
+     * Caches the status.
+     * @param cellId cell id
+     * @param status status
+     */
+    void setStatus(String cellId, long status) {
+        Entry entry = entry(cellId);
+        entry.status = status;
+        entry.statusFetchedAt = System.currentTimeMillis();
+        entry.lastAccessed = entry.statusFetchedAt;
+        startPublisher();
+    }
+
+    /**
+     * Drops all the local counts and statuses without publishing.
+     */
+    void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Publishes the deltas, refreshes the statuses and drops idle entries.
+     */
+    void publishAll() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+            String cellId = mapEntry.getKey();
+            Entry entry = mapEntry.getValue();
+            try {
+                publish(cellId, entry);
+                if (now - entry.lastAccessed > IDLE_TIMEOUT) {
+                    retire(cellId, entry);
+                } else if (entry.statusFetchedAt != 0) {
+                    entry.status = LockManager.singleton.doGetCellStatus(CellLockManager.CELL_STATUS_PREFIX + cellId);
+                    entry.statusFetchedAt = now;
+                }
+            } catch (RuntimeException e) {
+                // Retried at the next interval.
+                log.info("Failed to publish cell access count. CellID:" + cellId, e);
+            }
+        }
+    }
+
+    private void publish(String cellId, Entry entry) {
+        synchronized (entry) {
+            long current = entry.inFlight.get();
+            long delta = current - entry.published;
+            if (delta == 0) {
+                return;
+            }
+            LockManager.singleton.doAddReferenceCount(CellLockManager.REFERENCE_COUNT_PREFIX + cellId, delta);
+            entry.published = current;
+        }
+    }
+
+    private void retire(String cellId, Entry entry) {
+        synchronized (entry) {
+            if (entry.published != 0) {
+                return;
+            }
+            entry.retired = true;
+            if (entry.inFlight.get() != 0) {
+                entry.retired = false;
+                return;
+            }
+            this.entries.remove(cellId, entry);
+        }
+    }
+
+    private Entry entry(String cellId) {
+        Entry entry = this.entries.get(cellId);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = this.entries.putIfAbsent(cellId, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    private void startPublisher() {
+        if (this.publisher != null) {
+            return;
+        }
+        synchronized (this) {
+            if (this.publisher != null) {
+                return;
+            }
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CellAccessCounter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    publishAll();
+                }
+            }, this.publishInterval, this.publishInterval, TimeUnit.MILLISECONDS);
+            this.publisher = executor;
+        }
+    }
+
+    /**
+     * Local state of one cell.
+     */
+    private static final class Entry {
+        private final AtomicLong inFlight = new AtomicLong();
+        /** Part of inFlight already added to the lock store. Guarded by the entry. */
+        private long published;
+        private volatile boolean retired;
+        private volatile long lastAccessed = System.currentTimeMillis();
+        private volatile long status;
+        private volatile long statusFetchedAt;
+    }
+}
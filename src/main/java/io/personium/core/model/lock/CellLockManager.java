@@ -22,6 +22,8 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.personium.core.PersoniumUnitConfig;
+
 /**
  * セルLockを管理するユーティリティ.
  */
@@ -92,14 +94,28 @@ public abstract class CellLockManager extends LockManager {
      */
     public static final String CELL_STATUS_PREFIX = "CellStatus_";
 
+    /** Node local access counts and statuses of cells. */
+    static final CellAccessCounter CELL_ACCESS =
+            new CellAccessCounter(PersoniumUnitConfig.getCellLockPublishInterval());
+
     /**
      * Returns processing status of cell with the specified ID.
      * @param cellId Target cell id
      * @return Processing status of cell
      */
     public static STATUS getCellStatus(String cellId) {
-        String key =  CELL_STATUS_PREFIX + cellId;
-        STATUS status = statusMap.get(singleton.doGetCellStatus(key));
+        Long statusId = null;
+        if (isPublishedAsynchronously()) {
+            statusId = CELL_ACCESS.getStatus(cellId);
+        }
+        if (statusId == null) {
+            String key =  CELL_STATUS_PREFIX + cellId;
+            statusId = singleton.doGetCellStatus(key);
+            if (isPublishedAsynchronously()) {
+                CELL_ACCESS.setStatus(cellId, statusId);
+            }
+        }
+        STATUS status = statusMap.get(statusId);
         if (status == null) {
             status = STATUS.NORMAL;
         }
@@ -122,6 +138,9 @@ public abstract class CellLockManager extends LockManager {
         } else {
             success = singleton.doSetCellStatus(key, status.getId());
         }
+        if (isPublishedAsynchronously()) {
+            CELL_ACCESS.setStatus(cellId, status.getId());
+        }
         log.info(String.format("Changed cell lock status. CellID:%s, LockStatus:%s", cellId, status.getMessage()));
         return success;
     }
@@ -132,6 +151,9 @@ public abstract class CellLockManager extends LockManager {
      * @return 指定したセルの参照カウント
      */
     public static long getReferenceCount(String cellId) {
+        if (isPublishedAsynchronously()) {
+            CELL_ACCESS.flush(cellId);
+        }
         String key =  REFERENCE_COUNT_PREFIX + cellId;
         long count = singleton.doGetReferenceCount(key);
         return count;
@@ -139,10 +161,14 @@ public abstract class CellLockManager extends LockManager {
 
     /**
      * 指定したセルの参照カウントをインクリメントする.
+     * Only the count of this node is updated when it is published asynchronously.
      * @param cellId 対象のセルID
      * @return インクリメント後の参照カウントの値
      */
     public static long incrementReferenceCount(String cellId) {
+        if (isPublishedAsynchronously()) {
+            return CELL_ACCESS.increment(cellId);
+        }
         String key =  REFERENCE_COUNT_PREFIX + cellId;
         long count = singleton.doIncrementReferenceCount(key);
         return count;
@@ -150,10 +176,14 @@ public abstract class CellLockManager extends LockManager {
 
     /**
      * 指定したセルの参照カウントをデクリメントする.
+     * Only the count of this node is updated when it is published asynchronously.
      * @param cellId 対象のセルID
      * @return デクリメント後の参照カウントの値
      */
     public static long decrementReferenceCount(String cellId) {
+        if (isPublishedAsynchronously()) {
+            return CELL_ACCESS.decrement(cellId);
+        }
         String key =  REFERENCE_COUNT_PREFIX + cellId;
         long count = singleton.doDecrementReferenceCount(key);
         if (count < 0) {
@@ -161,4 +191,21 @@ public abstract class CellLockManager extends LockManager {
         }
         return count;
     }
+
+    /**
+     * Waits until cell statuses set before this call are seen by all nodes,
+     * and requests admitted by them before seeing the statuses are included in the reference count.
+     * Call this after setting the status and before waiting for the reference count to drain.
+     * @throws InterruptedException interrupted
+     */
+    public static void awaitPropagation() throws InterruptedException {
+        if (isPublishedAsynchronously()) {
+            // Status refresh (up to 2 intervals) + publish of the admitted requests (1 interval).
+            Thread.sleep(3 * CELL_ACCESS.getPublishInterval());
+        }
+    }
+
+    private static boolean isPublishedAsynchronously() {
+        return CELL_ACCESS.getPublishInterval() > 0;
+    }
 }
@@ -0,0 +1,194 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.utils.MemcachedClient;
+import io.personium.core.utils.MemcachedClient.MemcachedClientException;
+
+/**
+ * Locks on nodes of a tree acquired by LockManager.getHierarchicalLock.
+ * <p>
+ * A writer takes an intention lock on every ancestor of the target node and an exclusive lock on the target node.
+ * The intention lock of a node is a counter that is incremented while holding the exclusive lock of the node,
+ * and the exclusive lock of a node is owned only after the counter has drained.
+ * All the nodes are locked in one total order (ancestors first), so writers never wait for each other in a cycle.
+ * </p>
+ */
+class HierarchicalLock extends Lock {
+    private static final long serialVersionUID = 1L;
+
+    private static final String INTENTION_KEY_SUFFIX = "intention";
+
+    /** Orders paths so that an ancestor precedes its descendants. */
+    private static final Comparator<List<String>> PATH_ORDER = new Comparator<List<String>>() {
+        @Override
+        public int compare(List<String> path1, List<String> path2) {
+            int length = Math.min(path1.size(), path2.size());
+            for (int i = 0; i < length; i++) {
+                int result = path1.get(i).compareTo(path2.get(i));
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return path1.size() - path2.size();
+        }
+    };
+
+    private final transient List<Lock> exclusiveLocks = new ArrayList<Lock>();
+    private final transient List<String> intentionKeys = new ArrayList<String>();
+
+    private HierarchicalLock(String fullKey, Long createdAt) {
+        super(fullKey, createdAt);
+    }
+
+    /**
+     * Acquires exclusive locks on the nodes and intention locks on their ancestors.
+     * @param category lock category
+     * @param rootId id of the tree
+     * @param paths paths of the nodes from the root
+     * @return lock
+     */
+    static Lock acquire(String category, String rootId, List<List<String>> paths) {
+        TreeSet<List<String>> targets = new TreeSet<List<String>>(PATH_ORDER);
+        for (List<String> path : paths) {
+            targets.add(path);
+        }
+        // A node under another target is already covered by the exclusive lock of the target.
+        List<List<String>> covered = new ArrayList<List<String>>();
+        for (List<String> target : targets) {
+            for (List<String> other : targets) {
+                if (other.size() < target.size() && other.equals(target.subList(0, other.size()))) {
+                    covered.add(target);
+                    break;
+                }
+            }
+        }
+        targets.removeAll(covered);
+
+        TreeSet<List<String>> nodes = new TreeSet<List<String>>(PATH_ORDER);
+        nodes.addAll(targets);
+        for (List<String> target : targets) {
+            for (int i = 0; i < target.size(); i++) {
+                nodes.add(target.subList(0, i));
+            }
+        }
+
+        HierarchicalLock lock = new HierarchicalLock(
+                toFullKey(category, rootId, targets.first()), new Date().getTime());
+        try {
+            for (List<String> node : nodes) {
+                String fullKey = toFullKey(category, rootId, node);
+                if (targets.contains(node)) {
+                    lock.exclusiveLocks.add(lockExclusive(category, fullKey));
+                } else {
+                    lockIntention(category, fullKey);
+                    lock.intentionKeys.add(fullKey);
+                }
+            }
+        } catch (RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    /**
+     * Releases all the locks.
+     */
+    @Override
+    public void release() {
+        List<Lock> locks = new ArrayList<Lock>(this.exclusiveLocks);
+        Collections.reverse(locks);
+        for (Lock lock : locks) {
+            lock.release();
+        }
+        this.exclusiveLocks.clear();
+
+        List<String> keys = new ArrayList<String>(this.intentionKeys);
+        Collections.reverse(keys);
+        for (String key : keys) {
+            try {
+                LockManager.singleton.doDecrementIntentionCount(toIntentionKey(key));
+            } catch (MemcachedClientException e) {
+                // The counter is dropped after the lease.
+                MemcachedClient.reportError();
+            }
+        }
+        this.intentionKeys.clear();
+    }
+
+    private static void lockIntention(String category, String fullKey) {
+        Lock lock = LockManager.getLock(category, fullKey);
+        try {
+            LockManager.singleton.doIncrementIntentionCount(toIntentionKey(fullKey));
+        } catch (MemcachedClientException e) {
+            MemcachedClient.reportError();
+            throw PersoniumCoreException.Server.GET_LOCK_STATE_ERROR;
+        } finally {
+            lock.release();
+        }
+    }
+
+    private static Lock lockExclusive(String category, String fullKey) {
+        Lock lock = LockManager.getLock(category, fullKey);
+        long deadline = new Date().getTime() + LockManager.lockRetryInterval * LockManager.lockRetryTimes;
+        try {
+            // New intention locks cannot be taken from now on. Wait for the writers under this node.
+            while (LockManager.singleton.doGetIntentionCount(toIntentionKey(fullKey)) > 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS;
+                }
+                Thread.sleep(LockManager.lockRetryInterval);
+            }
+        } catch (InterruptedException e) {
+            lock.release();
+            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(e);
+        } catch (MemcachedClientException e) {
+            lock.release();
+            MemcachedClient.reportError();
+            throw PersoniumCoreException.Server.GET_LOCK_STATE_ERROR;
+        } catch (RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        return lock;
+    }
+
+    private static String toFullKey(String category, String rootId, List<String> path) {
+        StringBuilder sb = new StringBuilder(rootId);
+        for (String name : path) {
+            sb.append('/').append(name);
+        }
+        // Names may contain characters not allowed in a memcached key.
+        String nodeKey = UUID.nameUUIDFromBytes(sb.toString().getBytes(StandardCharsets.UTF_8)).toString();
+        return LockKeyComposer.fullKeyFromCategoryAndKey(category, nodeKey);
+    }
+
+    private static String toIntentionKey(String fullKey) {
+        return fullKey + LockKeyComposer.KEY_SEPARATOR + INTENTION_KEY_SUFFIX;
+    }
+}
@@ -16,184 +16,276 @@
  */
 package io.personium.core.model.lock;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * InProcessのLockManager.
+ * <p>
+ * All the operations are lock-free compare-and-set on ConcurrentHashMap, so that many request threads
+ * can update reference counts and locks without contention or lost updates.
+ * </p>
  */
 class InProcessLockManager extends LockManager {
-    Map<String, Object> inProcessLock = new HashMap<String, Object>();
-    Map<String, AccountLock> inProcessAccountLock = new HashMap<String, AccountLock>();
+
+    /** Interval of purging expired values (ms). */
+    private static final long PURGE_INTERVAL = 1000L;
+
+    ConcurrentMap<String, Lock> inProcessLock = new ConcurrentHashMap<String, Lock>();
+    ConcurrentMap<String, ExpiringValue> inProcessValue = new ConcurrentHashMap<String, ExpiringValue>();
+    ConcurrentMap<String, Long> inProcessCounter = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong lastPurgedAt = new AtomicLong();
 
     @Override
     Lock doGetLock(String fullKey) {
-        return (Lock) inProcessLock.get(fullKey);
+        return inProcessLock.get(fullKey);
     }
 
     @Override
-    synchronized Boolean doPutLock(String fullKey, Lock lock) {
-        if (inProcessLock.get(fullKey) == null) {
-            inProcessLock.put(fullKey, lock);
-            return Boolean.TRUE;
-        } else {
-            return Boolean.FALSE;
-        }
+    Boolean doPutLock(String fullKey, Lock lock) {
+        return inProcessLock.putIfAbsent(fullKey, lock) == null;
     }
 
     @Override
     void doReleaseLock(String fullKey) {
         inProcessLock.remove(fullKey);
+        // UnitUserLockManager releases its lock through this method.
+        inProcessValue.remove(fullKey);
+    }
+
+    @Override
+    void doReleaseLock(String fullKey, Lock lock) {
+        inProcessLock.remove(fullKey, lock);
+    }
+
+    @Override
+    Boolean doHandOverLock(String fullKey, Lock current, Lock next) {
+        return inProcessLock.replace(fullKey, current, next);
     }
 
     @Override
     void doDeleteAllLocks() {
         inProcessLock.clear();
+        inProcessValue.clear();
+        inProcessCounter.clear();
     }
 
     @Override
     String doGetReferenceOnlyLock(String fullKey) {
-        return (String) inProcessLock.get(fullKey);
+        return getValue(fullKey);
     }
 
     @Override
     Boolean doPutReferenceOnlyLock(String fullKey, String value) {
-        if (inProcessLock.get(fullKey) == null) {
-            inProcessLock.put(fullKey, value);
-            return Boolean.TRUE;
-        } else {
-            return Boolean.FALSE;
-        }
+        return putValueIfAbsent(fullKey, value, 0);
     }
 
     @Override
     String doGetAccountLock(String fullKey) {
-        AccountLock lock = inProcessAccountLock.get(fullKey);
-        if (lock == null) {
-            return null;
-        }
-        return lock.value();
+        return getValue(fullKey);
     }
 
     @Override
     Boolean doPutAccountLock(String fullKey, String value, int expired) {
-        inProcessAccountLock.put(fullKey, new AccountLock(value, expired));
+        inProcessValue.put(fullKey, new ExpiringValue(value, expired));
+        purgeExpiredValues();
         return Boolean.TRUE;
     }
 
     @Override
     String doGetUnituserLock(String fullKey) {
-        return (String) inProcessLock.get(fullKey);
+        return getValue(fullKey);
     }
 
     @Override
     Boolean doPutUnituserLock(String fullKey, String value, int expired) {
-        if (inProcessLock.get(fullKey) == null) {
-            inProcessLock.put(fullKey, value);
-            return Boolean.TRUE;
-        } else {
-            return Boolean.FALSE;
-        }
+        return putValueIfAbsent(fullKey, value, expired);
     }
 
     @Override
     long doGetReferenceCount(String fullKey) {
-        Long value = -1L;
-        if (inProcessLock.containsKey(fullKey)) {
-            value = (Long) inProcessLock.get(fullKey);
+        Long value = inProcessCounter.get(fullKey);
+        if (value == null) {
+            return -1L;
         }
         return value;
     }
 
     @Override
     long doIncrementReferenceCount(String fullKey) {
-        Long value = 1L;
-        if (inProcessLock.containsKey(fullKey)) {
-            value = (Long) inProcessLock.get(fullKey);
-            value++;
-        }
-        inProcessLock.put(fullKey, value);
-        return value;
+        return addCounter(fullKey, 1L);
     }
 
     @Override
     long doDecrementReferenceCount(String fullKey) {
-        Long value = 0L;
-        if (inProcessLock.containsKey(fullKey)) {
-            value = (Long) inProcessLock.get(fullKey);
-            value--;
-            inProcessLock.put(fullKey, value);
-            if (value == 0) {
-                inProcessLock.remove(fullKey);
-            }
-        }
-        return value;
+        return addCounter(fullKey, -1L);
+    }
+
+    @Override
+    long doAddReferenceCount(String fullKey, long delta) {
+        return addCounter(fullKey, delta);
     }
 
     @Override
     long doGetCellStatus(String fullKey) {
-        Long value = -1L;
-        if (inProcessLock.containsKey(fullKey)) {
-            value = (Long) inProcessLock.get(fullKey);
+        Long value = inProcessCounter.get(fullKey);
+        if (value == null) {
+            return -1L;
         }
         return value;
     }
 
     @Override
     Boolean doSetCellStatus(String fullKey, long status) {
-        inProcessLock.put(fullKey, status);
+        inProcessCounter.put(fullKey, status);
         return true;
     }
 
     @Override
     void doDeleteCellStatus(String fullKey) {
-        inProcessLock.remove(fullKey);
+        inProcessCounter.remove(fullKey);
     }
 
     @Override
     String doGetReadDeleteOnlyMode(String fullKey) {
-        String value = null;
-        if (inProcessLock.containsKey(fullKey)) {
-            value = (String) inProcessLock.get(fullKey);
+        return getValue(fullKey);
+    }
+
+    @Override
+    Boolean doPutReadDeleteOnlyMode(String fullKey, String value) {
+        inProcessValue.put(fullKey, new ExpiringValue(value, 0));
+        return Boolean.TRUE;
+    }
+
+    @Override
+    void doDeleteReadDeleteOnlyMode(String fullKey) {
+        inProcessValue.remove(fullKey);
+    }
+
+    @Override
+    long doGetIntentionCount(String fullKey) {
+        Long value = inProcessCounter.get(fullKey);
+        if (value == null) {
+            return 0;
         }
         return value;
     }
 
+    @Override
+    long doIncrementIntentionCount(String fullKey) {
+        return addCounter(fullKey, 1L);
+    }
+
+    @Override
+    long doDecrementIntentionCount(String fullKey) {
+        return addCounter(fullKey, -1L);
+    }
+
+    /**
+     * Adds delta to the counter. The counter is created with delta if absent and removed when it reaches 0.
+     * @param fullKey key
+     * @param delta delta
+     * @return value after the addition. 0 if the counter has been removed
+     */
+    private long addCounter(String fullKey, long delta) {
+        while (true) {
+            Long current = inProcessCounter.get(fullKey);
+            if (current == null) {
+                if (delta <= 0) {
+                    return 0;
+                }
+                if (inProcessCounter.putIfAbsent(fullKey, delta) == null) {
+                    return delta;
+                }
+                continue;
+            }
+            long next = current + delta;
+            if (next <= 0) {
+                if (inProcessCounter.remove(fullKey, current)) {
+                    return 0;
+                }
+            } else if (inProcessCounter.replace(fullKey, current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private String getValue(String fullKey) {
+        ExpiringValue value = inProcessValue.get(fullKey);
+        if (value == null) {
+            return null;
+        }
+        if (value.isExpired(System.currentTimeMillis())) {
+            inProcessValue.remove(fullKey, value);
+            return null;
+        }
+        return value.value;
+    }
+
+    private Boolean putValueIfAbsent(String fullKey, String value, int expired) {
+        ExpiringValue created = new ExpiringValue(value, expired);
+        while (true) {
+            ExpiringValue current = inProcessValue.putIfAbsent(fullKey, created);
+            if (current == null) {
+                return Boolean.TRUE;
+            }
+            if (!current.isExpired(System.currentTimeMillis())) {
+                return Boolean.FALSE;
+            }
+            if (inProcessValue.replace(fullKey, current, created)) {
+                return Boolean.TRUE;
+            }
+        }
+    }
+
     /**
-     * InProcessでのAccountLock用の情報を保持するクラス.
+     * Removes expired values, at most once per PURGE_INTERVAL.
+     * Values such as account locks are written once per failed login and may never be read again.
      */
-    static class AccountLock {
+    private void purgeExpiredValues() {
+        long now = System.currentTimeMillis();
+        long last = lastPurgedAt.get();
+        if (now - last < PURGE_INTERVAL || !lastPurgedAt.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<String, ExpiringValue> entry : inProcessValue.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                inProcessValue.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * InProcessでAccountLockなど有効期限付きの値を保持するクラス.
+     */
+    static class ExpiringValue {
 
         private static final int TIME_MILLIS = 1000;
-        private String value;
-        private int expiredInSeconds;
-        private long createdAt;
+        private final String value;
+        private final long expiresAt;
 
         /**
          * constructor.
          * @param value 値
-         * @param expired ロックの保持期間(秒)
+         * @param expired 保持期間(秒). 0の場合は無期限
          */
-        AccountLock(String value, int expired) {
+        ExpiringValue(String value, int expired) {
             this.value = value;
-            this.expiredInSeconds = expired;
-            this.createdAt = System.currentTimeMillis();
+            if (expired > 0) {
+                this.expiresAt = System.currentTimeMillis() + (long) expired * TIME_MILLIS;
+            } else {
+                this.expiresAt = Long.MAX_VALUE;
+            }
         }
 
         /**
-         * 指定されたAccountLockを返却する. <br />
-         * expiredを超えている場合は、nullを返却する.
-         * @return 指定されたキーに対応する値（存在しない場合、expiredを超えている場合はnull）
+         * @param now 現在時刻(ms)
+         * @return 保持期間を超えている場合はtrue
          */
-        public String value() {
-            long now = System.currentTimeMillis();
-
-            // expiredを超えている場合は、nullを返却
-            if (now > this.createdAt + expiredInSeconds * TIME_MILLIS) {
-                return null;
-
-            }
-            return this.value;
+        boolean isExpired(long now) {
+            return now > this.expiresAt;
         }
     }
 }
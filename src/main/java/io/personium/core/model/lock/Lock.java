@@ -47,6 +47,11 @@ public class Lock implements Serializable {
     String fullKey;
     Long createdAt;
 
+    /**
+     * Fencing token issued when the lock was stored. Used to make sure only the owner releases it.
+     */
+    long token;
+
     /**
      * コンストラクタ(非公開).
      * @param key ロックのキー
@@ -60,6 +65,6 @@ public class Lock implements Serializable {
      * ロックをリリースします.
      */
     public void release() {
-        LockManager.releaseLock(this.fullKey);
+        LockManager.releaseLock(this);
     }
 }
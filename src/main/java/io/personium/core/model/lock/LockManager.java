@@ -17,6 +17,7 @@
 package io.personium.core.model.lock;
 
 import java.util.Date;
+import java.util.List;
 
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.PersoniumUnitConfig;
@@ -51,6 +52,24 @@ public abstract class LockManager {
 
     abstract void doReleaseLock(String fullKey);
 
+    /**
+     * Releases the lock only if it is still owned by the given lock object.
+     * @param fullKey lock key
+     * @param lock lock object of the owner
+     */
+    void doReleaseLock(String fullKey, Lock lock) {
+        doReleaseLock(fullKey);
+    }
+
+    /**
+     * Replaces the lock held by current with next, keeping the key locked.
+     * @param fullKey lock key
+     * @param current lock object of the releasing owner
+     * @param next lock object of the new owner
+     * @return false if current no longer owns the lock
+     */
+    abstract Boolean doHandOverLock(String fullKey, Lock current, Lock next);
+
     abstract void doDeleteAllLocks();
 
     abstract String doGetReferenceOnlyLock(String fullKey);
@@ -71,6 +90,8 @@ public abstract class LockManager {
 
     abstract long doDecrementReferenceCount(String fullKey);
 
+    abstract long doAddReferenceCount(String fullKey, long delta);
+
     abstract long doGetCellStatus(String fullKey);
 
     abstract Boolean doSetCellStatus(String fullKey, long status);
@@ -79,6 +100,19 @@ public abstract class LockManager {
 
     abstract String doGetReadDeleteOnlyMode(String fullKey);
 
+    abstract Boolean doPutReadDeleteOnlyMode(String fullKey, String value);
+
+    abstract void doDeleteReadDeleteOnlyMode(String fullKey);
+
+    abstract long doGetIntentionCount(String fullKey);
+
+    abstract long doIncrementIntentionCount(String fullKey);
+
+    abstract long doDecrementIntentionCount(String fullKey);
+
+    /** Threads in this JVM waiting for a lock. */
+    static final LockWaitQueue WAIT_QUEUE = new LockWaitQueue();
+
     static {
         if (TYPE_MEMCACHED.equals(lockType)) {
             singleton = new MemcachedLockManager();
@@ -89,6 +123,11 @@ public abstract class LockManager {
 
     /**
      * ロックを取得します.
+     * <p>
+     * If the lock is held, the thread joins a FIFO queue of waiters in this JVM.
+     * Only the head waiter polls the lock store, and a release in this JVM hands the lock over
+     * to the head waiter directly. Waiting ends after lockRetryTimes * lockRetryInterval.
+     * </p>
      * @param category ロックのカテゴリ
      * @param cellId CellのID
      * @param boxId BoxのID
@@ -96,42 +135,130 @@ public abstract class LockManager {
      * @return Lock
      */
     public static Lock getLock(String category, String cellId, String boxId, String nodeId) {
-        Long createdAt = new Date().getTime();
-        // memcached にキーが存在するか調べる
-        // なければmemcached に書きに行く
-        // あったら、リトライする。
-        int timesRetry = 0;
-        while (timesRetry <= lockRetryTimes) {
-            String fullKey = LockKeyComposer.fullKeyFromCategoryAndKey(category, cellId, boxId, nodeId);
-            Lock lock = null;
-            try {
-                lock = singleton.doGetLock(fullKey);
-            } catch (MemcachedClientException e) {
-                MemcachedClient.reportError();
-                throw PersoniumCoreException.Server.GET_LOCK_STATE_ERROR;
-            }
-            if (lock == null) {
-                lock = new Lock(fullKey, createdAt);
-                Boolean success = singleton.doPutLock(fullKey, lock);
-                if (success) {
-                    return lock;
+        String fullKey = LockKeyComposer.fullKeyFromCategoryAndKey(category, cellId, boxId, nodeId);
+        return getLock(category, fullKey);
+    }
+
+    /**
+     * Acquires exclusive locks on nodes of a tree, taking intention locks on their ancestors.
+     * <p>
+     * Writers of unrelated nodes in the same tree do not block each other,
+     * while a node is never written together with its ancestors or descendants.
+     * </p>
+     * @param category lock category
+     * @param rootId id of the tree (e.g. Box ID)
+     * @param paths paths of the nodes to lock. each path is the list of names from the root. empty list means the root
+     * @return Lock releasing all the locks at once
+     */
+    public static Lock getHierarchicalLock(String category, String rootId, List<List<String>> paths) {
+        return HierarchicalLock.acquire(category, rootId, paths);
+    }
+
+    /**
+     * Acquires the lock of the key.
+     * @param category lock category
+     * @param fullKey lock key
+     * @return Lock
+     */
+    static Lock getLock(String category, String fullKey) {
+        long startedAt = new Date().getTime();
+        LockMetrics.Stat stat = LockMetrics.of(category);
+        Lock lock = new Lock(fullKey, startedAt);
+        if (tryLock(fullKey, lock)) {
+            stat.acquired(0);
+            return lock;
+        }
+
+        long deadline = startedAt + lockRetryInterval * lockRetryTimes;
+        LockWaitQueue.Waiter waiter = WAIT_QUEUE.enqueue(fullKey, lock);
+        stat.enterQueue(WAIT_QUEUE.depth(fullKey));
+        boolean owned = false;
+        try {
+            while (true) {
+                if (WAIT_QUEUE.isHead(fullKey, waiter) && tryLock(fullKey, lock)) {
+                    owned = true;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                // Releases on other nodes are not signalled, so wake up at least every retry interval.
+                if (waiter.await(Math.min(remaining, lockRetryInterval))) {
+                    owned = true;
+                    stat.handedOver();
+                    break;
                 }
             }
-            try {
-                Thread.sleep(lockRetryInterval);
-            } catch (InterruptedException e) {
-                throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(e);
+        } catch (InterruptedException e) {
+            if (!WAIT_QUEUE.cancel(fullKey, waiter)) {
+                // The lock has been handed over while being interrupted.
+                releaseLock(lock);
             }
-            timesRetry++;
+            stat.leaveQueue();
+            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(e);
+        } catch (RuntimeException e) {
+            if (!WAIT_QUEUE.cancel(fullKey, waiter)) {
+                releaseLock(lock);
+            }
+            stat.leaveQueue();
+            throw e;
+        }
+        if (!WAIT_QUEUE.cancel(fullKey, waiter) && !owned) {
+            // The lock has been handed over just before timing out.
+            owned = true;
+            stat.handedOver();
         }
+        stat.leaveQueue();
+        long waited = System.currentTimeMillis() - startedAt;
+        if (owned) {
+            stat.acquired(waited);
+            return lock;
+        }
+        stat.timedOut(waited);
         throw PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS;
     }
 
+    /**
+     * Tries to store the lock once.
+     * @param fullKey lock key
+     * @param lock lock object
+     * @return true if stored
+     */
+    private static boolean tryLock(String fullKey, Lock lock) {
+        Lock current = null;
+        try {
+            current = singleton.doGetLock(fullKey);
+        } catch (MemcachedClientException e) {
+            MemcachedClient.reportError();
+            throw PersoniumCoreException.Server.GET_LOCK_STATE_ERROR;
+        }
+        if (current != null) {
+            return false;
+        }
+        return singleton.doPutLock(fullKey, lock);
+    }
+
     /*
      * ロックのリリース処理
+     * If a thread of this JVM waits for the same key, the lock is handed over to it without being released.
      */
-    static void releaseLock(String fullKey) {
-        singleton.doReleaseLock(fullKey);
+    static void releaseLock(Lock lock) {
+        Lock current = lock;
+        LockWaitQueue.Waiter next = WAIT_QUEUE.peek(current.fullKey);
+        while (next != null) {
+            if (!singleton.doHandOverLock(current.fullKey, current, next.getLock())) {
+                // The lock is no longer ours (e.g. its lease has expired). Waiters keep polling.
+                return;
+            }
+            if (WAIT_QUEUE.grant(current.fullKey, next)) {
+                return;
+            }
+            // The waiter gave up in the meantime. Release the lock on its behalf.
+            current = next.getLock();
+            next = WAIT_QUEUE.peek(current.fullKey);
+        }
+        singleton.doReleaseLock(current.fullKey, current);
     }
 
 
@@ -140,6 +267,7 @@ public abstract class LockManager {
      */
     public static void deleteAllLocks() {
         singleton.doDeleteAllLocks();
+        CellLockManager.CELL_ACCESS.clear();
     }
 
     /**
@@ -0,0 +1,118 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wait time and queue depth statistics of LockManager.getLock, per lock category.
+ */
+public class LockMetrics {
+
+    private static final ConcurrentMap<String, Stat> STATS = new ConcurrentHashMap<String, Stat>();
+
+    private LockMetrics() {
+    }
+
+    static Stat of(String category) {
+        Stat stat = STATS.get(category);
+        if (stat == null) {
+            Stat created = new Stat();
+            stat = STATS.putIfAbsent(category, created);
+            if (stat == null) {
+                stat = created;
+            }
+        }
+        return stat;
+    }
+
+    /**
+     * Returns a copy of the current statistics.
+     * @return statistics keyed by lock category
+     */
+    public static Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> result = new HashMap<String, Map<String, Long>>();
+        for (Map.Entry<String, Stat> entry : STATS.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return result;
+    }
+
+    /**
+     * Statistics of one lock category.
+     */
+    static final class Stat {
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong handedOver = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+        private final AtomicLong waiting = new AtomicLong();
+        private final AtomicLong maxQueueDepth = new AtomicLong();
+
+        void enterQueue(int depth) {
+            this.contended.incrementAndGet();
+            this.waiting.incrementAndGet();
+            updateMax(this.maxQueueDepth, depth);
+        }
+
+        void leaveQueue() {
+            this.waiting.decrementAndGet();
+        }
+
+        void acquired(long waitMillis) {
+            this.acquired.incrementAndGet();
+            this.totalWaitMillis.addAndGet(waitMillis);
+            updateMax(this.maxWaitMillis, waitMillis);
+        }
+
+        void handedOver() {
+            this.handedOver.incrementAndGet();
+        }
+
+        void timedOut(long waitMillis) {
+            this.timedOut.incrementAndGet();
+            this.totalWaitMillis.addAndGet(waitMillis);
+            updateMax(this.maxWaitMillis, waitMillis);
+        }
+
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            map.put("acquired", this.acquired.get());
+            map.put("contended", this.contended.get());
+            map.put("handedOver", this.handedOver.get());
+            map.put("timedOut", this.timedOut.get());
+            map.put("totalWaitMillis", this.totalWaitMillis.get());
+            map.put("maxWaitMillis", this.maxWaitMillis.get());
+            map.put("waiting", this.waiting.get());
+            map.put("maxQueueDepth", this.maxQueueDepth.get());
+            return map;
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FIFO queues of threads in this JVM waiting for a lock, one queue per lock key.
+ * <p>
+ * A releasing thread hands the lock over to the head waiter directly instead of
+ * letting all waiters poll the lock store.
+ * </p>
+ */
+class LockWaitQueue {
+
+    private final Map<String, Deque<Waiter>> queues = new HashMap<String, Deque<Waiter>>();
+
+    /**
+     * Appends a waiter to the tail of the queue.
+     * @param fullKey lock key
+     * @param lock lock object the waiter will own once granted
+     * @return waiter
+     */
+    Waiter enqueue(String fullKey, Lock lock) {
+        Waiter waiter = new Waiter(lock);
+        synchronized (this.queues) {
+            Deque<Waiter> queue = this.queues.get(fullKey);
+            if (queue == null) {
+                queue = new ArrayDeque<Waiter>();
+                this.queues.put(fullKey, queue);
+            }
+            queue.addLast(waiter);
+        }
+        return waiter;
+    }
+
+    /**
+     * @param fullKey lock key
+     * @return head waiter. null if nobody is waiting
+     */
+    Waiter peek(String fullKey) {
+        synchronized (this.queues) {
+            Deque<Waiter> queue = this.queues.get(fullKey);
+            if (queue == null) {
+                return null;
+            }
+            return queue.peekFirst();
+        }
+    }
+
+    /**
+     * @param fullKey lock key
+     * @param waiter waiter
+     * @return true if the waiter is at the head of the queue
+     */
+    boolean isHead(String fullKey, Waiter waiter) {
+        return peek(fullKey) == waiter;
+    }
+
+    /**
+     * @param fullKey lock key
+     * @return number of waiters
+     */
+    int depth(String fullKey) {
+        synchronized (this.queues) {
+            Deque<Waiter> queue = this.queues.get(fullKey);
+            if (queue == null) {
+                return 0;
+            }
+            return queue.size();
+        }
+    }
+
+    /**
+     * Removes the waiter and wakes it up as the new owner of the lock.
+     * The lock store must already hold the waiter's lock object.
+     * @param fullKey lock key
+     * @param waiter waiter
+     * @return false if the waiter has already left the queue
+     */
+    boolean grant(String fullKey, Waiter waiter) {
+        if (!remove(fullKey, waiter)) {
+            return false;
+        }
+        waiter.signalGranted();
+        return true;
+    }
+
+    /**
+     * Removes the waiter that gave up waiting or acquired the lock by itself.
+     * @param fullKey lock key
+     * @param waiter waiter
+     * @return false if the waiter has already been granted the lock
+     */
+    boolean cancel(String fullKey, Waiter waiter) {
+        return remove(fullKey, waiter);
+    }
+
+    /**
+     * Removes all waiters.
+     */
+    void clear() {
+        synchronized (this.queues) {
+            this.queues.clear();
+        }
+    }
+
+    private boolean remove(String fullKey, Waiter waiter) {
+        synchronized (this.queues) {
+            Deque<Waiter> queue = this.queues.get(fullKey);
+            if (queue == null || !queue.remove(waiter)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                this.queues.remove(fullKey);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A thread waiting for a lock.
+     */
+    static final class Waiter {
+        private final Lock lock;
+        private boolean granted = false;
+
+        Waiter(Lock lock) {
+            this.lock = lock;
+        }
+
+        /**
+         * @return lock object the waiter will own once granted
+         */
+        Lock getLock() {
+            return this.lock;
+        }
+
+        /**
+         * Waits until the lock is granted or the timeout elapses.
+         * @param timeoutMillis maximum time to wait (ms)
+         * @return true if granted
+         * @throws InterruptedException interrupted
+         */
+        synchronized boolean await(long timeoutMillis) throws InterruptedException {
+            if (!this.granted && timeoutMillis > 0) {
+                wait(timeoutMillis);
+            }
+            return this.granted;
+        }
+
+        private synchronized void signalGranted() {
+            this.granted = true;
+            notifyAll();
+        }
+    }
+}
@@ -16,12 +16,22 @@
  */
 package io.personium.core.model.lock;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.utils.MemcachedClient;
+import net.spy.memcached.CASValue;
 
 /**
  */
 class MemcachedLockManager extends LockManager {
 
+    private static Logger log = LoggerFactory.getLogger(MemcachedLockManager.class);
+
+    /** Key of the counter issuing fencing tokens. */
+    static final String FENCING_TOKEN_KEY = "LockFencingToken";
+
     @Override
     Lock doGetLock(String fullKey) {
         return MemcachedClient.getLockClient().get(fullKey, Lock.class);
@@ -29,7 +39,8 @@ class MemcachedLockManager extends LockManager {
 
     @Override
     Boolean doPutLock(String fullKey, Lock lock) {
-        return MemcachedClient.getLockClient().add(fullKey, lock);
+        lock.token = MemcachedClient.getLockClient().incrementLongValue(FENCING_TOKEN_KEY);
+        return MemcachedClient.getLockClient().add(fullKey, PersoniumUnitConfig.getLockMemcachedLease(), lock);
     }
 
     @Override
@@ -37,6 +48,47 @@ class MemcachedLockManager extends LockManager {
         MemcachedClient.getLockClient().delete(fullKey);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The lock is deleted by CAS, so that a lock taken by another owner between the read and the delete is kept.
+     * </p>
+     */
+    @Override
+    void doReleaseLock(String fullKey, Lock lock) {
+        CASValue<Lock> stored = MemcachedClient.getLockClient().gets(fullKey, Lock.class);
+        if (stored == null) {
+            return;
+        }
+        if (stored.getValue().token != lock.token
+                || !MemcachedClient.getLockClient().delete(fullKey, stored.getCas())) {
+            // The lease has expired and the lock is now held by another owner.
+            log.info("Lock lease has expired before release. key:" + fullKey);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The lock is replaced by CAS, so that a lock taken by another owner between the read and the replace is kept.
+     * </p>
+     */
+    @Override
+    Boolean doHandOverLock(String fullKey, Lock current, Lock next) {
+        CASValue<Lock> stored = MemcachedClient.getLockClient().gets(fullKey, Lock.class);
+        if (stored == null || stored.getValue().token != current.token) {
+            log.info("Lock lease has expired before hand over. key:" + fullKey);
+            return Boolean.FALSE;
+        }
+        next.token = MemcachedClient.getLockClient().incrementLongValue(FENCING_TOKEN_KEY);
+        if (!MemcachedClient.getLockClient().cas(fullKey, stored.getCas(),
+                PersoniumUnitConfig.getLockMemcachedLease(), next)) {
+            log.info("Lock lease has expired before hand over. key:" + fullKey);
+            return Boolean.FALSE;
+        }
+        return Boolean.TRUE;
+    }
+
     @Override
     void doDeleteAllLocks() {
         MemcachedClient.getLockClient().clear();
@@ -87,6 +139,11 @@ class MemcachedLockManager extends LockManager {
         return MemcachedClient.getLockClient().decrementLongValue(fullKey);
     }
 
+    @Override
+    long doAddReferenceCount(String fullKey, long delta) {
+        return MemcachedClient.getLockClient().addLongValue(fullKey, delta);
+    }
+
     @Override
     long doGetCellStatus(String fullKey) {
         return MemcachedClient.getLockClient().getLongValue(fullKey);
@@ -107,4 +164,31 @@ class MemcachedLockManager extends LockManager {
     String doGetReadDeleteOnlyMode(String fullKey) {
         return MemcachedClient.getLockClient().get(fullKey, String.class);
     }
+
+    @Override
+    Boolean doPutReadDeleteOnlyMode(String fullKey, String value) {
+        return MemcachedClient.getLockClient().put(fullKey, 0, value);
+    }
+
+    @Override
+    void doDeleteReadDeleteOnlyMode(String fullKey) {
+        MemcachedClient.getLockClient().delete(fullKey);
+    }
+
+    @Override
+    long doGetIntentionCount(String fullKey) {
+        return Math.max(MemcachedClient.getLockClient().getLongValue(fullKey), 0);
+    }
+
+    @Override
+    long doIncrementIntentionCount(String fullKey) {
+        // The counter left behind by a crashed node is dropped with the same lease as locks.
+        return MemcachedClient.getLockClient().incrementLongValue(fullKey,
+                PersoniumUnitConfig.getLockMemcachedLease());
+    }
+
+    @Override
+    long doDecrementIntentionCount(String fullKey) {
+        return MemcachedClient.getLockClient().decrementLongValue(fullKey);
+    }
 }
@@ -16,29 +16,132 @@
  */
 package io.personium.core.model.lock;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.utils.MemcachedClient.MemcachedClientException;
 
 /**
  * PCSの動作モードを参照するクラス.
+ * <p>
+ * The mode is cached on each node and refreshed in background, so that checking it on every request
+ * is a volatile field read. The cached mode is at most maxStaleness behind the lock store.
+ * </p>
  */
 public abstract class ReadDeleteModeLockManager extends LockManager {
 
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(ReadDeleteModeLockManager.class);
+
     /**
      * PCSの動作モード(ReadDeleteOnlyModeのmemcached上の格納キー).
      */
     private static final String LOCK_KEY = "PcsReadDeleteMode";
 
+    /** Maximum staleness of the cached mode (ms). 0: read the lock store every time. */
+    static volatile long maxStaleness = PersoniumUnitConfig.getReadDeleteOnlyModeMaxStaleness();
+
+    private static volatile boolean cachedMode = false;
+    private static volatile long cachedAt = 0;
+    private static volatile ScheduledExecutorService refresher;
+
     /**
      * PCSの動作モードの状態確認.
      * @return TRUE：ReadDeleteOnlyモード状態／FALSE：通常状態
      */
     public static boolean isReadDeleteOnlyMode() {
+        long staleness = maxStaleness;
+        if (staleness > 0) {
+            if (System.currentTimeMillis() - cachedAt <= staleness) {
+                return cachedMode;
+            }
+            startRefresher(staleness);
+        }
+        return refresh();
+    }
+
+    /**
+     * PCSの動作モードを切り替える.
+     * The mode of this node changes immediately, and other nodes follow within maxStaleness.
+     * @param readDeleteOnly TRUE：ReadDeleteOnlyモード／FALSE：通常状態
+     * @param value value stored while in ReadDeleteOnly mode (e.g. reason of the mode)
+     */
+    public static void setReadDeleteOnlyMode(boolean readDeleteOnly, String value) {
+        try {
+            if (readDeleteOnly) {
+                singleton.doPutReadDeleteOnlyMode(LOCK_KEY, value);
+            } else {
+                singleton.doDeleteReadDeleteOnlyMode(LOCK_KEY);
+            }
+        } catch (MemcachedClientException e) {
+            throw PersoniumCoreException.Server.SERVER_CONNECTION_ERROR;
+        }
+        cachedMode = readDeleteOnly;
+        cachedAt = System.currentTimeMillis();
+        log.info("Changed ReadDeleteOnly mode: " + readDeleteOnly);
+    }
+
+    /**
+     * @return maximum staleness of the cached mode (ms)
+     */
+    public static long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * @param maxStaleness maximum staleness of the cached mode (ms). 0: read the lock store every time
+     */
+    public static void setMaxStaleness(long maxStaleness) {
+        ReadDeleteModeLockManager.maxStaleness = maxStaleness;
+        cachedAt = 0;
+    }
+
+    private static boolean refresh() {
         try {
             String response = singleton.doGetReadDeleteOnlyMode(LOCK_KEY);
-            return response != null;
+            boolean mode = response != null;
+            cachedMode = mode;
+            cachedAt = System.currentTimeMillis();
+            return mode;
         } catch (MemcachedClientException e) {
             throw PersoniumCoreException.Server.SERVER_CONNECTION_ERROR;
         }
     }
+
+    private static synchronized void startRefresher(long staleness) {
+        if (refresher != null) {
+            return;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ReadDeleteModeRefresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Math.max(staleness / 2, 1);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (maxStaleness <= 0) {
+                    return;
+                }
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    // Requests read the lock store by themselves once the cached mode gets stale.
+                    log.info("Failed to refresh ReadDeleteOnly mode.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        refresher = executor;
+    }
 }
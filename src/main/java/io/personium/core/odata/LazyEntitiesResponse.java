@@ -0,0 +1,106 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.odata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.odata4j.core.OEntity;
+import org.odata4j.edm.EdmEntitySet;
+import org.odata4j.producer.EntitiesResponse;
+
+/**
+ * エンティティを読み出す際に1件ずつ作成するEntitiesResponse.
+ * <p>
+ * The entities can be read once through {@link #iterator()}, so that a feed writer can write each entity before
+ * the next one is created. {@link #getEntities()} creates all of them in a list for callers that need one.
+ * </p>
+ */
+public class LazyEntitiesResponse implements EntitiesResponse, Iterable<OEntity> {
+
+    private final EdmEntitySet entitySet;
+    private final Integer inlineCount;
+    private final String skipToken;
+    private Iterator<OEntity> source;
+    private List<OEntity> entities = null;
+
+    /**
+     * コンストラクタ.
+     * @param source エンティティを1件ずつ作成するIterator
+     * @param entitySet エンティティセット
+     * @param inlineCount $inlinecountで返却するヒット件数
+     * @param skipToken スキップトークン
+     */
+    public LazyEntitiesResponse(Iterator<OEntity> source, EdmEntitySet entitySet,
+            Integer inlineCount, String skipToken) {
+        this.source = source;
+        this.entitySet = entitySet;
+        this.inlineCount = inlineCount;
+        this.skipToken = skipToken;
+    }
+
+    /**
+     * エンティティを1件ずつ読み出すIteratorを返却する.
+     * {@link #getEntities()}を呼び出していない場合、読み出しは1回のみ行える.
+     * @return エンティティのIterator
+     */
+    @Override
+    public Iterator<OEntity> iterator() {
+        if (this.entities != null) {
+            return this.entities.iterator();
+        }
+        return consumeSource();
+    }
+
+    @Override
+    public List<OEntity> getEntities() {
+        if (this.entities == null) {
+            Iterator<OEntity> it = consumeSource();
+            List<OEntity> list = new ArrayList<OEntity>();
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+            this.entities = list;
+        }
+        return this.entities;
+    }
+
+    private Iterator<OEntity> consumeSource() {
+        if (this.source == null) {
+            throw new IllegalStateException("entities have already been read");
+        }
+        Iterator<OEntity> it = this.source;
+        this.source = null;
+        return it;
+    }
+
+    @Override
+    public EdmEntitySet getEntitySet() {
+        return this.entitySet;
+    }
+
+    @Override
+    public Integer getInlineCount() {
+        return this.inlineCount;
+    }
+
+    @Override
+    public String getSkipToken() {
+        return this.skipToken;
+    }
+}
@@ -36,6 +36,8 @@
  */
 package io.personium.core.odata;
 
+import java.util.Iterator;
+
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
@@ -63,8 +65,16 @@ public class PersoniumJsonFeedFormatWriter extends PersoniumJsonFormatWriter<Ent
         jw.writeName("results");
 
         jw.startArray();
+        // LazyEntitiesResponseの場合は、エンティティを1件ずつ作成しながら書き出す
+        Iterator<OEntity> entities;
+        if (target instanceof LazyEntitiesResponse) {
+            entities = ((LazyEntitiesResponse) target).iterator();
+        } else {
+            entities = target.getEntities().iterator();
+        }
         boolean isFirst = true;
-        for (OEntity oe : target.getEntities()) {
+        while (entities.hasNext()) {
+            OEntity oe = entities.next();
 
             if (isFirst) {
                 isFirst = false;
@@ -86,21 +96,8 @@ public class PersoniumJsonFeedFormatWriter extends PersoniumJsonFormatWriter<Ent
         if (target.getSkipToken() != null) {
 
             // $skip only applies to the first page of results.
-            // if $top was given, we have to reduce it by the number of entities
-            // we are returning now.
-            String tops = uriInfo.getQueryParameters().getFirst("$top");
-            int top = -1;
-            if (null != tops) {
-                // query param value already validated
-                top = Integer.parseInt(tops);
-                top -= target.getEntities().size();
-            }
+            // $top is the page size of the server-driven paging, so it is kept for the next page.
             UriBuilder uri = uriInfo.getRequestUriBuilder();
-            if (top > 0) {
-                uri.replaceQueryParam("$top", top);
-            } else {
-                uri.replaceQueryParam("$top");
-            }
             String nextHref = uri
                     .replaceQueryParam("$skiptoken", target.getSkipToken())
                     .replaceQueryParam("$skip").build().toString();
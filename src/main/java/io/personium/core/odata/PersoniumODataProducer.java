@@ -46,6 +46,7 @@ import org.odata4j.edm.EdmDataServices;
 import org.odata4j.edm.EdmEntitySet;
 import org.odata4j.producer.EntityResponse;
 import org.odata4j.producer.ODataProducer;
+import org.odata4j.producer.QueryInfo;
 
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
 import io.personium.core.rs.odata.BulkRequest;
@@ -146,6 +147,13 @@ public interface PersoniumODataProducer extends ODataProducer {
     void checkLinksUpperLimitRecord(List<NavigationPropertyBulkContext> npBulkContexts,
             LinkedHashMap<String, BulkRequest> npBulkRequests);
 
-
+    /**
+     * 一覧取得を行う.
+     * 返却するエンティティは、読み出される際に検索結果から1件ずつ作成される.
+     * @param entitySetName エンティティセット名
+     * @param queryInfo クエリ情報
+     * @return エンティティ一覧
+     */
+    LazyEntitiesResponse getEntitiesLazily(String entitySetName, QueryInfo queryInfo);
 
 }
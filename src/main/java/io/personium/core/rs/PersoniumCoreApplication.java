@@ -27,6 +27,7 @@ import io.personium.common.utils.PersoniumThread;
 import io.personium.core.PersoniumCoreLog;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.file.SeekableDataCryptor;
 import io.personium.core.plugin.PluginManager;
 
 /**
@@ -41,6 +42,7 @@ public class PersoniumCoreApplication extends Application {
                     PersoniumUnitConfig.getX509Certificate(), PersoniumUnitConfig.getX509RootCertificate());
             LocalToken.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
             DataCryptor.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
+            SeekableDataCryptor.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
             PersoniumThread.createThreadPool(PersoniumUnitConfig.getThreadPoolNum());
             pm = new PluginManager();
         } catch (Exception e) {
@@ -30,7 +30,13 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.common.es.EsClient;
 import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.auth.VerifiedTokenCache;
 import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.cache.NearCache;
+import io.personium.core.model.impl.fs.DavMetadataCache;
+import io.personium.core.model.lock.LockMetrics;
+import io.personium.core.utils.EngineRelayClient;
+import io.personium.core.utils.MessageDeliveryClient;
 
 /**
  * StatusResourceに対応するJAX-RS Resource クラス.
@@ -69,10 +75,57 @@ public class StatusResource {
         esJson.put("health", client.checkHealth());
         responseJson.put("ElasticSearch", esJson);
 
+        // Node local cache statistics
+        responseJson.put("LocalCache", getLocalCacheStatus());
+
+        // Lock wait statistics per category
+        JSONObject lockJson = new JSONObject();
+        lockJson.putAll(LockMetrics.snapshot());
+        responseJson.put("Lock", lockJson);
+
+        // Engine relay connection pool and latency
+        JSONObject engineRelayJson = new JSONObject();
+        engineRelayJson.putAll(EngineRelayClient.getStatus());
+        responseJson.put("EngineRelay", engineRelayJson);
+
+        // Message delivery connection pool and latency
+        JSONObject messageDeliveryJson = new JSONObject();
+        messageDeliveryJson.putAll(MessageDeliveryClient.getStatus());
+        responseJson.put("MessageDelivery", messageDeliveryJson);
+
+        // Verified access token cache and token verification cost
+        JSONObject tokenCacheJson = new JSONObject();
+        tokenCacheJson.putAll(VerifiedTokenCache.getStatus());
+        responseJson.put("TokenCache", tokenCacheJson);
+
+        // Dav metadata cache
+        JSONObject davMetadataCacheJson = new JSONObject();
+        davMetadataCacheJson.putAll(DavMetadataCache.getStatus());
+        responseJson.put("DavMetadataCache", davMetadataCacheJson);
+
         sb.append(responseJson.toJSONString());
         return Response.status(HttpStatus.SC_OK).entity(sb.toString()).build();
     }
 
+    /**
+     * Returns hit/miss/eviction counters of the node local caches.
+     * @return statistics for each cache
+     */
+    @SuppressWarnings("unchecked")
+    private JSONObject getLocalCacheStatus() {
+        JSONObject cachesJson = new JSONObject();
+        for (NearCache<?> cache : NearCache.getInstances()) {
+            JSONObject cacheJson = new JSONObject();
+            cacheJson.put("size", cache.size());
+            cacheJson.put("hit", cache.getHitCount());
+            cacheJson.put("miss", cache.getMissCount());
+            cacheJson.put("eviction", cache.getEvictionCount());
+            cacheJson.put("invalidation", cache.getInvalidationCount());
+            cachesJson.put(cache.getNamespace(), cacheJson);
+        }
+        return cachesJson;
+    }
+
     /**
      * POSTメソッドに対する処理.
      * @return JAS-RS Response
@@ -74,6 +74,10 @@ import io.personium.core.rs.odata.ODataEntityResource;
  */
 public final class BoxResource {
     static Logger log = LoggerFactory.getLogger(BoxResource.class);
+
+    /** barファイルの事前検証のみを行う場合に指定するヘッダ. */
+    private static final String X_PERSONIUM_DRY_RUN = "X-Personium-Dry-Run";
+
     String boxName;
 
     Cell cell;
@@ -319,6 +323,7 @@ public final class BoxResource {
      * @param contentType Content-Typeヘッダの値
      * @param contentLength Content-Lengthヘッダの値
      * @param requestKey イベントログに出力するRequestKeyフィールドの値
+     * @param dryRun trueの場合はbarファイルの事前検証のみを行う
      * @param inStream HttpリクエストのInputStream
      * @return JAX-RS Response
      */
@@ -330,6 +335,7 @@ public final class BoxResource {
             @HeaderParam(HttpHeaders.CONTENT_TYPE) final String contentType,
             @HeaderParam(HttpHeaders.CONTENT_LENGTH) final String contentLength,
             @HeaderParam(PersoniumCoreUtils.HttpHeaders.X_PERSONIUM_REQUESTKEY) String requestKey,
+            @HeaderParam(X_PERSONIUM_DRY_RUN) final String dryRun,
             final InputStream inStream) {
 
         PersoniumEventBus eventBus = new PersoniumEventBus(this.cell);
@@ -368,7 +374,12 @@ public final class BoxResource {
             BarFileInstaller installer =
                     new BarFileInstaller(this.cell, this.boxName, odataEntity, uriInfo);
 
-            res = installer.barFileInstall(headers, inStream, event.getRequestKey());
+            if (Boolean.parseBoolean(dryRun)) {
+                // barファイルの事前検証のみを行い、Boxは作成しない
+                res = installer.barFileValidate(headers, inStream);
+            } else {
+                res = installer.barFileInstall(headers, inStream, event.getRequestKey());
+            }
             event.setResult(Integer.toString(res.getStatus()));
         } catch (RuntimeException e) {
             // TODO 内部イベントの正式対応が必要
@@ -43,16 +43,14 @@ import javax.ws.rs.core.UriInfo;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.wink.webdav.WebDAVMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +65,7 @@ import io.personium.core.model.DavCmp;
 import io.personium.core.model.DavMoveResource;
 import io.personium.core.model.DavRsCmp;
 import io.personium.core.model.impl.fs.DavCmpFsImpl;
+import io.personium.core.utils.EngineRelayClient;
 
 /**
  * PersoniumEngineSvcCollectionResourceを担当するJAX-RSリソース.
@@ -74,6 +73,13 @@ import io.personium.core.model.impl.fs.DavCmpFsImpl;
 public final class PersoniumEngineSvcCollectionResource {
     private static Logger log = LoggerFactory.getLogger(PersoniumEngineSvcCollectionResource.class);
 
+    /** Engineからのレスポンスボディをリレーする際のバッファサイズ. */
+    private static final int RELAY_BUFFER_SIZE = 8192;
+
+    /** リレーしない接続ごとのヘッダ. */
+    private static final String[] HOP_BY_HOP_HEADERS = {
+        "Connection", "Keep-Alive", "Proxy-Connection", "Transfer-Encoding", "Upgrade"};
+
     DavCmp davCmp = null;
     DavCollectionResource dcr = null;
     DavRsCmp davRsCmp;
@@ -285,7 +291,6 @@ public final class PersoniumEngineSvcCollectionResource {
         String baseUrl = uriInfo.getBaseUri().toString();
 
         // リクエストヘッダを取得し、以下内容を追加
-        HttpClient client = new DefaultHttpClient();
         HttpUriRequest req = null;
         if (method.equals(HttpMethod.POST)) {
             HttpPost post = new HttpPost(requestUrl);
@@ -321,7 +326,7 @@ public final class PersoniumEngineSvcCollectionResource {
         for (Iterator<Entry<String, List<String>>> it = multivalueHeaders.entrySet().iterator(); it.hasNext();) {
             Entry<String, List<String>> entry = it.next();
             String key = (String) entry.getKey();
-            if (key.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+            if (key.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH) || isHopByHopHeader(key)) {
                 continue;
             }
             List<String> valueList = (List<String>) entry.getValue();
@@ -340,9 +345,9 @@ public final class PersoniumEngineSvcCollectionResource {
         }
 
         // Engineにリクエストを投げる
-        HttpResponse objResponse = null;
+        CloseableHttpResponse objResponse = null;
         try {
-            objResponse = client.execute(req);
+            objResponse = EngineRelayClient.execute(req);
         } catch (ClientProtocolException e) {
             throw PersoniumCoreException.ServiceCollection.SC_INVALID_HTTP_RESPONSE_ERROR;
         } catch (Exception ioe) {
@@ -365,6 +370,10 @@ public final class PersoniumEngineSvcCollectionResource {
             if (HttpHeaders.DATE.equalsIgnoreCase(headersResEngine[i].getName())) {
                 continue;
             }
+            // Engineとの接続の管理に関するヘッダはリレーしない。
+            if (isHopByHopHeader(headersResEngine[i].getName())) {
+                continue;
+            }
             res.header(headersResEngine[i].getName(), headersResEngine[i].getValue());
         }
 
@@ -376,19 +385,23 @@ public final class PersoniumEngineSvcCollectionResource {
             try {
                 isResBody = entity.getContent();
             } catch (IllegalStateException e) {
+                closeQuietly(objResponse);
                 throw PersoniumCoreException.ServiceCollection.SC_UNKNOWN_ERROR.reason(e);
             } catch (IOException e) {
+                closeQuietly(objResponse);
                 throw PersoniumCoreException.ServiceCollection.SC_ENGINE_CONNECTION_ERROR.reason(e);
             }
             final InputStream isInvariable = isResBody;
             // 処理結果を出力
+            // 読み切ってcloseすることで、Engineとの接続はプールに返却される。
             StreamingOutput strOutput = new StreamingOutput() {
                 @Override
                 public void write(final OutputStream os) throws IOException {
-                    int chr;
+                    byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+                    int length;
                     try {
-                        while ((chr = isInvariable.read()) != -1) {
-                            os.write(chr);
+                        while ((length = isInvariable.read(buffer)) != -1) {
+                            os.write(buffer, 0, length);
                         }
                     } finally {
                         isInvariable.close();
@@ -396,12 +409,37 @@ public final class PersoniumEngineSvcCollectionResource {
                 }
             };
             res.entity(strOutput);
+        } else {
+            closeQuietly(objResponse);
         }
 
         // レスポンス返却
         return res.build();
     }
 
+    /**
+     * 接続ごとのヘッダであるか否かを返す.
+     * Engineとの接続はプールして使い回すため、クライアントとの接続に関するヘッダはリレーしない。
+     * @param name ヘッダ名
+     * @return 接続ごとのヘッダである場合はtrue
+     */
+    static boolean isHopByHopHeader(String name) {
+        for (String hopByHop : HOP_BY_HOP_HEADERS) {
+            if (hopByHop.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(CloseableHttpResponse response) {
+        try {
+            response.close();
+        } catch (IOException e) {
+            log.info("Failed to close the response from Engine.", e);
+        }
+    }
+
     /**
      * MOVEメソッドの処理.
      * @param headers ヘッダ情報
@@ -25,9 +25,14 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,13 +42,15 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -71,6 +78,7 @@ import io.personium.common.auth.token.Role;
 import io.personium.common.auth.token.TransCellAccessToken;
 import io.personium.common.utils.PersoniumCoreUtils;
 import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.OAuth2Helper;
 import io.personium.core.model.Box;
 import io.personium.core.model.ctl.Common;
@@ -86,7 +94,7 @@ import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.rs.odata.AbstractODataResource;
 import io.personium.core.rs.odata.ODataResource;
-import io.personium.core.utils.HttpClientFactory;
+import io.personium.core.utils.MessageDeliveryClient;
 import io.personium.core.utils.ODataUtils;
 import io.personium.core.utils.ResourceUtils;
 
@@ -104,6 +112,9 @@ public final class MessageODataResource extends AbstractODataResource {
     /** 最大送信許可数. */
     private static final int MAX_SENT_NUM = 1000;
 
+    /** ('ID')からIDを抜き出すパターン. */
+    private static final Pattern ID_KEY_PATTERN = Pattern.compile("\\('(.+)'\\)");
+
     /**
      * constructor.
      * @param odataResource ODataリソース
@@ -274,31 +285,100 @@ public final class MessageODataResource extends AbstractODataResource {
         // 宛先リスト作成
         List<String> toList = createRequestUrl();
 
-        // リクエストの件数分繰り返し
-        for (String toCellUrl : toList) {
-            List<OProperty<?>> result = null;
-            toCellUrl = formatCellUrl(toCellUrl);
+        // ('ID')からIDを抜き出す
+        Matcher formatMatcher = ID_KEY_PATTERN.matcher(idKey);
+        formatMatcher.matches();
+        String id = formatMatcher.group(1);
 
-            // 受信API呼出しのトークン作成
-            TransCellAccessToken token = new TransCellAccessToken(
-                    fromCellUrl, fromCellUrl, toCellUrl, new ArrayList<Role>(), "");
+        // 宛先毎に受信APIを呼出し、呼出し結果を宛先リストの順に配列に追加する
+        for (List<OProperty<?>> result : deliver(fromCellUrl, toList, id)) {
+            builder.add(OComplexObjects.create(ct, result));
+        }
 
-            // ('ID')からIDを抜き出す
-            Pattern formatPattern = Pattern.compile("\\('(.+)'\\)");
-            Matcher formatMatcher = formatPattern.matcher(idKey);
-            formatMatcher.matches();
-            String id = formatMatcher.group(1);
-            // 受信API呼出しのリクエストボディ作成
-            JSONObject requestBody = createRequestJsonBody(fromCellUrl, toCellUrl, toList, id);
+        return builder;
+    }
 
-            // 受信API呼出し
-            result = requestHttpReceivedMessage(token, toCellUrl, requestBody);
+    /**
+     * 宛先毎のメッセージ受信API呼出しを並列に実行する.
+     * <p>
+     * At most the configured number of destinations are called at a time, one of them on the request thread.
+     * Once a call fails, no more destinations are called, and the failure of the first destination
+     * in the list is thrown as the serial delivery did.
+     * </p>
+     * @param fromCellUrl 送信元CellURL
+     * @param toList 宛先リスト
+     * @param id 受信メッセージのID
+     * @return 宛先リストの順の呼出し結果
+     */
+    private List<List<OProperty<?>>> deliver(final String fromCellUrl, final List<String> toList, final String id) {
+        final int size = toList.size();
+        final List<List<OProperty<?>>> results = new ArrayList<List<OProperty<?>>>(
+                Collections.<List<OProperty<?>>>nCopies(size, null));
+        final List<RuntimeException> failures = new ArrayList<RuntimeException>(
+                Collections.<RuntimeException>nCopies(size, null));
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = next.getAndIncrement(); i < size && !failed.get(); i = next.getAndIncrement()) {
+                    try {
+                        results.set(i, deliverTo(fromCellUrl, toList.get(i), toList, id));
+                    } catch (RuntimeException e) {
+                        failures.set(i, e);
+                        failed.set(true);
+                    }
+                }
+            }
+        };
 
-            // 呼出し結果を配列に追加する
-            builder.add(OComplexObjects.create(ct, result));
+        int workerCount = Math.max(1, Math.min(PersoniumUnitConfig.getMessageSendParallelism(), size));
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 1; i < workerCount; i++) {
+            futures.add(MessageDeliveryClient.submit(worker));
+        }
+        worker.run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+            } catch (ExecutionException e) {
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e.getCause());
+            }
         }
 
-        return builder;
+        for (RuntimeException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 一つの宛先のメッセージ受信APIを呼出す.
+     * @param fromCellUrl 送信元CellURL
+     * @param toCellUrl 送信先CellURL
+     * @param toList 宛先リスト
+     * @param id 受信メッセージのID
+     * @return 呼出し結果
+     */
+    private List<OProperty<?>> deliverTo(String fromCellUrl, String toCellUrl, List<String> toList, String id) {
+        String targetCellUrl = formatCellUrl(toCellUrl);
+
+        // 受信API呼出しのトークン作成
+        TransCellAccessToken token = new TransCellAccessToken(
+                fromCellUrl, fromCellUrl, targetCellUrl, new ArrayList<Role>(), "");
+
+        // 受信API呼出しのリクエストボディ作成
+        JSONObject requestBody = createRequestJsonBody(fromCellUrl, targetCellUrl, toList, id);
+
+        // 受信API呼出し
+        return requestHttpReceivedMessage(token, targetCellUrl, requestBody);
     }
 
     /**
@@ -481,7 +561,6 @@ public final class MessageODataResource extends AbstractODataResource {
         String requestUrl = requestCellUrl + "__message/port";
 
         // リクエストヘッダを取得し、以下内容を追加
-        HttpClient client = HttpClientFactory.create(HttpClientFactory.TYPE_INSECURE);
         HttpPost req = new HttpPost(requestUrl);
 
         // リクエストボディ
@@ -499,26 +578,32 @@ public final class MessageODataResource extends AbstractODataResource {
         req.addHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
 
         // リクエストを投げる
-        HttpResponse objResponse = null;
+        CloseableHttpResponse objResponse = null;
         try {
-            objResponse = client.execute(req);
+            objResponse = MessageDeliveryClient.execute(req);
         } catch (Exception ioe) {
             throw PersoniumCoreException.SentMessage.SM_CONNECTION_ERROR.reason(ioe);
         }
 
-        // リクエスト結果の作成
-        String statusCode = Integer.toString(objResponse.getStatusLine().getStatusCode());
-        List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
-        properties.add(OProperties.string(SentMessage.P_RESULT_TO.getName(), requestCellUrl));
-        properties.add(OProperties.string(SentMessage.P_RESULT_CODE.getName(), statusCode));
-        if (Integer.toString(HttpStatus.SC_CREATED).equals(statusCode)) {
-            properties.add(OProperties.string(SentMessage.P_RESULT_REASON.getName(), "Created."));
-        } else {
-            properties.add(OProperties.string(SentMessage.P_RESULT_REASON.getName(), getErrorMessage(objResponse)));
+        try {
+            // リクエスト結果の作成
+            String statusCode = Integer.toString(objResponse.getStatusLine().getStatusCode());
+            List<OProperty<?>> properties = new ArrayList<OProperty<?>>();
+            properties.add(OProperties.string(SentMessage.P_RESULT_TO.getName(), requestCellUrl));
+            properties.add(OProperties.string(SentMessage.P_RESULT_CODE.getName(), statusCode));
+            if (Integer.toString(HttpStatus.SC_CREATED).equals(statusCode)) {
+                properties.add(OProperties.string(SentMessage.P_RESULT_REASON.getName(), "Created."));
+                // 接続をプールに返却するためボディを読み捨てる
+                EntityUtils.consumeQuietly(objResponse.getEntity());
+            } else {
+                properties.add(OProperties.string(SentMessage.P_RESULT_REASON.getName(),
+                        getErrorMessage(objResponse)));
+            }
+            return properties;
+        } finally {
+            IOUtils.closeQuietly(objResponse);
         }
 
-        return properties;
-
     }
 
     /**
@@ -22,8 +22,11 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,70 +55,141 @@ public class BatchBodyParser {
      * @return BatchBodyPartのリスト
      */
     public List<BatchBodyPart> parse(String boundary, Reader reader, String requestUriParam) {
+        List<BatchBodyPart> requests = new ArrayList<BatchBodyPart>();
+        Iterator<BatchBodyPart> parts = iterate(boundary, reader, requestUriParam);
+        while (parts.hasNext()) {
+            requests.add(parts.next());
+        }
+        return requests;
+    }
+
+    /**
+     * $batchのリクエストボディを読み進めながら、個々のリクエストを順に返すイテレータを生成する.
+     * <p>
+     * Only the body part being parsed is held in memory, so that the memory used does not grow with the number of
+     * requests. A changeset is a single body part and is parsed as a whole. The errors are the same as
+     * {@link #parse}: a body without the close delimiter is a parse error even if a body part before it is malformed.
+     * </p>
+     * @param boundary バウンダリ文字列
+     * @param reader リクエストボディ
+     * @param requestUriParam baseUri
+     * @return BatchBodyPartのイテレータ
+     */
+    public Iterator<BatchBodyPart> iterate(String boundary, Reader reader, String requestUriParam) {
         // TODO リクエストが１万件を超える場合エラーとする
 
         this.collectionUri = requestUriParam.split("/\\$batch")[0];
+        return new PartIterator(boundary, new BufferedReader(reader));
+    }
+
+    /**
+     * $batchのリクエストボディをバウンダリ単位で読み出すイテレータ.
+     */
+    class PartIterator implements Iterator<BatchBodyPart> {
+
+        private final String boundaryStr;
+        private final String delimiter;
+        private final String closeDelimiter;
+        private final BufferedReader reader;
+        private final LinkedList<BatchBodyPart> pending = new LinkedList<BatchBodyPart>();
+        private String lastLine = null;
+        private boolean started = false;
+        private boolean finished = false;
 
-        BufferedReader br = new BufferedReader(reader);
-        // ボディを取得する
-        StringBuilder body;
-        try {
-            body = getBatchBody(br);
-        } catch (IOException e) {
-            // IOExceptionは重大障害
-            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        /**
+         * コンストラクタ.
+         * @param boundaryStr バウンダリ文字列
+         * @param reader リクエストボディ
+         */
+        PartIterator(String boundaryStr, BufferedReader reader) {
+            this.boundaryStr = boundaryStr;
+            this.delimiter = "--" + boundaryStr;
+            this.closeDelimiter = "--" + boundaryStr + "--";
+            this.reader = reader;
         }
 
-        if (!body.toString().startsWith("--" + boundary + "\n")) {
-            // リクエストボディの先頭が「--バウンダリー文字列」で始まっていなければエラーとする
-            throw PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR;
+        @Override
+        public boolean hasNext() {
+            while (this.pending.isEmpty() && !this.finished) {
+                readBoundary();
+            }
+            return !this.pending.isEmpty();
         }
-        if (!body.toString().trim().endsWith("--" + boundary + "--")) {
-            // リクエストボディの最後が「--バウンダリー文字列--」で終わっていなければエラーとする
-            throw PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR;
+
+        @Override
+        public BatchBodyPart next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.pending.removeFirst();
         }
 
-        // 個々のリクエストを取得する
-        List<BatchBodyPart> requests = getRequests(body.toString(), boundary);
-        return requests;
-    }
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
 
-    /**
-     * $batchのリクエストボディを取得する.
-     * @param br リクエストボディ
-     * @return リクエストボディ（StringBuilder）
-     * @throws IOException
-     */
-    private StringBuilder getBatchBody(BufferedReader br) throws IOException {
-        StringBuilder body = new StringBuilder();
-        String line;
-        while (true) {
-            line = br.readLine();
+        /**
+         * 次のバウンダリまで読み込み、そのボディパートを解析する.
+         */
+        private void readBoundary() {
+            if (!this.started) {
+                this.started = true;
+                if (!this.delimiter.equals(readLine())) {
+                    // リクエストボディの先頭が「--バウンダリー文字列」で始まっていなければエラーとする
+                    this.finished = true;
+                    throw PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR;
+                }
+            }
+            StringBuilder boundaryBody = new StringBuilder();
+            String line = readLine();
+            while (line != null && !this.delimiter.equals(line)) {
+                boundaryBody.append(line).append("\n");
+                line = readLine();
+            }
             if (line == null) {
-                break;
+                this.finished = true;
+                checkCloseDelimiter();
+            }
+            if (boundaryBody.length() == 0) {
+                return;
+            }
+            try {
+                BoundaryParser boundary = new BoundaryParser(null, this.boundaryStr);
+                this.pending.addAll(boundary.parse(boundaryBody.toString()));
+            } catch (PersoniumCoreException e) {
+                // 終端が不正な場合はボディパートの形式エラーよりも優先する
+                while (!this.finished) {
+                    if (readLine() == null) {
+                        this.finished = true;
+                    }
+                }
+                checkCloseDelimiter();
+                throw e;
             }
-            body.append(line + "\n");
         }
-        return body;
-    }
 
-    /**
-     * $batchのリクエストボディから個々のリクエストを取得し、リストで返却する.
-     * @param body $batchのリクエストボディ
-     * @param boundaryStr バウンダリ文字列
-     * @return BatchBodyPartのリスト
-     */
-    private List<BatchBodyPart> getRequests(String body, String boundaryStr) {
-        List<BatchBodyPart> requests = new ArrayList<BatchBodyPart>();
-        // ボディをboundaryで分割する
-        String[] arrBoundary = splitBoundary(body, boundaryStr);
-        for (String boundaryBody : arrBoundary) {
-            if (!boundaryBody.equals("")) {
-                BoundaryParser boundary = new BoundaryParser(null, boundaryStr);
-                requests.addAll(boundary.parse(boundaryBody));
+        private void checkCloseDelimiter() {
+            if (this.lastLine == null || !this.lastLine.trim().endsWith(this.closeDelimiter)) {
+                // リクエストボディの最後が「--バウンダリー文字列--」で終わっていなければエラーとする
+                throw PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR;
             }
         }
-        return requests;
+
+        private String readLine() {
+            String line;
+            try {
+                line = this.reader.readLine();
+            } catch (IOException e) {
+                // IOExceptionは重大障害
+                this.finished = true;
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+            }
+            if (line != null && line.trim().length() > 0) {
+                this.lastLine = line;
+            }
+            return line;
+        }
     }
 
     private String[] splitBoundary(String input, String boundaryStr) {
@@ -0,0 +1,116 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rs.odata;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * $batchのリクエストボディを一時的に保持するクラス.
+ * <p>
+ * The body is read twice: once to validate it before the response status is decided, and once to execute the
+ * requests while the response is streamed. Bodies up to the threshold are kept in memory, larger ones are written
+ * to a temporary file so that the heap used does not grow with the size of the batch.
+ * </p>
+ */
+class BatchBodySpool implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(BatchBodySpool.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int threshold;
+    private StringBuilder memory = new StringBuilder();
+    private File file = null;
+
+    /**
+     * コンストラクタ.
+     * @param threshold メモリ上に保持する最大文字数
+     */
+    BatchBodySpool(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * リクエストボディを読み込んで保持する.
+     * @param reader リクエストボディ
+     * @throws IOException 読み込み、一時ファイルへの書き込みに失敗した場合
+     */
+    void spool(Reader reader) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        Writer writer = null;
+        try {
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                if (writer == null && this.memory.length() + length > this.threshold) {
+                    // 閾値を超えたため、以降は一時ファイルに退避する
+                    this.file = File.createTempFile("personium_batch", ".tmp");
+                    this.file.deleteOnExit(); // VM異常終了時に削除する設定
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(this.file), CharEncoding.UTF_8));
+                    writer.append(this.memory);
+                    this.memory = null;
+                }
+                if (writer == null) {
+                    this.memory.append(buffer, 0, length);
+                } else {
+                    writer.write(buffer, 0, length);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    /**
+     * 保持しているリクエストボディを先頭から読み出すReaderを返却する.
+     * @return リクエストボディ
+     * @throws IOException 一時ファイルの読み込みに失敗した場合
+     */
+    Reader openReader() throws IOException {
+        if (this.file == null) {
+            return new StringReader(this.memory.toString());
+        }
+        return new BufferedReader(new InputStreamReader(new FileInputStream(this.file), CharEncoding.UTF_8));
+    }
+
+    /**
+     * 一時ファイルを削除する.
+     */
+    @Override
+    public void close() {
+        if (this.file != null && !this.file.delete()) {
+            log.info("Failed to delete batch spool file: " + this.file.getAbsolutePath());
+        }
+        this.file = null;
+    }
+}
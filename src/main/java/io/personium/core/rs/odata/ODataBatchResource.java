@@ -16,16 +16,23 @@
  */
 package io.personium.core.rs.odata;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.POST;
 import javax.ws.rs.core.Context;
@@ -33,8 +40,11 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.CharEncoding;
 import org.apache.http.HttpStatus;
 import org.json.simple.JSONObject;
 import org.odata4j.core.ODataConstants;
@@ -68,6 +78,7 @@ import io.personium.core.exceptions.ODataErrorMessage;
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
 import io.personium.core.model.impl.es.doc.LinkDocHandler;
 import io.personium.core.model.impl.es.odata.UserDataODataProducer;
+import io.personium.core.model.lock.CellLockManager;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.odata.PersoniumFormatWriterFactory;
 import io.personium.core.rs.PersoniumCoreExceptionMapper;
@@ -134,18 +145,29 @@ public class ODataBatchResource extends AbstractODataResource {
 
     /**
      * バッチリクエストを処理する.
+     * <p>
+     * The request body is spooled and validated as a whole first, so that a malformed or too large batch is still
+     * rejected with an error status. The requests are then parsed again one by one while the response is streamed,
+     * and the result of each request is written as soon as it is decided.
+     * </p>
+     * <p>
+     * The requests run after this method returns, so the reference count of the cell, which is otherwise released
+     * by the response filter before the body is written, is held until the response has been written.
+     * </p>
      * @param uriInfo uriInfo
      * @param headers headers
      * @param request request
+     * @param httpServletRequest HttpServletRequest
      * @param reader reader
      * @return レスポンス
      */
     @WriteAPI
     @POST
     public Response batchRequest(
-            @Context UriInfo uriInfo,
+            @Context final UriInfo uriInfo,
             @Context HttpHeaders headers,
             @Context Request request,
+            @Context HttpServletRequest httpServletRequest,
             Reader reader) {
 
         long startTime = System.currentTimeMillis();
@@ -164,45 +186,366 @@ public class ODataBatchResource extends AbstractODataResource {
         checkAccessContext(this.odataResource.getAccessContext());
 
         // TODO 不正なコンテントタイプが指定された場合エラーを返却する
-        String boundary = headers.getMediaType().getParameters().get("boundary");
+        final String boundary = headers.getMediaType().getParameters().get("boundary");
 
-        // リクエストボディのパース
-        BatchBodyParser parser = new BatchBodyParser();
-        List<BatchBodyPart> bodyParts = parser.parse(boundary, reader, uriInfo.getRequestUri().toString());
-        if (bodyParts == null || bodyParts.size() == 0) {
+        // リクエストボディを退避し、実行前に全体をパースして検証する
+        final BatchBodySpool spool = new BatchBodySpool(PersoniumUnitConfig.getOdataBatchSpoolThreshold());
+        try {
+            spool.spool(reader);
+            validateBatchBody(spool, boundary, uriInfo.getRequestUri().toString());
+
+            UserDataODataProducer producer = (UserDataODataProducer) this.odataResource.getODataProducer();
+            entityTypeIds = producer.getEntityTypeIds();
+        } catch (IOException e) {
+            spool.close();
+            // IOExceptionは重大障害
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        } catch (RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+
+        // セルの参照カウントはレスポンスフィルタではなく、レスポンスの書き出し後に解放する
+        final String cellId = (String) httpServletRequest.getAttribute("cellId");
+        httpServletRequest.removeAttribute("cellId");
+
+        // レスポンス作成
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream os) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(os, CharEncoding.UTF_8));
+                Reader bodyReader = null;
+                try {
+                    bodyReader = spool.openReader();
+                    writeResponseBody(writer, uriInfo, boundary, bodyReader);
+                } finally {
+                    IOUtils.closeQuietly(bodyReader);
+                    spool.close();
+                    if (cellId != null) {
+                        CellLockManager.decrementReferenceCount(cellId);
+                    }
+                }
+                writer.flush();
+            }
+        };
+        String contentType = ODataBatchProvider.MULTIPART_MIXED + "; boundary=" + boundary;
+        return Response.status(HttpStatus.SC_ACCEPTED)
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .header(ODataConstants.Headers.DATA_SERVICE_VERSION, ODataVersion.V2.asString)
+                .entity(output)
+                .build();
+    }
+
+    /**
+     * 退避したリクエストボディ全体をパースし、リクエスト数を検証する.
+     * @param spool リクエストボディ
+     * @param boundary バウンダリ文字列
+     * @param requestUri リクエストURI
+     * @throws IOException リクエストボディの読み込みに失敗した場合
+     */
+    private void validateBatchBody(BatchBodySpool spool, String boundary, String requestUri) throws IOException {
+        int count = 0;
+        Reader bodyReader = spool.openReader();
+        try {
+            // パース結果は保持せず、件数のみ数える
+            Iterator<BatchBodyPart> bodyParts = new BatchBodyParser().iterate(boundary, bodyReader, requestUri);
+            while (bodyParts.hasNext()) {
+                bodyParts.next();
+                count++;
+            }
+        } finally {
+            IOUtils.closeQuietly(bodyReader);
+        }
+        if (count == 0) {
             // パース処理失敗
             throw PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR;
         }
-        if (bodyParts.size() > Integer.parseInt(PersoniumUnitConfig.getOdataBatchBulkRequestMaxSize())) {
+        if (count > Integer.parseInt(PersoniumUnitConfig.getOdataBatchBulkRequestMaxSize())) {
             // $Batchで指定されたリクエスト数が不正
-            throw PersoniumCoreException.OData.TOO_MANY_REQUESTS.params(bodyParts.size());
+            throw PersoniumCoreException.OData.TOO_MANY_REQUESTS.params(count);
         }
+    }
 
-        UserDataODataProducer producer = (UserDataODataProducer) this.odataResource.getODataProducer();
-        entityTypeIds = producer.getEntityTypeIds();
-
+    /**
+     * リクエストを１件ずつパースして実行し、結果が確定した分からレスポンスボディを書き出す.
+     * <p>
+     * The status has already been sent when a request fails unexpectedly, so the failure is returned as the response
+     * of every request not answered yet, and the body is always closed with the end boundary.
+     * </p>
+     * @param writer 書き出し先
+     * @param uriInfo uriInfo
+     * @param boundary バウンダリ文字列
+     * @param bodyReader リクエストボディ
+     * @throws IOException 書き出しに失敗した場合
+     */
+    private void writeResponseBody(Writer writer, UriInfo uriInfo, String boundary, Reader bodyReader)
+            throws IOException {
         List<NavigationPropertyBulkContext> npBulkContexts = new ArrayList<NavigationPropertyBulkContext>();
-
         StringBuilder responseBody = new StringBuilder();
 
-        // １件ずつリクエストを実行
-        for (BatchBodyPart bodyPart : bodyParts) {
-            executePartRequest(responseBody, uriInfo, boundary, npBulkContexts, bodyPart);
+        // １件ずつリクエストを実行する. 連続する取得系リクエストはまとめて実行する
+        List<BatchBodyPart> reads = new ArrayList<BatchBodyPart>();
+        Iterator<BatchBodyPart> bodyParts = new BatchBodyParser().iterate(boundary, bodyReader,
+                uriInfo.getRequestUri().toString());
+        // 想定外のエラーが発生した後は、以降のリクエストを実行せずにエラーを返却する
+        RuntimeException abortCause = null;
+        while (bodyParts.hasNext()) {
+            BatchBodyPart bodyPart = bodyParts.next();
+            if (abortCause != null) {
+                appendErrorResponse(responseBody, boundary, bodyPart, abortCause);
+                flushResponseBody(writer, responseBody);
+                continue;
+            }
+            List<BatchBodyPart> pendingParts = getPendingParts(reads, npBulkContexts);
+            pendingParts.add(bodyPart);
+            int mark = responseBody.length();
+            try {
+                if (isGroupableRead(bodyPart)) {
+                    // POSTのbulk実行
+                    checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
+                    reads.add(bodyPart);
+                } else {
+                    execReads(responseBody, uriInfo, boundary, reads);
+                    executePartRequest(responseBody, uriInfo, boundary, npBulkContexts, bodyPart);
+                }
+            } catch (RuntimeException e) {
+                abortCause = e;
+                abortPendingParts(responseBody, mark, boundary, pendingParts, reads, npBulkContexts, e);
+            }
+            flushResponseBody(writer, responseBody);
         }
 
-        // POSTのbulk実行
-        checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
+        if (abortCause == null) {
+            List<BatchBodyPart> pendingParts = getPendingParts(reads, npBulkContexts);
+            int mark = responseBody.length();
+            try {
+                // 取得系リクエストの実行
+                execReads(responseBody, uriInfo, boundary, reads);
+
+                // POSTのbulk実行
+                checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
+            } catch (RuntimeException e) {
+                abortPendingParts(responseBody, mark, boundary, pendingParts, reads, npBulkContexts, e);
+            }
+        }
 
         // バウンダリ終端文字列
         responseBody.append("--" + boundary + "--");
+        flushResponseBody(writer, responseBody);
+    }
 
-        // レスポンス作成
-        String contentType = ODataBatchProvider.MULTIPART_MIXED + "; boundary=" + boundary;
-        return Response.status(HttpStatus.SC_ACCEPTED)
-                .header(HttpHeaders.CONTENT_TYPE, contentType)
-                .header(ODataConstants.Headers.DATA_SERVICE_VERSION, ODataVersion.V2.asString)
-                .entity(responseBody.toString())
-                .build();
+    /**
+     * 実行待ちのリクエストをリクエスト順に取得する.
+     * @param reads 取得系リクエストのリスト
+     * @param npBulkContexts ナビゲーションプロパティ経由登録リクエスト情報のリスト
+     * @return 実行待ちのリクエストのリスト
+     */
+    private List<BatchBodyPart> getPendingParts(List<BatchBodyPart> reads,
+            List<NavigationPropertyBulkContext> npBulkContexts) {
+        List<BatchBodyPart> pendingParts = new ArrayList<BatchBodyPart>(reads);
+        for (BulkRequest bulkRequest : bulkRequests.values()) {
+            pendingParts.add(bulkRequest.getBodyPart());
+        }
+        for (NavigationPropertyBulkContext npBulkContext : npBulkContexts) {
+            pendingParts.add(npBulkContext.getBodyPart());
+        }
+        return pendingParts;
+    }
+
+    /**
+     * 想定外のエラーで中断したリクエストのレスポンスを、途中まで作成したレスポンスと置き換えてエラーとする.
+     * @param responseBody 結果格納用
+     * @param mark 中断した処理の開始時点の結果の長さ
+     * @param boundary バウンダリ文字列
+     * @param pendingParts 中断した処理の開始時点で応答していないリクエストのリスト
+     * @param reads 取得系リクエストのリスト
+     * @param npBulkContexts ナビゲーションプロパティ経由登録リクエスト情報のリスト
+     * @param e 発生した例外
+     */
+    private void abortPendingParts(StringBuilder responseBody, int mark, String boundary,
+            List<BatchBodyPart> pendingParts, List<BatchBodyPart> reads,
+            List<NavigationPropertyBulkContext> npBulkContexts, RuntimeException e) {
+        logger.info("Batch request aborted while streaming the response: " + e.getMessage(), e);
+        responseBody.setLength(mark);
+        for (BatchBodyPart pendingPart : pendingParts) {
+            appendErrorResponse(responseBody, boundary, pendingPart, e);
+        }
+        reads.clear();
+        bulkRequests.clear();
+        npBulkContexts.clear();
+    }
+
+    /**
+     * リクエストのエラーレスポンスを追加する.
+     * @param responseBody 結果格納用
+     * @param boundary バウンダリ文字列
+     * @param bodyPart BatchBodyPart
+     * @param e 発生した例外
+     */
+    private void appendErrorResponse(StringBuilder responseBody, String boundary, BatchBodyPart bodyPart,
+            Exception e) {
+        BatchResponse res = new BatchResponse();
+        res.setErrorResponse(e);
+        if (HttpMethod.GET.equals(bodyPart.getHttpMethod())) {
+            responseBody.append(getRetrieveResponseBody(boundary, res));
+        } else {
+            responseBody.append(getChangesetResponseBody(boundary, bodyPart, res));
+        }
+    }
+
+    /**
+     * まとめて実行できる取得系リクエストかを判定する.
+     * @param bodyPart BatchBodyPart
+     * @return true: まとめて実行できる, false: 個別に実行する
+     */
+    private boolean isGroupableRead(BatchBodyPart bodyPart) {
+        return HttpMethod.GET.equals(bodyPart.getHttpMethod())
+                && !bodyPart.isLinksRequest()
+                && isValidNavigationProperty(bodyPart);
+    }
+
+    /**
+     * 連続する取得系リクエストをまとめて実行し、レスポンスボディを設定する.
+     * <p>
+     * The requests were collected after the preceding changes were executed and no change is executed between
+     * them, so running them together does not change what each of them reads.
+     * The requests searched together cannot be stopped one by one, so the timeout is checked before each search
+     * and before each request read on its own, not before every request of the group.
+     * </p>
+     * @param responseBody 結果格納用
+     * @param uriInfo uriInfo
+     * @param boundary バウンダリ文字列
+     * @param reads 取得系リクエストのリスト
+     */
+    private void execReads(StringBuilder responseBody, UriInfo uriInfo, String boundary,
+            List<BatchBodyPart> reads) {
+        if (reads.isEmpty()) {
+            return;
+        }
+        if (!isTimedOut(BatchElapsedTimer.Lock.HOLD)) {
+            for (BatchResponse res : read(uriInfo, reads)) {
+                responseBody.append(getRetrieveResponseBody(boundary, res));
+            }
+        } else {
+            for (int i = 0; i < reads.size(); i++) {
+                setTimeoutResponse(responseBody, boundary);
+            }
+        }
+        reads.clear();
+    }
+
+    /**
+     * 取得系リクエストを実行する.
+     * 一件取得と一覧取得はそれぞれ1回のマルチ検索でまとめて取得し、まとめて取得できなかったものは個別に取得する.
+     * @param uriInfo uriInfo
+     * @param reads 取得系リクエストのリスト
+     * @return readsの順のレスポンス
+     */
+    private List<BatchResponse> read(UriInfo uriInfo, List<BatchBodyPart> reads) {
+        List<BatchResponse> results = new ArrayList<BatchResponse>();
+        if (reads.size() == 1) {
+            BatchBodyPart bodyPart = reads.get(0);
+            if (isListRequst(bodyPart)) {
+                results.add(list(uriInfo, bodyPart));
+            } else {
+                results.add(retrieve(uriInfo, bodyPart));
+            }
+            return results;
+        }
+
+        List<Integer> retrieveIndexes = new ArrayList<Integer>();
+        List<ODataEntityResource> entityResources = new ArrayList<ODataEntityResource>();
+        List<OEntityId> entityIds = new ArrayList<OEntityId>();
+        List<Integer> listIndexes = new ArrayList<Integer>();
+        List<String> entitySetNames = new ArrayList<String>();
+        List<QueryInfo> queryInfos = new ArrayList<QueryInfo>();
+        for (int i = 0; i < reads.size(); i++) {
+            BatchBodyPart bodyPart = reads.get(i);
+            BatchResponse res = new BatchResponse();
+            results.add(res);
+            try {
+                // アクセス制御
+                checkReadAccessContext(bodyPart);
+                if (isListRequst(bodyPart)) {
+                    // NavigationProperty経由の一覧取得は 501
+                    if (bodyPart.hasNavigationProperty()) {
+                        throw PersoniumCoreException.Misc.METHOD_NOT_IMPLEMENTED;
+                    }
+                    ODataEntitiesResource entitiesResource = new ODataEntitiesResource(this.odataResource,
+                            bodyPart.getEntitySetName());
+                    QueryInfo queryInfo = QueryParser.createQueryInfo(bodyPart.getRequestQuery());
+                    listIndexes.add(i);
+                    entitySetNames.add(entitiesResource.getEntitySetName());
+                    queryInfos.add(queryInfo);
+                } else {
+                    ODataEntityResource entityResource = new ODataEntityResource(this.odataResource,
+                            bodyPart.getEntitySetName(), bodyPart.getEntityKey());
+                    retrieveIndexes.add(i);
+                    entityResources.add(entityResource);
+                    entityIds.add(entityResource.getOEntityId());
+                }
+            } catch (Exception e) {
+                res.setErrorResponse(e);
+            }
+        }
+
+        UserDataODataProducer producer = (UserDataODataProducer) this.odataResource.getODataProducer();
+        List<EntityResponse> entityResps = producer.getEntities(entityIds);
+        for (int j = 0; j < retrieveIndexes.size(); j++) {
+            int index = retrieveIndexes.get(j);
+            if (entityResps.get(j) == null) {
+                if (isTimedOut(BatchElapsedTimer.Lock.HOLD)) {
+                    results.set(index, getTimeoutResponse());
+                } else {
+                    results.set(index, retrieve(uriInfo, reads.get(index)));
+                }
+                continue;
+            }
+            try {
+                setRetrieveResponse(results.get(index), uriInfo, entityResources.get(j), entityResps.get(j));
+            } catch (Exception e) {
+                results.get(index).setErrorResponse(e);
+            }
+        }
+        if (!listIndexes.isEmpty() && isTimedOut(BatchElapsedTimer.Lock.HOLD)) {
+            for (int index : listIndexes) {
+                results.set(index, getTimeoutResponse());
+            }
+            return results;
+        }
+        List<EntitiesResponse> entitiesResps = producer.getEntities(entitySetNames, queryInfos);
+        for (int j = 0; j < listIndexes.size(); j++) {
+            int index = listIndexes.get(j);
+            if (entitiesResps.get(j) == null) {
+                if (isTimedOut(BatchElapsedTimer.Lock.HOLD)) {
+                    results.set(index, getTimeoutResponse());
+                } else {
+                    results.set(index, list(uriInfo, reads.get(index)));
+                }
+                continue;
+            }
+            try {
+                setListResponse(results.get(index), uriInfo, entitiesResps.get(j));
+            } catch (Exception e) {
+                results.get(index).setErrorResponse(e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 確定したレスポンスボディを書き出し、バッファを空にする.
+     * @param writer 書き出し先
+     * @param responseBody 確定したレスポンスボディ
+     * @throws IOException 書き出しに失敗した場合
+     */
+    private void flushResponseBody(Writer writer, StringBuilder responseBody) throws IOException {
+        if (responseBody.length() == 0) {
+            return;
+        }
+        writer.append(responseBody);
+        writer.flush();
+        responseBody.setLength(0);
     }
 
     /**
@@ -1167,25 +1510,7 @@ public class ODataBatchResource extends AbstractODataResource {
             entitiesResp = entitiesResource.getEntities(queryInfo);
 
             // レスポンス作成
-            res.setResponseCode(HttpStatus.SC_OK);
-            // TODO 現状は、ContentTypeはJSON固定
-            res.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-            res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
-            // レスポンスボディ
-            UriInfo resUriInfo = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
-            StringWriter sw = new StringWriter();
-            // TODO 制限事項でAcceptは無視してJSONで返却するため固定でJSONを指定する.
-            List<MediaType> acceptableMediaTypes = new ArrayList<MediaType>();
-            acceptableMediaTypes.add(MediaType.APPLICATION_JSON_TYPE);
-            // TODO 制限事項でQueryは無視するため固定でnullを指定する.
-            FormatWriter<EntitiesResponse> fw = PersoniumFormatWriterFactory.getFormatWriter(EntitiesResponse.class,
-                    acceptableMediaTypes, null, null);
-            UriInfo uriInfo2 = PersoniumCoreUtils.createUriInfo(resUriInfo, 1);
-
-            fw.write(uriInfo2, sw, entitiesResp);
-            String entity = sw.toString();
-
-            res.setBody(entity);
+            setListResponse(res, uriInfo, entitiesResp);
 
         } catch (Exception e) {
             res.setErrorResponse(e);
@@ -1194,6 +1519,34 @@ public class ODataBatchResource extends AbstractODataResource {
         return res;
     }
 
+    /**
+     * 一覧取得の結果からレスポンスを作成する.
+     * @param res レスポンス
+     * @param uriInfo uriInfo
+     * @param entitiesResp 一覧取得の結果
+     */
+    private void setListResponse(BatchResponse res, UriInfo uriInfo, EntitiesResponse entitiesResp) {
+        res.setResponseCode(HttpStatus.SC_OK);
+        // TODO 現状は、ContentTypeはJSON固定
+        res.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
+        // レスポンスボディ
+        UriInfo resUriInfo = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
+        StringWriter sw = new StringWriter();
+        // TODO 制限事項でAcceptは無視してJSONで返却するため固定でJSONを指定する.
+        List<MediaType> acceptableMediaTypes = new ArrayList<MediaType>();
+        acceptableMediaTypes.add(MediaType.APPLICATION_JSON_TYPE);
+        // TODO 制限事項でQueryは無視するため固定でnullを指定する.
+        FormatWriter<EntitiesResponse> fw = PersoniumFormatWriterFactory.getFormatWriter(EntitiesResponse.class,
+                acceptableMediaTypes, null, null);
+        UriInfo uriInfo2 = PersoniumCoreUtils.createUriInfo(resUriInfo, 1);
+
+        fw.write(uriInfo2, sw, entitiesResp);
+        String entity = sw.toString();
+
+        res.setBody(entity);
+    }
+
     /**
      * バッチリクエストの一件取得処理.
      * @param uriInfo uriInfo
@@ -1215,18 +1568,7 @@ public class ODataBatchResource extends AbstractODataResource {
             entityResp = entityResource.getEntity(null, null, null);
 
             // レスポンス作成
-            res.setResponseCode(HttpStatus.SC_OK);
-            // TODO 現状は、ContentTypeはJSON固定
-            res.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-            res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
-            // レスポンスボディ
-            UriInfo resUriInfo = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
-            // TODO 現状は、ContentTypeはJSON固定
-            String format = AbstractODataResource.FORMAT_JSON;
-            List<MediaType> contentTypes = new ArrayList<MediaType>();
-            contentTypes.add(MediaType.APPLICATION_JSON_TYPE);
-            String responseStr = entityResource.renderEntityResponse(resUriInfo, entityResp, format, null);
-            res.setBody(responseStr);
+            setRetrieveResponse(res, uriInfo, entityResource, entityResp);
 
         } catch (Exception e) {
             res.setErrorResponse(e);
@@ -1235,6 +1577,27 @@ public class ODataBatchResource extends AbstractODataResource {
         return res;
     }
 
+    /**
+     * 一件取得の結果からレスポンスを作成する.
+     * @param res レスポンス
+     * @param uriInfo uriInfo
+     * @param entityResource 取得したEntityのリソース
+     * @param entityResp 一件取得の結果
+     */
+    private void setRetrieveResponse(BatchResponse res, UriInfo uriInfo,
+            ODataEntityResource entityResource, EntityResponse entityResp) {
+        res.setResponseCode(HttpStatus.SC_OK);
+        // TODO 現状は、ContentTypeはJSON固定
+        res.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
+        // レスポンスボディ
+        UriInfo resUriInfo = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
+        // TODO 現状は、ContentTypeはJSON固定
+        String format = AbstractODataResource.FORMAT_JSON;
+        String responseStr = entityResource.renderEntityResponse(resUriInfo, entityResp, format, null);
+        res.setBody(responseStr);
+    }
+
     /**
      * バッチリクエストの更新処理.
      * @param bodyPart BatchBodyPart
@@ -16,8 +16,12 @@
  */
 package io.personium.core.rs.odata;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -36,8 +40,10 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.lang.CharEncoding;
 import org.odata4j.core.ODataConstants;
 import org.odata4j.core.ODataVersion;
 import org.odata4j.core.OEntity;
@@ -50,6 +56,8 @@ import org.odata4j.producer.EntitiesResponse;
 import org.odata4j.producer.EntityResponse;
 import org.odata4j.producer.InlineCount;
 import org.odata4j.producer.QueryInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.personium.common.utils.PersoniumCoreUtils;
 import io.personium.core.PersoniumCoreException;
@@ -60,12 +68,15 @@ import io.personium.core.model.ctl.Common;
 import io.personium.core.model.ctl.ReceivedMessage;
 import io.personium.core.model.ctl.SentMessage;
 import io.personium.core.odata.PersoniumFormatWriterFactory;
+import io.personium.core.utils.EscapeControlCodeWriter;
 
 /**
  * ODataのEntitiesリソース( id 指定がなくentitySetが指定されたURL）を扱うJAX-RSリソース.
  */
 public final class ODataEntitiesResource extends AbstractODataResource {
 
+    private static Logger log = LoggerFactory.getLogger(ODataEntitiesResource.class);
+
     private static final int Q_MAX_LENGTH = Common.MAX_Q_VALUE_LENGTH;
     ODataResource odataResource;
     AccessContext accessContext;
@@ -105,30 +116,41 @@ public final class ODataEntitiesResource extends AbstractODataResource {
                 this.odataResource.getNecessaryReadPrivilege(getEntitySetName()));
 
         // リクエストの取得をProducerに依頼
-        EntitiesResponse resp = getEntities(uriInfo, q);
-        StringWriter sw = new StringWriter();
+        // エンティティはレスポンスの書き出し時に1件ずつ作成される
+        QueryInfo queryInfo = queryInfo(uriInfo, q);
+        final EntitiesResponse resp = getOdataProducer().getEntitiesLazily(getEntitySetName(), queryInfo);
 
         // $formatとAcceptヘッダの値から出力形式を決定
         List<MediaType> acceptableMediaTypes = new ArrayList<MediaType>();
         MediaType contentType = decideOutputFormat(accept, format);
         acceptableMediaTypes.add(contentType);
 
-        FormatWriter<EntitiesResponse> fw = PersoniumFormatWriterFactory.getFormatWriter(EntitiesResponse.class,
-                acceptableMediaTypes, null, callback);
-        UriInfo uriInfo2 = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
-
-        fw.write(uriInfo2, sw, resp);
-        String entity = null;
-        entity = sw.toString();
-
-        // 制御コードのエスケープ処理
-        entity = escapeResponsebody(entity);
+        final FormatWriter<EntitiesResponse> fw = PersoniumFormatWriterFactory.getFormatWriter(
+                EntitiesResponse.class, acceptableMediaTypes, null, callback);
+        final UriInfo uriInfo2 = PersoniumCoreUtils.createUriInfo(uriInfo, 1);
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream os) throws IOException {
+                // 制御コードのエスケープ処理
+                Writer writer = new EscapeControlCodeWriter(
+                        new BufferedWriter(new OutputStreamWriter(os, CharEncoding.UTF_8)));
+                try {
+                    fw.write(uriInfo2, writer, resp);
+                } catch (RuntimeException e) {
+                    // レスポンスの送信開始後のため、ステータスコードでエラーを返却できない
+                    log.info("Feed response aborted while streaming: " + e.getMessage(), e);
+                    throw e;
+                }
+                writer.flush();
+            }
+        };
 
         // TODO remove this hack, check whether we are Version 2.0 compatible anyway
         ODataVersion version = null;
         version = ODataVersion.V2;
 
-        return Response.ok(entity, fw.getContentType())
+        return Response.ok(output, fw.getContentType())
                 .header(ODataConstants.Headers.DATA_SERVICE_VERSION, version.asString).build();
     }
 
@@ -195,31 +195,22 @@ public class SnapshotFile implements Closeable {
     }
 
     /**
-     * Create data pjson.
+     * Create data pjson and return the writer of it.
+     * <p>
+     * Write all the data through the one writer. Appending to an entry of zip copies the whole entry.
+     * </p>
+     * @return writer of data pjson
      */
-    public void createDataPJson() {
+    public BufferedWriter newDataPJsonWriter() {
         Path pathInZip = pathMap.get(DATA_PJSON);
         try {
-            Files.createFile(pathInZip);
+            return Files.newBufferedWriter(pathInZip, Charsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
         } catch (IOException e) {
             throw PersoniumCoreException.Common.FILE_IO_ERROR.params("create data pjson to snapshot file").reason(e);
         }
     }
 
-    /**
-     * Write to data pjson.
-     * @param data Data to write
-     */
-    public void writeDataPJson(String data) {
-        Path pathInZip = pathMap.get(DATA_PJSON);
-        try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
-            writer.write(data);
-        } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add data pjson to snapshot file").reason(e);
-        }
-    }
-
     /**
      * Get and return webdav directory path.
      * @return webdav directory path
@@ -245,9 +236,11 @@ public class SnapshotFile implements Closeable {
     private FileSystem toZipFileSystem(Path zipFilePath) throws IOException {
         // Preparation to handle zip with FileSystem.
         URI uri = toZipUri(zipFilePath);
-        Map<String, String> env = new HashMap<>();
+        Map<String, Object> env = new HashMap<>();
         // Automatically created if zip file does not exist.
         env.put("create", "true");
+        // Buffer entries being written in temporary files instead of heap.
+        env.put("useTempFile", Boolean.TRUE);
         // env.put("encoding", UTF-8); default encoding is utf-8
 
         return FileSystems.newFileSystem(uri, env);
@@ -0,0 +1,253 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+
+/**
+ * Pipeline that indexes documents of a snapshot file with concurrent bulk requests.
+ * <p>
+ * The caller parses the data pjson and adds documents. They are grouped into batches bounded by
+ * both the number of documents and the payload bytes, and handed to the workers through a bounded queue,
+ * so that parsing and indexing overlap while memory stays bounded.
+ * Documents failed in a bulk response are retried. When a whole bulk request fails,
+ * it is retried in two halves, as the payload may be too large for Elasticsearch.
+ * </p>
+ */
+class SnapshotFileBulkImporter {
+
+    /** Logger. */
+    private static Logger log = LoggerFactory.getLogger(SnapshotFileBulkImporter.class);
+
+    /** Base interval of retrying a bulk request (ms). Multiplied by the number of attempts. */
+    private static final long RETRY_INTERVAL = 1000L;
+    /** Interval of checking failures of the workers while waiting (ms). */
+    private static final long POLL_INTERVAL = 100L;
+    /** Batch telling a worker to finish. */
+    private static final List<EsBulkRequest> END = Collections.emptyList();
+
+    private final DataSourceAccessor accessor;
+    private final String routingId;
+    private final SnapshotFileImportProgressInfo progressInfo;
+    private final int maxDocuments;
+    private final long maxBytes;
+    private final int retryTimes;
+    private final BlockingQueue<List<EsBulkRequest>> queue;
+    private final List<Future<?>> workers = new ArrayList<Future<?>>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+    private volatile boolean aborted = false;
+
+    private List<EsBulkRequest> batch = new ArrayList<EsBulkRequest>();
+    private long batchBytes = 0L;
+
+    /**
+     * Constructor. Starts the workers.
+     * @param accessor accessor of the data index
+     * @param routingId routing id
+     * @param progressInfo progress info
+     * @param maxDocuments maximum number of documents in a bulk request
+     * @param maxBytes maximum payload bytes of a bulk request
+     * @param retryTimes maximum number of retries of a bulk request
+     * @param workerCount number of concurrent bulk requests
+     * @param executor executor to run the workers on
+     */
+    SnapshotFileBulkImporter(DataSourceAccessor accessor, String routingId,
+            SnapshotFileImportProgressInfo progressInfo, int maxDocuments, long maxBytes, int retryTimes,
+            int workerCount, ExecutorService executor) {
+        this.accessor = accessor;
+        this.routingId = routingId;
+        this.progressInfo = progressInfo;
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+        this.retryTimes = retryTimes;
+        this.queue = new ArrayBlockingQueue<List<EsBulkRequest>>(workerCount * 2);
+        for (int i = 0; i < workerCount; i++) {
+            this.workers.add(executor.submit(new Worker()));
+        }
+    }
+
+    /**
+     * Adds a document. Blocks while all the workers are busy.
+     * @param request bulk request of the document
+     * @param bytes payload bytes of the document
+     */
+    void add(EsBulkRequest request, long bytes) {
+        this.batch.add(request);
+        this.batchBytes += bytes;
+        if (this.batch.size() >= this.maxDocuments || this.batchBytes >= this.maxBytes) {
+            dispatch(this.batch);
+            this.batch = new ArrayList<EsBulkRequest>();
+            this.batchBytes = 0L;
+        }
+    }
+
+    /**
+     * Indexes the remaining documents and waits for all the workers to finish.
+     */
+    void finish() {
+        if (!this.batch.isEmpty()) {
+            dispatch(this.batch);
+            this.batch = new ArrayList<EsBulkRequest>();
+            this.batchBytes = 0L;
+        }
+        for (int i = 0; i < this.workers.size(); i++) {
+            dispatch(END);
+        }
+        for (Future<?> worker : this.workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abort();
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+            } catch (ExecutionException e) {
+                abort();
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e.getCause());
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops the workers without indexing the remaining documents.
+     */
+    void abort() {
+        this.aborted = true;
+        for (Future<?> worker : this.workers) {
+            worker.cancel(true);
+        }
+    }
+
+    private void dispatch(List<EsBulkRequest> requests) {
+        try {
+            while (!this.queue.offer(requests, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        RuntimeException e = this.failure.get();
+        if (e != null) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a bulk request and retries the failed documents.
+     * @param requests documents
+     * @param attempt number of attempts so far
+     */
+    private void importBatch(List<EsBulkRequest> requests, int attempt) {
+        List<EsBulkRequest> failed = new ArrayList<EsBulkRequest>();
+        try {
+            PersoniumBulkResponse response = this.accessor.bulkCreate(requests, this.routingId);
+            PersoniumBulkItemResponse[] items = response.items();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailed()) {
+                    failed.add(requests.get(i));
+                }
+            }
+        } catch (PersoniumCoreException e) {
+            if (attempt >= this.retryTimes) {
+                throw e;
+            }
+            log.info(String.format("Bulk request of %d documents failed. Retry:%d", requests.size(), attempt + 1), e);
+            waitForRetry(attempt);
+            if (requests.size() > 1) {
+                int half = requests.size() / 2;
+                importBatch(new ArrayList<EsBulkRequest>(requests.subList(0, half)), attempt + 1);
+                importBatch(new ArrayList<EsBulkRequest>(requests.subList(half, requests.size())), attempt + 1);
+            } else {
+                importBatch(requests, attempt + 1);
+            }
+            return;
+        }
+
+        this.progressInfo.addDelta(requests.size() - failed.size());
+        this.progressInfo.writeToCache();
+        if (failed.isEmpty()) {
+            return;
+        }
+        if (attempt >= this.retryTimes) {
+            throw PersoniumCoreException.Server.ES_RETRY_OVER.params(
+                    String.format("bulk import of %d documents", failed.size()));
+        }
+        log.info(String.format("%d documents failed in bulk request. Retry:%d", failed.size(), attempt + 1));
+        waitForRetry(attempt);
+        importBatch(failed, attempt + 1);
+    }
+
+    private void waitForRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_INTERVAL * (attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+        }
+    }
+
+    /**
+     * Takes batches from the queue and indexes them until END.
+     */
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (!aborted) {
+                    List<EsBulkRequest> requests = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (requests == null) {
+                        continue;
+                    }
+                    if (requests == END) {
+                        return;
+                    }
+                    importBatch(requests, 0);
+                }
+            } catch (InterruptedException e) {
+                // Aborted.
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package io.personium.core.snapshot;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileVisitor;
@@ -61,6 +62,8 @@ public class SnapshotFileExportRunner implements Runnable {
 
     /** Limit when retrieving OData. */
     private static final int SEARCH_LIMIT = 1000;
+    /** Delimiter between type and id in _uid of Es. */
+    private static final String UID_DELIMITER = "#";
 
     /** Manifest json key : export api version. */
     private static final String MANIFEST_JSON_KEY_EXPORT_VERSION = "export_version";
@@ -229,72 +232,84 @@ public class SnapshotFileExportRunner implements Runnable {
 
     /**
      * Extract data other than cells from OData and add it to the zip file.
+     * <p>
+     * Pages through the cell in _uid order, starting each page after the last _uid of the previous one.
+     * Unlike from/size, every page costs the same however deep it is, and hits are written to the zip entry
+     * page by page, so that time is linear and memory is constant in the size of the cell.
+     * The cell is locked for export, so the data does not change between pages.
+     * </p>
      * @param snapshotFile snapshot file
      */
     @SuppressWarnings("unchecked")
     private void addDataToZip(SnapshotFile snapshotFile) {
+        // Get index accessor of Es
+        String indexName = targetCell.getDataBundleName();
+        DataSourceAccessor dataSourceAccessor = EsModel.getDataSourceAccessorFromIndexName(indexName);
+
+        // At least create an empty file.
+        try (BufferedWriter writer = snapshotFile.newDataPJsonWriter()) {
+            JSONObject resultJson = new JSONObject();
+            String lastUid = null;
+            while (true) {
+                // Search Es
+                PersoniumSearchResponse response = dataSourceAccessor.searchForIndex(
+                        targetCell.getId(), createDataQuery(lastUid));
+                PersoniumSearchHit[] hits = response.getHits().getHits();
+                if (hits.length == 0) {
+                    break;
+                }
+
+                for (PersoniumSearchHit hit : hits) {
+                    resultJson.put("_index", hit.getIndex());
+                    resultJson.put("_type", hit.getType());
+                    resultJson.put("_id", hit.getId());
+                    resultJson.put("_source", hit.getSource());
+
+                    resultJson.writeJSONString(writer);
+                    writer.newLine();
+
+                    resultJson.clear();
+                }
+                PersoniumSearchHit last = hits[hits.length - 1];
+                lastUid = last.getType() + UID_DELIMITER + last.getId();
+
+                progressInfo.addDelta(hits.length);
+                progressInfo.writeToCache();
+
+                // If the search result is smaller than LIMIT, the processing is terminated
+                if (SEARCH_LIMIT > hits.length) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add data pjson to snapshot file").reason(e);
+        }
+    }
+
+    /**
+     * Generate the query of one page of data other than cells.
+     * @param lastUid _uid of the last hit of the previous page. null for the first page
+     * @return query
+     */
+    private Map<String, Object> createDataQuery(String lastUid) {
         // Specifying filter
-        Map<String, Object> filter = new HashMap<String, Object>();
-        filter = QueryMapFactory.termQuery("c", targetCell.getId());
-        Map<String, Object> filtered = new HashMap<String, Object>();
-        filtered = QueryMapFactory.filteredQuery(null, filter);
+        List<Map<String, Object>> filters = new ArrayList<Map<String, Object>>();
+        filters.add(QueryMapFactory.termQuery("c", targetCell.getId()));
+        if (lastUid != null) {
+            filters.add(QueryMapFactory.rangeFilter("_uid", "gt", lastUid));
+        }
+        Map<String, Object> filtered = QueryMapFactory.filteredQuery(null, QueryMapFactory.andFilter(filters));
 
         // Specifying sort
         List<Map<String, Object>> sortList = new ArrayList<Map<String, Object>>();
-        sortList.add(QueryMapFactory.sortQuery("_type", EsQueryHandler.SORT_ASC));
-        sortList.add(QueryMapFactory.sortQuery("b", EsQueryHandler.SORT_ASC));
-        sortList.add(QueryMapFactory.sortQuery("n", EsQueryHandler.SORT_ASC));
-        sortList.add(QueryMapFactory.sortQuery("t", EsQueryHandler.SORT_ASC));
         sortList.add(QueryMapFactory.sortQuery("_uid", EsQueryHandler.SORT_ASC));
 
         // Generate query
         Map<String, Object> query = new HashMap<String, Object>();
-        long queryFrom = 0L;
         query.put("query", filtered);
         query.put("sort", sortList);
-        query.put("from", queryFrom);
         query.put("size", SEARCH_LIMIT);
-
-        // Get index accessor of Es
-        String indexName = targetCell.getDataBundleName();
-        DataSourceAccessor dataSourceAccessor = EsModel.getDataSourceAccessorFromIndexName(indexName);
-
-        // At least create an empty file.
-        snapshotFile.createDataPJson();
-        while (true) {
-            // Search Es
-            PersoniumSearchResponse response = dataSourceAccessor.searchForIndex(
-                    targetCell.getId(), query);
-            if (response.getHits().getCount() == 0) {
-                break;
-            }
-
-            JSONObject resultJson = new JSONObject();
-            StringBuilder builder = new StringBuilder();
-            for (PersoniumSearchHit hit : response.getHits().getHits()) {
-                resultJson.put("_index", hit.getIndex());
-                resultJson.put("_type", hit.getType());
-                resultJson.put("_id", hit.getId());
-                resultJson.put("_source", hit.getSource());
-
-                builder.append(resultJson.toJSONString());
-                builder.append(System.lineSeparator());
-
-                resultJson.clear();
-            }
-            snapshotFile.writeDataPJson(builder.toString());
-
-            progressInfo.addDelta(response.getHits().getCount());
-            progressInfo.writeToCache();
-
-            // If the search result is smaller than LIMIT, the processing is terminated
-            if (SEARCH_LIMIT > response.getHits().getCount()) {
-                break;
-            }
-            // If the search result is LIMIT, search again from the following
-            queryFrom += SEARCH_LIMIT;
-            query.put("from", queryFrom);
-        }
+        return query;
     }
 
     /**
@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.file.SeekableDataCryptor;
 import io.personium.core.model.impl.fs.DavMetadataFile;
 
 /**
@@ -83,6 +84,10 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
      */
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (DavMetadataFile.isTemporaryFile(file.getFileName().toString())) {
+            // Left by a metadata save that did not complete
+            return FileVisitResult.CONTINUE;
+        }
         Path relativePath = webdavRootDir.relativize(file);
         Path pathInZip = webdavRootDirInZip.resolve(relativePath.toString());
 
@@ -108,8 +113,7 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
             Path metadataPath = file.getParent().resolve(DavMetadataFile.DAV_META_FILE_NAME);
             DavMetadataFile metadata = DavMetadataFile.newInstance(metadataPath.toFile());
             metadata.load();
-            DataCryptor cryptor = new DataCryptor(cellId);
-            try (InputStream in = cryptor.decode(new FileInputStream(file.toFile()), metadata.getEncryptionType())) {
+            try (InputStream in = decode(new FileInputStream(file.toFile()), metadata.getEncryptionType())) {
                 Files.copy(in, pathInZip);
             }
         }
@@ -118,6 +122,14 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
         return FileVisitResult.CONTINUE;
     }
 
+    private InputStream decode(InputStream input, String encryptionType) throws IOException {
+        if (SeekableDataCryptor.isSeekable(encryptionType)) {
+            return SeekableDataCryptor.decode(input);
+        }
+        DataCryptor cryptor = new DataCryptor(cellId);
+        return cryptor.decode(input, encryptionType);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -133,7 +133,7 @@ public class SnapshotFileImportProgressInfo {
      * Update the progress rate.
      * @param delta The number of cases processed(increment)
      */
-    public void addDelta(long delta) {
+    public synchronized void addDelta(long delta) {
         progressCount += delta;
     }
 
@@ -177,7 +177,7 @@ public class SnapshotFileImportProgressInfo {
      * @param forceOutput true : Even if the percentage does not exceed the threshold value, it writes.
      */
     @SuppressWarnings("unchecked")
-    public void writeToCache(boolean forceOutput) {
+    public synchronized void writeToCache(boolean forceOutput) {
         int progressInPercent = (int) (((double) progressCount  * PERCENTAGE) / entryCount);
         if (!isOutput(progressInPercent) && !forceOutput) {
             return;
@@ -203,7 +203,7 @@ public class SnapshotFileImportProgressInfo {
      * @param toPath path to write
      */
     @SuppressWarnings("unchecked")
-    public void writeToFile(Path toPath) {
+    public synchronized void writeToFile(Path toPath) {
         int progressInPercent = (int) (((double) progressCount  * PERCENTAGE) / entryCount);
 
         // Create json to write.
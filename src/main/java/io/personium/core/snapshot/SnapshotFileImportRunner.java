@@ -18,6 +18,7 @@ package io.personium.core.snapshot;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,6 +28,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -46,6 +53,7 @@ import io.personium.core.model.ModelFactory;
 import io.personium.core.model.impl.es.EsModel;
 import io.personium.core.model.impl.es.accessor.CellAccessor;
 import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.model.impl.es.cache.RoleCache;
 import io.personium.core.model.lock.CellLockManager;
 import io.personium.core.rs.odata.MapBulkRequest;
 
@@ -118,6 +126,8 @@ public class SnapshotFileImportRunner implements Runnable {
         } finally {
             // Delete progress info.
             progressInfo.deleteFromCache();
+            // Roles resolved before the import are stale, whether or not it succeeded.
+            RoleCache.clear(targetCell);
             // Unlock the cell.
             CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.NORMAL);
             log.info(String.format("End import. CellName:%s", targetCell.getName()));
@@ -169,13 +179,46 @@ public class SnapshotFileImportRunner implements Runnable {
      * Make the contents of the cell.
      * @param snapshotFile snapshot file
      */
-    private void makeCellData(SnapshotFile snapshotFile) {
+    private void makeCellData(final SnapshotFile snapshotFile) {
         modifyCellInfo(snapshotFile);
         log.info(String.format("Modified cell info."));
-        addDataToCell(snapshotFile);
-        log.info(String.format("Added odata."));
-        addWebDAVToCell(snapshotFile);
-        log.info(String.format("Added webdav file."));
+
+        // WebDAV files are restored concurrently with OData.
+        int workerCount = PersoniumUnitConfig.getCellSnapshotImportWorkers();
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount + 1, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SnapshotFileImport-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Future<?> webdav = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    addWebDAVToCell(snapshotFile);
+                    log.info(String.format("Added webdav file."));
+                }
+            });
+            addDataToCell(snapshotFile, executor, workerCount);
+            log.info(String.format("Added odata."));
+            try {
+                webdav.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -210,42 +253,51 @@ public class SnapshotFileImportRunner implements Runnable {
 
     /**
      * Extract odata from snapshot file and add it to cell.
+     * <p>
+     * This thread parses the data pjson while the workers send bulk requests.
+     * </p>
      * @param snapshotFile snapshot file
+     * @param executor executor to run the bulk workers on
+     * @param workerCount number of concurrent bulk requests
      */
-    private void addDataToCell(SnapshotFile snapshotFile) {
+    @SuppressWarnings("unchecked")
+    private void addDataToCell(SnapshotFile snapshotFile, ExecutorService executor, int workerCount) {
+        DataSourceAccessor accessor = EsModel.batch(targetCell);
+        SnapshotFileBulkImporter importer = new SnapshotFileBulkImporter(accessor, targetCell.getId(), progressInfo,
+                BULK_REQUEST_LIMIT, PersoniumUnitConfig.getCellSnapshotImportBulkMaxBytes(),
+                PersoniumUnitConfig.getCellSnapshotImportRetryTimes(), workerCount, executor);
         try (BufferedReader bufferedReader = snapshotFile.getDataPJsonReader()) {
             String line = null;
-            DataSourceAccessor accessor = EsModel.batch(targetCell);
-            List<EsBulkRequest> bulkRequestList = new ArrayList<>();
+            JSONParser parser = new JSONParser();
             while ((line = bufferedReader.readLine()) != null) {
                 JSONObject dataJson;
                 try {
-                    dataJson = (JSONObject) new JSONParser().parse(line);
+                    dataJson = (JSONObject) parser.parse(line);
                 } catch (ParseException e) {
                     throw PersoniumCoreException.Common.JSON_PARSE_ERROR.params(line);
                 }
 
+                // JSONObject is a Map already, so that _source is indexed as it is parsed.
                 // When c attribute is rewritten, since it is treated as data of another cell,
                 // it is overwritten with information of target cell.
-                Map<String, Object> map = jsonToMap((JSONObject) dataJson.get("_source"));
+                Map<String, Object> map = (JSONObject) dataJson.get("_source");
+                if (map == null) {
+                    map = new HashMap<String, Object>();
+                }
                 map.put("c", targetCell.getId());
 
                 String type = (String) dataJson.get("_type");
                 String id = (String) dataJson.get("_id");
-                bulkRequestList.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, type, id, map));
-
-                if (BULK_REQUEST_LIMIT <= bulkRequestList.size()) {
-                    accessor.bulkCreate(bulkRequestList, targetCell.getId());
-                    progressInfo.addDelta(bulkRequestList.size());
-                    bulkRequestList.clear();
-                }
-            }
-            if (!bulkRequestList.isEmpty()) {
-                accessor.bulkCreate(bulkRequestList, targetCell.getId());
-                progressInfo.addDelta(bulkRequestList.size());
+                importer.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, type, id, map),
+                        line.getBytes(StandardCharsets.UTF_8).length);
             }
+            importer.finish();
         } catch (IOException e) {
+            importer.abort();
             throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read data pjson from snapshot file").reason(e);
+        } catch (RuntimeException e) {
+            importer.abort();
+            throw e;
         }
     }
 
@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.file.SeekableDataCryptor;
 import io.personium.core.model.impl.fs.DavMetadataFile;
 
 /**
@@ -93,16 +94,18 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
                 DavMetadataFile metadata = DavMetadataFile.newInstance(path.toFile());
                 metadata.load();
                 if (DataCryptor.ENCRYPTION_TYPE_NONE.equals(metadata.getEncryptionType())) {
-                    metadata.setEncryptionType(DataCryptor.ENCRYPTION_TYPE_AES);
+                    if (PersoniumUnitConfig.isDavEncryptSeekable()) {
+                        metadata.setEncryptionType(SeekableDataCryptor.ENCRYPTION_TYPE_AES_CTR);
+                    } else {
+                        metadata.setEncryptionType(DataCryptor.ENCRYPTION_TYPE_AES);
+                    }
                     metadata.save();
                 }
             }
         } else {
             // Content file
             // It reads the setting file and decides whether to encrypt it or not.
-            DataCryptor cryptor = new DataCryptor(cellId);
-            try (InputStream in = cryptor.encode(Files.newInputStream(file),
-                    PersoniumUnitConfig.isDavEncryptEnabled())) {
+            try (InputStream in = encode(Files.newInputStream(file))) {
                 Files.copy(in, path);
             }
         }
@@ -111,6 +114,14 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
         return FileVisitResult.CONTINUE;
     }
 
+    private InputStream encode(InputStream input) {
+        if (PersoniumUnitConfig.isDavEncryptEnabled() && PersoniumUnitConfig.isDavEncryptSeekable()) {
+            return SeekableDataCryptor.encode(input);
+        }
+        DataCryptor cryptor = new DataCryptor(cellId);
+        return cryptor.encode(input, PersoniumUnitConfig.isDavEncryptEnabled());
+    }
+
     /**
      * {@inheritDoc}
      */
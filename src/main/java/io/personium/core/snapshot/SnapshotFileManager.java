@@ -82,9 +82,9 @@ public class SnapshotFileManager {
 
         Path snapshotFilePath = snapshotDirPath.resolve(DavCmpFsImpl.CONTENT_FILE_NAME);
 
-        waitCellAccessible(targetCell.getId());
+        CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.EXPORT);
         try {
-            CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.EXPORT);
+            waitCellAccessible(targetCell.getId());
             SnapshotFileExportRunner runner = new SnapshotFileExportRunner(targetCell, snapshotFilePath);
             PersoniumThread.execute(runner);
         } catch (Throwable e) {
@@ -108,9 +108,9 @@ public class SnapshotFileManager {
 
         Path snapshotFilePath = snapshotDirPath.resolve(DavCmpFsImpl.CONTENT_FILE_NAME);
 
-        waitCellAccessible(targetCell.getId());
+        CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.IMPORT);
         try {
-            CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.IMPORT);
+            waitCellAccessible(targetCell.getId());
             SnapshotFileImportRunner runner = new SnapshotFileImportRunner(targetCell, snapshotFilePath);
             PersoniumThread.execute(runner);
         } catch (Throwable e) {
@@ -131,6 +131,12 @@ public class SnapshotFileManager {
         int maxLoopCount = PersoniumUnitConfig.getCellLockRetryTimes();
         long interval = PersoniumUnitConfig.getCellLockRetryInterval();
 
+        try {
+            // Wait for the other nodes to see the cell status and publish the accesses they have accepted.
+            CellLockManager.awaitPropagation();
+        } catch (InterruptedException e) {
+            throw PersoniumCoreException.Misc.CONFLICT_CELLACCESS;
+        }
         for (int loopCount = 0; loopCount < maxLoopCount; loopCount++) {
             long count = CellLockManager.getReferenceCount(cellId);
             // Since it includes this request, it is larger than 1 if there are other requests.
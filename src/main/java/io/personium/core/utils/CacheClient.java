@@ -45,4 +45,18 @@ public interface CacheClient {
      */
     void delete(String key);
 
+    /**
+     * 指定キーの値を返す.
+     * @param key キャッシュキー
+     * @return 指定キーの値 / -1 キーが存在しないとき
+     */
+    long getLongValue(String key);
+
+    /**
+     * 指定キーの値をインクリメント. キーが存在しない場合は1で作成する.
+     * @param key キャッシュキー
+     * @return インクリメント後の値
+     */
+    long incrementLongValue(String key);
+
 }
@@ -0,0 +1,210 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * Engineへのリレーに使用する、接続をプールして使い回すHttpClient.
+ * <p>
+ * All the relays share one connection pool with keep-alive, so that relayed requests do not pay
+ * TCP setup nor leave sockets in TIME_WAIT. Idle and expired connections are closed by a background thread.
+ * The caller must close the response, or the content stream of its entity, to return the connection to the pool.
+ * </p>
+ */
+public class EngineRelayClient {
+
+    /** Interval of evicting idle connections (ms). */
+    private static final long EVICTION_INTERVAL = 5000L;
+
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+    private static volatile CloseableHttpClient client;
+
+    private static final AtomicLong RELAYED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+    private static final AtomicLong TOTAL_MILLIS = new AtomicLong();
+    private static final AtomicLong MAX_MILLIS = new AtomicLong();
+
+    private EngineRelayClient() {
+    }
+
+    /**
+     * Engineにリクエストを送信する.
+     * <p>
+     * Returns when the response headers have been received. The entity is not buffered.
+     * </p>
+     * @param req リクエスト
+     * @return レスポンス
+     * @throws IOException 通信エラー、またはプールから接続を取得できなかった場合
+     */
+    public static CloseableHttpResponse execute(HttpUriRequest req) throws IOException {
+        CloseableHttpClient httpClient = getClient();
+        long startedAt = System.currentTimeMillis();
+        try {
+            CloseableHttpResponse response = httpClient.execute(req);
+            recordLatency(System.currentTimeMillis() - startedAt);
+            return response;
+        } catch (IOException e) {
+            FAILED.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            FAILED.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the pool utilisation and the relay latency.
+     * @return statistics
+     */
+    public static Map<String, Long> getStatus() {
+        Map<String, Long> status = new HashMap<String, Long>();
+        PoolingHttpClientConnectionManager cm = connectionManager;
+        if (cm != null) {
+            PoolStats stats = cm.getTotalStats();
+            status.put("leased", (long) stats.getLeased());
+            status.put("available", (long) stats.getAvailable());
+            status.put("pending", (long) stats.getPending());
+            status.put("max", (long) stats.getMax());
+        }
+        status.put("relayed", RELAYED.get());
+        status.put("failed", FAILED.get());
+        status.put("totalMillis", TOTAL_MILLIS.get());
+        status.put("maxMillis", MAX_MILLIS.get());
+        return status;
+    }
+
+    private static void recordLatency(long millis) {
+        RELAYED.incrementAndGet();
+        TOTAL_MILLIS.addAndGet(millis);
+        long current = MAX_MILLIS.get();
+        while (millis > current && !MAX_MILLIS.compareAndSet(current, millis)) {
+            current = MAX_MILLIS.get();
+        }
+    }
+
+    private static CloseableHttpClient getClient() {
+        if (client != null) {
+            return client;
+        }
+        synchronized (EngineRelayClient.class) {
+            if (client == null) {
+                PoolingHttpClientConnectionManager cm = createConnectionManager();
+                connectionManager = cm;
+                client = createClient(cm);
+                startEviction(cm, PersoniumUnitConfig.getEngineRelayIdleTimeout());
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Creates the connection pool sized by the unit config.
+     * @return connection manager
+     */
+    static PoolingHttpClientConnectionManager createConnectionManager() {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setMaxTotal(PersoniumUnitConfig.getEngineRelayMaxConnections());
+        cm.setDefaultMaxPerRoute(PersoniumUnitConfig.getEngineRelayMaxConnectionsPerRoute());
+        return cm;
+    }
+
+    /**
+     * Creates the request config with the timeouts of the unit config.
+     * @return request config
+     */
+    static RequestConfig createRequestConfig() {
+        return RequestConfig.custom()
+                .setConnectTimeout(PersoniumUnitConfig.getEngineRelayConnectTimeout())
+                .setSocketTimeout(PersoniumUnitConfig.getEngineRelaySocketTimeout())
+                .setConnectionRequestTimeout(PersoniumUnitConfig.getEngineRelayConnectionRequestTimeout())
+                // Redirections of GET and HEAD are followed, as the client used before the pool did.
+                .setRedirectsEnabled(true)
+                .build();
+    }
+
+    /**
+     * Creates the client on the connection pool.
+     * @param cm connection manager
+     * @return client
+     */
+    static CloseableHttpClient createClient(PoolingHttpClientConnectionManager cm) {
+        return HttpClients.custom()
+                .setConnectionManager(cm)
+                .setDefaultRequestConfig(createRequestConfig())
+                .setKeepAliveStrategy(createKeepAliveStrategy(PersoniumUnitConfig.getEngineRelayKeepAlive()))
+                .disableCookieManagement()
+                .build();
+    }
+
+    /**
+     * Keeps connections alive as long as the Keep-Alive header of Engine says, up to maxKeepAlive.
+     * @param maxKeepAlive maximum time to keep a connection alive (ms)
+     * @return keep-alive strategy
+     */
+    static ConnectionKeepAliveStrategy createKeepAliveStrategy(final long maxKeepAlive) {
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                if (duration <= 0 || duration > maxKeepAlive) {
+                    return maxKeepAlive;
+                }
+                return duration;
+            }
+        };
+    }
+
+    private static void startEviction(final PoolingHttpClientConnectionManager cm, final long idleTimeout) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EngineRelayConnectionEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                cm.closeExpiredConnections();
+                cm.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
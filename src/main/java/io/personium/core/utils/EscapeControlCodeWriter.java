@@ -0,0 +1,85 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.utils;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 書き出す文字列の制御コードをエスケープするWriter.
+ * {@link EscapeControlCode#escape(String)}と同じ変換を、文字列全体を保持せずに行う.
+ */
+public class EscapeControlCodeWriter extends FilterWriter {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * コンストラクタ.
+     * @param out 書き出し先
+     */
+    public EscapeControlCodeWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (isControlCode((char) c)) {
+            writeEscaped((char) c);
+        } else {
+            out.write(c);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (isControlCode(cbuf[i])) {
+                out.write(cbuf, start, i - start);
+                writeEscaped(cbuf[i]);
+                start = i + 1;
+            }
+        }
+        out.write(cbuf, start, end - start);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (isControlCode(str.charAt(i))) {
+                out.write(str, start, i - start);
+                writeEscaped(str.charAt(i));
+                start = i + 1;
+            }
+        }
+        out.write(str, start, end - start);
+    }
+
+    private static boolean isControlCode(char c) {
+        return c <= '\u001F' || c == '\u007F';
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        out.write("\\u00");
+        out.write(HEX[(c >> 4) & 0xF]);
+        out.write(HEX[c & 0xF]);
+    }
+}
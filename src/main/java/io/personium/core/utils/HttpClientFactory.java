@@ -95,6 +95,21 @@ public class HttpClientFactory extends DefaultHttpClient {
      * @return 生成したSSLSocket
      */
     private static SSLSocketFactory createInsecureSSLSocketFactory() {
+        SSLContext sslContext = createInsecureSSLContext();
+
+        HostnameVerifier hostnameVerifier = SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
+        SSLSocketFactory socketFactory = new SSLSocketFactory(sslContext, (X509HostnameVerifier) hostnameVerifier);
+        // socketFactory.setHostnameVerifier((X509HostnameVerifier)
+        // hostnameVerifier);
+
+        return socketFactory;
+    }
+
+    /**
+     * 証明書を検証しないSSLContextを生成.
+     * @return 生成したSSLContext
+     */
+    static SSLContext createInsecureSSLContext() {
         // CHECKSTYLE:OFF
         SSLContext sslContext = null;
         try {
@@ -123,12 +138,6 @@ public class HttpClientFactory extends DefaultHttpClient {
             throw new RuntimeException(e1);
         }
         // CHECKSTYLE:ON
-
-        HostnameVerifier hostnameVerifier = SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
-        SSLSocketFactory socketFactory = new SSLSocketFactory(sslContext, (X509HostnameVerifier) hostnameVerifier);
-        // socketFactory.setHostnameVerifier((X509HostnameVerifier)
-        // hostnameVerifier);
-
-        return socketFactory;
+        return sslContext;
     }
 }
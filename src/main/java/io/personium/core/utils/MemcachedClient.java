@@ -27,6 +27,8 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumCoreLog;
 import io.personium.core.PersoniumUnitConfig;
+import net.spy.memcached.CASResponse;
+import net.spy.memcached.CASValue;
 import net.spy.memcached.ConnectionFactoryBuilder;
 import net.spy.memcached.DefaultConnectionFactory;
 
@@ -85,6 +87,58 @@ public class MemcachedClient implements CacheClient {
         }
     }
 
+    /**
+     * 指定キーのキャッシュをCAS値とともに取得.
+     * @param <T> 取得する型
+     * @param key キャッシュキー
+     * @param clazz 取得する型、 型に問題があるときはClassCastExcetpion発生
+     * @return キャッシュされたオブジェクトとCAS値 / null キャッシュが存在しないとき
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CASValue<T> gets(String key, Class<T> clazz) {
+        try {
+            CASValue<T> ret = (CASValue<T>) this.spyClient.gets(key);
+            if (isReportError) {
+                isReportError = false;
+            }
+            return ret;
+        } catch (RuntimeException e) {
+            log.info(e.getMessage(), e);
+            throw new MemcachedClientException(e);
+        }
+    }
+
+    /**
+     * 指定キーのキャッシュがCAS値の取得後に更新されていない場合のみ置き換えます.
+     * @param key キャッシュのキー
+     * @param casId getsで取得したCAS値
+     * @param expiresIn 有効期間
+     * @param object キャッシュすべきオブジェクト
+     * @return 置き換えた場合はTrue/更新または削除されていた場合はFalseを返す.
+     */
+    public Boolean cas(String key, long casId, int expiresIn, Object object) {
+        try {
+            return CASResponse.OK.equals(this.spyClient.cas(key, casId, expiresIn, object));
+        } catch (RuntimeException e) {
+            log.info(e.getMessage(), e);
+            throw new MemcachedClientException(e);
+        }
+    }
+
+    /**
+     * 指定キーのキャッシュがCAS値の取得後に更新されていない場合のみ削除します.
+     * <p>
+     * The text protocol has no conditional delete, so the entry is replaced by CAS with a negative expiration,
+     * which memcached treats as already expired.
+     * </p>
+     * @param key キャッシュのキー
+     * @param casId getsで取得したCAS値
+     * @return 削除した場合はTrue/更新または削除されていた場合はFalseを返す.
+     */
+    public Boolean delete(String key, long casId) {
+        return this.cas(key, casId, -1, "");
+    }
+
     /**
      * 指定キーでオブジェクトを一定の有効期限のみキャッシュします.
      * @param key キャッシュのキー
@@ -200,6 +254,7 @@ public class MemcachedClient implements CacheClient {
      * @param key キャッシュキー
      * @return 指定キーの値
      */
+    @Override
     public long getLongValue(String key) {
         try {
             // 増分0でインクリメントすることで現在の設定値を取得する
@@ -215,6 +270,7 @@ public class MemcachedClient implements CacheClient {
      * @param key キャッシュキー
      * @return インクリメント後の値
      */
+    @Override
     public long incrementLongValue(String key) {
         try {
             return this.spyClient.incr(key, 1, 1);
@@ -224,6 +280,44 @@ public class MemcachedClient implements CacheClient {
         }
     }
 
+    /**
+     * Increments the value of the key. The key is created with the expiration if it does not exist.
+     * @param key cache key
+     * @param expiresIn expiration of a newly created key (seconds)
+     * @return value after increment
+     */
+    public long incrementLongValue(String key, int expiresIn) {
+        try {
+            return this.spyClient.incr(key, 1, 1, expiresIn);
+        } catch (RuntimeException e) {
+            log.info(e.getMessage(), e);
+            throw new MemcachedClientException(e);
+        }
+    }
+
+    /**
+     * Adds delta to the value of the key. The key is created with delta if it does not exist and delta is positive.
+     * The key is deleted when the value reaches 0.
+     * @param key cache key
+     * @param delta delta
+     * @return value after the addition
+     */
+    public long addLongValue(String key, long delta) {
+        try {
+            if (delta >= 0) {
+                return this.spyClient.incr(key, delta, delta);
+            }
+            long count = this.spyClient.decr(key, -delta);
+            if (count == 0) {
+                delete(key);
+            }
+            return count;
+        } catch (RuntimeException e) {
+            log.info(e.getMessage(), e);
+            throw new MemcachedClientException(e);
+        }
+    }
+
     /**
      * 指定キーの値をデクリメント.
      * @param key キャッシュキー
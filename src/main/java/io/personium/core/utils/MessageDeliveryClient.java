@@ -0,0 +1,207 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * メッセージ送信に使用する、接続をプールして使い回すHttpClientとスレッドプール.
+ * <p>
+ * A message to many cells is delivered to several destinations at a time on a shared thread pool,
+ * over keep-alive connections shared by all the deliveries. As with the client created by
+ * {@link HttpClientFactory#TYPE_INSECURE}, the certificates of the destination units are not verified.
+ * The caller must close the response to return the connection to the pool.
+ * </p>
+ */
+public class MessageDeliveryClient {
+
+    /** Interval of evicting idle connections (ms). */
+    private static final long EVICTION_INTERVAL = 5000L;
+    /** Pooled connections idle for this time are closed (ms). */
+    private static final long IDLE_TIMEOUT = 30000L;
+
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+    private static volatile CloseableHttpClient client;
+    private static volatile ExecutorService executor;
+
+    private static final AtomicLong DELIVERED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+    private static final AtomicLong TOTAL_MILLIS = new AtomicLong();
+    private static final AtomicLong MAX_MILLIS = new AtomicLong();
+
+    private MessageDeliveryClient() {
+    }
+
+    /**
+     * 送信先のUnitにリクエストを送信する.
+     * @param req リクエスト
+     * @return レスポンス
+     * @throws IOException 通信エラー、またはプールから接続を取得できなかった場合
+     */
+    public static CloseableHttpResponse execute(HttpUriRequest req) throws IOException {
+        CloseableHttpClient httpClient = getClient();
+        long startedAt = System.currentTimeMillis();
+        try {
+            CloseableHttpResponse response = httpClient.execute(req);
+            recordLatency(System.currentTimeMillis() - startedAt);
+            return response;
+        } catch (IOException e) {
+            FAILED.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            FAILED.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 送信処理をスレッドプールで実行する.
+     * @param task 送信処理
+     * @return 送信処理の完了を待つためのFuture
+     */
+    public static Future<?> submit(Runnable task) {
+        return getExecutor().submit(task);
+    }
+
+    /**
+     * Returns the pool utilisation and the delivery latency.
+     * @return statistics
+     */
+    public static Map<String, Long> getStatus() {
+        Map<String, Long> status = new HashMap<String, Long>();
+        PoolingHttpClientConnectionManager cm = connectionManager;
+        if (cm != null) {
+            PoolStats stats = cm.getTotalStats();
+            status.put("leased", (long) stats.getLeased());
+            status.put("available", (long) stats.getAvailable());
+            status.put("pending", (long) stats.getPending());
+            status.put("max", (long) stats.getMax());
+        }
+        status.put("delivered", DELIVERED.get());
+        status.put("failed", FAILED.get());
+        status.put("totalMillis", TOTAL_MILLIS.get());
+        status.put("maxMillis", MAX_MILLIS.get());
+        return status;
+    }
+
+    private static void recordLatency(long millis) {
+        DELIVERED.incrementAndGet();
+        TOTAL_MILLIS.addAndGet(millis);
+        long current = MAX_MILLIS.get();
+        while (millis > current && !MAX_MILLIS.compareAndSet(current, millis)) {
+            current = MAX_MILLIS.get();
+        }
+    }
+
+    private static ExecutorService getExecutor() {
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (MessageDeliveryClient.class) {
+            if (executor == null) {
+                final AtomicInteger count = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(PersoniumUnitConfig.getMessageSendMaxThreads(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "MessageDelivery-" + count.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            }
+            return executor;
+        }
+    }
+
+    private static CloseableHttpClient getClient() {
+        if (client != null) {
+            return client;
+        }
+        synchronized (MessageDeliveryClient.class) {
+            if (client == null) {
+                Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", new SSLConnectionSocketFactory(HttpClientFactory.createInsecureSSLContext(),
+                                SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER))
+                        .build();
+                PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registry);
+                cm.setMaxTotal(PersoniumUnitConfig.getMessageSendMaxConnections());
+                cm.setDefaultMaxPerRoute(PersoniumUnitConfig.getMessageSendMaxConnectionsPerRoute());
+
+                int timeout = PersoniumUnitConfig.getMessageSendTimeout();
+                RequestConfig requestConfig = RequestConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .setConnectionRequestTimeout(timeout)
+                        .build();
+
+                connectionManager = cm;
+                client = HttpClients.custom()
+                        .setConnectionManager(cm)
+                        .setDefaultRequestConfig(requestConfig)
+                        .disableCookieManagement()
+                        .build();
+                startEviction(cm);
+            }
+            return client;
+        }
+    }
+
+    private static void startEviction(final PoolingHttpClientConnectionManager cm) {
+        ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MessageDeliveryConnectionEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                cm.closeExpiredConnections();
+                cm.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
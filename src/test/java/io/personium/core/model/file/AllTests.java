@@ -25,7 +25,9 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-    BinaryDataAccessorTest.class
+    BinaryDataAccessorTest.class,
+    SeekableDataCryptorTest.class,
+    StreamingOutputForDavFileTest.class
     })
 public class AllTests {
 }
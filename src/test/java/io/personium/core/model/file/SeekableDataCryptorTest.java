@@ -0,0 +1,135 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.file;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * SeekableDataCryptorユニットテストクラス.
+ */
+@Category({Unit.class })
+public class SeekableDataCryptorTest {
+
+    private static byte[] plain;
+    private static Path encrypted;
+
+    /**
+     * 暗号化したファイルを準備する.
+     * @throws Exception Unintended exception in test
+     */
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        SeekableDataCryptor.setKeyString("0123456789abcdef");
+        plain = new byte[1000];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = (byte) (i * 7);
+        }
+        encrypted = Files.createTempFile("seekable", ".dat");
+        Files.write(encrypted, IOUtils.toByteArray(SeekableDataCryptor.encode(new ByteArrayInputStream(plain))));
+    }
+
+    /**
+     * 暗号化したファイルを削除する.
+     * @throws Exception Unintended exception in test
+     */
+    @AfterClass
+    public static void afterClass() throws Exception {
+        Files.deleteIfExists(encrypted);
+    }
+
+    /**
+     * ヘッダ分だけ長い暗号文になり、先頭から復号すると元に戻ること.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void decode_from_beginning() throws Exception {
+        byte[] cipherText = Files.readAllBytes(encrypted);
+        assertThat(cipherText.length, is(plain.length + SeekableDataCryptor.HEADER_LENGTH));
+        assertThat(Arrays.equals(Arrays.copyOfRange(cipherText, SeekableDataCryptor.HEADER_LENGTH,
+                cipherText.length), plain), is(false));
+
+        InputStream in = SeekableDataCryptor.decode(new ByteArrayInputStream(cipherText));
+        assertArrayEquals(plain, IOUtils.toByteArray(in));
+    }
+
+    /**
+     * ブロック境界を含む任意の位置から復号できること.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void decode_from_any_position() throws Exception {
+        long[] positions = {0, 1, 15, 16, 17, 500, 999};
+        try (FileChannel channel = FileChannel.open(encrypted, StandardOpenOption.READ)) {
+            for (long position : positions) {
+                InputStream in = SeekableDataCryptor.decode(channel, position);
+                byte[] expected = Arrays.copyOfRange(plain, (int) position, plain.length);
+                byte[] actual = new byte[expected.length];
+                IOUtils.readFully(in, actual);
+                assertArrayEquals("position " + position, expected, actual);
+            }
+        }
+    }
+
+    /**
+     * 同じ内容でもファイル毎に異なる暗号文になること.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void encode_uses_random_counter() throws Exception {
+        byte[] other = IOUtils.toByteArray(SeekableDataCryptor.encode(new ByteArrayInputStream(plain)));
+        assertThat(Arrays.equals(other, Files.readAllBytes(encrypted)), is(not(true)));
+    }
+
+    /**
+     * カウンタブロックの加算が桁上がりすること.
+     */
+    @Test
+    public void counterOf_carries() {
+        byte[] iv = new byte[16];
+        iv[15] = (byte) 0xff;
+        iv[14] = (byte) 0xff;
+        byte[] counter = SeekableDataCryptor.counterOf(iv, 1);
+        byte[] expected = new byte[16];
+        expected[13] = 1;
+        assertArrayEquals(expected, counter);
+
+        counter = SeekableDataCryptor.counterOf(new byte[16], 0x0102L);
+        expected = new byte[16];
+        expected[14] = 1;
+        expected[15] = 2;
+        assertArrayEquals(expected, counter);
+    }
+}
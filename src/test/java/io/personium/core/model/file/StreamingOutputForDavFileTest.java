@@ -0,0 +1,131 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.file;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * StreamingOutputForDavFileユニットテストクラス.
+ */
+@Category({Unit.class })
+public class StreamingOutputForDavFileTest {
+
+    private Path dir;
+    private Path contentFile;
+    private byte[] oldContent;
+    private byte[] newContent;
+
+    /**
+     * 更新前のファイルを準備する.
+     * @throws Exception Unintended exception in test
+     */
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("streaming");
+        contentFile = dir.resolve("content");
+        // 出力が複数回に分かれる大きさにする
+        oldContent = new byte[StreamingOutputForDavFile.BUFFER_SIZE * 3 + 1];
+        Arrays.fill(oldContent, (byte) 'o');
+        newContent = new byte[StreamingOutputForDavFile.BUFFER_SIZE];
+        Arrays.fill(newContent, (byte) 'n');
+        Files.write(contentFile, oldContent);
+    }
+
+    /**
+     * 一時ディレクトリを削除する.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    /**
+     * DavCmpFsImpl#doPutForUpdate と同じ手順でファイルを更新する.
+     * @throws IOException 入出力エラー
+     */
+    private void update() throws IOException {
+        Path tmpFile = dir.resolve("tmp");
+        Files.write(tmpFile, newContent);
+        Files.delete(contentFile);
+        Files.move(tmpFile, contentFile);
+    }
+
+    /**
+     * 開いた後に更新されたファイルから更新前の内容が出力されること.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void write_returns_content_opened_before_update() throws Exception {
+        StreamingOutputForDavFile output = new StreamingOutputForDavFile(contentFile.toString(), "cellId", null);
+        update();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        output.write(actual);
+        assertArrayEquals(oldContent, actual.toByteArray());
+
+        // 更新後に開いた場合は更新後の内容が出力される
+        actual = new ByteArrayOutputStream();
+        new StreamingOutputForDavFile(contentFile.toString(), "cellId", null).write(actual);
+        assertArrayEquals(newContent, actual.toByteArray());
+    }
+
+    /**
+     * 出力の途中でファイルが更新されても更新前の内容が最後まで出力されること.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void write_returns_content_opened_before_update_during_output() throws Exception {
+        StreamingOutputForDavFile output = new StreamingOutputForDavFile(contentFile.toString(), "cellId",
+                DataCryptor.ENCRYPTION_TYPE_NONE);
+        final int[] writes = new int[1];
+        ByteArrayOutputStream actual = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                if (writes[0]++ == 0) {
+                    try {
+                        update();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+        output.write(actual);
+
+        assertThat(writes[0] > 1, is(true));
+        assertArrayEquals(oldContent, actual.toByteArray());
+        assertArrayEquals(newContent, Files.readAllBytes(contentFile));
+    }
+}
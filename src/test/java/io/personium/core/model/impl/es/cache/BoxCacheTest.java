@@ -25,6 +25,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
@@ -48,6 +49,14 @@ import io.personium.test.categories.Unit;
 @PrepareForTest({BoxCache.class, PersoniumUnitConfig.class })
 public class BoxCacheTest {
 
+    /**
+     * Each test replaces the memcached client, so the node local cache starts empty.
+     */
+    @Before
+    public void before() {
+        NearCache.invalidateAllInstances();
+    }
+
     /**
      * Memcachedへの接続に失敗した場合NULLを返すこと.
      * @throws Exception テスト中の例外
@@ -29,6 +29,7 @@ import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
@@ -49,6 +50,14 @@ import io.personium.test.categories.Unit;
 @PrepareForTest({CellCache.class, PersoniumUnitConfig.class })
 public class CellCacheTest {
 
+    /**
+     * Each test replaces the memcached client, so the node local cache starts empty.
+     */
+    @Before
+    public void before() {
+        NearCache.invalidateAllInstances();
+    }
+
     /**
      * Memcachedへの接続に失敗した場合NULLを返すこと.
      * @throws Exception テスト中の例外
@@ -215,4 +224,37 @@ public class CellCacheTest {
         assertThat(mockMemcachedClient.get(cacheKeyForMock, Map.class)).isNull();
     }
 
+    /**
+     * キャッシュから取得したCell情報を変更してもキャッシュが変更されないこと.
+     * @throws Exception 実行エラー
+     */
+    @Test
+    public void キャッシュから取得したCell情報を変更してもキャッシュが変更されないこと() throws Exception {
+        String cellName = "cellCacheTestCell";
+        Map<String, Object> cellToCache = new HashMap<String, Object>();
+        cellToCache.put("CellCacheTestKey001", "testValue");
+
+        // テスト用のキャッシュクラスに接続するよう設定を変更
+        MockMemcachedClient mockMemcachedClient = new MockMemcachedClient();
+        PowerMockito.spy(CellCache.class);
+        PowerMockito.when(CellCache.class, "getMcdClient").thenReturn(mockMemcachedClient);
+
+        // キャッシュの設定を有効にする
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "isCellCacheEnabled").thenReturn(true);
+        PowerMockito.when(PersoniumUnitConfig.class, "isLocalCacheEnabled").thenReturn(true);
+
+        // 登録したCell情報を変更してもキャッシュが変更されないこと
+        CellCache.cache(cellName, cellToCache);
+        cellToCache.put("CellCacheTestKey001", "changedByCaller");
+        long hits = CellCache.getNearCache().getHitCount();
+        Map<String, Object> cellFromCache = CellCache.get(cellName);
+        assertThat(CellCache.getNearCache().getHitCount()).isEqualTo(hits + 1);
+        assertThat(cellFromCache.get("CellCacheTestKey001")).isEqualTo("testValue");
+
+        // 取得したCell情報を変更してもキャッシュが変更されないこと
+        cellFromCache.put("CellCacheTestKey001", "changedByCaller");
+        assertThat(CellCache.get(cellName).get("CellCacheTestKey001")).isEqualTo("testValue");
+    }
+
 }
@@ -44,4 +44,23 @@ public class MockMemcachedClient implements CacheClient {
     public void delete(String key) {
         cache.remove(key);
     }
+
+    @Override
+    public long getLongValue(String key) {
+        Long value = (Long) cache.get(key);
+        if (value == null) {
+            return -1;
+        }
+        return value;
+    }
+
+    @Override
+    public long incrementLongValue(String key) {
+        Long value = (Long) cache.get(key);
+        if (value == null) {
+            value = 0L;
+        }
+        cache.put(key, value + 1);
+        return value + 1;
+    }
 }
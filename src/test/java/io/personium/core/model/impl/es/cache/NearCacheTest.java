@@ -0,0 +1,243 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.utils.CacheClient;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit test for NearCache.
+ */
+@Category({Unit.class })
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({PersoniumUnitConfig.class })
+public class NearCacheTest {
+
+    private static NearCache<String> create(final CacheClient client) {
+        return new NearCache<String>("test", new NearCache.ClientProvider() {
+            @Override
+            public CacheClient get() {
+                return client;
+            }
+        });
+    }
+
+    /**
+     * Stored value can be read locally and counters are updated.
+     */
+    @Test
+    public void get_Normal() {
+        NearCache<String> cache = create(new MockMemcachedClient());
+
+        assertThat(cache.get("key")).isNull();
+        cache.put("key", "value");
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(cache.getHitCount()).isEqualTo(1L);
+        assertThat(cache.getMissCount()).isEqualTo(1L);
+    }
+
+    /**
+     * Invalidation on another node drops the local entry after the version check.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void get_Normal_invalidated_on_other_node() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("key", "value");
+        assertThat(node1.get("key")).isEqualTo("value");
+
+        node2.invalidate("key");
+        assertThat(node1.get("key")).isNull();
+    }
+
+    /**
+     * Entries beyond the maximum are evicted in LRU order.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void put_Normal_evicts_least_recently_used() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheMaxEntries").thenReturn(2);
+
+        NearCache<String> cache = create(new MockMemcachedClient());
+        cache.put("key1", "value1");
+        cache.put("key2", "value2");
+        cache.get("key1");
+        cache.put("key3", "value3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1L);
+        assertThat(cache.get("key1")).isEqualTo("value1");
+        assertThat(cache.get("key2")).isNull();
+    }
+
+    /**
+     * Invalidating a key on another node drops only that key.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void invalidate_Normal_only_the_key_dropped_on_other_node() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("key1", "value1");
+        node1.put("key2", "value2");
+        node2.invalidate("key1");
+        node2.invalidate("key3");
+
+        assertThat(node1.get("key1")).isNull();
+        assertThat(node1.get("key2")).isEqualTo("value2");
+    }
+
+    /**
+     * Every key is dropped when the invalidation log cannot be read to the end.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void invalidate_Normal_all_dropped_if_log_is_lost() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("key1", "value1");
+        node1.put("key2", "value2");
+        node2.invalidate("key1");
+        shared.delete(node2.invalidationKey(1L));
+
+        assertThat(node1.get("key2")).isNull();
+    }
+
+    /**
+     * Every key is dropped when more keys were invalidated than the log is read for.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void invalidate_Normal_all_dropped_if_log_is_too_long() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("key", "value");
+        for (int i = 0; i <= NearCache.INVALIDATION_LOG_MAX; i++) {
+            node2.invalidate("other" + i);
+        }
+
+        assertThat(node1.get("key")).isNull();
+    }
+
+    /**
+     * Invalidating a key prefix on another node drops only the keys that start with it.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void invalidatePrefix_Normal_only_the_prefixed_keys_dropped_on_other_node() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("a:key1", "value1");
+        node1.put("a:key2", "value2");
+        node1.put("b:key1", "value3");
+        node2.put("a:key1", "value1");
+        node2.invalidatePrefix("a:");
+
+        assertThat(node2.get("a:key1")).isNull();
+        assertThat(node1.get("a:key1")).isNull();
+        assertThat(node1.get("a:key2")).isNull();
+        assertThat(node1.get("b:key1")).isEqualTo("value3");
+    }
+
+    /**
+     * Invalidating the namespace on another node drops every key.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void invalidateNamespace_Normal_all_dropped_on_other_node() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheVersionCheckInterval").thenReturn(0L);
+
+        MockMemcachedClient shared = new MockMemcachedClient();
+        NearCache<String> node1 = create(shared);
+        NearCache<String> node2 = create(shared);
+
+        node1.put("key1", "value1");
+        node1.put("key2", "value2");
+        node2.invalidateNamespace();
+
+        assertThat(node1.get("key1")).isNull();
+        assertThat(node1.get("key2")).isNull();
+    }
+
+    /**
+     * A copied map does not share the maps and lists in it with the original.
+     */
+    @Test
+    public void copy_Normal_deep() {
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("name", "value");
+        List<Object> list = new ArrayList<Object>();
+        list.add("element");
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("nested", nested);
+        map.put("list", list);
+        map.put("number", 1L);
+
+        Map<String, Object> copied = NearCache.copy(map);
+        nested.put("name", "changed");
+        list.add("added");
+
+        assertThat(copied).isNotSameAs(map);
+        assertThat(((Map<?, ?>) copied.get("nested")).get("name")).isEqualTo("value");
+        assertThat((List<?>) copied.get("list")).hasSize(1);
+        assertThat(copied.get("number")).isEqualTo(1L);
+        assertThat(NearCache.copy(null)).isNull();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.common.auth.token.Role;
+import io.personium.core.model.Cell;
+import io.personium.core.utils.CacheClient;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit test for RoleCache.
+ */
+@Category({Unit.class })
+public class RoleCacheTest {
+
+    private NearCache<List<Role>> originalCache;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        this.originalCache = RoleCache.nearCache;
+        final MockMemcachedClient client = new MockMemcachedClient();
+        RoleCache.nearCache = new NearCache<List<Role>>("role", new NearCache.ClientProvider() {
+            @Override
+            public CacheClient get() {
+                return client;
+            }
+        });
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        RoleCache.nearCache = this.originalCache;
+    }
+
+    private static Cell mockCell(String id) {
+        Cell cell = mock(Cell.class);
+        doReturn(id).when(cell).getId();
+        return cell;
+    }
+
+    /**
+     * Cached roles are returned per cell and account, and changes of the returned list do not leak into the cache.
+     */
+    @Test
+    public void getForAccount_Normal() {
+        Cell cell = mockCell("cellId");
+        List<Role> roles = new ArrayList<Role>();
+        roles.add(new Role("role1", "box1", "https://schema/"));
+
+        assertThat(RoleCache.getForAccount(cell, "account1")).isNull();
+        RoleCache.cacheForAccount(cell, "account1", roles);
+
+        List<Role> cached = RoleCache.getForAccount(cell, "account1");
+        assertThat(cached).hasSize(1);
+        assertThat(cached.get(0).getName()).isEqualTo("role1");
+        cached.clear();
+        assertThat(RoleCache.getForAccount(cell, "account1")).hasSize(1);
+
+        assertThat(RoleCache.getForAccount(cell, "account2")).isNull();
+        assertThat(RoleCache.getForAccount(mockCell("otherCellId"), "account1")).isNull();
+    }
+
+    /**
+     * Clearing drops the cached roles.
+     */
+    @Test
+    public void clear_Normal() {
+        Cell cell = mockCell("cellId");
+        List<Role> roles = new ArrayList<Role>();
+        roles.add(new Role("role1", "box1", "https://schema/"));
+        RoleCache.cacheForAccount(cell, "account1", roles);
+
+        RoleCache.clear(cell);
+        assertThat(RoleCache.getForAccount(cell, "account1")).isNull();
+    }
+
+    /**
+     * Clearing a cell keeps the cached roles of the other cells.
+     */
+    @Test
+    public void clear_Normal_other_cells_kept() {
+        Cell cell = mockCell("cellId");
+        Cell otherCell = mockCell("otherCellId");
+        List<Role> roles = new ArrayList<Role>();
+        roles.add(new Role("role1", "box1", "https://schema/"));
+        RoleCache.cacheForAccount(cell, "account1", roles);
+        RoleCache.cacheForAccount(otherCell, "account1", roles);
+
+        RoleCache.clear(cell);
+        assertThat(RoleCache.getForAccount(cell, "account1")).isNull();
+        assertThat(RoleCache.getForAccount(otherCell, "account1")).hasSize(1);
+    }
+}
@@ -26,6 +26,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
@@ -47,6 +48,14 @@ import io.personium.test.categories.Unit;
 @PrepareForTest({UserDataSchemaCache.class, PersoniumUnitConfig.class })
 public class UserDataSchemaCacheTest {
 
+    /**
+     * Each test replaces the memcached client, so the node local cache starts empty.
+     */
+    @Before
+    public void before() {
+        NearCache.invalidateAllInstances();
+    }
+
     /**
      * getメソッドでMemcachedへの接続に失敗した場合NULLを返すこと.
      * @throws Exception テスト中の例外
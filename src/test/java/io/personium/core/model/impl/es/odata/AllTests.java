@@ -25,7 +25,9 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-    CellCtlODataProducerTest.class
+    CellCtlODataProducerTest.class,
+    ExpandEntitiesMapCreatorTest.class,
+    UserDataMetadataCacheTest.class
     })
 public class AllTests {
 }
@@ -22,6 +22,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyObject;
@@ -68,6 +69,7 @@ import io.personium.core.model.ctl.Role;
 import io.personium.core.model.ctl.SentMessage;
 import io.personium.core.model.impl.es.CellEsImpl;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
+import io.personium.core.model.impl.es.cache.RoleCache;
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
 import io.personium.core.model.impl.es.doc.OEntityDocHandler;
 import io.personium.core.model.impl.es.odata.EsNavigationTargetKeyProperty.NTKPNotFoundException;
@@ -79,7 +81,7 @@ import io.personium.test.categories.Unit;
  * UnitCtlODataProducerユニットテストクラス.
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({CellCtlODataProducer.class, Box.class, UriUtils.class})
+@PrepareForTest({CellCtlODataProducer.class, Box.class, UriUtils.class, RoleCache.class})
 @Category({ Unit.class })
 public class CellCtlODataProducerTest {
 
@@ -2957,4 +2959,30 @@ public class CellCtlODataProducerTest {
             assertThat(exception.getMessage(), is(expected.getMessage()));
         }
     }
+
+    /**
+     * 払い出すロールに影響するエンティティの登録後にロールのCacheがクリアされること.
+     */
+    @Test
+    public void 払い出すロールに影響するエンティティの登録後にロールのCacheがクリアされること() {
+        PowerMockito.mockStatic(RoleCache.class);
+
+        cellCtlODataProducer.afterCreate(Role.EDM_TYPE_NAME, null, null);
+
+        PowerMockito.verifyStatic(times(1));
+        RoleCache.clear(any(Cell.class));
+    }
+
+    /**
+     * 払い出すロールに影響しないエンティティの登録後にロールのCacheがクリアされないこと.
+     */
+    @Test
+    public void 払い出すロールに影響しないエンティティの登録後にロールのCacheがクリアされないこと() {
+        PowerMockito.mockStatic(RoleCache.class);
+
+        cellCtlODataProducer.afterCreate(ReceivedMessage.EDM_TYPE_NAME, null, null);
+
+        PowerMockito.verifyStatic(never());
+        RoleCache.clear(any(Cell.class));
+    }
 }
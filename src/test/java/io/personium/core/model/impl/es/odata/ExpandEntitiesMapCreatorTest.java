@@ -0,0 +1,360 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.odata4j.core.OEntity;
+import org.odata4j.core.ORelatedEntitiesLinkInline;
+import org.odata4j.edm.EdmDataServices;
+import org.odata4j.edm.EdmEntityType;
+import org.odata4j.expression.EntitySimpleProperty;
+import org.odata4j.expression.Expression;
+import org.odata4j.producer.QueryInfo;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.common.es.response.PersoniumItem;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.PersoniumUnitConfig.OData;
+import io.personium.core.model.Box;
+import io.personium.core.model.ctl.CtlSchema;
+import io.personium.core.model.ctl.Relation;
+import io.personium.core.model.ctl.Role;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
+import io.personium.core.model.impl.es.doc.OEntityDocHandler;
+import io.personium.core.odata.OEntityWrapper;
+import io.personium.test.categories.Unit;
+
+/**
+ * ExpandEntitiesMapCreatorユニットテストクラス.
+ */
+@Category({ Unit.class })
+public class ExpandEntitiesMapCreatorTest {
+
+    private static final EdmDataServices METADATA = CtlSchema.getEdmDataServicesForCellCtl().build();
+
+    private static EdmEntityType getEntityType(String entitySetName) {
+        return METADATA.findEdmEntitySet(entitySetName).getType();
+    }
+
+    private static QueryInfo expand(String... expandPaths) {
+        List<EntitySimpleProperty> expand = new ArrayList<EntitySimpleProperty>();
+        for (String expandPath : expandPaths) {
+            expand.add(Expression.simpleProperty(expandPath));
+        }
+        return new QueryInfo(null, null, null, null, null, null, null, expand, null);
+    }
+
+    /**
+     * 二階層の$expandが1階層目と2階層目に分けて展開されること.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void 二階層の$expandが1階層目と2階層目に分けて展開されること() {
+        ExpandEntitiesMapCreator creator = new ExpandEntitiesMapCreator(
+                expand("_Role/_Account", "_Role/_ExtCell", "_Relation"), getEntityType(Box.EDM_TYPE_NAME), 10);
+
+        List<String> navigationPropertyList = Whitebox.getInternalState(creator, "navigationPropertyList");
+        assertThat(navigationPropertyList, is(Arrays.asList("_Role", "_Relation")));
+        Map<String, ExpandEntitiesMapCreator> nestedCreatorMap = Whitebox.getInternalState(creator,
+                "nestedCreatorMap");
+        assertThat(nestedCreatorMap.size(), is(1));
+
+        ExpandEntitiesMapCreator nestedCreator = nestedCreatorMap.get("_Role");
+        List<String> nestedNavigationPropertyList = Whitebox.getInternalState(nestedCreator,
+                "navigationPropertyList");
+        assertThat(nestedNavigationPropertyList, is(Arrays.asList("_Account", "_ExtCell")));
+        assertThat((Integer) Whitebox.getInternalState(nestedCreator, "depth"), is(2));
+        EdmEntityType nestedType = Whitebox.getInternalState(nestedCreator, "edmBaseEntityType");
+        assertThat(nestedType.getName(), is(Role.EDM_TYPE_NAME));
+        assertTrue(((Map<String, ExpandEntitiesMapCreator>) Whitebox.getInternalState(nestedCreator,
+                "nestedCreatorMap")).isEmpty());
+    }
+
+    /**
+     * 階層の上限を超える$expandが指定された場合にPR400_OD_0029が返却されること.
+     */
+    @Test
+    public void 階層の上限を超える$expandが指定された場合にPR400_OD_0029が返却されること() {
+        String depthMaxNum = PersoniumUnitConfig.get(OData.EXPAND_DEPTH_MAX_NUM);
+        PersoniumUnitConfig.set(OData.EXPAND_DEPTH_MAX_NUM, "2");
+        try {
+            new ExpandEntitiesMapCreator(expand("_Role/_Account/_Role"), getEntityType(Box.EDM_TYPE_NAME), 10);
+            fail("PersoniumCoreException not thrown.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.OData.QUERY_INVALID_ERROR.getCode()));
+        } finally {
+            PersoniumUnitConfig.set(OData.EXPAND_DEPTH_MAX_NUM, depthMaxNum);
+        }
+    }
+
+    /**
+     * 階層の上限が1の場合に2階層の$expandが指定されるとPR400_OD_0029が返却されること.
+     */
+    @Test
+    public void 階層の上限が1の場合に2階層の$expandが指定されるとPR400_OD_0029が返却されること() {
+        String depthMaxNum = PersoniumUnitConfig.get(OData.EXPAND_DEPTH_MAX_NUM);
+        PersoniumUnitConfig.set(OData.EXPAND_DEPTH_MAX_NUM, "1");
+        try {
+            new ExpandEntitiesMapCreator(expand("_Role/_Account"), getEntityType(Box.EDM_TYPE_NAME), 10);
+            fail("PersoniumCoreException not thrown.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.OData.QUERY_INVALID_ERROR.getCode()));
+        } finally {
+            PersoniumUnitConfig.set(OData.EXPAND_DEPTH_MAX_NUM, depthMaxNum);
+        }
+    }
+
+    /**
+     * 2階層目のスキーマに存在しないナビゲーションプロパティが指定された場合にPR400_OD_0025が返却されること.
+     */
+    @Test
+    public void 二階層目のスキーマに存在しないナビゲーションプロパティが指定された場合にPR400_OD_0025が返却されること() {
+        try {
+            new ExpandEntitiesMapCreator(expand("_Role/_Dummy"), getEntityType(Box.EDM_TYPE_NAME), 10);
+            fail("PersoniumCoreException not thrown.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.OData.EXPAND_NTKP_NOT_FOUND_ERROR.getCode()));
+        }
+    }
+
+    /**
+     * 2階層目の展開件数の上限が入れ子の$expandの最大展開数に制限されること.
+     */
+    @Test
+    public void 二階層目の展開件数の上限が入れ子の$expandの最大展開数に制限されること() {
+        String nestedMaxNum = PersoniumUnitConfig.get(OData.EXPAND_NESTED_MAXNUM);
+        PersoniumUnitConfig.set(OData.EXPAND_NESTED_MAXNUM, "3");
+        try {
+            ExpandEntitiesMapCreator creator = new ExpandEntitiesMapCreator(
+                    expand("_Role/_Account"), getEntityType(Box.EDM_TYPE_NAME), 10);
+            assertThat((Integer) Whitebox.getInternalState(creator, "expandMaxNum"), is(10));
+            assertThat((Integer) Whitebox.getInternalState(getNestedCreator(creator, "_Role"), "expandMaxNum"),
+                    is(3));
+
+            // 1階層目の上限の方が小さい場合は1階層目の上限に従う
+            creator = new ExpandEntitiesMapCreator(expand("_Role/_Account"), getEntityType(Box.EDM_TYPE_NAME), 2);
+            assertThat((Integer) Whitebox.getInternalState(getNestedCreator(creator, "_Role"), "expandMaxNum"),
+                    is(2));
+        } finally {
+            PersoniumUnitConfig.set(OData.EXPAND_NESTED_MAXNUM, nestedMaxNum);
+        }
+    }
+
+    /**
+     * 1階層目の展開先が存在しない場合に2階層目を検索せずに空リストが返却されること.
+     */
+    @Test
+    public void 一階層目の展開先が存在しない場合に2階層目を検索せずに空リストが返却されること() {
+        ExpandEntitiesMapCreator creator = new ExpandEntitiesMapCreator(
+                expand("_Box/_Relation"), getEntityType(Role.EDM_TYPE_NAME), 10);
+
+        EsODataProducer producer = mock(EsODataProducer.class);
+        when(producer.getLinkskey(Box.EDM_TYPE_NAME)).thenReturn(Box.EDM_TYPE_NAME);
+        // Boxに紐付かないRole
+        EntitySetDocHandler role = mock(EntitySetDocHandler.class);
+        when(role.getId()).thenReturn("role1");
+        when(role.getManyToOnelinkId()).thenReturn(new HashMap<String, Object>());
+
+        Map<String, List<OEntity>> result = creator.create(role, producer);
+
+        assertThat(result.size(), is(1));
+        assertTrue(result.get("_Box").isEmpty());
+        verify(producer, never()).getAccessorForBatch();
+        assertNull(Whitebox.getInternalState(getNestedCreator(creator, "_Box"), "relatedEntitiesListCache"));
+    }
+
+    /**
+     * 二階層の$expandの検索回数が展開元のエンティティ数によらず一定であること.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void 二階層の$expandの検索回数が展開元のエンティティ数によらず一定であること() {
+        String nestedMaxNum = PersoniumUnitConfig.get(OData.EXPAND_NESTED_MAXNUM);
+        // 全てのナビゲーションプロパティを展開できるように上限を上げる
+        PersoniumUnitConfig.set(OData.EXPAND_NESTED_MAXNUM, "100");
+        try {
+            for (int roleCount : new int[] {1, 5}) {
+                DataSourceAccessor accessor = mock(DataSourceAccessor.class);
+                EsODataProducer producer = createProducer(accessor);
+                List<EntitySetDocHandler> roles = new ArrayList<EntitySetDocHandler>();
+                for (int i = 0; i < roleCount; i++) {
+                    roles.add(createDocHandler(Role.EDM_TYPE_NAME, "role" + i, "box" + i));
+                }
+                ExpandEntitiesMapCreator creator = new ExpandEntitiesMapCreator(
+                        expand("_Box/_Relation"), getEntityType(Role.EDM_TYPE_NAME), 100);
+
+                creator.setCache(roles, producer);
+
+                // 1階層目のBoxと2階層目のRelationをそれぞれ1回のマルチサーチで取得する
+                verify(accessor, times(2)).multiSearchForIndex(anyString(), anyList());
+                verify(producer, never()).getAccessorForLink();
+
+                // 2階層目のRelationが1階層目のBoxに展開されていること
+                for (int i = 0; i < roleCount; i++) {
+                    List<OEntity> boxes = creator.create(roles.get(i), producer).get("_Box");
+                    assertEquals(1, boxes.size());
+                    assertEquals("box" + i, ((OEntityWrapper) boxes.get(0)).getUuid());
+                    List<OEntity> relations = boxes.get(0).getLink("_Relation", ORelatedEntitiesLinkInline.class)
+                            .getRelatedEntities();
+                    assertEquals(1, relations.size());
+                    assertEquals("relation" + i, ((OEntityWrapper) relations.get(0)).getUuid());
+                }
+                verify(accessor, times(2)).multiSearchForIndex(anyString(), anyList());
+            }
+        } finally {
+            PersoniumUnitConfig.set(OData.EXPAND_NESTED_MAXNUM, nestedMaxNum);
+        }
+    }
+
+    /**
+     * Boxはidsクエリ、RelationはBoxへのリンクで検索されるマルチサーチに応答するProducerを作成する.
+     * @param accessor マルチサーチを行うアクセサ
+     * @return producer
+     */
+    @SuppressWarnings("unchecked")
+    private static EsODataProducer createProducer(DataSourceAccessor accessor) {
+        EsODataProducer producer = mock(EsODataProducer.class);
+        when(producer.getMetadata()).thenReturn(METADATA);
+        when(producer.getAccessorForBatch()).thenReturn(accessor);
+        when(producer.getLinkskey(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                return (String) invocation.getArguments()[0];
+            }
+        });
+        when(producer.getDocHandler(any(PersoniumSearchHit.class), anyString())).thenAnswer(
+                new Answer<EntitySetDocHandler>() {
+                    @Override
+                    public EntitySetDocHandler answer(InvocationOnMock invocation) {
+                        PersoniumSearchHit hit = (PersoniumSearchHit) invocation.getArguments()[0];
+                        String boxId = (String) hit.getSource().get(OEntityDocHandler.KEY_BOX_ID);
+                        return createDocHandler(hit.getType(), hit.getId(), boxId);
+                    }
+                });
+        when(accessor.multiSearchForIndex(anyString(), anyList())).thenAnswer(
+                new Answer<PersoniumMultiSearchResponse>() {
+                    @Override
+                    public PersoniumMultiSearchResponse answer(InvocationOnMock invocation) {
+                        List<PersoniumSearchHit> hits = new ArrayList<PersoniumSearchHit>();
+                        for (Map<String, Object> query : (List<Map<String, Object>>) invocation.getArguments()[1]) {
+                            List<Map<String, Object>> must = getMust(query);
+                            Map<String, Object> ids = (Map<String, Object>) must.get(0).get("ids");
+                            if (ids != null) {
+                                for (String boxId : (List<String>) ids.get("values")) {
+                                    hits.add(createHit(Box.EDM_TYPE_NAME, boxId, null));
+                                }
+                            } else {
+                                Map<String, Object> term = (Map<String, Object>) must.get(1).get("term");
+                                String boxId = (String) term.get(OEntityDocHandler.KEY_LINK + "." + Box.EDM_TYPE_NAME);
+                                hits.add(createHit(Relation.EDM_TYPE_NAME, boxId.replace("box", "relation"), boxId));
+                            }
+                        }
+                        final PersoniumItem item = mock(PersoniumItem.class);
+                        when(item.getSearchHits()).thenReturn(hits.toArray(new PersoniumSearchHit[hits.size()]));
+                        PersoniumMultiSearchResponse response = mock(PersoniumMultiSearchResponse.class);
+                        when(response.iterator()).thenAnswer(new Answer<Iterator<PersoniumItem>>() {
+                            @Override
+                            public Iterator<PersoniumItem> answer(InvocationOnMock invocation) {
+                                return Arrays.asList(item).iterator();
+                            }
+                        });
+                        return response;
+                    }
+                });
+        return producer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getMust(Map<String, Object> query) {
+        Map<String, Object> filtered = (Map<String, Object>) ((Map<String, Object>) query.get("query"))
+                .get("filtered");
+        Map<String, Object> bool = (Map<String, Object>) ((Map<String, Object>) filtered.get("filter")).get("bool");
+        return (List<Map<String, Object>>) bool.get("must");
+    }
+
+    private static PersoniumSearchHit createHit(String type, String id, String boxId) {
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put(OEntityDocHandler.KEY_BOX_ID, boxId);
+        PersoniumSearchHit hit = mock(PersoniumSearchHit.class);
+        when(hit.getType()).thenReturn(type);
+        when(hit.getId()).thenReturn(id);
+        when(hit.getSource()).thenReturn(source);
+        return hit;
+    }
+
+    /**
+     * Boxへのリンクを持つエンティティのDocHandlerを作成する.
+     * @param type エンティティタイプ名
+     * @param id ID
+     * @param boxId リンク先BoxのID. リンクしない場合はnull
+     * @return DocHandler
+     */
+    private static EntitySetDocHandler createDocHandler(String type, String id, String boxId) {
+        OEntityDocHandler docHandler = new OEntityDocHandler();
+        docHandler.setType(type);
+        docHandler.setId(id);
+        docHandler.setVersion(1L);
+        docHandler.setPublished(0L);
+        docHandler.setUpdated(0L);
+        Map<String, Object> staticFields = new HashMap<String, Object>();
+        staticFields.put("Name", id);
+        docHandler.setStaticFields(staticFields);
+        docHandler.setDynamicFields(new HashMap<String, Object>());
+        Map<String, Object> links = new HashMap<String, Object>();
+        if (boxId != null) {
+            links.put(Box.EDM_TYPE_NAME, boxId);
+        }
+        docHandler.setManyToOnelinkId(links);
+        return docHandler;
+    }
+
+    private static ExpandEntitiesMapCreator getNestedCreator(ExpandEntitiesMapCreator creator,
+            String navigationPropertyName) {
+        Map<String, ExpandEntitiesMapCreator> nestedCreatorMap = Whitebox.getInternalState(creator,
+                "nestedCreatorMap");
+        return nestedCreatorMap.get(navigationPropertyName);
+    }
+}
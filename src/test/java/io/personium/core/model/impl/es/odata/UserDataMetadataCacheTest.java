@@ -0,0 +1,132 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit test for UserDataMetadataCache.
+ */
+@Category({Unit.class })
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({PersoniumUnitConfig.class })
+public class UserDataMetadataCacheTest {
+
+    /**
+     * Clears the entries left by other tests.
+     */
+    @Before
+    public void before() {
+        Map<?, ?> entries = Whitebox.getInternalState(UserDataMetadataCache.class, "ENTRIES");
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static UserDataMetadataCache.Entry entry(String version) {
+        return new UserDataMetadataCache.Entry(version, null, new HashMap<String, String>(),
+                new HashMap<String, PropertyAlias>(), new HashMap<String, String>());
+    }
+
+    /**
+     * The cached schema is returned for the same version.
+     */
+    @Test
+    public void get_Normal_hit() {
+        UserDataMetadataCache.Entry entry = entry("v1");
+        UserDataMetadataCache.put("node1", entry);
+
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isSameAs(entry);
+    }
+
+    /**
+     * Nothing is returned for a node not cached, and the entry of another version is dropped.
+     */
+    @Test
+    public void get_Normal_miss() {
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNull();
+
+        UserDataMetadataCache.put("node1", entry("v1"));
+        assertThat(UserDataMetadataCache.get("node1", "v2")).isNull();
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNull();
+        assertThat(UserDataMetadataCache.get("node1", null)).isNull();
+    }
+
+    /**
+     * A removed schema is not returned any more, and other nodes are kept.
+     */
+    @Test
+    public void remove_Normal() {
+        UserDataMetadataCache.put("node1", entry("v1"));
+        UserDataMetadataCache.put("node2", entry("v1"));
+
+        UserDataMetadataCache.remove("node1");
+
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNull();
+        assertThat(UserDataMetadataCache.get("node2", "v1")).isNotNull();
+    }
+
+    /**
+     * Entries beyond the maximum are evicted in LRU order.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void put_Normal_evicts_least_recently_used() throws Exception {
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "getLocalCacheMaxEntries").thenReturn(2);
+
+        UserDataMetadataCache.put("node1", entry("v1"));
+        UserDataMetadataCache.put("node2", entry("v1"));
+        UserDataMetadataCache.get("node1", "v1");
+        UserDataMetadataCache.put("node3", entry("v1"));
+
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNotNull();
+        assertThat(UserDataMetadataCache.get("node2", "v1")).isNull();
+        assertThat(UserDataMetadataCache.get("node3", "v1")).isNotNull();
+    }
+
+    /**
+     * Nothing is cached while the local cache is disabled or the version is unknown.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void put_Normal_not_cached() throws Exception {
+        UserDataMetadataCache.put("node1", entry(null));
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNull();
+
+        PowerMockito.spy(PersoniumUnitConfig.class);
+        PowerMockito.when(PersoniumUnitConfig.class, "isLocalCacheEnabled").thenReturn(false);
+        UserDataMetadataCache.put("node1", entry("v1"));
+        PowerMockito.when(PersoniumUnitConfig.class, "isLocalCacheEnabled").thenReturn(true);
+        assertThat(UserDataMetadataCache.get("node1", "v1")).isNull();
+    }
+}
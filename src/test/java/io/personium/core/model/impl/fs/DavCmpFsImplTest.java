@@ -42,6 +42,7 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
+import java.util.Collections;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
@@ -78,6 +79,7 @@ import io.personium.core.model.file.StreamingOutputForDavFileWithRange;
 import io.personium.core.model.impl.es.EsModel;
 import io.personium.core.model.impl.es.accessor.CellAccessor;
 import io.personium.core.model.lock.Lock;
+import io.personium.core.model.lock.LockManager;
 import io.personium.test.categories.Unit;
 
 /**
@@ -86,7 +88,7 @@ import io.personium.test.categories.Unit;
 @RunWith(PowerMockRunner.class)
 @PowerMockIgnore({"javax.crypto.*" })
 @PrepareForTest({DavCmpFsImpl.class, AccessContext.class, PersoniumUnitConfig.class, DavMetadataFile.class,
-    EsClient.class, EsModel.class})
+    EsClient.class, EsModel.class, LockManager.class})
 @Category({ Unit.class })
 public class DavCmpFsImplTest {
 
@@ -873,7 +875,7 @@ public class DavCmpFsImplTest {
             davCmpFsImpl = PowerMockito.spy(DavCmpFsImpl.create("", null));
             Lock lock = mock(Lock.class);
             doNothing().when(lock).release();
-            doReturn(lock).when(davCmpFsImpl).lock();
+            doReturn(lock).when(davCmpFsImpl).lockForMove(davDestination);
             doNothing().when(davCmpFsImpl).load();
             doReturn(true).when(davCmpFsImpl).exists();
             PowerMockito.doReturn(true).when(davCmpFsImpl, "matchesETag", anyString());
@@ -946,7 +948,7 @@ public class DavCmpFsImplTest {
             davCmpFsImpl = PowerMockito.spy(DavCmpFsImpl.create("", null));
             Lock lock = mock(Lock.class);
             doNothing().when(lock).release();
-            doReturn(lock).when(davCmpFsImpl).lock();
+            doReturn(lock).when(davCmpFsImpl).lockForMove(davDestination);
             doNothing().when(davCmpFsImpl).load();
             doReturn(true).when(davCmpFsImpl).exists();
             PowerMockito.doReturn(false).when(davCmpFsImpl, "matchesETag", anyString());
@@ -1236,4 +1238,32 @@ public class DavCmpFsImplTest {
         // Confirm result
         assertThat(actual, is(expected));
     }
-}
\ No newline at end of file
+
+    /**
+     * Test lockForCreate().
+     * normal.
+     * The parent node is locked exclusively.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void lockForCreate_Normal_parent_locked() throws Exception {
+        // Mock settings
+        Box box = mock(Box.class);
+        doReturn("boxId").when(box).getId();
+        DavCmpFsImpl boxCmp = DavCmpFsImpl.create("", null);
+        Whitebox.setInternalState(boxCmp, "box", box);
+        DavCmpFsImpl collection = DavCmpFsImpl.createPhantom("col", boxCmp);
+        davCmpFsImpl = DavCmpFsImpl.createPhantom("file", collection);
+
+        Lock lock = mock(Lock.class);
+        PowerMockito.mockStatic(LockManager.class);
+        PowerMockito.doReturn(lock).when(LockManager.class, "getHierarchicalLock",
+                Lock.CATEGORY_DAV, "boxId", Collections.singletonList(Collections.singletonList("col")));
+
+        // Run method
+        Lock actual = davCmpFsImpl.lockForCreate();
+
+        // Confirm result
+        assertThat(actual, is(lock));
+    }
+}
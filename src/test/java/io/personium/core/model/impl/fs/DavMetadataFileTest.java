@@ -21,7 +21,6 @@ import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.fail;
-import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.times;
 
 import java.io.ByteArrayInputStream;
@@ -31,18 +30,17 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
-import org.powermock.api.mockito.expectation.PowerMockitoStubber;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -125,12 +123,12 @@ public class DavMetadataFileTest {
 
     /**
      * Test load().
-     * Normal.
-     * Retry OK.
+     * Error.
+     * Not retried.
      * @throws Exception Unintended exception in test
      */
     @Test
-    public void load_Normal_retry_ok() throws Exception {
+    public void load_Error_not_retried() throws Exception {
         String metaPath = TEST_DIR_PATH + "/.pmeta";
         File metaFile = new File(metaPath);
 
@@ -144,12 +142,8 @@ public class DavMetadataFileTest {
         // --------------------
         davMetadataFile = PowerMockito.spy(DavMetadataFile.newInstance(metaFile));
 
-        // The first and second fail, the third success.
         PersoniumCoreException exception = PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.reason(new IOException());
-        ((PowerMockitoStubber) PowerMockito
-                .doThrow(exception)
-                .doThrow(exception)
-                .doNothing()).when(davMetadataFile, "doLoad");
+        PowerMockito.doThrow(exception).when(davMetadataFile, "doLoad");
 
         // --------------------
         // Expected result
@@ -159,120 +153,140 @@ public class DavMetadataFileTest {
         // --------------------
         // Run method
         // --------------------
-        davMetadataFile.load();
+        try {
+            davMetadataFile.load();
+            fail("Not exception.");
+        } catch (Exception e) {
+            // --------------------
+            // Confirm result
+            // --------------------
+            assertThat(e, is(instanceOf(PersoniumCoreException.class)));
+            PersoniumCoreException pe = (PersoniumCoreException) e;
+            assertThat(pe.getCode(), is(PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.getCode()));
+        }
 
-        // --------------------
-        // Confirm result
-        // --------------------
-        PowerMockito.verifyPrivate(davMetadataFile, times(3)).invoke("doLoad");
+        PowerMockito.verifyPrivate(davMetadataFile, times(1)).invoke("doLoad");
     }
 
     /**
-     * Test load().
-     * Error.
-     * Retry NG.
+     * Test save().
+     * Normal.
      * @throws Exception Unintended exception in test
      */
     @Test
-    public void load_Error_retry_ng() throws Exception {
+    public void save_Normal() throws Exception {
         String metaPath = TEST_DIR_PATH + "/.pmeta";
         File metaFile = new File(metaPath);
 
-        // --------------------
-        // Test method args
-        // --------------------
-        // None.
-
-        // --------------------
-        // Mock settings
-        // --------------------
-        davMetadataFile = PowerMockito.spy(DavMetadataFile.newInstance(metaFile));
-
-        // All fail.
-        PersoniumCoreException exception = PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.reason(new IOException());
-        ((PowerMockitoStubber) PowerMockito
-                .doThrow(exception)
-                .doThrow(exception)
-                .doThrow(exception)
-                .doThrow(exception)
-                .doThrow(exception)
-                .doThrow(exception)).when(davMetadataFile, "doLoad");
-
-        // --------------------
-        // Expected result
-        // --------------------
-        // None.
-
-        // --------------------
-        // Run method
-        // --------------------
         try {
+            Files.copy(getSystemResourceAsStream("davFile/pmeta01"), metaFile.toPath());
+            davMetadataFile = DavMetadataFile.newInstance(metaFile);
             davMetadataFile.load();
-            fail("Not exception.");
-        } catch (Exception e) {
+            long version = davMetadataFile.getVersion();
+
+            // --------------------
+            // Run method
+            // --------------------
+            davMetadataFile.setContentType("text/html");
+            davMetadataFile.save();
+
             // --------------------
             // Confirm result
             // --------------------
-            assertThat(e, is(instanceOf(PersoniumCoreException.class)));
-            PersoniumCoreException pe = (PersoniumCoreException) e;
-            assertThat(pe.getCode(), is(PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.getCode()));
-            assertThat(pe.getCause(), is(instanceOf(IOException.class)));
+            DavMetadataFile actual = DavMetadataFile.newInstance(metaFile);
+            actual.load();
+            assertThat(actual.getContentType(), is("text/html"));
+            assertThat(actual.getVersion(), is(version + 1));
+            // The temporary file has been renamed to the metadata file.
+            assertThat(testDir.list().length, is(1));
+        } finally {
+            metaFile.delete();
         }
-
-        PowerMockito.verifyPrivate(davMetadataFile, times(6)).invoke("doLoad");
     }
 
     /**
      * Test load().
-     * Error.
-     * Sleep error.
+     * Normal.
+     * Loaded metadata is not shared.
      * @throws Exception Unintended exception in test
      */
     @Test
-    @Ignore
-    // TODO Thread class mocking can not be done successfully pending.
-    public void load_Error_retry_sleep_error() throws Exception {
+    public void load_Normal_not_shared() throws Exception {
         String metaPath = TEST_DIR_PATH + "/.pmeta";
         File metaFile = new File(metaPath);
 
-        // --------------------
-        // Test method args
-        // --------------------
-        // None.
+        try {
+            Files.copy(getSystemResourceAsStream("davFile/pmeta01"), metaFile.toPath());
+            DavMetadataFile first = DavMetadataFile.newInstance(metaFile);
+            first.load();
 
-        // --------------------
-        // Mock settings
-        // --------------------
-        davMetadataFile = PowerMockito.spy(DavMetadataFile.newInstance(metaFile));
+            // --------------------
+            // Run method
+            // --------------------
+            // Modified without saving
+            first.setContentType("text/html");
+            DavMetadataFile second = DavMetadataFile.newInstance(metaFile);
+            second.load();
 
-        PersoniumCoreException exception = PersoniumCoreException.Dav.DAV_INCONSISTENCY_FOUND.reason(new IOException());
+            // --------------------
+            // Confirm result
+            // --------------------
+            assertThat(second.getContentType(), is("text/plan"));
+        } finally {
+            metaFile.delete();
+        }
+    }
 
-        PowerMockito.doThrow(exception).when(davMetadataFile, "doLoad");
+    /**
+     * Test load().
+     * Normal.
+     * Cached metadata is not used after the file is replaced outside save().
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void load_Normal_file_replaced_outside_save() throws Exception {
+        String metaPath = TEST_DIR_PATH + "/.pmeta";
+        File metaFile = new File(metaPath);
+        File otherFile = new File(TEST_DIR_PATH + "/.pmeta.other");
 
-        // Thread class mocking can not be done successfully pending.
-        PowerMockito.mockStatic(Thread.class);
-        PowerMockito.doThrow(new InterruptedException()).when(Thread.class, "sleep", anyLong());
+        try {
+            DavMetadataCache.clear();
+            Files.copy(getSystemResourceAsStream("davFile/pmeta01"), metaFile.toPath());
+            DavMetadataFile.newInstance(metaFile).load();
+            // Same size as the original, so only the file key or the last modified time tells the change.
+            byte[] replaced = new String(Files.readAllBytes(metaFile.toPath()), "UTF-8")
+                    .replace("text\\/plan", "text\\/html").getBytes("UTF-8");
+            assertThat(replaced.length, is((int) metaFile.length()));
 
-        // --------------------
-        // Expected result
-        // --------------------
-        // None.
+            // --------------------
+            // Run method
+            // --------------------
+            // Replaced by another file (different file key)
+            Files.write(otherFile.toPath(), replaced);
+            otherFile.setLastModified(metaFile.lastModified());
+            Files.move(otherFile.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            DavMetadataFile byMove = DavMetadataFile.newInstance(metaFile);
+            byMove.load();
+
+            // Overwritten in place (same file key, different last modified time)
+            Files.copy(getSystemResourceAsStream("davFile/pmeta01"), metaFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            long lastModified = metaFile.lastModified();
+            DavMetadataFile.newInstance(metaFile).load();
+            Files.write(metaFile.toPath(), replaced);
+            metaFile.setLastModified(lastModified + 10000L);
+            DavMetadataFile byWrite = DavMetadataFile.newInstance(metaFile);
+            byWrite.load();
 
-        // --------------------
-        // Run method
-        // --------------------
-        try {
-            davMetadataFile.load();
-            fail("Not exception.");
-        } catch (Exception e) {
             // --------------------
             // Confirm result
             // --------------------
-            assertThat(e, is(instanceOf(RuntimeException.class)));
-            assertThat(e.getCause(), is(instanceOf(InterruptedException.class)));
+            assertThat(byMove.getContentType(), is("text/html"));
+            assertThat(byWrite.getContentType(), is("text/html"));
+        } finally {
+            otherFile.delete();
+            metaFile.delete();
         }
-
-        PowerMockito.verifyPrivate(davMetadataFile, times(1)).invoke("doLoad");
     }
 
     /**
@@ -27,7 +27,13 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({
     LockManagerTest.class,
     AccountLockManagerTest.class,
-    CellLockManagerTest.class
+    CellLockManagerTest.class,
+    LockWaitQueueTest.class,
+    HierarchicalLockTest.class,
+    InProcessLockManagerTest.class,
+    MemcachedLockManagerTest.class,
+    CellAccessCounterTest.class,
+    ReadDeleteModeLockManagerTest.class
     })
 public class AllTests {
 }
@@ -0,0 +1,88 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * CellAccessCounter unit test class.
+ */
+@Category({ Unit.class })
+public class CellAccessCounterTest {
+
+    private static final String KEY = CellLockManager.REFERENCE_COUNT_PREFIX + "cell";
+
+    private LockManager originalManager;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        this.originalManager = LockManager.singleton;
+        LockManager.singleton = new InProcessLockManager();
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        LockManager.singleton = this.originalManager;
+    }
+
+    /**
+     * Local counts reach the lock store only when published.
+     */
+    @Test
+    public void flush_Normal_publishes_aggregated_delta() {
+        CellAccessCounter counter = new CellAccessCounter(60000L);
+        assertThat(counter.increment("cell"), is(1L));
+        assertThat(counter.increment("cell"), is(2L));
+        assertThat(LockManager.singleton.doGetReferenceCount(KEY), is(-1L));
+
+        counter.flush("cell");
+        assertThat(LockManager.singleton.doGetReferenceCount(KEY), is(2L));
+
+        assertThat(counter.decrement("cell"), is(1L));
+        assertThat(counter.decrement("cell"), is(0L));
+        assertThat(counter.decrement("cell"), is(0L));
+        counter.publishAll();
+        assertThat(LockManager.singleton.doGetReferenceCount(KEY), is(-1L));
+    }
+
+    /**
+     * A cached status is returned until it gets stale.
+     */
+    @Test
+    public void getStatus_Normal_cached_status() {
+        CellAccessCounter counter = new CellAccessCounter(60000L);
+        assertThat(counter.getStatus("cell"), nullValue());
+
+        counter.setStatus("cell", CellLockManager.STATUS.EXPORT.getId());
+        assertThat(counter.getStatus("cell"), is(CellLockManager.STATUS.EXPORT.getId()));
+    }
+}
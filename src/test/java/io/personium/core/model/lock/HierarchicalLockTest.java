@@ -0,0 +1,141 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.test.categories.Unit;
+
+/**
+ * HierarchicalLock unit test class.
+ */
+@Category({ Unit.class })
+public class HierarchicalLockTest {
+
+    private LockManager originalManager;
+    private long originalRetryInterval;
+    private int originalRetryTimes;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        this.originalManager = LockManager.singleton;
+        this.originalRetryInterval = LockManager.getLockRetryInterval();
+        this.originalRetryTimes = LockManager.getLockRetryTimes();
+        LockManager.singleton = new InProcessLockManager();
+        LockManager.setLockRetryInterval(10);
+        LockManager.setLockRetryTimes(2);
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        LockManager.singleton = this.originalManager;
+        LockManager.setLockRetryInterval(this.originalRetryInterval);
+        LockManager.setLockRetryTimes(this.originalRetryTimes);
+    }
+
+    private static Lock lock(String... names) {
+        List<String> path = Arrays.asList(names);
+        return LockManager.getHierarchicalLock(Lock.CATEGORY_DAV, "box", Collections.singletonList(path));
+    }
+
+    /**
+     * Nodes on different paths can be locked at the same time.
+     */
+    @Test
+    public void getHierarchicalLock_Normal_siblings_are_independent() {
+        Lock lock1 = lock("col", "file1");
+        Lock lock2 = lock("col", "file2");
+        assertThat(lock1, notNullValue());
+        assertThat(lock2, notNullValue());
+        lock2.release();
+        lock1.release();
+    }
+
+    /**
+     * An ancestor cannot be locked while a descendant is locked, and can be after the release.
+     */
+    @Test
+    public void getHierarchicalLock_Error_ancestor_of_locked_node() {
+        Lock lock = lock("col", "file1");
+        try {
+            lock("col");
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS.getCode()));
+        } finally {
+            lock.release();
+        }
+        lock("col").release();
+    }
+
+    /**
+     * A descendant cannot be locked while an ancestor is locked.
+     */
+    @Test
+    public void getHierarchicalLock_Error_descendant_of_locked_node() {
+        Lock lock = lock("col");
+        try {
+            lock("col", "file1");
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS.getCode()));
+        } finally {
+            lock.release();
+        }
+        lock("col", "file1").release();
+    }
+
+    /**
+     * Both endpoints of a move are locked.
+     */
+    @Test
+    public void getHierarchicalLock_Normal_both_endpoints_locked() {
+        List<List<String>> paths = new ArrayList<List<String>>();
+        paths.add(Arrays.asList("col1", "file"));
+        paths.add(Arrays.asList("col2", "file"));
+        Lock lock = LockManager.getHierarchicalLock(Lock.CATEGORY_DAV, "box", paths);
+        try {
+            lock("col2", "file");
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Misc.TOO_MANY_CONCURRENT_REQUESTS.getCode()));
+        } finally {
+            lock.release();
+        }
+        lock("col1", "file").release();
+    }
+}
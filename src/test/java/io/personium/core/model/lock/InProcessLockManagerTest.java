@@ -0,0 +1,106 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * InProcessLockManager unit test class.
+ */
+@Category({ Unit.class })
+public class InProcessLockManagerTest {
+
+    /**
+     * Reference counts incremented by many threads are not lost.
+     * @throws InterruptedException interrupted
+     */
+    @Test
+    public void doIncrementReferenceCount_Normal_no_lost_update() throws InterruptedException {
+        final InProcessLockManager manager = new InProcessLockManager();
+        final int times = 10000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < times; j++) {
+                        manager.doIncrementReferenceCount("key");
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(manager.doGetReferenceCount("key"), is(8L * times));
+    }
+
+    /**
+     * The reference count is removed when it reaches 0.
+     */
+    @Test
+    public void doDecrementReferenceCount_Normal_removed_at_zero() {
+        InProcessLockManager manager = new InProcessLockManager();
+        assertThat(manager.doIncrementReferenceCount("key"), is(1L));
+        assertThat(manager.doDecrementReferenceCount("key"), is(0L));
+        assertThat(manager.doGetReferenceCount("key"), is(-1L));
+        assertThat(manager.doDecrementReferenceCount("key"), is(0L));
+    }
+
+    /**
+     * A lock is released only by its owner.
+     */
+    @Test
+    public void doReleaseLock_Normal_only_owner_releases() {
+        InProcessLockManager manager = new InProcessLockManager();
+        Lock owner = new Lock("key", 0L);
+        assertThat(manager.doPutLock("key", owner), is(true));
+        assertThat(manager.doPutLock("key", new Lock("key", 0L)), is(false));
+
+        manager.doReleaseLock("key", new Lock("key", 0L));
+        assertThat(manager.doGetLock("key"), notNullValue());
+        manager.doReleaseLock("key", owner);
+        assertThat(manager.doGetLock("key"), nullValue());
+    }
+
+    /**
+     * Values with a lifetime expire, and values without it do not.
+     */
+    @Test
+    public void ExpiringValue_Normal_expires_after_lifetime() {
+        long now = System.currentTimeMillis();
+        InProcessLockManager.ExpiringValue expiring = new InProcessLockManager.ExpiringValue("", 1);
+        InProcessLockManager.ExpiringValue permanent = new InProcessLockManager.ExpiringValue("", 0);
+
+        assertThat(expiring.isExpired(now), is(false));
+        assertThat(expiring.isExpired(now + 2000L), is(true));
+        assertThat(permanent.isExpired(Long.MAX_VALUE - 1), is(false));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * LockWaitQueue unit test class.
+ */
+@Category({ Unit.class })
+public class LockWaitQueueTest {
+
+    /**
+     * Waiters are granted in FIFO order.
+     * @throws InterruptedException interrupted
+     */
+    @Test
+    public void grant_Normal_fifo_order() throws InterruptedException {
+        LockWaitQueue queue = new LockWaitQueue();
+        LockWaitQueue.Waiter first = queue.enqueue("key", new Lock("key", 0L));
+        LockWaitQueue.Waiter second = queue.enqueue("key", new Lock("key", 0L));
+
+        assertThat(queue.depth("key"), is(2));
+        assertThat(queue.peek("key"), sameInstance(first));
+
+        assertThat(queue.grant("key", first), is(true));
+        assertThat(first.await(0), is(true));
+        assertThat(queue.isHead("key", second), is(true));
+        assertThat(second.await(1), is(false));
+    }
+
+    /**
+     * A waiter that already left the queue cannot be granted.
+     */
+    @Test
+    public void grant_Error_cancelled_waiter() {
+        LockWaitQueue queue = new LockWaitQueue();
+        LockWaitQueue.Waiter waiter = queue.enqueue("key", new Lock("key", 0L));
+
+        assertThat(queue.cancel("key", waiter), is(true));
+        assertThat(queue.grant("key", waiter), is(false));
+        assertThat(queue.peek("key"), nullValue());
+        assertThat(queue.depth("key"), is(0));
+    }
+
+    /**
+     * Cancelling a granted waiter fails, telling the waiter it owns the lock.
+     */
+    @Test
+    public void cancel_Error_granted_waiter() {
+        LockWaitQueue queue = new LockWaitQueue();
+        LockWaitQueue.Waiter waiter = queue.enqueue("key", new Lock("key", 0L));
+
+        assertThat(queue.grant("key", waiter), is(true));
+        assertThat(queue.cancel("key", waiter), is(false));
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.utils.MemcachedClient;
+import io.personium.test.categories.Unit;
+import net.spy.memcached.CASValue;
+
+/**
+ * MemcachedLockManager unit test class.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ MemcachedClient.class })
+@Category({ Unit.class })
+public class MemcachedLockManagerTest {
+
+    private static final String KEY = "odata-lockKey";
+    private static final long CAS = 100L;
+
+    private MemcachedClient client;
+    private MemcachedLockManager manager;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        client = mock(MemcachedClient.class);
+        PowerMockito.mockStatic(MemcachedClient.class);
+        PowerMockito.when(MemcachedClient.getLockClient()).thenReturn(client);
+        manager = new MemcachedLockManager();
+    }
+
+    /**
+     * The lock is deleted by CAS when it is held by the releasing owner.
+     */
+    @Test
+    public void doReleaseLock_Normal_deleted_by_cas() {
+        doReturn(new CASValue<Lock>(CAS, lock(1L))).when(client).gets(KEY, Lock.class);
+        doReturn(Boolean.TRUE).when(client).delete(KEY, CAS);
+
+        manager.doReleaseLock(KEY, lock(1L));
+
+        verify(client).delete(KEY, CAS);
+        verify(client, never()).delete(KEY);
+    }
+
+    /**
+     * The lock held by another owner is not deleted.
+     */
+    @Test
+    public void doReleaseLock_Normal_not_deleted_if_owner_differs() {
+        doReturn(new CASValue<Lock>(CAS, lock(2L))).when(client).gets(KEY, Lock.class);
+
+        manager.doReleaseLock(KEY, lock(1L));
+
+        verify(client, never()).delete(anyString(), anyLong());
+        verify(client, never()).delete(KEY);
+    }
+
+    /**
+     * The lock taken by another owner between the read and the delete is kept.
+     */
+    @Test
+    public void doReleaseLock_Normal_owner_changed_after_read() {
+        // The CAS value has changed when the delete is issued
+        doReturn(new CASValue<Lock>(CAS, lock(1L))).when(client).gets(KEY, Lock.class);
+        doReturn(Boolean.FALSE).when(client).delete(KEY, CAS);
+
+        manager.doReleaseLock(KEY, lock(1L));
+
+        verify(client).delete(KEY, CAS);
+        verify(client, never()).delete(KEY);
+    }
+
+    /**
+     * The lock is replaced by CAS when it is held by the handing over owner.
+     */
+    @Test
+    public void doHandOverLock_Normal_replaced_by_cas() {
+        doReturn(new CASValue<Lock>(CAS, lock(1L))).when(client).gets(KEY, Lock.class);
+        doReturn(2L).when(client).incrementLongValue(MemcachedLockManager.FENCING_TOKEN_KEY);
+        Lock next = new Lock(KEY, 0L);
+        doReturn(Boolean.TRUE).when(client).cas(KEY, CAS, PersoniumUnitConfig.getLockMemcachedLease(), next);
+
+        assertThat(manager.doHandOverLock(KEY, lock(1L), next), is(true));
+        assertThat(next.token, is(2L));
+        verify(client, never()).put(anyString(), anyInt(), anyObject());
+    }
+
+    /**
+     * The lock held by another owner is not handed over.
+     */
+    @Test
+    public void doHandOverLock_Normal_false_if_owner_differs() {
+        doReturn(new CASValue<Lock>(CAS, lock(2L))).when(client).gets(KEY, Lock.class);
+
+        assertThat(manager.doHandOverLock(KEY, lock(1L), new Lock(KEY, 0L)), is(false));
+        verify(client, never()).cas(anyString(), anyLong(), anyInt(), anyObject());
+    }
+
+    /**
+     * The lock taken by another owner between the read and the replace is not handed over.
+     */
+    @Test
+    public void doHandOverLock_Normal_false_if_owner_changed_after_read() {
+        // The CAS value has changed when the replace is issued
+        doReturn(new CASValue<Lock>(CAS, lock(1L))).when(client).gets(KEY, Lock.class);
+        doReturn(2L).when(client).incrementLongValue(MemcachedLockManager.FENCING_TOKEN_KEY);
+        doReturn(Boolean.FALSE).when(client).cas(anyString(), anyLong(), anyInt(), anyObject());
+
+        assertThat(manager.doHandOverLock(KEY, lock(1L), new Lock(KEY, 0L)), is(false));
+        verify(client, never()).put(anyString(), anyInt(), anyObject());
+    }
+
+    /**
+     * The lock already expired is not handed over.
+     */
+    @Test
+    public void doHandOverLock_Normal_false_if_expired() {
+        doReturn(null).when(client).gets(KEY, Lock.class);
+
+        assertThat(manager.doHandOverLock(KEY, lock(1L), new Lock(KEY, 0L)), is(false));
+        verify(client, never()).cas(anyString(), anyLong(), anyInt(), anyObject());
+    }
+
+    private static Lock lock(long token) {
+        Lock lock = new Lock(KEY, 0L);
+        lock.token = token;
+        return lock;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * ReadDeleteModeLockManager unit test class.
+ */
+@Category({ Unit.class })
+public class ReadDeleteModeLockManagerTest {
+
+    private LockManager originalManager;
+    private long originalStaleness;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        this.originalManager = LockManager.singleton;
+        this.originalStaleness = ReadDeleteModeLockManager.getMaxStaleness();
+        LockManager.singleton = new InProcessLockManager();
+        ReadDeleteModeLockManager.setMaxStaleness(60000L);
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        ReadDeleteModeLockManager.setReadDeleteOnlyMode(false, null);
+        LockManager.singleton = this.originalManager;
+        ReadDeleteModeLockManager.setMaxStaleness(this.originalStaleness);
+    }
+
+    /**
+     * The mode changed on this node is seen immediately, and changes in the store after the staleness.
+     */
+    @Test
+    public void isReadDeleteOnlyMode_Normal_cached_until_stale() {
+        ReadDeleteModeLockManager.setReadDeleteOnlyMode(true, "maintenance");
+        assertThat(ReadDeleteModeLockManager.isReadDeleteOnlyMode(), is(true));
+
+        // Changed by another node.
+        LockManager.singleton.doDeleteReadDeleteOnlyMode("PcsReadDeleteMode");
+        assertThat(ReadDeleteModeLockManager.isReadDeleteOnlyMode(), is(true));
+
+        ReadDeleteModeLockManager.setMaxStaleness(0);
+        assertThat(ReadDeleteModeLockManager.isReadDeleteOnlyMode(), is(false));
+    }
+}
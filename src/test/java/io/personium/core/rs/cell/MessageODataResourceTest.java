@@ -19,7 +19,9 @@ package io.personium.core.rs.cell;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
@@ -34,11 +36,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.odata4j.core.OProperties;
 import org.odata4j.core.OProperty;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.auth.AccessContext;
@@ -1190,4 +1195,86 @@ public class MessageODataResourceTest {
             assertThat(e.getMessage(), is(expected.getMessage()));
         }
     }
+
+    /**
+     * Test deliver().
+     * normal.
+     * Results are in the order of the destinations.
+     * @throws Exception Unexpected error.
+     */
+    @Test
+    public void deliver_Normal_results_are_in_order_of_destinations() throws Exception {
+        // --------------------
+        // Test method args
+        // --------------------
+        List<String> toList = new ArrayList<String>();
+        for (int i = 0; i < 25; i++) {
+            toList.add("http://personium/cell" + i + "/");
+        }
+
+        // --------------------
+        // Mock settings
+        // --------------------
+        PowerMockito.doAnswer(new Answer<List<OProperty<?>>>() {
+            @Override
+            public List<OProperty<?>> answer(InvocationOnMock invocation) throws Throwable {
+                List<OProperty<?>> result = new ArrayList<OProperty<?>>();
+                result.add(OProperties.string(SentMessage.P_RESULT_TO.getName(),
+                        (String) invocation.getArguments()[1]));
+                return result;
+            }
+        }).when(messageODataResource, "deliverTo", anyString(), anyString(), anyListOf(String.class), anyString());
+
+        // --------------------
+        // Run method
+        // --------------------
+        List<List<OProperty<?>>> actual = Whitebox.invokeMethod(messageODataResource, "deliver",
+                "http://personium/from/", toList, "id");
+
+        // --------------------
+        // Confirm result
+        // --------------------
+        assertThat(actual.size(), is(toList.size()));
+        for (int i = 0; i < toList.size(); i++) {
+            assertThat((String) actual.get(i).get(0).getValue(), is(toList.get(i)));
+        }
+    }
+
+    /**
+     * Test deliver().
+     * Error test.
+     * Failure of a destination is thrown.
+     * @throws Exception Unexpected error.
+     */
+    @Test
+    public void deliver_Error_failure_of_destination_is_thrown() throws Exception {
+        // --------------------
+        // Test method args
+        // --------------------
+        List<String> toList = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            toList.add("http://personium/cell" + i + "/");
+        }
+
+        // --------------------
+        // Mock settings
+        // --------------------
+        PowerMockito.doReturn(new ArrayList<OProperty<?>>()).when(messageODataResource, "deliverTo",
+                anyString(), anyString(), anyListOf(String.class), anyString());
+        PowerMockito.doThrow(PersoniumCoreException.SentMessage.SM_CONNECTION_ERROR).when(messageODataResource,
+                "deliverTo", anyString(), eq("http://personium/cell2/"), anyListOf(String.class), anyString());
+
+        // --------------------
+        // Run method
+        // --------------------
+        try {
+            Whitebox.invokeMethod(messageODataResource, "deliver", "http://personium/from/", toList, "id");
+            fail("Not exception.");
+        } catch (PersoniumCoreException e) {
+            // --------------------
+            // Confirm result
+            // --------------------
+            assertThat(e.getCode(), is(PersoniumCoreException.SentMessage.SM_CONNECTION_ERROR.getCode()));
+        }
+    }
 }
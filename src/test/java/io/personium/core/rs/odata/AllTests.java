@@ -25,7 +25,10 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-        AbstractODataResourceTest.class
+        AbstractODataResourceTest.class,
+        BatchBodyParserTest.class,
+        BatchBodySpoolTest.class,
+        ODataBatchResourceTest.class
 })
 public class AllTests {
 }
@@ -0,0 +1,241 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rs.odata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.test.categories.Unit;
+
+/**
+ * BatchBodyParserユニットテストクラス.
+ */
+@Category({Unit.class })
+public class BatchBodyParserTest {
+
+    private static final String BOUNDARY = "batch_XAmu9BiJJLBa20sRWIq74jp2UlNAVueztqu";
+    private static final String CHANGESET = "changeset_cLzcDEEVPwvvoxS3yJTFTpRauSK";
+    private static final String REQUEST_URI = "http://localhost/cell/box/col/$batch";
+
+    /**
+     * iterateでリクエスト順にボディパートが取得できること.
+     */
+    @Test
+    public void iterateでリクエスト順にボディパートが取得できること() {
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + deleteBody("Sales('2')", "Sales('3')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales")
+                + "--" + BOUNDARY + "--\n";
+
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, new StringReader(body), REQUEST_URI);
+
+        BatchBodyPart part = parts.next();
+        assertEquals("GET", part.getHttpMethod());
+        assertEquals("http://localhost/cell/box/col/Sales('1')", part.getUri());
+
+        part = parts.next();
+        assertEquals("DELETE", part.getHttpMethod());
+        assertEquals("http://localhost/cell/box/col/Sales('2')", part.getUri());
+        assertTrue(part.isChangesetStart());
+        assertFalse(part.isChangesetEnd());
+
+        part = parts.next();
+        assertEquals("DELETE", part.getHttpMethod());
+        assertEquals("http://localhost/cell/box/col/Sales('3')", part.getUri());
+        assertFalse(part.isChangesetStart());
+        assertTrue(part.isChangesetEnd());
+
+        part = parts.next();
+        assertEquals("GET", part.getHttpMethod());
+        assertEquals("http://localhost/cell/box/col/Sales", part.getUri());
+
+        assertFalse(parts.hasNext());
+    }
+
+    /**
+     * iterateとparseで同じボディパートが取得できること.
+     */
+    @Test
+    public void iterateとparseで同じボディパートが取得できること() {
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + deleteBody("Sales('2')", "Sales('3')")
+                + "--" + BOUNDARY + "--\n";
+
+        List<BatchBodyPart> parsed = new BatchBodyParser().parse(BOUNDARY, new StringReader(body), REQUEST_URI);
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, new StringReader(body), REQUEST_URI);
+        for (BatchBodyPart expected : parsed) {
+            BatchBodyPart part = parts.next();
+            assertEquals(expected.getHttpMethod(), part.getHttpMethod());
+            assertEquals(expected.getUri(), part.getUri());
+            assertEquals(expected.isChangesetStart(), part.isChangesetStart());
+            assertEquals(expected.isChangesetEnd(), part.isChangesetEnd());
+        }
+        assertFalse(parts.hasNext());
+    }
+
+    /**
+     * iterateでリクエストボディが必要な分だけ読み込まれること.
+     */
+    @Test
+    public void iterateでリクエストボディが必要な分だけ読み込まれること() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("--" + BOUNDARY + "\n").append(getBody("Sales('" + i + "')"));
+        }
+        builder.append("--" + BOUNDARY + "--\n");
+        String body = builder.toString();
+        CountingReader reader = new CountingReader(new StringReader(body));
+
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, reader, REQUEST_URI);
+        assertEquals("http://localhost/cell/box/col/Sales('0')", parts.next().getUri());
+        assertTrue(reader.count < body.length());
+
+        int count = 1;
+        while (parts.hasNext()) {
+            assertEquals("http://localhost/cell/box/col/Sales('" + count + "')", parts.next().getUri());
+            count++;
+        }
+        assertEquals(1000, count);
+        assertEquals(body.length(), reader.count);
+    }
+
+    /**
+     * 途中のボディパートが不正な場合にそれまでのボディパートが取得できた後に例外となること.
+     */
+    @Test
+    public void 途中のボディパートが不正な場合にそれまでのボディパートが取得できた後に例外となること() {
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + "Content-Type: text/plain\n\n"
+                + "GET Sales('2')\n\n"
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('3')")
+                + "--" + BOUNDARY + "--\n";
+
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, new StringReader(body), REQUEST_URI);
+        assertEquals("http://localhost/cell/box/col/Sales('1')", parts.next().getUri());
+        try {
+            parts.next();
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.OData.BATCH_BODY_FORMAT_HEADER_ERROR.getCode(), e.getCode());
+        }
+    }
+
+    /**
+     * 終端のないボディの場合にそれまでのボディパートが取得できた後にパースエラーとなること.
+     */
+    @Test
+    public void 終端のないボディの場合にそれまでのボディパートが取得できた後にパースエラーとなること() {
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('2')");
+
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, new StringReader(body), REQUEST_URI);
+        assertEquals("http://localhost/cell/box/col/Sales('1')", parts.next().getUri());
+        try {
+            parts.hasNext();
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR.getCode(), e.getCode());
+        }
+    }
+
+    /**
+     * 途中のボディパートが不正でも終端のないボディの場合はパースエラーとなること.
+     */
+    @Test
+    public void 途中のボディパートが不正でも終端のないボディの場合はパースエラーとなること() {
+        String body = "--" + BOUNDARY + "\n"
+                + "Content-Type: text/plain\n\n"
+                + "GET Sales('1')\n\n"
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('2')");
+
+        Iterator<BatchBodyPart> parts = new BatchBodyParser().iterate(BOUNDARY, new StringReader(body), REQUEST_URI);
+        try {
+            parts.next();
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.OData.BATCH_BODY_PARSE_ERROR.getCode(), e.getCode());
+        }
+    }
+
+    private static String getBody(String path) {
+        return "Content-Type: application/http\n"
+                + "Content-Transfer-Encoding:binary\n\n"
+                + "GET " + path + "\n"
+                + "Host: host\n\n";
+    }
+
+    private static String deleteBody(String path1, String path2) {
+        return "Content-Type: multipart/mixed; boundary=" + CHANGESET + "\n\n"
+                + "--" + CHANGESET + "\n"
+                + "Content-Type: application/http\n"
+                + "Content-Transfer-Encoding: binary\n\n"
+                + "DELETE " + path1 + " HTTP/1.1\n"
+                + "Host: \n"
+                + "If-Match: *\n\n"
+                + "--" + CHANGESET + "\n"
+                + "Content-Type: application/http\n"
+                + "Content-Transfer-Encoding: binary\n\n"
+                + "DELETE " + path2 + " HTTP/1.1\n"
+                + "Host: \n"
+                + "If-Match: *\n\n"
+                + "--" + CHANGESET + "--\n\n";
+    }
+
+    /**
+     * 読み込んだ文字数を数えるReader.
+     */
+    private static class CountingReader extends FilterReader {
+        private int count = 0;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int length = super.read(cbuf, off, len);
+            if (length > 0) {
+                this.count += length;
+            }
+            return length;
+        }
+    }
+}
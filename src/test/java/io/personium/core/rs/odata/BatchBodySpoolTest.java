@@ -0,0 +1,110 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rs.odata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * BatchBodySpoolユニットテストクラス.
+ */
+@Category({Unit.class })
+public class BatchBodySpoolTest {
+
+    /**
+     * 閾値以下のボディがメモリに保持され繰り返し読み出せること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 閾値以下のボディがメモリに保持され繰り返し読み出せること() throws Exception {
+        String body = "--batch\nあいうえお\n--batch--\n";
+        BatchBodySpool spool = new BatchBodySpool(body.length());
+        try {
+            spool.spool(new StringReader(body));
+            assertNull(Whitebox.getInternalState(spool, "file"));
+            assertEquals(body, read(spool));
+            assertEquals(body, read(spool));
+        } finally {
+            spool.close();
+        }
+    }
+
+    /**
+     * 閾値を超えるボディが一時ファイルに退避され繰り返し読み出せること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 閾値を超えるボディが一時ファイルに退避され繰り返し読み出せること() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("あいうえお").append(i).append("\n");
+        }
+        String body = builder.toString();
+        BatchBodySpool spool = new BatchBodySpool(100);
+        try {
+            spool.spool(new StringReader(body));
+            File file = (File) Whitebox.getInternalState(spool, "file");
+            assertNotNull(file);
+            assertTrue(file.exists());
+            assertEquals(body, read(spool));
+            assertEquals(body, read(spool));
+        } finally {
+            spool.close();
+        }
+    }
+
+    /**
+     * closeで一時ファイルが削除されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void closeで一時ファイルが削除されること() throws Exception {
+        BatchBodySpool spool = new BatchBodySpool(1);
+        spool.spool(new StringReader("--batch--\n"));
+        File file = (File) Whitebox.getInternalState(spool, "file");
+        assertTrue(file.exists());
+
+        spool.close();
+        assertFalse(file.exists());
+        assertNull(Whitebox.getInternalState(spool, "file"));
+        // 二重にcloseしても例外とならないこと
+        spool.close();
+    }
+
+    private String read(BatchBodySpool spool) throws Exception {
+        Reader reader = spool.openReader();
+        try {
+            return IOUtils.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rs.odata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.odata4j.core.OEntityId;
+import org.odata4j.producer.EntityResponse;
+import org.odata4j.producer.QueryInfo;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.model.impl.es.odata.UserDataODataProducer;
+import io.personium.core.rs.odata.ODataBatchResource.BatchPriority;
+import io.personium.core.rs.odata.ODataBatchResource.BatchResponse;
+import io.personium.core.rs.odata.ODataBatchResource.NavigationPropertyBulkContext;
+import io.personium.test.categories.Unit;
+
+/**
+ * ODataBatchResourceユニットテストクラス.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ODataBatchResource.class })
+@Category({Unit.class })
+public class ODataBatchResourceTest {
+
+    private static final String BOUNDARY = "batch_XAmu9BiJJLBa20sRWIq74jp2UlNAVueztqu";
+    private static final String CHANGESET = "changeset_cLzcDEEVPwvvoxS3yJTFTpRauSK";
+
+    private ODataBatchResource resource;
+    private UriInfo uriInfo;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        resource = PowerMockito.spy(new ODataBatchResource(mock(ODataResource.class)));
+        Whitebox.setInternalState(resource, "timer",
+                new BatchElapsedTimer(System.currentTimeMillis(), 60000L, BatchPriority.HIGH));
+        uriInfo = mock(UriInfo.class);
+        when(uriInfo.getRequestUri()).thenReturn(URI.create("http://localhost/cell/box/col/$batch"));
+    }
+
+    /**
+     * 途中のリクエストで想定外のエラーが発生した場合に以降のリクエストがエラーとなり終端まで書き出されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 途中のリクエストで想定外のエラーが発生した場合に以降のリクエストがエラーとなり終端まで書き出されること()
+            throws Exception {
+        PowerMockito.doReturn(Arrays.asList(okResponse(), okResponse()))
+                .when(resource, "read", any(UriInfo.class), anyListOf(BatchBodyPart.class));
+        PowerMockito.doThrow(new RuntimeException("unexpected"))
+                .when(resource, "executePartRequest", any(StringBuilder.class), any(UriInfo.class), anyString(),
+                        anyListOf(NavigationPropertyBulkContext.class), any(BatchBodyPart.class));
+
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('2')")
+                + "--" + BOUNDARY + "\n"
+                + deleteBody("Sales('3')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('4')")
+                + "--" + BOUNDARY + "--\n";
+        String response = writeResponseBody(body);
+
+        assertEquals(Arrays.asList(HttpStatus.SC_OK, HttpStatus.SC_OK,
+                HttpStatus.SC_INTERNAL_SERVER_ERROR, HttpStatus.SC_INTERNAL_SERVER_ERROR), getStatuses(response));
+        assertTrue(response.contains("--" + CHANGESET + "--\n"));
+        assertTrue(response.endsWith("--" + BOUNDARY + "--"));
+        // エラー発生後のリクエストは実行されないこと
+        PowerMockito.verifyPrivate(resource, times(1))
+                .invoke("read", any(UriInfo.class), anyListOf(BatchBodyPart.class));
+    }
+
+    /**
+     * まとめて実行する取得系リクエストで想定外のエラーが発生した場合にまとめた全てのリクエストがエラーとなること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void まとめて実行する取得系リクエストで想定外のエラーが発生した場合にまとめた全てのリクエストがエラーとなること()
+            throws Exception {
+        PowerMockito.doThrow(new RuntimeException("unexpected"))
+                .when(resource, "read", any(UriInfo.class), anyListOf(BatchBodyPart.class));
+
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('2')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales")
+                + "--" + BOUNDARY + "--\n";
+        String response = writeResponseBody(body);
+
+        assertEquals(Arrays.asList(HttpStatus.SC_INTERNAL_SERVER_ERROR, HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                HttpStatus.SC_INTERNAL_SERVER_ERROR), getStatuses(response));
+        assertTrue(response.endsWith("--" + BOUNDARY + "--"));
+    }
+
+    /**
+     * 連続する取得系リクエストがまとめて実行され更新系リクエストとリクエスト順に応答されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 連続する取得系リクエストがまとめて実行され更新系リクエストとリクエスト順に応答されること()
+            throws Exception {
+        final List<String> events = new ArrayList<String>();
+        PowerMockito.doAnswer(new Answer<List<BatchResponse>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public List<BatchResponse> answer(InvocationOnMock invocation) {
+                List<BatchBodyPart> reads = (List<BatchBodyPart>) invocation.getArguments()[1];
+                List<BatchResponse> results = new ArrayList<BatchResponse>();
+                for (int i = 0; i < reads.size(); i++) {
+                    results.add(okResponse());
+                }
+                events.add("read:" + reads.size());
+                return results;
+            }
+        }).when(resource, "read", any(UriInfo.class), anyListOf(BatchBodyPart.class));
+        PowerMockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                StringBuilder responseBody = (StringBuilder) invocation.getArguments()[0];
+                responseBody.append("--" + BOUNDARY + "\nHTTP/1.1 204 No Content\n\n");
+                events.add("exec");
+                return null;
+            }
+        }).when(resource, "executePartRequest", any(StringBuilder.class), any(UriInfo.class), anyString(),
+                anyListOf(NavigationPropertyBulkContext.class), any(BatchBodyPart.class));
+
+        String body = "--" + BOUNDARY + "\n"
+                + getBody("Sales('1')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales")
+                + "--" + BOUNDARY + "\n"
+                + deleteBody("Sales('3')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('4')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('5')")
+                + "--" + BOUNDARY + "\n"
+                + getBody("Sales('6')")
+                + "--" + BOUNDARY + "--\n";
+        String response = writeResponseBody(body);
+
+        assertEquals(Arrays.asList("read:2", "exec", "read:3"), events);
+        assertEquals(Arrays.asList(HttpStatus.SC_OK, HttpStatus.SC_OK, HttpStatus.SC_NO_CONTENT,
+                HttpStatus.SC_OK, HttpStatus.SC_OK, HttpStatus.SC_OK), getStatuses(response));
+        assertTrue(response.endsWith("--" + BOUNDARY + "--"));
+    }
+
+    /**
+     * まとめて実行する取得系リクエストの一部が失敗した場合に失敗したリクエストのみエラーとなること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void まとめて実行する取得系リクエストの一部が失敗した場合に失敗したリクエストのみエラーとなること()
+            throws Exception {
+        List<BatchBodyPart> reads = parse(getBody("Sales('1')"), getBody("Sales('2')"), getBody("Sales('3')"));
+        stubEntityReads(reads);
+        // Sales('2')は参照権限がない
+        PowerMockito.doThrow(PersoniumCoreException.OData.NO_SUCH_ENTITY)
+                .when(resource, "checkReadAccessContext", reads.get(1));
+        // Sales('3')はまとめて取得できず個別に取得する
+        UserDataODataProducer producer = mock(UserDataODataProducer.class);
+        when(producer.getEntities(anyListOf(OEntityId.class)))
+                .thenReturn(Arrays.asList(mock(EntityResponse.class), null));
+        when(resource.odataResource.getODataProducer()).thenReturn(producer);
+
+        List<BatchResponse> results = Whitebox.invokeMethod(resource, "read", uriInfo, reads);
+
+        assertEquals(Arrays.asList(HttpStatus.SC_OK, HttpStatus.SC_NOT_FOUND, HttpStatus.SC_OK),
+                getStatuses(results));
+        PowerMockito.verifyPrivate(resource, times(1)).invoke("retrieve", uriInfo, reads.get(2));
+    }
+
+    /**
+     * まとめて取得した後にタイムアウトした場合に個別に取得するリクエストがタイムアウトとなること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void まとめて取得した後にタイムアウトした場合に個別に取得するリクエストがタイムアウトとなること()
+            throws Exception {
+        List<BatchBodyPart> reads = parse(getBody("Sales('1')"), getBody("Sales('2')"), getBody("Sales"));
+        stubEntityReads(reads);
+        UserDataODataProducer producer = mock(UserDataODataProducer.class);
+        when(producer.getEntities(anyListOf(OEntityId.class))).thenAnswer(new Answer<List<EntityResponse>>() {
+            @Override
+            public List<EntityResponse> answer(InvocationOnMock invocation) {
+                // 検索中にタイムアウトした
+                Whitebox.setInternalState(resource, "timedOut", true);
+                return Arrays.asList(mock(EntityResponse.class), null);
+            }
+        });
+        when(resource.odataResource.getODataProducer()).thenReturn(producer);
+
+        List<BatchResponse> results = Whitebox.invokeMethod(resource, "read", uriInfo, reads);
+
+        assertEquals(Arrays.asList(HttpStatus.SC_OK, HttpStatus.SC_REQUEST_TIMEOUT, HttpStatus.SC_REQUEST_TIMEOUT),
+                getStatuses(results));
+        PowerMockito.verifyPrivate(resource, never()).invoke("retrieve", any(UriInfo.class),
+                any(BatchBodyPart.class));
+        verify(producer, never()).getEntities(anyListOf(String.class), anyListOf(QueryInfo.class));
+    }
+
+    private List<BatchBodyPart> parse(String... parts) {
+        StringBuilder body = new StringBuilder();
+        for (String part : parts) {
+            body.append("--" + BOUNDARY + "\n").append(part);
+        }
+        body.append("--" + BOUNDARY + "--\n");
+        return new BatchBodyParser().parse(BOUNDARY, new StringReader(body.toString()),
+                uriInfo.getRequestUri().toString());
+    }
+
+    private void stubEntityReads(List<BatchBodyPart> reads) throws Exception {
+        PowerMockito.doNothing().when(resource, "checkReadAccessContext", any(BatchBodyPart.class));
+        PowerMockito.whenNew(ODataEntityResource.class).withAnyArguments().thenReturn(mock(ODataEntityResource.class));
+        PowerMockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((BatchResponse) invocation.getArguments()[0]).setResponseCode(HttpStatus.SC_OK);
+                return null;
+            }
+        }).when(resource, "setRetrieveResponse", any(BatchResponse.class), any(UriInfo.class),
+                any(ODataEntityResource.class), any(EntityResponse.class));
+        PowerMockito.doReturn(okResponse()).when(resource, "retrieve", any(UriInfo.class), any(BatchBodyPart.class));
+    }
+
+    private static List<Integer> getStatuses(List<BatchResponse> results) {
+        List<Integer> statuses = new ArrayList<Integer>();
+        for (BatchResponse res : results) {
+            statuses.add(res.getResponseCode());
+        }
+        return statuses;
+    }
+
+    private String writeResponseBody(String body) throws Exception {
+        StringWriter writer = new StringWriter();
+        Whitebox.invokeMethod(resource, "writeResponseBody", writer, uriInfo, BOUNDARY, new StringReader(body));
+        return writer.toString();
+    }
+
+    private static List<Integer> getStatuses(String response) {
+        List<Integer> statuses = new ArrayList<Integer>();
+        for (String line : response.split("\n")) {
+            if (line.startsWith("HTTP/1.1 ")) {
+                statuses.add(Integer.valueOf(line.split(" ")[1]));
+            }
+        }
+        return statuses;
+    }
+
+    private static BatchResponse okResponse() {
+        BatchResponse res = new BatchResponse();
+        res.setResponseCode(HttpStatus.SC_OK);
+        return res;
+    }
+
+    private static String getBody(String path) {
+        return "Content-Type: application/http\n"
+                + "Content-Transfer-Encoding:binary\n\n"
+                + "GET " + path + "\n"
+                + "Host: host\n\n";
+    }
+
+    private static String deleteBody(String path) {
+        return "Content-Type: multipart/mixed; boundary=" + CHANGESET + "\n\n"
+                + "--" + CHANGESET + "\n"
+                + "Content-Type: application/http\n"
+                + "Content-Transfer-Encoding: binary\n\n"
+                + "DELETE " + path + " HTTP/1.1\n"
+                + "Host: \n"
+                + "If-Match: *\n\n"
+                + "--" + CHANGESET + "--\n\n";
+    }
+}
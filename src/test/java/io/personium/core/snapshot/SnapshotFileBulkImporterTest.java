@@ -0,0 +1,222 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.rs.odata.MapBulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit test for SnapshotFileBulkImporter.
+ */
+@Category({Unit.class })
+public class SnapshotFileBulkImporterTest {
+
+    private ExecutorService executor;
+    private DataSourceAccessor accessor;
+    private SnapshotFileImportProgressInfo progressInfo;
+    /** Ids of the documents of each bulk request, in the order sent. */
+    private List<List<String>> sent;
+    /** Ids of the documents to fail once in a bulk response. */
+    private Set<String> failOnce;
+    /** Number of bulk requests to fail as a whole. */
+    private int failWhole;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        executor = Executors.newSingleThreadExecutor();
+        progressInfo = mock(SnapshotFileImportProgressInfo.class);
+        sent = Collections.synchronizedList(new ArrayList<List<String>>());
+        failOnce = Collections.synchronizedSet(new HashSet<String>());
+        failWhole = 0;
+        accessor = mock(DataSourceAccessor.class);
+        when(accessor.bulkCreate(anyListOf(EsBulkRequest.class), anyString())).thenAnswer(
+                new Answer<PersoniumBulkResponse>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public PersoniumBulkResponse answer(InvocationOnMock invocation) {
+                        List<EsBulkRequest> requests = (List<EsBulkRequest>) invocation.getArguments()[0];
+                        return bulkCreate(requests);
+                    }
+                });
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    private synchronized PersoniumBulkResponse bulkCreate(List<EsBulkRequest> requests) {
+        List<String> ids = new ArrayList<String>();
+        for (EsBulkRequest request : requests) {
+            ids.add(request.getId());
+        }
+        sent.add(ids);
+        if (failWhole > 0) {
+            failWhole--;
+            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR;
+        }
+        PersoniumBulkItemResponse[] items = new PersoniumBulkItemResponse[requests.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = mock(PersoniumBulkItemResponse.class);
+            when(items[i].isFailed()).thenReturn(failOnce.remove(ids.get(i)));
+        }
+        PersoniumBulkResponse response = mock(PersoniumBulkResponse.class);
+        when(response.items()).thenReturn(items);
+        return response;
+    }
+
+    private SnapshotFileBulkImporter create(int maxDocuments, long maxBytes, int retryTimes) {
+        return new SnapshotFileBulkImporter(accessor, "routing", progressInfo, maxDocuments, maxBytes, retryTimes,
+                1, executor);
+    }
+
+    private static EsBulkRequest request(String id) {
+        return new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, "type", id, new HashMap<String, Object>());
+    }
+
+    /**
+     * Documents are sent in batches limited by the number of documents.
+     */
+    @Test
+    public void add_Normal_batches_by_document_count() {
+        SnapshotFileBulkImporter importer = create(3, Long.MAX_VALUE, 0);
+        for (int i = 1; i <= 7; i++) {
+            importer.add(request("id" + i), 1L);
+        }
+        importer.finish();
+
+        assertThat(sent).isEqualTo(Arrays.asList(
+                Arrays.asList("id1", "id2", "id3"),
+                Arrays.asList("id4", "id5", "id6"),
+                Arrays.asList("id7")));
+    }
+
+    /**
+     * Documents are sent in batches limited by the payload bytes.
+     */
+    @Test
+    public void add_Normal_batches_by_bytes() {
+        SnapshotFileBulkImporter importer = create(100, 10L, 0);
+        importer.add(request("id1"), 4L);
+        importer.add(request("id2"), 4L);
+        importer.add(request("id3"), 4L);
+        importer.add(request("id4"), 20L);
+        importer.add(request("id5"), 4L);
+        importer.finish();
+
+        assertThat(sent).isEqualTo(Arrays.asList(
+                Arrays.asList("id1", "id2", "id3"),
+                Arrays.asList("id4"),
+                Arrays.asList("id5")));
+    }
+
+    /**
+     * Nothing is sent when no document is added.
+     */
+    @Test
+    public void finish_Normal_no_document() {
+        create(3, Long.MAX_VALUE, 0).finish();
+
+        assertThat(sent).isEmpty();
+    }
+
+    /**
+     * Only the documents failed in a bulk response are sent again.
+     */
+    @Test
+    public void finish_Normal_retries_failed_documents() {
+        failOnce.add("id2");
+        SnapshotFileBulkImporter importer = create(3, Long.MAX_VALUE, 1);
+        importer.add(request("id1"), 1L);
+        importer.add(request("id2"), 1L);
+        importer.add(request("id3"), 1L);
+        importer.finish();
+
+        assertThat(sent).isEqualTo(Arrays.asList(
+                Arrays.asList("id1", "id2", "id3"),
+                Arrays.asList("id2")));
+    }
+
+    /**
+     * A bulk request failed as a whole is sent again in two halves.
+     */
+    @Test
+    public void finish_Normal_splits_failed_bulk_request() {
+        failWhole = 1;
+        SnapshotFileBulkImporter importer = create(4, Long.MAX_VALUE, 1);
+        for (int i = 1; i <= 4; i++) {
+            importer.add(request("id" + i), 1L);
+        }
+        importer.finish();
+
+        assertThat(sent).isEqualTo(Arrays.asList(
+                Arrays.asList("id1", "id2", "id3", "id4"),
+                Arrays.asList("id1", "id2"),
+                Arrays.asList("id3", "id4")));
+    }
+
+    /**
+     * The import fails when documents still fail after the retries.
+     */
+    @Test
+    public void finish_Error_retry_over() {
+        failOnce.add("id1");
+        SnapshotFileBulkImporter importer = create(1, Long.MAX_VALUE, 0);
+        importer.add(request("id1"), 1L);
+        try {
+            importer.finish();
+            fail("PersoniumCoreException not thrown.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode()).isEqualTo(PersoniumCoreException.Server.ES_RETRY_OVER.getCode());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.common.es.response.PersoniumSearchHits;
+import io.personium.common.es.response.PersoniumSearchResponse;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.QueryMapFactory;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit test for SnapshotFileExportRunner.
+ */
+@Category({Unit.class })
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({EsModel.class })
+public class SnapshotFileExportRunnerTest {
+
+    /** Page size of the export. Same as SnapshotFileExportRunner. */
+    private static final int SEARCH_LIMIT = 1000;
+
+    private SnapshotFileExportRunner runner;
+    private SnapshotFileExportProgressInfo progressInfo;
+    private SnapshotFile snapshotFile;
+    private StringWriter output;
+    /** Queries in the order searched. */
+    private List<Map<String, Object>> queries;
+    /** Hits of each page. */
+    private List<PersoniumSearchHit[]> pages;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        Cell cell = mock(Cell.class);
+        when(cell.getId()).thenReturn("cellId");
+        when(cell.getDataBundleName()).thenReturn("index");
+        progressInfo = mock(SnapshotFileExportProgressInfo.class);
+        // The constructor counts the entries in Es, so it is skipped.
+        runner = Whitebox.newInstance(SnapshotFileExportRunner.class);
+        Whitebox.setInternalState(runner, "targetCell", cell);
+        Whitebox.setInternalState(runner, "progressInfo", progressInfo);
+
+        output = new StringWriter();
+        snapshotFile = mock(SnapshotFile.class);
+        when(snapshotFile.newDataPJsonWriter()).thenReturn(new BufferedWriter(output));
+
+        queries = new ArrayList<Map<String, Object>>();
+        pages = new ArrayList<PersoniumSearchHit[]>();
+        DataSourceAccessor accessor = mock(DataSourceAccessor.class);
+        when(accessor.searchForIndex(eq("cellId"), anyMapOf(String.class, Object.class))).thenAnswer(
+                new Answer<PersoniumSearchResponse>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public PersoniumSearchResponse answer(InvocationOnMock invocation) {
+                        queries.add((Map<String, Object>) invocation.getArguments()[1]);
+                        PersoniumSearchHit[] hits = pages.get(queries.size() - 1);
+                        PersoniumSearchHits searchHits = mock(PersoniumSearchHits.class);
+                        when(searchHits.getHits()).thenReturn(hits);
+                        when(searchHits.getCount()).thenReturn((long) hits.length);
+                        PersoniumSearchResponse response = mock(PersoniumSearchResponse.class);
+                        when(response.getHits()).thenReturn(searchHits);
+                        return response;
+                    }
+                });
+        PowerMockito.mockStatic(EsModel.class);
+        when(EsModel.getDataSourceAccessorFromIndexName("index")).thenReturn(accessor);
+    }
+
+    private static PersoniumSearchHit hit(String type, String id) {
+        PersoniumSearchHit hit = mock(PersoniumSearchHit.class);
+        when(hit.getIndex()).thenReturn("index");
+        when(hit.getType()).thenReturn(type);
+        when(hit.getId()).thenReturn(id);
+        when(hit.getSource()).thenReturn(new HashMap<String, Object>());
+        return hit;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getFilters(Map<String, Object> query) {
+        Map<String, Object> filtered = (Map<String, Object>) ((Map<String, Object>) query.get("query")).get("filtered");
+        Map<String, Object> and = (Map<String, Object>) ((Map<String, Object>) filtered.get("filter")).get("and");
+        return (List<Map<String, Object>>) and.get("filters");
+    }
+
+    /**
+     * Each page starts after the last _uid of the previous page, and all the hits are written.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void addDataToZip_Normal_pages_by_uid() throws Exception {
+        PersoniumSearchHit[] firstPage = new PersoniumSearchHit[SEARCH_LIMIT];
+        Arrays.fill(firstPage, hit("Account", "a1"));
+        firstPage[SEARCH_LIMIT - 1] = hit("Role", "r1");
+        pages.add(firstPage);
+        pages.add(new PersoniumSearchHit[] {hit("UserData", "u1"), hit("UserData", "u2")});
+
+        Whitebox.invokeMethod(runner, "addDataToZip", snapshotFile);
+
+        assertThat(queries).hasSize(2);
+        assertThat(getFilters(queries.get(0))).isEqualTo(Arrays.asList(
+                QueryMapFactory.termQuery("c", "cellId")));
+        assertThat(getFilters(queries.get(1))).isEqualTo(Arrays.asList(
+                QueryMapFactory.termQuery("c", "cellId"),
+                QueryMapFactory.rangeFilter("_uid", "gt", "Role#r1")));
+        for (Map<String, Object> query : queries) {
+            assertThat(query.get("sort")).isEqualTo(Arrays.asList(QueryMapFactory.sortQuery("_uid", "asc")));
+            assertThat(query.get("size")).isEqualTo(SEARCH_LIMIT);
+            assertThat(query.containsKey("from")).isFalse();
+        }
+
+        String[] lines = output.toString().split(System.lineSeparator());
+        assertThat(lines).hasSize(SEARCH_LIMIT + 2);
+        assertThat(lines[SEARCH_LIMIT - 1]).contains("\"_id\":\"r1\"");
+        assertThat(lines[SEARCH_LIMIT + 1]).contains("\"_id\":\"u2\"").contains("\"_type\":\"UserData\"");
+        verify(progressInfo).addDelta(SEARCH_LIMIT);
+        verify(progressInfo).addDelta(2);
+    }
+
+    /**
+     * The search stops at an empty page, and the data pjson is created even if it is empty.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public void addDataToZip_Normal_stops_at_empty_page() throws Exception {
+        PersoniumSearchHit[] firstPage = new PersoniumSearchHit[SEARCH_LIMIT];
+        Arrays.fill(firstPage, hit("Account", "a1"));
+        pages.add(firstPage);
+        pages.add(new PersoniumSearchHit[0]);
+
+        Whitebox.invokeMethod(runner, "addDataToZip", snapshotFile);
+
+        assertThat(queries).hasSize(2);
+        assertThat(output.toString().split(System.lineSeparator())).hasSize(SEARCH_LIMIT);
+
+        queries.clear();
+        pages.clear();
+        pages.add(new PersoniumSearchHit[0]);
+        output.getBuffer().setLength(0);
+        when(snapshotFile.newDataPJsonWriter()).thenReturn(new BufferedWriter(output));
+
+        Whitebox.invokeMethod(runner, "addDataToZip", snapshotFile);
+
+        assertThat(queries).hasSize(1);
+        assertThat(output.toString()).isEmpty();
+    }
+}
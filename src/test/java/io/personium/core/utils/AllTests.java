@@ -25,6 +25,7 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+        EngineRelayClientTest.class,
         ODataUtilsTest.class
 })
 public class AllTests {
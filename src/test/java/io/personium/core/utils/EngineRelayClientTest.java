@@ -0,0 +1,238 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.PersoniumUnitConfig.Engine;
+import io.personium.test.categories.Unit;
+
+/**
+ * EngineRelayClientユニットテストクラス.
+ */
+@Category({Unit.class })
+public class EngineRelayClientTest {
+
+    private HttpServer server;
+    private Set<Integer> remotePorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    /**
+     * 前処理. Engineの代わりに応答するサーバを起動する.
+     * @throws Exception Exception
+     */
+    @Before
+    public void before() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/target", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                remotePorts.add(exchange.getRemoteAddress().getPort());
+                respond(exchange, HttpStatus.SC_OK, "target");
+            }
+        });
+        server.createContext("/redirect", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Location", baseUrl() + "/target");
+                respond(exchange, HttpStatus.SC_MOVED_TEMPORARILY, "");
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * 後処理.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+        PersoniumUnitConfig.reload();
+    }
+
+    /**
+     * 接続プールの最大接続数が設定値となること.
+     */
+    @Test
+    public void 接続プールの最大接続数が設定値となること() {
+        PersoniumUnitConfig.set(Engine.RELAY_MAX_CONNECTIONS, "7");
+        PersoniumUnitConfig.set(Engine.RELAY_MAX_CONNECTIONS_PER_ROUTE, "3");
+
+        PoolingHttpClientConnectionManager cm = EngineRelayClient.createConnectionManager();
+        try {
+            assertEquals(7, cm.getMaxTotal());
+            assertEquals(3, cm.getDefaultMaxPerRoute());
+        } finally {
+            cm.shutdown();
+        }
+    }
+
+    /**
+     * タイムアウトが設定値となりリダイレクトが有効となること.
+     */
+    @Test
+    public void タイムアウトが設定値となりリダイレクトが有効となること() {
+        PersoniumUnitConfig.set(Engine.RELAY_CONNECT_TIMEOUT, "1000");
+        PersoniumUnitConfig.set(Engine.RELAY_SOCKET_TIMEOUT, "2000");
+        PersoniumUnitConfig.set(Engine.RELAY_CONNECTION_REQUEST_TIMEOUT, "3000");
+
+        RequestConfig config = EngineRelayClient.createRequestConfig();
+        assertEquals(1000, config.getConnectTimeout());
+        assertEquals(2000, config.getSocketTimeout());
+        assertEquals(3000, config.getConnectionRequestTimeout());
+        assertTrue(config.isRedirectsEnabled());
+    }
+
+    /**
+     * レスポンスを閉じた接続が再利用されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void レスポンスを閉じた接続が再利用されること() throws Exception {
+        PoolingHttpClientConnectionManager cm = EngineRelayClient.createConnectionManager();
+        CloseableHttpClient client = EngineRelayClient.createClient(cm);
+        try {
+            for (int i = 0; i < 3; i++) {
+                CloseableHttpResponse response = client.execute(new HttpGet(baseUrl() + "/target"));
+                try {
+                    assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+                    assertEquals("target", EntityUtils.toString(response.getEntity()));
+                } finally {
+                    response.close();
+                }
+            }
+            assertEquals(1, remotePorts.size());
+            assertEquals(0, cm.getTotalStats().getLeased());
+            assertEquals(1, cm.getTotalStats().getAvailable());
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * GETのリダイレクトに従うこと.
+     * @throws Exception Exception
+     */
+    @Test
+    public void GETのリダイレクトに従うこと() throws Exception {
+        PoolingHttpClientConnectionManager cm = EngineRelayClient.createConnectionManager();
+        CloseableHttpClient client = EngineRelayClient.createClient(cm);
+        try {
+            CloseableHttpResponse response = client.execute(new HttpGet(baseUrl() + "/redirect"));
+            try {
+                assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+                assertEquals("target", EntityUtils.toString(response.getEntity()));
+            } finally {
+                response.close();
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * 接続プールが枯渇した場合に接続取得のタイムアウトで例外となること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 接続プールが枯渇した場合に接続取得のタイムアウトで例外となること() throws Exception {
+        PersoniumUnitConfig.set(Engine.RELAY_MAX_CONNECTIONS, "1");
+        PersoniumUnitConfig.set(Engine.RELAY_MAX_CONNECTIONS_PER_ROUTE, "1");
+        PersoniumUnitConfig.set(Engine.RELAY_CONNECTION_REQUEST_TIMEOUT, "100");
+
+        PoolingHttpClientConnectionManager cm = EngineRelayClient.createConnectionManager();
+        CloseableHttpClient client = EngineRelayClient.createClient(cm);
+        try {
+            // レスポンスを閉じずに接続を保持する
+            CloseableHttpResponse response = client.execute(new HttpGet(baseUrl() + "/target"));
+            try {
+                client.execute(new HttpGet(baseUrl() + "/target"));
+                fail("Not thrown");
+            } catch (ConnectionPoolTimeoutException e) {
+                assertEquals(1, cm.getTotalStats().getLeased());
+            } finally {
+                response.close();
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * 接続の維持時間がEngineの指定と設定値の短い方となること.
+     */
+    @Test
+    public void 接続の維持時間がEngineの指定と設定値の短い方となること() {
+        ConnectionKeepAliveStrategy strategy = EngineRelayClient.createKeepAliveStrategy(5000L);
+
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.addHeader("Keep-Alive", "timeout=2");
+        assertEquals(2000L, strategy.getKeepAliveDuration(response, new BasicHttpContext()));
+
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.addHeader("Keep-Alive", "timeout=100");
+        assertEquals(5000L, strategy.getKeepAliveDuration(response, new BasicHttpContext()));
+
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        assertEquals(5000L, strategy.getKeepAliveDuration(response, new BasicHttpContext()));
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        try {
+            os.write(bytes);
+        } finally {
+            os.close();
+        }
+    }
+}
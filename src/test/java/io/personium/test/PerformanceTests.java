@@ -49,7 +49,9 @@ import junit.framework.TestSuite;
         io.personium.test.jersey.cell.auth.token.AllTests.class,
         io.personium.test.jersey.cell.ctl.AllTests.class,
         io.personium.test.jersey.concurrent.AllTests.class,
+        io.personium.test.performance.auth.AllTests.class,
         io.personium.test.performance.box.odatacol.AllTests.class,
+        io.personium.test.performance.lock.AllTests.class,
         io.personium.test.unit.core.AllTests.class,
         io.personium.test.unit.core.auth.AllTests.class,
         io.personium.test.unit.core.bar.AllTests.class,
@@ -33,6 +33,7 @@ import io.personium.common.auth.token.TransCellAccessToken;
 import io.personium.common.utils.PersoniumThread;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.file.SeekableDataCryptor;
 
 /**
  * IT用テストランナークラス.
@@ -62,6 +63,7 @@ public class PersoniumIntegTestRunner extends BlockJUnit4ClassRunner {
                 PersoniumUnitConfig.getX509Certificate(), PersoniumUnitConfig.getX509RootCertificate());
         LocalToken.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
         DataCryptor.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
+        SeekableDataCryptor.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
         PersoniumThread.createThreadPool(PersoniumUnitConfig.getThreadPoolNum());
     }
 
@@ -46,7 +46,7 @@ import org.junit.runner.RunWith;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.lock.LockManager;
-import io.personium.core.utils.MemcachedClient;
+import io.personium.core.model.lock.ReadDeleteModeLockManager;
 import io.personium.test.categories.Integration;
 import io.personium.test.setup.Setup;
 import io.personium.test.unit.core.UrlUtils;
@@ -104,14 +104,14 @@ public class ReadDeleteOnlyModeTest extends JerseyTest {
                 + "\"allocatedDiskSize\":13739701043,\"usedDiskSize\":18747490304,\"volumeDiskSize\":68698505216},"
                 + "{\"status\":\"OK\",\"volume\":\"dav\",\"allocatedDiskSize\":23250842419,\"usedDiskSize\":6122848256,"
                 + "\"volumeDiskSize\":116254212096}],\"systemStatus\":\"FULL\"}}";
-        MemcachedClient.getLockClient().add("PcsReadDeleteMode", lockValue);
+        ReadDeleteModeLockManager.setReadDeleteOnlyMode(true, lockValue);
 
         // ReadDeleteOnlyモード時にUserODataの登録を行い、503が返却されることを確認する
         UserDataUtils.create(AbstractCase.MASTER_TOKEN_NAME, HttpStatus.SC_SERVICE_UNAVAILABLE,
                 "{\"__id\":\"test\"}", Setup.TEST_CELL1, Setup.TEST_BOX1, Setup.TEST_ODATA, "Sales");
 
         // ReadDeleteOnlyモードを解除する
-        MemcachedClient.getLockClient().delete("PcsReadDeleteMode");
+        ReadDeleteModeLockManager.setReadDeleteOnlyMode(false, null);
     }
 
     /**
@@ -145,7 +145,7 @@ public class ReadDeleteOnlyModeTest extends JerseyTest {
                     + "\"allocatedDiskSize\":13739701043,\"usedDiskSize\":18747490304,\"volumeDiskSize\":68698505216},"
                     + "{\"status\":\"OK\",\"volume\":\"dav\",\"allocatedDiskSize\":23250842419,"
                     + "\"usedDiskSize\":6122848256,\"volumeDiskSize\":116254212096}],\"systemStatus\":\"FULL\"}}";
-            MemcachedClient.getLockClient().add("PcsReadDeleteMode", lockValue);
+            ReadDeleteModeLockManager.setReadDeleteOnlyMode(true, lockValue);
 
             // ReadDeleteOnlyモード時に$batchリクエスト
             String boundary = "batch_XAmu9BiJJLBa20sRWIq74jp2UlNAVueztqu";
@@ -189,7 +189,7 @@ public class ReadDeleteOnlyModeTest extends JerseyTest {
 
         } finally {
             // ReadDeleteOnlyモードを解除する
-            MemcachedClient.getLockClient().delete("PcsReadDeleteMode");
+            ReadDeleteModeLockManager.setReadDeleteOnlyMode(false, null);
 
             UserDataUtils.deleteLinks(Setup.TEST_CELL1, Setup.TEST_BOX1, Setup.TEST_ODATA,
                     "Sales", "RDOnlyMode", "SalesDetail", "RDOnlyMode", -1);
@@ -517,11 +517,10 @@ public class DavFileTest extends JerseyTest {
     }
 
     /**
-     * Rangeヘッダで複数範囲指定すると501レスポンスが返却されること.
-     * MultiPartレスポンスを制限事項とするため501を返却する.
+     * Rangeヘッダで複数範囲指定するとmultipart/byterangesで返却されること.
      */
     @Test
-    public final void Rangeヘッダで複数範囲指定すると501レスポンスが返却されること() {
+    public final void Rangeヘッダで複数範囲指定するとmultipart_byterangesで返却されること() {
         try {
             String body = "abcdefghijklmn";
 
@@ -534,7 +533,23 @@ public class DavFileTest extends JerseyTest {
             TResponse getResp = this.getFileRequestAtRange(FILE_NAME, TEST_BOX1, rangeHeader)
                     .returns();
 
-            getResp.statusCode(HttpStatus.SC_NOT_IMPLEMENTED);
+            getResp.statusCode(HttpStatus.SC_PARTIAL_CONTENT);
+
+            String contentType = getResp.getHeader(HttpHeaders.CONTENT_TYPE);
+            assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+            String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+            String expected = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: text/plain\r\n"
+                    + "Content-Range: bytes 1-2/14\r\n"
+                    + "\r\n"
+                    + "bc"
+                    + "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: text/plain\r\n"
+                    + "Content-Range: bytes 3-4/14\r\n"
+                    + "\r\n"
+                    + "de"
+                    + "\r\n--" + boundary + "--\r\n";
+            assertEquals(expected, getResp.getBody());
         } finally {
             this.deleteFileRequest(FILE_NAME, null, Setup.TEST_BOX1).returns()
                     .statusCode(HttpStatus.SC_NO_CONTENT);
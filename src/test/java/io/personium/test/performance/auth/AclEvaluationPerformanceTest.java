@@ -0,0 +1,128 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.performance.auth;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.common.auth.token.Role;
+import io.personium.core.auth.BoxPrivilege;
+import io.personium.core.auth.Privilege;
+import io.personium.core.model.jaxb.Ace;
+import io.personium.core.model.jaxb.Acl;
+import io.personium.core.model.jaxb.ObjectIo;
+import io.personium.test.categories.Performance;
+
+/**
+ * Per check cost of evaluating a large ACL, ACE by ACE and role by role, and with the compiled ACL.
+ */
+@Category({Performance.class })
+public class AclEvaluationPerformanceTest {
+
+    private static Logger log = LoggerFactory.getLogger(AclEvaluationPerformanceTest.class);
+
+    private static final String CELL_URL = "https://fqdn/aclTest/";
+    private static final String BASE = CELL_URL + "__role/__/";
+    private static final int ACE_COUNT = 60;
+    private static final int ROLE_COUNT = 25;
+    private static final int WARMUP_COUNT = 10000;
+    private static final int MEASURE_COUNT = 100000;
+
+    /**
+     * The caller holds none of the granted roles, so that every ACE is evaluated.
+     * @throws Exception unexpected error
+     */
+    @Test
+    public final void ACEが多いACLの権限判定にかかる時間を計測する() throws Exception {
+        StringBuilder aces = new StringBuilder();
+        for (int i = 0; i < ACE_COUNT; i++) {
+            aces.append("<D:ace><D:principal><D:href>granted").append(i).append("</D:href></D:principal>")
+                    .append("<D:grant><D:privilege><D:write/></D:privilege>")
+                    .append("<D:privilege><D:read-acl/></D:privilege></D:grant></D:ace>");
+        }
+        Acl acl = ObjectIo.unmarshal(new StringReader(
+                "<D:acl xmlns:D='DAV:' xml:base='" + BASE + "'>" + aces + "</D:acl>"), Acl.class);
+
+        List<Role> roles = new ArrayList<Role>();
+        for (int i = 0; i < ROLE_COUNT; i++) {
+            roles.add(new Role("held" + i, "__", null, CELL_URL));
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+            assertEquals(false, evaluatePerAce(acl, roles, BoxPrivilege.READ));
+        }
+        for (int i = 0; i < MEASURE_COUNT; i++) {
+            evaluatePerAce(acl, roles, BoxPrivilege.READ);
+        }
+        long perAce = (System.nanoTime() - started) / (WARMUP_COUNT + MEASURE_COUNT);
+
+        started = System.nanoTime();
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+            assertEquals(false, evaluateCompiled(acl, roles, BoxPrivilege.READ));
+        }
+        for (int i = 0; i < MEASURE_COUNT; i++) {
+            evaluateCompiled(acl, roles, BoxPrivilege.READ);
+        }
+        long compiled = (System.nanoTime() - started) / (WARMUP_COUNT + MEASURE_COUNT);
+
+        log.info(String.format("ACL with %d ACEs and %d roles: per ACE and role %d ns/op, compiled %d ns/op",
+                ACE_COUNT, ROLE_COUNT, perAce, compiled));
+    }
+
+    /**
+     * Evaluation done by AccessContext before the ACL was compiled.
+     */
+    private static boolean evaluatePerAce(Acl acl, List<Role> roles, Privilege resourcePrivilege) {
+        for (Ace ace : acl.getAceList()) {
+            for (Role role : roles) {
+                String principalHref = URI.create(acl.getBase()).resolve(ace.getPrincipalHref()).toString();
+                if (role.localCreateUrl(CELL_URL).equals(principalHref)) {
+                    for (String granted : ace.getGrantedPrivilegeList()) {
+                        Privilege priv = Privilege.get(resourcePrivilege.getClass(), granted);
+                        if (priv != null && priv.includes(resourcePrivilege)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluation done by AccessContext, with the role URLs built once per request.
+     */
+    private static boolean evaluateCompiled(Acl acl, List<Role> roles, Privilege resourcePrivilege) {
+        Set<String> roleUrls = new HashSet<String>();
+        for (Role role : roles) {
+            roleUrls.add(role.localCreateUrl(CELL_URL));
+        }
+        return acl.getCompiled().allows(roleUrls, resourcePrivilege);
+    }
+}
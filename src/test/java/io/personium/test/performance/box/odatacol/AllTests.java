@@ -25,6 +25,7 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    ODataQueryLayoutPerformanceTest.class,
     UserDataListPerformanceTest.class
     })
 public class AllTests {
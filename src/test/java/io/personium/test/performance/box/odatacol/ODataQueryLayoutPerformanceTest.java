@@ -0,0 +1,243 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.performance.box.odatacol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.core4j.Enumerable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.odata4j.edm.EdmEntityType;
+import org.odata4j.edm.EdmProperty;
+import org.odata4j.edm.EdmSimpleType;
+import org.odata4j.producer.QueryInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.common.es.EsClient;
+import io.personium.common.es.EsIndex;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.impl.es.QueryMapFactory;
+import io.personium.core.model.impl.es.accessor.ODataEntityAccessor;
+import io.personium.core.model.impl.es.doc.OEntityDocHandler;
+import io.personium.core.model.impl.es.odata.EsQueryHandler;
+import io.personium.core.odata.PersoniumOptionsQueryParser;
+import io.personium.test.categories.Performance;
+import io.personium.test.jersey.PersoniumIntegTestRunner;
+import io.personium.test.unit.core.UrlUtils;
+
+/**
+ * Per search latency of OData list queries, with the former layout and with the filtered query layout.
+ * <p>
+ * The former layout put the implicit cell/box/node/entity type conditions into a filtered query and $filter,
+ * $skiptoken and q into a top-level "and" filter. The current layout of EsQueryHandler puts all of the filters
+ * into one bool filter of a filtered query. Both layouts are built from the same EsQueryHandler output and must
+ * find the same documents.
+ * </p>
+ */
+@RunWith(PersoniumIntegTestRunner.class)
+@Category({Performance.class })
+public class ODataQueryLayoutPerformanceTest {
+
+    private static Logger log = LoggerFactory.getLogger(ODataQueryLayoutPerformanceTest.class);
+
+    private static final String INDEX_NAME = "index_for_query_layout";
+    private static final String TYPE_NAME = "UserData";
+    private static final String ROUTING_ID = "RoutingIdTest";
+    private static final String CELL_ID = "cellId";
+    private static final String NODE_ID = "nodeId";
+
+    private static final int DOCUMENT_COUNT = 1000;
+    private static final int WARMUP_COUNT = 50;
+    private static final int MEASURE_COUNT = 500;
+
+    private static final EdmEntityType ENTITY_TYPE = EdmEntityType.newBuilder()
+            .setNamespace("namespace")
+            .setName("sample")
+            .addProperties(Enumerable.create(
+                    EdmProperty.newBuilder("name").setType(EdmSimpleType.STRING),
+                    EdmProperty.newBuilder("category").setType(EdmSimpleType.STRING),
+                    EdmProperty.newBuilder("price").setType(EdmSimpleType.INT32)).toList())
+            .addKeys("__id").build();
+
+    private static EsClient esClient;
+    private static ODataEntityAccessor accessor;
+
+    /**
+     * Indexes documents of two boxes and two entity types in one cell.
+     */
+    @BeforeClass
+    public static void beforeClass() {
+        esClient = new EsClient(PersoniumUnitConfig.getEsClusterName(), PersoniumUnitConfig.getEsHosts());
+        EsIndex index = esClient.idxUser(PersoniumUnitConfig.getEsUnitPrefix(), INDEX_NAME);
+        accessor = new ODataEntityAccessor(index, TYPE_NAME, ROUTING_ID);
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            accessor.create(createDocHandler(i));
+        }
+    }
+
+    /**
+     * Deletes the index.
+     */
+    @AfterClass
+    public static void afterClass() {
+        try {
+            esClient.idxUser(PersoniumUnitConfig.getEsUnitPrefix(), INDEX_NAME).delete();
+        } catch (Exception e) {
+            log.info("Failed to delete index: " + e.getMessage());
+        }
+        esClient.closeConnection();
+    }
+
+    /**
+     * List without $filter. Only the implicit conditions apply.
+     */
+    @Test
+    public final void 暗黙条件のみの一覧取得の検索時間を計測する() {
+        compare("implicit only", null, null);
+    }
+
+    /**
+     * List with an equality $filter.
+     */
+    @Test
+    public final void 完全一致の$filterを指定した一覧取得の検索時間を計測する() {
+        compare("$filter eq", "category eq 'cat3'", null);
+    }
+
+    /**
+     * List with an equality and a range $filter.
+     */
+    @Test
+    public final void 完全一致と範囲の$filterを指定した一覧取得の検索時間を計測する() {
+        compare("$filter eq and ge", "category eq 'cat3' and price ge 50", null);
+    }
+
+    /**
+     * List with $filter and a full text search.
+     */
+    @Test
+    public final void $filterと全文検索を指定した一覧取得の検索時間を計測する() {
+        compare("$filter and q", "price ge 50", "cat3");
+    }
+
+    private void compare(String label, String filter, String keywords) {
+        Map<String, String> customOptions = new HashMap<String, String>();
+        if (keywords != null) {
+            customOptions.put("q", keywords);
+        }
+        QueryInfo queryInfo = new QueryInfo(null, null, null,
+                filter == null ? null : PersoniumOptionsQueryParser.parseFilter(filter),
+                null, null, customOptions, null, null);
+        List<Map<String, Object>> implicitConds = QueryMapFactory.getImplicitFilters(CELL_ID, "box0", NODE_ID,
+                "entityType0", TYPE_NAME);
+
+        EsQueryHandler handler = new EsQueryHandler(ENTITY_TYPE);
+        handler.initialize(queryInfo, implicitConds);
+        Map<String, Object> current = handler.getSource();
+        Map<String, Object> former = toFormerLayout(current, implicitConds.size());
+
+        long formerCount = accessor.search(former).getHits().getAllPages();
+        long currentCount = accessor.search(current).getHits().getAllPages();
+        assertEquals(formerCount, currentCount);
+
+        measure(former, WARMUP_COUNT);
+        measure(current, WARMUP_COUNT);
+        long formerMicros = measure(former, MEASURE_COUNT);
+        long currentMicros = measure(current, MEASURE_COUNT);
+
+        log.info(String.format("OData list search (%s, %d hits): former layout %d us/op, filtered query %d us/op",
+                label, currentCount, formerMicros, currentMicros));
+    }
+
+    private static long measure(Map<String, Object> query, int count) {
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            accessor.search(query);
+        }
+        return (System.nanoTime() - startedAt) / count / 1000L;
+    }
+
+    /**
+     * Rebuilds the query of the former EsQueryHandler from the current one.
+     * @param source query of the current EsQueryHandler
+     * @param implicitCount number of the implicit conditions at the head of the bool filter
+     * @return query in the former layout
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toFormerLayout(Map<String, Object> source, int implicitCount) {
+        Map<String, Object> former = new HashMap<String, Object>(source);
+        Map<String, Object> filtered = (Map<String, Object>) ((Map<String, Object>) source.get("query"))
+                .get("filtered");
+        List<Map<String, Object>> must = (List<Map<String, Object>>) ((Map<String, Object>) ((Map<String, Object>)
+                filtered.get("filter")).get("bool")).get("must");
+
+        List<Map<String, Object>> filters = new ArrayList<Map<String, Object>>(
+                must.subList(implicitCount, must.size()));
+        Map<String, Object> scored = (Map<String, Object>) filtered.get("query");
+        if (scored.containsKey("bool")) {
+            for (Map<String, Object> match : (List<Map<String, Object>>) ((Map<String, Object>) scored.get("bool"))
+                    .get("must")) {
+                Map<String, Object> query = new HashMap<String, Object>();
+                query.put("query", match);
+                filters.add(query);
+            }
+        }
+        if (filters.isEmpty()) {
+            former.put("filter", new HashMap<String, Object>());
+        } else {
+            former.put("filter", QueryMapFactory.andFilter(filters));
+        }
+        former.put("query", QueryMapFactory.filteredQuery(null,
+                QueryMapFactory.mustQuery(new ArrayList<Map<String, Object>>(must.subList(0, implicitCount)))));
+        return former;
+    }
+
+    private static OEntityDocHandler createDocHandler(int i) {
+        long dateTime = new Date().getTime();
+        Map<String, Object> staticFields = new HashMap<String, Object>();
+        staticFields.put("name", "name" + i);
+        staticFields.put("category", "cat" + (i % 10));
+        staticFields.put("price", i % 100);
+        Map<String, Object> hiddenFields = new HashMap<String, Object>();
+        hiddenFields.put("Owner", UrlUtils.getBaseUrl() + "#" + INDEX_NAME);
+
+        OEntityDocHandler docHandler = new OEntityDocHandler();
+        docHandler.setType(TYPE_NAME);
+        docHandler.setCellId(CELL_ID);
+        docHandler.setBoxId("box" + (i % 2));
+        docHandler.setNodeId(NODE_ID);
+        docHandler.setEntityTypeId("entityType" + (i / 2 % 2));
+        docHandler.setPublished(dateTime);
+        docHandler.setUpdated(dateTime);
+        docHandler.setStaticFields(staticFields);
+        docHandler.setDynamicFields(new HashMap<String, Object>());
+        docHandler.setHiddenFields(hiddenFields);
+        docHandler.setManyToOnelinkId(new HashMap<String, Object>());
+        docHandler.resolveUnitUserName(hiddenFields);
+        return docHandler;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.performance.lock;
+
+import static org.junit.Assert.assertFalse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.model.lock.ReadDeleteModeLockManager;
+import io.personium.test.categories.Performance;
+
+/**
+ * Per request cost of checking the ReadDeleteOnly mode, with and without the node local cache.
+ */
+@Category({Performance.class })
+public class ReadDeleteModePerformanceTest {
+
+    private static Logger log = LoggerFactory.getLogger(ReadDeleteModePerformanceTest.class);
+
+    private static final int WARMUP_COUNT = 10000;
+    private static final int MEASURE_COUNT = 100000;
+    private static final long CACHED_STALENESS = 1000L;
+
+    private long originalStaleness;
+
+    /**
+     * 前処理.
+     */
+    @Before
+    public void before() {
+        this.originalStaleness = ReadDeleteModeLockManager.getMaxStaleness();
+    }
+
+    /**
+     * 後処理.
+     */
+    @After
+    public void after() {
+        ReadDeleteModeLockManager.setMaxStaleness(this.originalStaleness);
+    }
+
+    /**
+     * Reads the mode from the lock store on every call, then from the local cache.
+     */
+    @Test
+    public final void ReadDeleteOnlyモードの確認にかかる時間を計測する() {
+        ReadDeleteModeLockManager.setMaxStaleness(0);
+        long uncached = measure();
+
+        ReadDeleteModeLockManager.setMaxStaleness(CACHED_STALENESS);
+        long cached = measure();
+
+        log.info(String.format("ReadDeleteOnly mode check: lock store %d ns/op, cached %d ns/op", uncached, cached));
+    }
+
+    private long measure() {
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+            assertFalse(ReadDeleteModeLockManager.isReadDeleteOnlyMode());
+        }
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < MEASURE_COUNT; i++) {
+            assertFalse(ReadDeleteModeLockManager.isReadDeleteOnlyMode());
+        }
+        return (System.nanoTime() - startedAt) / MEASURE_COUNT;
+    }
+}
@@ -45,6 +45,7 @@ import io.personium.common.auth.token.UnitLocalUnitUserToken;
 import io.personium.common.utils.PersoniumCoreUtils;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.AccessContext;
+import io.personium.core.auth.VerifiedTokenCache;
 import io.personium.core.model.Cell;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.test.categories.Unit;
@@ -296,6 +297,89 @@ public class AccessContextTest {
         assertEquals(AccessContext.TYPE_LOCAL, accessContext.getType());
     }
 
+    /**
+     * 同じBearerトークンでの2回目以降のアクセスでは、検証済みのトークンが使い回されること.
+     */
+    @Test
+    public void Bearerトークンの検証結果がキャッシュされること() {
+        UriInfo uriInfo =  new TestUriInfo();
+        String cellUrl = uriInfo.getBaseUri().getHost()  + ":"  + uriInfo.getBaseUri().getPort();
+
+        Cell cell = (Cell) mock(Cell.class);
+        when(cell.getOwner()).thenReturn("cellOwner");
+        when(cell.getUrl()).thenReturn(cellUrl);
+
+        CellLocalAccessToken token = new CellLocalAccessToken(cellUrl, cell.getOwner(), null, cellUrl);
+        String authzHeader = "Bearer " + token.toTokenString();
+
+        VerifiedTokenCache.clear();
+        long hits = VerifiedTokenCache.getStatus().get("hits");
+        long verified = VerifiedTokenCache.getStatus().get("verified");
+        for (int i = 0; i < 3; i++) {
+            AccessContext accessContext = AccessContext.create(authzHeader,
+                    uriInfo, null, null, cell, BASE_URL, UrlUtils.getHost(), OWNER);
+            assertEquals(AccessContext.TYPE_LOCAL, accessContext.getType());
+        }
+        assertEquals(verified + 1, (long) VerifiedTokenCache.getStatus().get("verified"));
+        assertEquals(hits + 2, (long) VerifiedTokenCache.getStatus().get("hits"));
+    }
+
+    /**
+     * キャッシュからの取得を繰り返してもキャッシュの有効期限が延長されないこと.
+     * @throws InterruptedException InterruptedException
+     */
+    @Test
+    public void キャッシュからの取得を繰り返してもキャッシュの有効期限が延長されないこと() throws InterruptedException {
+        UriInfo uriInfo =  new TestUriInfo();
+        String cellUrl = uriInfo.getBaseUri().getHost()  + ":"  + uriInfo.getBaseUri().getPort();
+
+        Cell cell = (Cell) mock(Cell.class);
+        when(cell.getOwner()).thenReturn("cellOwner");
+        when(cell.getUrl()).thenReturn(cellUrl);
+
+        CellLocalAccessToken token = new CellLocalAccessToken(cellUrl, cell.getOwner(), null, cellUrl);
+        String authzHeader = "Bearer " + token.toTokenString();
+
+        String expiresIn = PersoniumUnitConfig.get(PersoniumUnitConfig.Security.TOKEN_CACHE_EXPIRES_IN);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Security.TOKEN_CACHE_EXPIRES_IN, "2");
+        try {
+            VerifiedTokenCache.clear();
+            long hits = VerifiedTokenCache.getStatus().get("hits");
+            long verified = VerifiedTokenCache.getStatus().get("verified");
+            // 検証から1.2秒後、2.4秒後にアクセスする
+            for (int i = 0; i < 3; i++) {
+                if (i > 0) {
+                    Thread.sleep(1200L);
+                }
+                AccessContext accessContext = AccessContext.create(authzHeader,
+                        uriInfo, null, null, cell, BASE_URL, UrlUtils.getHost(), OWNER);
+                assertEquals(AccessContext.TYPE_LOCAL, accessContext.getType());
+            }
+            // 2回目のアクセスで有効期限が延長されていれば3回目もキャッシュから取得される
+            assertEquals(hits + 1, (long) VerifiedTokenCache.getStatus().get("hits"));
+            assertEquals(verified + 2, (long) VerifiedTokenCache.getStatus().get("verified"));
+        } finally {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.Security.TOKEN_CACHE_EXPIRES_IN, expiresIn);
+            VerifiedTokenCache.clear();
+        }
+    }
+
+    /**
+     * 検証に失敗したBearerトークンはキャッシュされないこと.
+     */
+    @Test
+    public void 検証に失敗したBearerトークンはキャッシュされないこと() {
+        long hits = VerifiedTokenCache.getStatus().get("hits");
+        long failed = VerifiedTokenCache.getStatus().get("failed");
+        for (int i = 0; i < 2; i++) {
+            AccessContext accessContext = AccessContext.create("Bearer dGVzdA==",
+                    null, null, null, null, BASE_URL, UrlUtils.getHost(), OWNER);
+            assertEquals(AccessContext.TYPE_INVALID, accessContext.getType());
+        }
+        assertEquals(failed + 2, (long) VerifiedTokenCache.getStatus().get("failed"));
+        assertEquals(hits, (long) VerifiedTokenCache.getStatus().get("hits"));
+    }
+
     /**
      * BASIC認証AuthorizationHeaderとcookie認証情報が同時に指定された場合のAccessContext生成の正常系テスト.
      */
@@ -0,0 +1,120 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.unit.core.auth;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.bind.JAXBException;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.auth.BoxPrivilege;
+import io.personium.core.auth.CellPrivilege;
+import io.personium.core.auth.CompiledAcl;
+import io.personium.core.model.jaxb.Acl;
+import io.personium.core.model.jaxb.ObjectIo;
+import io.personium.test.categories.Unit;
+
+/**
+ * CompiledAcl ユニットテストクラス.
+ */
+@Category({Unit.class })
+public class CompiledAclTest {
+
+    private static final String BASE = "https://fqdn/aclTest/__role/__/";
+
+    private static CompiledAcl compile(String aces) throws IOException, JAXBException {
+        String aclString = "<D:acl xmlns:D='DAV:' xml:base='" + BASE + "'>" + aces + "</D:acl>";
+        return ObjectIo.unmarshal(new StringReader(aclString), Acl.class).getCompiled();
+    }
+
+    private static String ace(String principal, String privilege) {
+        return "<D:ace><D:principal>" + principal + "</D:principal>"
+                + "<D:grant><D:privilege><D:" + privilege + "/></D:privilege></D:grant></D:ace>";
+    }
+
+    private static Set<String> roleUrls(String... names) {
+        Set<String> urls = new HashSet<String>();
+        for (String name : names) {
+            urls.add(BASE + name);
+        }
+        return urls;
+    }
+
+    /**
+     * Principalがallの場合、ロールが無くても付与された権限とそれに含まれる権限が与えられること.
+     * @throws Exception 予期しないエラー
+     */
+    @Test
+    public void allows_Normal_principal_all() throws Exception {
+        CompiledAcl acl = compile(ace("<D:all/>", "read"));
+
+        assertTrue(acl.allows(null, BoxPrivilege.READ));
+        assertTrue(acl.allows(null, BoxPrivilege.READ_PROPERTIES));
+        assertFalse(acl.allows(null, BoxPrivilege.WRITE));
+    }
+
+    /**
+     * 相対パスで指定したロールを持つ場合のみ、付与された権限とそれに含まれる権限が与えられること.
+     * @throws Exception 予期しないエラー
+     */
+    @Test
+    public void allows_Normal_principal_href() throws Exception {
+        CompiledAcl acl = compile(ace("<D:href>role1</D:href>", "write")
+                + ace("<D:href>role2</D:href>", "auth"));
+
+        assertTrue(acl.allows(roleUrls("role0", "role1"), BoxPrivilege.WRITE_CONTENT));
+        assertFalse(acl.allows(roleUrls("role0", "role1"), BoxPrivilege.ALL));
+        assertFalse(acl.allows(roleUrls("role0"), BoxPrivilege.WRITE));
+        assertTrue(acl.allows(roleUrls("role2"), CellPrivilege.AUTH_READ));
+        assertFalse(acl.allows(roleUrls("role2"), CellPrivilege.SOCIAL));
+        assertFalse(acl.allows(Collections.<String>emptySet(), BoxPrivilege.WRITE));
+    }
+
+    /**
+     * rootが付与されたロールには、全ての権限が与えられること.
+     * @throws Exception 予期しないエラー
+     */
+    @Test
+    public void allows_Normal_root() throws Exception {
+        CompiledAcl acl = compile(ace("<D:href>role1</D:href>", "root"));
+
+        assertTrue(acl.allows(roleUrls("role1"), CellPrivilege.ACL));
+        assertTrue(acl.allows(roleUrls("role1"), BoxPrivilege.WRITE));
+    }
+
+    /**
+     * ロールが無い場合は、ロールを指定したACEより後のPrincipal allも評価されないこと.
+     * @throws Exception 予期しないエラー
+     */
+    @Test
+    public void allows_Error_no_roles() throws Exception {
+        CompiledAcl acl = compile(ace("<D:href>role1</D:href>", "read") + ace("<D:all/>", "read"));
+
+        assertFalse(acl.allows(null, BoxPrivilege.READ));
+        assertTrue(acl.allows(new HashSet<String>(Arrays.asList("other")), BoxPrivilege.READ));
+    }
+}
@@ -26,8 +26,10 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
         BarFileValidateTest.class,
+        BarFileValidatorTest.class,
         BarFileUtilsTest.class,
         BarFileContentsTest.class,
+        BarFileContentsWriteTest.class,
         RootpropsValidateTest.class
 })
 public class AllTests {
@@ -0,0 +1,280 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.unit.core.bar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.bar.BarFileReadRunner;
+import io.personium.core.bar.BarInstallProgressInfo;
+import io.personium.core.model.Box;
+import io.personium.core.model.DavCmp;
+import io.personium.core.model.progress.ProgressManager;
+import io.personium.test.categories.Unit;
+
+/**
+ * barインストールのWebDAVファイル登録を別スレッドで実行する処理のユニットテストクラス.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({BarFileReadRunner.class, ProgressManager.class })
+@Category({Unit.class })
+public class BarFileContentsWriteTest {
+
+    private static final String COL_PATH = "bar/90_contents/davCol/";
+    private static final String[] FILE_NAMES = {"a.txt", "b.txt", "c.txt", "d.txt"};
+
+    /** 一時フォルダ. */
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private BarFileReadRunner runner;
+    private ZipFile zipFile;
+    private DavCmp parentCmp;
+    private Map<String, DavCmp> webdavCols;
+
+    /**
+     * Before.
+     * @throws Exception Exception
+     */
+    @Before
+    public void before() throws Exception {
+        File barFile = tempFolder.newFile("test.bar");
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(barFile));
+        try {
+            for (String fileName : FILE_NAMES) {
+                zos.putNextEntry(new ZipEntry(COL_PATH + fileName));
+                zos.write(fileName.getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+        zipFile = new ZipFile(barFile, "UTF-8");
+
+        runner = PowerMockito.spy(new BarFileReadRunner(barFile, null, null, null, null, null, null, null));
+        Whitebox.setInternalState(runner, "zipFile", zipFile);
+        Map<String, String> davFileMap = new HashMap<String, String>();
+        for (String fileName : FILE_NAMES) {
+            davFileMap.put(COL_PATH + fileName, "text/plain");
+        }
+        Whitebox.setInternalState(runner, "davFileMap", davFileMap);
+
+        parentCmp = mock(DavCmp.class);
+        when(parentCmp.getChildrenCount()).thenReturn(0);
+        webdavCols = new HashMap<String, DavCmp>();
+        webdavCols.put(COL_PATH, parentCmp);
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        ZipFile.closeQuietly(zipFile);
+    }
+
+    /**
+     * WebDAVファイルの登録が同時実行数の上限を超えて実行されないこと.
+     * @throws Exception Exception
+     */
+    @Test
+    public void WebDAVファイルの登録が同時実行数の上限を超えて実行されないこと() throws Exception {
+        Whitebox.setInternalState(runner, "davFileWriteSlots", new Semaphore(2));
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        DavCmp fileCmp = mock(DavCmp.class);
+        when(fileCmp.putForCreate(anyString(), any(InputStream.class))).thenAnswer(new Answer<ResponseBuilder>() {
+            @Override
+            public ResponseBuilder answer(InvocationOnMock invocation) throws Exception {
+                int count = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), count));
+                }
+                started.countDown();
+                release.await();
+                running.decrementAndGet();
+                return null;
+            }
+        });
+        when(parentCmp.getChild(anyString())).thenReturn(fileCmp);
+
+        final AtomicInteger submitted = new AtomicInteger();
+        FutureTask<Void> submitter = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (String fileName : FILE_NAMES) {
+                    assertTrue(submitWebDavFile(fileName));
+                    submitted.incrementAndGet();
+                }
+                return null;
+            }
+        });
+        new Thread(submitter).start();
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // 実行中の登録が完了するまで3件目の登録は開始されない
+        Thread.sleep(200L);
+        assertEquals(2, submitted.get());
+
+        release.countDown();
+        submitter.get(10, TimeUnit.SECONDS);
+        assertTrue((Boolean) Whitebox.invokeMethod(runner, "awaitContentWrites"));
+        assertEquals(2, maxRunning.get());
+        verify(fileCmp, times(FILE_NAMES.length)).putForCreate(anyString(), any(InputStream.class));
+    }
+
+    /**
+     * WebDAVファイルの登録が失敗した場合に以降のエントリが登録されずに失敗が返却されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void WebDAVファイルの登録が失敗した場合に以降のエントリが登録されずに失敗が返却されること() throws Exception {
+        DavCmp okCmp = mock(DavCmp.class);
+        DavCmp ngCmp = mock(DavCmp.class);
+        when(ngCmp.putForCreate(anyString(), any(InputStream.class)))
+                .thenThrow(PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND);
+        when(parentCmp.getChild("a.txt")).thenReturn(okCmp);
+        when(parentCmp.getChild("b.txt")).thenReturn(ngCmp);
+        when(parentCmp.getChild("c.txt")).thenReturn(okCmp);
+
+        assertTrue(submitWebDavFile("a.txt"));
+        assertTrue(submitWebDavFile("b.txt"));
+        assertFalse((Boolean) Whitebox.invokeMethod(runner, "awaitContentWrites"));
+
+        // 失敗した後のエントリは登録しない
+        assertFalse(submitWebDavFile("c.txt"));
+        verify(okCmp, times(1)).putForCreate(anyString(), any(InputStream.class));
+    }
+
+    /**
+     * 登録処理で例外が発生した場合に全ての登録処理の完了を待ってから例外が返却されること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void 登録処理で例外が発生した場合に全ての登録処理の完了を待ってから例外が返却されること() throws Exception {
+        FutureTask<Boolean> failed = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                throw PersoniumCoreException.Server.UNKNOWN_ERROR;
+            }
+        });
+        failed.run();
+        FutureTask<Boolean> slow = new FutureTask<Boolean>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                Thread.sleep(200L);
+                return true;
+            }
+        });
+        new Thread(slow).start();
+        List<Future<Boolean>> writes = Whitebox.getInternalState(runner, "davFileWrites");
+        writes.add(failed);
+        writes.add(slow);
+
+        try {
+            Whitebox.invokeMethod(runner, "awaitContentWrites");
+            fail("PersoniumCoreException not thrown.");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.Server.UNKNOWN_ERROR.getCode(), e.getCode());
+        }
+        assertTrue(slow.isDone());
+        assertTrue(writes.isEmpty());
+    }
+
+    /**
+     * エントリの読み込み後にWebDAVファイルの登録が失敗した場合にエラーが記録されコンテンツの登録が失敗となること.
+     * @throws Exception Exception
+     */
+    @Test
+    public void エントリの読み込み後にWebDAVファイルの登録が失敗した場合にエラーが記録されコンテンツの登録が失敗となること()
+            throws Exception {
+        BarInstallProgressInfo progressInfo = mock(BarInstallProgressInfo.class);
+        Whitebox.setInternalState(runner, "progressInfo", progressInfo);
+        Box box = mock(Box.class);
+        when(box.getId()).thenReturn("boxId");
+        Whitebox.setInternalState(runner, "box", box);
+        PowerMockito.mockStatic(ProgressManager.class);
+        DavCmp ngCmp = mock(DavCmp.class);
+        when(ngCmp.putForCreate(anyString(), any(InputStream.class)))
+                .thenThrow(PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND);
+        when(parentCmp.getChild(anyString())).thenReturn(ngCmp);
+        // エントリの読み込みは登録を開始して成功する
+        PowerMockito.doAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Exception {
+                return submitWebDavFile("a.txt");
+            }
+        }).when(runner, "readContents");
+
+        assertFalse((Boolean) Whitebox.invokeMethod(runner, "createContents"));
+
+        ArgumentCaptor<JSONObject> message = ArgumentCaptor.forClass(JSONObject.class);
+        verify(progressInfo).setMessage(message.capture());
+        assertEquals("PL-BI-1004", message.getValue().get("code"));
+    }
+
+    private boolean submitWebDavFile(String fileName) throws Exception {
+        return (Boolean) Whitebox.invokeMethod(runner, "submitWebDavFile", COL_PATH + fileName, COL_PATH + fileName,
+                webdavCols);
+    }
+}
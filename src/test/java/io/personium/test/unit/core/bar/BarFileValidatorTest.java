@@ -0,0 +1,217 @@
+/**
+ * personium.io
+ * Copyright 2014 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.unit.core.bar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.bar.BarFileInstaller;
+import io.personium.core.bar.BarFileValidator;
+import io.personium.core.rs.odata.ODataEntityResource;
+import io.personium.core.rs.odata.ODataResource;
+import io.personium.test.categories.Unit;
+
+/**
+ * BarFileValidatorのユニットテストクラス.
+ */
+@Category({Unit.class })
+public class BarFileValidatorTest {
+
+    private static final String MANIFEST = "{\"bar_version\":\"1\",\"box_version\":\"1\","
+            + "\"DefaultPath\":\"boxInstall\",\"schema\":\"https://fqdn/testcell1/\"}";
+
+    private static final String ROOTPROPS = "<multistatus xmlns=\"DAV:\">"
+            + "<response><href>dcbox:/</href><propstat><prop><resourcetype><collection/></resourcetype>"
+            + "</prop></propstat></response>"
+            + "<response><href>dcbox:/odatacol</href><propstat><prop><resourcetype><collection/>"
+            + "<p:odata xmlns:p=\"urn:x-personium:xmlns\"/></resourcetype></prop></propstat></response>"
+            + "<response><href>dcbox:/davcol</href><propstat><prop><resourcetype><collection/>"
+            + "</resourcetype></prop></propstat></response>"
+            + "<response><href>dcbox:/davcol/file.txt</href><propstat><prop>"
+            + "<getcontenttype>text/plain</getcontenttype></prop></propstat></response>"
+            + "</multistatus>";
+
+    private static final String METADATA = "<edmx:Edmx Version=\"1.0\" "
+            + "xmlns:edmx=\"http://schemas.microsoft.com/ado/2007/06/edmx\"/>";
+
+    /**
+     * 正しい構成のbarファイルの場合にエラーが返却されないこと.
+     * @throws IOException IOException
+     */
+    @Test
+    public void 正しい構成のbarファイルの場合にエラーが返却されないこと() throws IOException {
+        Map<String, String> entries = createMetaEntries();
+        entries.put("bar/00_meta/20_roles.json", "{\"Roles\":[{\"Name\":\"role1\"},{\"Name\":\"role2\"}]}");
+        entries.put("bar/00_meta/90_rootprops.xml", ROOTPROPS);
+        addContentsEntries(entries);
+
+        List<BarFileValidator.ValidationError> errors = validate(entries);
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    /**
+     * 複数のエラーがある場合に全てのエラーが返却されること.
+     * @throws IOException IOException
+     */
+    @Test
+    public void 複数のエラーがある場合に全てのエラーが返却されること() throws IOException {
+        Map<String, String> entries = createMetaEntries();
+        // Nameが定義されていないRole
+        entries.put("bar/00_meta/20_roles.json", "{\"Roles\":[{\"Name\":\"role1\"},{}]}");
+        entries.put("bar/00_meta/90_rootprops.xml", ROOTPROPS);
+        entries.put("bar/90_contents/", null);
+        entries.put("bar/90_contents/odatacol/", null);
+        // 00_$metadata.xmlより前のユーザデータ
+        entries.put("bar/90_contents/odatacol/90_data/", null);
+        entries.put("bar/90_contents/odatacol/00_$metadata.xml", METADATA);
+        // 90_rootprops.xmlに定義されていないファイル
+        entries.put("bar/90_contents/davcol/", null);
+        entries.put("bar/90_contents/davcol/undefined.txt", "text");
+
+        List<BarFileValidator.ValidationError> errors = validate(entries);
+        assertEquals(3, errors.size());
+        assertEquals("bar/00_meta/20_roles.json", errors.get(0).getPath());
+        assertEquals("PR400-BI-0006", errors.get(0).getCode());
+        assertEquals("bar/90_contents/odatacol/90_data/", errors.get(1).getPath());
+        assertEquals("PL-BI-2001", errors.get(1).getCode());
+        assertEquals("bar/90_contents/davcol/undefined.txt", errors.get(2).getPath());
+        assertEquals("PL-BI-2006", errors.get(2).getCode());
+    }
+
+    /**
+     * 不正なユーザデータがエラーとして返却されること.
+     * @throws IOException IOException
+     */
+    @Test
+    public void 不正なユーザデータがエラーとして返却されること() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("bar/", null);
+        entries.put("bar/00_meta/", null);
+        entries.put("bar/00_meta/00_manifest.json", MANIFEST);
+        entries.put("bar/00_meta/90_rootprops.xml", ROOTPROPS);
+        entries.put("bar/90_contents/", null);
+        entries.put("bar/90_contents/odatacol/", null);
+        entries.put("bar/90_contents/odatacol/00_$metadata.xml", METADATA);
+        entries.put("bar/90_contents/odatacol/90_data/", null);
+        entries.put("bar/90_contents/odatacol/90_data/Entity/", null);
+        entries.put("bar/90_contents/odatacol/90_data/Entity/1.json", "{\"__id\":\"1\",");
+        entries.put("bar/90_contents/odatacol/90_data/Entity/data.json", "{\"__id\":\"2\"}");
+
+        List<BarFileValidator.ValidationError> errors = validate(entries);
+        assertEquals(2, errors.size());
+        assertEquals("bar/90_contents/odatacol/90_data/Entity/1.json", errors.get(0).getPath());
+        assertEquals("PL-BI-2002", errors.get(0).getCode());
+        assertEquals("bar/90_contents/odatacol/90_data/Entity/data.json", errors.get(1).getPath());
+        assertEquals("PL-BI-2001", errors.get(1).getCode());
+    }
+
+    /**
+     * 必須ファイルがない場合にエラーが返却されること.
+     * @throws IOException IOException
+     */
+    @Test
+    public void 必須ファイルがない場合にエラーが返却されること() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("bar/", null);
+        entries.put("bar/00_meta/", null);
+        entries.put("bar/00_meta/20_roles.json", "{\"Roles\":[]}");
+
+        List<BarFileValidator.ValidationError> errors = validate(entries);
+        assertEquals(3, errors.size());
+        assertEquals("bar/00_meta/20_roles.json", errors.get(0).getPath());
+        assertEquals("bar/00_meta/00_manifest.json", errors.get(1).getPath());
+        assertEquals("bar/00_meta/90_rootprops.xml", errors.get(2).getPath());
+    }
+
+    /**
+     * 事前検証のみの場合に検証結果がJSONとして返却されること.
+     * @throws IOException IOException
+     */
+    @Test
+    public void 事前検証のみの場合に検証結果がJSONとして返却されること() throws IOException {
+        Map<String, String> entries = createMetaEntries();
+        entries.put("bar/00_meta/90_rootprops.xml", ROOTPROPS);
+        addContentsEntries(entries);
+
+        ODataEntityResource oDataEntityResource = mock(ODataEntityResource.class);
+        when(oDataEntityResource.getOdataResource()).thenReturn(mock(ODataResource.class));
+        BarFileInstaller installer = new BarFileInstaller(null, "box", oDataEntityResource, null);
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put(HttpHeaders.CONTENT_TYPE, "application/zip");
+
+        Response response = installer.barFileValidate(headers, new ByteArrayInputStream(createBar(entries)));
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMetadata().getFirst(HttpHeaders.CONTENT_TYPE));
+        assertTrue(response.getEntity().toString(), response.getEntity().toString().contains("\"valid\":true"));
+    }
+
+    private Map<String, String> createMetaEntries() {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("bar/", null);
+        entries.put("bar/00_meta/", null);
+        entries.put("bar/00_meta/00_manifest.json", MANIFEST);
+        return entries;
+    }
+
+    private void addContentsEntries(Map<String, String> entries) {
+        entries.put("bar/90_contents/", null);
+        entries.put("bar/90_contents/odatacol/", null);
+        entries.put("bar/90_contents/odatacol/00_$metadata.xml", METADATA);
+        entries.put("bar/90_contents/odatacol/90_data/", null);
+        entries.put("bar/90_contents/odatacol/90_data/Entity/", null);
+        entries.put("bar/90_contents/odatacol/90_data/Entity/1.json", "{\"__id\":\"1\",\"name\":{\"a\":[1,2]}}");
+        entries.put("bar/90_contents/davcol/", null);
+        entries.put("bar/90_contents/davcol/file.txt", "text");
+    }
+
+    private List<BarFileValidator.ValidationError> validate(Map<String, String> entries) throws IOException {
+        BarFileValidator validator = new BarFileValidator(100, 10);
+        return validator.validate(new ByteArrayInputStream(createBar(entries)));
+    }
+
+    private byte[] createBar(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bar = new ByteArrayOutputStream();
+        ZipArchiveOutputStream zos = new ZipArchiveOutputStream(bar);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            zos.putArchiveEntry(new ZipArchiveEntry(entry.getKey()));
+            if (entry.getValue() != null) {
+                zos.write(entry.getValue().getBytes("UTF-8"));
+            }
+            zos.closeArchiveEntry();
+        }
+        zos.close();
+        return bar.toByteArray();
+    }
+}
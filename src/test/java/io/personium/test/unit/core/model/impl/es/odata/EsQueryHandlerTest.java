@@ -19,7 +19,9 @@ package io.personium.test.unit.core.model.impl.es.odata;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,9 +36,11 @@ import org.odata4j.edm.EdmSimpleType;
 import org.odata4j.expression.BoolCommonExpression;
 import org.odata4j.expression.CommonExpression;
 import org.odata4j.expression.ExpressionParser;
+import org.odata4j.expression.OrderByExpression;
 import org.odata4j.producer.QueryInfo;
 
 import io.personium.core.PersoniumCoreException;
+import io.personium.core.model.impl.es.QueryMapFactory;
 import io.personium.core.model.impl.es.odata.EsQueryHandler;
 import io.personium.core.odata.PersoniumOptionsQueryParser;
 import io.personium.test.categories.Unit;
@@ -79,15 +83,15 @@ public class EsQueryHandlerTest {
         Map<String, Object> termElement = new HashMap<String, Object>();
         Map<String, Object> term = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         termElement.put("s.item.untouched", "itemValue");
         term.put("term", termElement);
         filtersElement.add(term);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
-        expected.put("filter", and);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -112,16 +116,16 @@ public class EsQueryHandlerTest {
         Map<String, Object> termElement = new HashMap<String, Object>();
         Map<String, Object> term = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         termElement.put("s.itemKey.untouched", "itemValue");
         term.put("term", termElement);
         filtersElement.add(term);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -165,8 +169,9 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters=[{and=[{term={s.itemKey.untouched=itemValue}},
-        // {term={s.itemKey2.untouched=itemValue2}}]}]}}, version=true, size=25}>
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must=[{and=[{term={s.itemKey.untouched=itemValue}},
+        // {term={s.itemKey2.untouched=itemValue2}}]}]}}}}, version=true, size=25}>
 
         Map<String, Object> expected = new HashMap<String, Object>();
         ArrayList<Map<String, Object>> terms = new ArrayList<Map<String, Object>>();
@@ -176,8 +181,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> rightTerm = new HashMap<String, Object>();
         Map<String, Object> innerAnd = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         leftTermValue.put("s.itemKey.untouched", "itemValue");
         rightTermValue.put("s.itemKey2.untouched", "itemValue2");
@@ -188,10 +193,10 @@ public class EsQueryHandlerTest {
 
         innerAnd.put("and", terms);
         filtersElement.add(innerAnd);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -212,8 +217,9 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters=[{or=[{term={s.itemKey.untouched=itemValue}},
-        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}},
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must=[{or=[{term={s.itemKey.untouched=itemValue}},
+        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}}}},
         // version=true, size=25}>
 
         Map<String, Object> expected = new HashMap<String, Object>();
@@ -228,8 +234,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> rightTermValue = new HashMap<String, Object>();
         Map<String, Object> innerAnd = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         leftTermValue.put("s.itemKey.untouched", "itemValue");
         middleTermValue.put("s.itemKey2.untouched", "itemValue2");
@@ -247,10 +253,10 @@ public class EsQueryHandlerTest {
 
         innerAnd.put("and", terms);
         filtersElement.add(innerAnd);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -271,8 +277,9 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters=[{or=[{term={s.itemKey.untouched=itemValue}},
-        // {term={s.itemKey2.untouched=itemValue2}}]}]}}, version=true, size=25}>
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must=[{or=[{term={s.itemKey.untouched=itemValue}},
+        // {term={s.itemKey2.untouched=itemValue2}}]}]}}}}, version=true, size=25}>
 
         Map<String, Object> expected = new HashMap<String, Object>();
         ArrayList<Map<String, Object>> orElement = new ArrayList<Map<String, Object>>();
@@ -282,8 +289,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> rightTerm = new HashMap<String, Object>();
         Map<String, Object> or = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         leftTermValue.put("s.itemKey.untouched", "itemValue");
         rightTermValue.put("s.itemKey2.untouched", "itemValue2");
@@ -294,10 +301,10 @@ public class EsQueryHandlerTest {
 
         or.put("or", orElement);
         filtersElement.add(or);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -318,8 +325,9 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters=[{or=[{term={s.itemKey.untouched=itemValue}},
-        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}},
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must=[{or=[{term={s.itemKey.untouched=itemValue}},
+        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}}}},
         // version=true, size=25}>
 
         Map<String, Object> expected = new HashMap<String, Object>();
@@ -334,8 +342,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> rightTermValue = new HashMap<String, Object>();
         Map<String, Object> or = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         leftTermValue.put("s.itemKey.untouched", "itemValue");
         middleTermValue.put("s.itemKey2.untouched", "itemValue2");
@@ -353,10 +361,10 @@ public class EsQueryHandlerTest {
 
         or.put("or", orElement);
         filtersElement.add(or);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -377,7 +385,8 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters=[ {query={match={s.itemKey={query=itemValue, type=phrase}}}}]}},
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must=[ {query={match={s.itemKey={query=itemValue, type=phrase}}}}]}}}},
         // version=true, size=25}>
         Map<String, Object> expected = new HashMap<String, Object>();
         Map<String, Object> queryElement = new HashMap<String, Object>();
@@ -385,8 +394,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> searchKey = new HashMap<String, Object>();
         Map<String, Object> query = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         searchKey.put("query", "itemValue");
         searchKey.put("type", "phrase");
@@ -394,10 +403,10 @@ public class EsQueryHandlerTest {
         queryElement.put("match", text);
         query.put("query", queryElement);
         filtersElement.add(query);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -420,8 +429,9 @@ public class EsQueryHandlerTest {
         esQueryHandler.initialize(queryInfo, null);
 
         // 期待値
-        // <{filter={and={filters= [{and=[{term={s.itemKey.untouched=itemValue}},
-        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}},
+        // <{query={filtered={query={match_all={}},
+        // filter={bool={must= [{and=[{term={s.itemKey.untouched=itemValue}},
+        // {or=[{term={s.itemKey2.untouched=itemValue2}}, {term={s.itemKey3.untouched=itemValue3}}]}]}]}}}},
         // version=true, size=25}>
         Map<String, Object> expected = new HashMap<String, Object>();
         ArrayList<Map<String, Object>> andElement = new ArrayList<Map<String, Object>>();
@@ -435,8 +445,8 @@ public class EsQueryHandlerTest {
         Map<String, Object> rightTermValue = new HashMap<String, Object>();
         Map<String, Object> innerAnd = new HashMap<String, Object>();
         List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
-        Map<String, Object> filters = new HashMap<String, Object>();
-        Map<String, Object> and = new HashMap<String, Object>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
 
         leftTermValue.put("s.itemKey.untouched", "itemValue");
         middleTermValue.put("s.itemKey2.untouched", "itemValue2");
@@ -454,10 +464,10 @@ public class EsQueryHandlerTest {
 
         innerAnd.put("and", andElement);
         filtersElement.add(innerAnd);
-        filters.put("filters", filtersElement);
-        and.put("and", filters);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
 
-        expected.put("filter", and);
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
         expected.put("size", 25);
         expected.put("version", true);
 
@@ -589,4 +599,123 @@ public class EsQueryHandlerTest {
             }
         }
     }
+
+    /**
+     * 暗黙条件と全文検索を指定した場合に暗黙条件がフィルタに全文検索がクエリに変換されること.
+     */
+    @Test
+    public void 暗黙条件と全文検索を指定した場合に暗黙条件がフィルタに全文検索がクエリに変換されること() {
+        Map<String, String> customOptions = new HashMap<String, String>();
+        customOptions.put("q", "keyword1 keyword2");
+        List<Map<String, Object>> implicitConds = new ArrayList<Map<String, Object>>();
+        implicitConds.add(QueryMapFactory.termQuery("c", "cellId"));
+
+        // ESQueryHandlerでVisitする
+        QueryInfo queryInfo = new QueryInfo(null, null, null, null, null, null, customOptions, null, null);
+        EsQueryHandler esQueryHandler = new EsQueryHandler(entityType);
+        esQueryHandler.initialize(queryInfo, implicitConds);
+
+        // 期待値
+        Map<String, Object> expected = new HashMap<String, Object>();
+        List<Map<String, Object>> matches = new ArrayList<Map<String, Object>>();
+        for (String keyword : new String[] {"keyword1", "keyword2"}) {
+            Map<String, Object> matchOption = new HashMap<String, Object>();
+            matchOption.put("query", keyword);
+            matchOption.put("operator", "and");
+            matchOption.put("type", "phrase");
+            Map<String, Object> all = new HashMap<String, Object>();
+            all.put("_all", matchOption);
+            Map<String, Object> match = new HashMap<String, Object>();
+            match.put("match", all);
+            matches.add(match);
+        }
+
+        expected.put("query", QueryMapFactory.filteredQuery(QueryMapFactory.mustQuery(matches),
+                QueryMapFactory.boolFilter(implicitConds)));
+        expected.put("size", 25);
+        expected.put("version", true);
+
+        assertEquals(expected, esQueryHandler.getSource());
+    }
+
+    /**
+     * skiptokenを指定した場合に前ページの最後のエンティティより後を検索するクエリに変換されること.
+     */
+    @Test
+    public void skiptokenを指定した場合に前ページの最後のエンティティより後を検索するクエリに変換されること() {
+        String skipToken = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "[\"UserData#entityId\"]".getBytes(StandardCharsets.UTF_8));
+
+        // ESQueryHandlerでVisitする
+        QueryInfo queryInfo = new QueryInfo(null, null, null, null, null, skipToken, null, null, null);
+        EsQueryHandler esQueryHandler = new EsQueryHandler(entityType);
+        esQueryHandler.initialize(queryInfo, null);
+
+        // 期待値
+        Map<String, Object> expected = new HashMap<String, Object>();
+        Map<String, Object> gt = new HashMap<String, Object>();
+        Map<String, Object> rangeElement = new HashMap<String, Object>();
+        Map<String, Object> range = new HashMap<String, Object>();
+        List<Map<String, Object>> filtersElement = new ArrayList<Map<String, Object>>();
+        Map<String, Object> must = new HashMap<String, Object>();
+        Map<String, Object> bool = new HashMap<String, Object>();
+        Map<String, Object> sortOption = new HashMap<String, Object>();
+        Map<String, Object> sortElement = new HashMap<String, Object>();
+        List<Map<String, Object>> sort = new ArrayList<Map<String, Object>>();
+
+        gt.put("gt", "UserData#entityId");
+        rangeElement.put("_uid", gt);
+        range.put("range", rangeElement);
+        filtersElement.add(range);
+        must.put("must", filtersElement);
+        bool.put("bool", must);
+        sortOption.put("order", "asc");
+        sortElement.put("_uid", sortOption);
+        sort.add(sortElement);
+
+        expected.put("query", QueryMapFactory.filteredQuery(null, bool));
+        expected.put("sort", sort);
+        expected.put("size", 25);
+        expected.put("version", true);
+
+        assertEquals(expected, esQueryHandler.getSource());
+    }
+
+    /**
+     * 不正なskiptokenを指定した場合にPersoniumCoreExceptionが発生すること.
+     */
+    @Test
+    public void 不正なskiptokenを指定した場合にPersoniumCoreExceptionが発生すること() {
+        String skipToken = "invalid#token";
+
+        // ESQueryHandlerでVisitする
+        QueryInfo queryInfo = new QueryInfo(null, null, null, null, null, skipToken, null, null, null);
+        EsQueryHandler esQueryHandler = new EsQueryHandler(entityType);
+        try {
+            esQueryHandler.initialize(queryInfo, null);
+            fail("Not Throw Exception.");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.OData.QUERY_INVALID_ERROR.getCode(), e.getCode());
+        }
+    }
+
+    /**
+     * orderbyとskiptokenを同時に指定した場合にPersoniumCoreExceptionが発生すること.
+     */
+    @Test
+    public void orderbyとskiptokenを同時に指定した場合にPersoniumCoreExceptionが発生すること() {
+        String skipToken = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                "[\"UserData#entityId\"]".getBytes(StandardCharsets.UTF_8));
+        List<OrderByExpression> orderBy = PersoniumOptionsQueryParser.parseOrderBy("item desc");
+
+        // ESQueryHandlerでVisitする
+        QueryInfo queryInfo = new QueryInfo(null, null, null, null, orderBy, skipToken, null, null, null);
+        EsQueryHandler esQueryHandler = new EsQueryHandler(entityType);
+        try {
+            esQueryHandler.initialize(queryInfo, null);
+            fail("Not Throw Exception.");
+        } catch (PersoniumCoreException e) {
+            assertEquals(PersoniumCoreException.OData.QUERY_INVALID_ERROR.getCode(), e.getCode());
+        }
+    }
 }
@@ -25,7 +25,8 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-        ResourceUtilTest.class
+        ResourceUtilTest.class,
+        EscapeControlCodeWriterTest.class
 })
 public class AllTests {
 }